@@ -0,0 +1,324 @@
+package org.pgrserver.graph;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.pgrserver.repository.CopyRepository;
+import org.pgrserver.repository.GraphRepository;
+
+/**
+ * Road networks for the benchmarks, so that no database is needed. A
+ * network is one of:
+ *
+ * <ul>
+ * <li>grid:N, an N x N grid of two-way streets about 100 m apart with
+ * random costs, cheaper arterial roads and random one-way diagonals;</li>
+ * <li>fixture, the sample network of the pgRouting documentation;</li>
+ * <li>csv:path, a dump of a pgrserver view with the columns
+ * id,source,target,cost and optionally reverse_cost and x1,y1,x2,y2, as
+ * written by
+ * <code>\copy (select id,source,target,cost,reverse_cost,st_x(st_startpoint(geom)) x1,...) to 'net.csv' csv header</code>.</li>
+ * </ul>
+ *
+ * The rows are served to MainGraph as the binary COPY of
+ * pgrserver.metrics=cost:cost:reverse_cost and the edges as straight lines
+ * from x1,y1 to x2,y2, the way the database would serve them.
+ */
+public final class BenchmarkNetwork {
+
+	public static final String METRICS = "cost:cost:reverse_cost";
+
+	private final int[] ids;
+	private final int[] sources;
+	private final int[] targets;
+	private final double[] costs;
+	private final double[] reverseCosts;
+	/** x1,y1,x2,y2 per row, null without coordinates */
+	private final double[] coords;
+	private final int[] vertexIds;
+
+	private BenchmarkNetwork(List<double[]> rows, boolean hasCoords) {
+		int n = rows.size();
+		ids = new int[n];
+		sources = new int[n];
+		targets = new int[n];
+		costs = new double[n];
+		reverseCosts = new double[n];
+		coords = hasCoords ? new double[4 * n] : null;
+		for (int i = 0; i < n; i++) {
+			double[] row = rows.get(i);
+			ids[i] = (int) row[0];
+			sources[i] = (int) row[1];
+			targets[i] = (int) row[2];
+			costs[i] = row[3];
+			reverseCosts[i] = row[4];
+			if (hasCoords) {
+				System.arraycopy(row, 5, coords, 4 * i, 4);
+			}
+		}
+		int[] vertices = new int[2 * n];
+		System.arraycopy(sources, 0, vertices, 0, n);
+		System.arraycopy(targets, 0, vertices, n, n);
+		vertexIds = Arrays.stream(vertices).distinct().sorted().toArray();
+	}
+
+	/**
+	 * @param spec grid:N, fixture or csv:path
+	 */
+	public static BenchmarkNetwork of(String spec) {
+		try {
+			if (spec.startsWith("grid:")) {
+				return grid(Integer.parseInt(spec.substring(5)), 1);
+			}
+			if (spec.equals("fixture")) {
+				try (InputStream in = BenchmarkNetwork.class.getResourceAsStream("sampledata.csv")) {
+					return csv(in);
+				}
+			}
+			if (spec.startsWith("csv:")) {
+				try (InputStream in = Files.newInputStream(Paths.get(spec.substring(4)))) {
+					return csv(in);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		throw new IllegalArgumentException("Network '" + spec + "' is not grid:N, fixture or csv:path");
+	}
+
+	/**
+	 * Grid of size x size vertices. Every tenth street is an arterial road
+	 * that is cheaper per metre, and about one block in ten has a diagonal
+	 * one-way shortcut.
+	 */
+	static BenchmarkNetwork grid(final int size, long seed) {
+		final Random random = new Random(seed);
+		final List<double[]> rows = new ArrayList<double[]>();
+		TestGraphs.streets(size, (id, u, v) -> {
+			int x = u / size;
+			int y = u % size;
+			if (v == u + size) {
+				double factor = y % 10 == 0 ? 0.5 : 1 + random.nextDouble();
+				rows.add(street(id++, size, x, y, x + 1, y, factor, true));
+				return id;
+			}
+			double factor = x % 10 == 0 ? 0.5 : 1 + random.nextDouble();
+			rows.add(street(id++, size, x, y, x, y + 1, factor, true));
+			if (x + 1 < size && random.nextInt(10) == 0) {
+				boolean up = random.nextBoolean();
+				rows.add(street(id++, size, x, up ? y : y + 1, x + 1, up ? y + 1 : y,
+						0.8 + 0.4 * random.nextDouble(), false));
+			}
+			return id;
+		});
+		return new BenchmarkNetwork(rows, true);
+	}
+
+	/**
+	 * @param factor cost per metre
+	 */
+	private static double[] street(int id, int size, int x, int y, int x2, int y2, double factor,
+			boolean twoWay) {
+		double lng1 = TestGraphs.lng(x);
+		double lat1 = TestGraphs.lat(y);
+		double lng2 = TestGraphs.lng(x2);
+		double lat2 = TestGraphs.lat(y2);
+		double cost = factor * metres(lng1, lat1, lng2, lat2);
+		return new double[] { id, x * size + y + 1, x2 * size + y2 + 1, cost, twoWay ? cost : -1, lng1, lat1,
+				lng2, lat2 };
+	}
+
+	private static double metres(double lng1, double lat1, double lng2, double lat2) {
+		double dx = Math.toRadians(lng2 - lng1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+		double dy = Math.toRadians(lat2 - lat1);
+		return 6371000 * Math.sqrt(dx * dx + dy * dy);
+	}
+
+	private static BenchmarkNetwork csv(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		List<String> header = Arrays.asList(reader.readLine().trim().toLowerCase().split(","));
+		String[] names = { "id", "source", "target", "cost", "reverse_cost", "x1", "y1", "x2", "y2" };
+		int[] columns = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			columns[i] = header.indexOf(names[i]);
+			if (i < 4 && columns[i] < 0) {
+				throw new IOException("Column " + names[i] + " is missing");
+			}
+		}
+		boolean hasCoords = columns[5] >= 0 && columns[6] >= 0 && columns[7] >= 0 && columns[8] >= 0;
+		List<double[]> rows = new ArrayList<double[]>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			String[] fields = line.split(",");
+			double[] row = new double[names.length];
+			for (int i = 0; i < names.length; i++) {
+				row[i] = columns[i] < 0 || fields[columns[i]].trim().isEmpty() ? -1
+						: Double.parseDouble(fields[columns[i]].trim());
+			}
+			rows.add(row);
+		}
+		return new BenchmarkNetwork(rows, hasCoords);
+	}
+
+	int rowCount() {
+		return ids.length;
+	}
+
+	int vertexCount() {
+		return vertexIds.length;
+	}
+
+	public boolean hasCoordinates() {
+		return coords != null;
+	}
+
+	/**
+	 * @return the rows in the binary COPY format of CopyGraphLoader
+	 */
+	byte[] copyData() {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * ids.length);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.write(new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 });
+			out.writeInt(0);
+			out.writeInt(0);
+			for (int i = 0; i < ids.length; i++) {
+				out.writeShort(5);
+				out.writeInt(8);
+				out.writeLong(ids[i]);
+				out.writeInt(8);
+				out.writeLong(sources[i]);
+				out.writeInt(8);
+				out.writeLong(targets[i]);
+				out.writeInt(8);
+				out.writeDouble(costs[i]);
+				out.writeInt(8);
+				out.writeDouble(reverseCosts[i]);
+			}
+			out.writeShort(-1);
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return rows of GraphRepository.getGeometries: id, WKB linestring and
+	 *         length
+	 */
+	List<Object[]> geometries() {
+		List<Object[]> retVal = new ArrayList<Object[]>();
+		if (coords == null) {
+			return retVal;
+		}
+		for (int i = 0; i < ids.length; i++) {
+			byte[] wkb = TestGraphs.lineString(Arrays.copyOfRange(coords, 4 * i, 4 * i + 4));
+			retVal.add(new Object[] { ids[i], wkb,
+					metres(coords[4 * i], coords[4 * i + 1], coords[4 * i + 2], coords[4 * i + 3]) });
+		}
+		return retVal;
+	}
+
+	/**
+	 * @return a MainGraph reading this network, its graph not loaded yet.
+	 *         Nothing is built in the background and routes are not
+	 *         cached; points are snapped in memory when there are
+	 *         coordinates.
+	 */
+	MainGraph mainGraph() throws IOException {
+		MainGraph retVal = new MainGraph();
+		retVal.metricsSpec = METRICS;
+		retVal.copyEnabled = true;
+		retVal.copyRepository = copyRepository();
+		retVal.graphRepository = graphRepository();
+		retVal.snapEnabled = hasCoordinates();
+		retVal.dataDir = Files.createTempDirectory("pgrserver-jmh").toString();
+		return retVal;
+	}
+
+	/**
+	 * @return CopyRepository that serves copyData whatever the query
+	 */
+	public CopyRepository copyRepository() {
+		final byte[] data = copyData();
+		return new CopyRepository() {
+			@Override
+			public <T> T copyOut(String sql, CopyReader<T> reader) throws IOException {
+				return reader.read(new ByteArrayInputStream(data));
+			}
+		};
+	}
+
+	/**
+	 * @return GraphRepository that serves the geometries
+	 */
+	public GraphRepository graphRepository() {
+		GraphRepository retVal = mock(GraphRepository.class);
+		when(retVal.getGeometries()).thenReturn(geometries());
+		return retVal;
+	}
+
+	/**
+	 * @return count pairs of random vertices with a route between them, as
+	 *         source, target, source, ...
+	 */
+	public int[] routablePairs(MainGraph mainGraph, int count, long seed) {
+		Random random = new Random(seed);
+		int[] retVal = new int[2 * count];
+		int found = 0;
+		for (int attempt = 0; found < count && attempt < 100 * count; attempt++) {
+			int s = vertexIds[random.nextInt(vertexIds.length)];
+			int t = vertexIds[random.nextInt(vertexIds.length)];
+			if (s != t && !mainGraph.dijkstraSearch(s, t).isEmpty()) {
+				retVal[2 * found] = s;
+				retVal[2 * found++ + 1] = t;
+			}
+		}
+		if (found < count) {
+			throw new IllegalStateException("Only " + found + " of " + count + " random pairs have a route");
+		}
+		return retVal;
+	}
+
+	/**
+	 * @return count random lng,lat points within the extent of the network
+	 */
+	public List<List<Double>> randomPoints(int count, long seed) {
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < coords.length; i += 2) {
+			minX = Math.min(minX, coords[i]);
+			maxX = Math.max(maxX, coords[i]);
+			minY = Math.min(minY, coords[i + 1]);
+			maxY = Math.max(maxY, coords[i + 1]);
+		}
+		Random random = new Random(seed);
+		List<List<Double>> retVal = new ArrayList<List<Double>>();
+		for (int i = 0; i < count; i++) {
+			retVal.add(Arrays.asList(minX + (maxX - minX) * random.nextDouble(),
+					minY + (maxY - minY) * random.nextDouble()));
+		}
+		return retVal;
+	}
+}
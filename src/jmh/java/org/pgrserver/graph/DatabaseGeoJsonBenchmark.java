@@ -0,0 +1,141 @@
+package org.pgrserver.graph;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares route GeoJSON built by the database (the query of
+ * CustomRepository.createJsonRouteResponse) with RouteGeoJson on the same
+ * random routes of a real pgrserver view. Needs a database, so the default
+ * run of the jmh profile leaves it out; it runs when named:
+ *
+ * <pre>
+ * mvn -P jmh -DskipTests verify -Djmh.args="DatabaseGeoJsonBenchmark -p url=jdbc:postgresql://localhost/db -p user=user -p password=password"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseGeoJsonBenchmark {
+
+	private static final int ROUTES = 256;
+
+	@Param({ "" })
+	public String url;
+
+	@Param({ "" })
+	public String user;
+
+	@Param({ "" })
+	public String password;
+
+	private Connection connection;
+	private Statement statement;
+	private CsrGraph graph;
+	private GeometryStore store;
+	private List<List<Integer>> routes;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		if (url.isEmpty()) {
+			throw new IllegalStateException("set the database with -p url=... -p user=... -p password=...");
+		}
+		connection = DriverManager.getConnection(url, user, password);
+		statement = connection.createStatement();
+
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		try (ResultSet rs = statement.executeQuery("select id,source,target,cost from pgrserver")) {
+			while (rs.next()) {
+				builder.addEdge(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getDouble(4));
+			}
+		}
+		graph = builder.build();
+
+		GeometryStore.Builder geometries = new GeometryStore.Builder();
+		try (ResultSet rs = statement
+				.executeQuery("select id,st_asbinary(geom),st_length(geom::geography,true) from pgrserver")) {
+			while (rs.next()) {
+				geometries.add(rs.getInt(1), rs.getBytes(2), rs.getDouble(3));
+			}
+		}
+		store = geometries.build(graph);
+
+		Random random = new Random(1);
+		routes = new ArrayList<List<Integer>>();
+		CsrDijkstra dijkstra = CsrDijkstra.acquire(graph);
+		try {
+			for (int attempt = 0; routes.size() < ROUTES && attempt < 100 * ROUTES; attempt++) {
+				int[] path = dijkstra.path(random.nextInt(graph.vertexCount()), random.nextInt(graph.vertexCount()),
+						CsrDijkstra.NONE);
+				if (path != null && path.length > 0) {
+					List<Integer> ids = new ArrayList<Integer>();
+					for (int id : graph.toEdgeIds(path)) {
+						ids.add(id);
+					}
+					routes.add(ids);
+				}
+			}
+		} finally {
+			dijkstra.release();
+		}
+		if (routes.size() < ROUTES) {
+			throw new IllegalStateException("Only " + routes.size() + " random pairs have a route");
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	@Benchmark
+	public String database() throws SQLException {
+		next = (next + 1) & (ROUTES - 1);
+		try (ResultSet rs = statement.executeQuery(routeSql(routes.get(next), 1))) {
+			rs.next();
+			return rs.getString(1);
+		}
+	}
+
+	@Benchmark
+	public String routeGeoJson() {
+		next = (next + 1) & (ROUTES - 1);
+		return RouteGeoJson.feature(graph, store, routes.get(next), 1);
+	}
+
+	/**
+	 * Same statement as CustomRepository.createJsonRouteResponse.
+	 */
+	private static String routeSql(List<Integer> list, int gid) {
+		String listStr = list.toString().replace("[", "(").replace("]", ")");
+		return "select CAST(json_build_object('type','Feature'," + "'id'," + gid + ","
+				+ "'properties',json_build_object('feat_length'," + "st_length(t.geom,true)," + "'fid'," + gid
+				+ ")," + "'geometry',CAST(st_asgeojson(t.geom) as json)" + ") as TEXT) as st_json "
+				+ "from (select st_union(geom) as geom from pgrserver" + " where id in " + listStr + ") t;";
+	}
+}
@@ -0,0 +1,75 @@
+package org.pgrserver.graph;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to assemble the GeoJSON of routes between random vertices: the
+ * Feature of one route and the FeatureCollection of a batch, as the
+ * CustomRepository queries return them, built in memory from the loaded
+ * geometries. DatabaseGeoJsonBenchmark compares the two against a
+ * database.
+ *
+ * <pre>
+ * mvn -P jmh -DskipTests verify -Djmh.args="GeoJsonBenchmark -rf json -rff target/jmh-result.json"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeoJsonBenchmark {
+
+	private static final int ROUTES = 256;
+
+	@Param({ "fixture", "grid:300" })
+	public String network;
+
+	@Param({ "16" })
+	public int batchSize;
+
+	private MainGraph mainGraph;
+	private List<List<Integer>> routes;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		BenchmarkNetwork net = BenchmarkNetwork.of(network);
+		mainGraph = net.mainGraph();
+		mainGraph.createDirectedGraph();
+		int[] vertices = net.routablePairs(mainGraph, ROUTES, 2);
+		routes = new ArrayList<List<Integer>>();
+		for (int i = 0; i < vertices.length; i += 2) {
+			routes.add(mainGraph.dijkstraSearch(vertices[i], vertices[i + 1]));
+		}
+	}
+
+	@Benchmark
+	public String feature() {
+		next = (next + 1) & (ROUTES - 1);
+		return mainGraph.createJsonRouteResponse(routes.get(next), next);
+	}
+
+	@Benchmark
+	public String featureCollection() {
+		next = (next + batchSize) & (ROUTES - 1);
+		return mainGraph.createJsonCollectionResponse(routes.subList(next, Math.min(ROUTES, next + batchSize)));
+	}
+}
@@ -0,0 +1,60 @@
+package org.pgrserver.graph;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to load a graph: MainGraph.createDirectedGraph from the binary COPY
+ * of the rows through publishing the generation, with the geometries and
+ * the spatial index, and the contraction hierarchy that chbDijkstra needs
+ * on top of it.
+ *
+ * <pre>
+ * mvn -P jmh -DskipTests verify -Djmh.args="GraphBuildBenchmark -rf json -rff target/jmh-result.json"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphBuildBenchmark {
+
+	@Param({ "fixture", "grid:100", "grid:300" })
+	public String network;
+
+	private MainGraph mainGraph;
+	private CsrGraph graph;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		mainGraph = BenchmarkNetwork.of(network).mainGraph();
+		mainGraph.createDirectedGraph();
+		graph = mainGraph.generation().getGraph();
+	}
+
+	@Benchmark
+	public GraphGeneration createDirectedGraph() {
+		mainGraph.createDirectedGraph();
+		return mainGraph.generation();
+	}
+
+	@Benchmark
+	public ContractionHierarchy contractionHierarchy() {
+		return ContractionHierarchy.build(graph);
+	}
+}
@@ -0,0 +1,110 @@
+package org.pgrserver.graph;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+/**
+ * Overhead of RouteMetrics: the time of one recorded phase and settled
+ * count on a Prometheus registry with percentile histograms, and the time
+ * of a bidirectional Dijkstra query recorded that way, without meters
+ * (none), with disabled meters and with enabled ones. With the gc
+ * profiler, gc.alloc.rate.norm of record is the allocation per phase:
+ *
+ * <pre>
+ * mvn -P jmh -DskipTests verify -Djmh.args="RouteMetricsBenchmark -prof gc -rf json -rff target/jmh-result.json"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteMetricsBenchmark {
+
+	private static final int PAIRS = 1024;
+
+	@Param({ "none", "disabled", "enabled" })
+	public String meters;
+
+	@Param({ "grid:300" })
+	public String network;
+
+	private RouteMetrics metrics;
+	private CsrGraph graph;
+	private BidirectionalSearch search;
+	private int[] vertices;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		if ("enabled".equals(meters)) {
+			PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+			registry.config().meterFilter(new MeterFilter() {
+				@Override
+				public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+					return DistributionStatisticConfig.builder().percentilesHistogram(true).build().merge(config);
+				}
+			});
+			metrics = new RouteMetrics(registry);
+			metrics.setEndpoint("/api/node/dijkstra");
+		} else if ("disabled".equals(meters)) {
+			metrics = RouteMetrics.disabled();
+		}
+
+		BenchmarkNetwork net = BenchmarkNetwork.of(network);
+		MainGraph mainGraph = net.mainGraph();
+		mainGraph.createDirectedGraph();
+		graph = mainGraph.generation().getGraph();
+		search = new BidirectionalSearch(graph.vertexCount());
+		vertices = net.routablePairs(mainGraph, PAIRS, 1);
+		for (int i = 0; i < vertices.length; i++) {
+			vertices[i] = graph.indexOf(vertices[i]);
+		}
+	}
+
+	@Benchmark
+	public long record() {
+		if (metrics == null) {
+			return 0;
+		}
+		long start = metrics.start();
+		metrics.record(RouteMetrics.SEARCH, "dijkstra", start);
+		metrics.settled("dijkstra", next++ & 1023);
+		return start;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int[] query() {
+		next = (next + 2) & (2 * PAIRS - 1);
+		if (metrics == null) {
+			return search.shortestPath(graph, vertices[next], vertices[next + 1]);
+		}
+		long start = metrics.start();
+		int settled = search.settledCount();
+		int[] retVal = search.shortestPath(graph, vertices[next], vertices[next + 1]);
+		metrics.record(RouteMetrics.SEARCH, "dijkstra", start);
+		metrics.settled("dijkstra", search.settledCount() - settled);
+		return retVal;
+	}
+}
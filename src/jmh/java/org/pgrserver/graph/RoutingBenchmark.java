@@ -0,0 +1,109 @@
+package org.pgrserver.graph;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time per query of the MainGraph services between random vertices of a
+ * network that have a route between them. The hierarchy of chbDijkstra
+ * is built before the measurement, see GraphBuildBenchmark for its cost.
+ * The tsp visits random points snapped to the network, within
+ * pgrserver.tsp.time-budget-ms.
+ *
+ * <pre>
+ * mvn -P jmh -DskipTests verify -Djmh.args="RoutingBenchmark -p network=grid:300 -rf json -rff target/jmh-result.json"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+
+	private static final int PAIRS = 1024;
+
+	@Param({ "fixture", "grid:100", "grid:300" })
+	public String network;
+
+	/**
+	 * Cost radius of drivingDistance, about 1 km on the grids
+	 */
+	@Param({ "1500" })
+	public double radius;
+
+	@Param({ "25" })
+	public int tspPoints;
+
+	@Param({ "50" })
+	public long tspBudgetMillis;
+
+	private MainGraph mainGraph;
+	private int[] vertices;
+	private List<List<Double>> points;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		BenchmarkNetwork net = BenchmarkNetwork.of(network);
+		mainGraph = net.mainGraph();
+		mainGraph.tspBudgetMillis = tspBudgetMillis;
+		mainGraph.createDirectedGraph();
+		GraphGeneration gen = mainGraph.generation();
+		gen.setHierarchy(ContractionHierarchy.build(gen.getGraph()));
+		vertices = net.routablePairs(mainGraph, PAIRS, 1);
+		points = net.randomPoints(tspPoints, 1);
+	}
+
+	/**
+	 * @return index of the next pair in vertices
+	 */
+	private int nextPair() {
+		next = (next + 2) & (2 * PAIRS - 1);
+		return next;
+	}
+
+	@Benchmark
+	public List<Integer> dijkstraSearch() {
+		int i = nextPair();
+		return mainGraph.dijkstraSearch(vertices[i], vertices[i + 1]);
+	}
+
+	@Benchmark
+	public List<Integer> astarSearch() {
+		int i = nextPair();
+		return mainGraph.astarSearch(vertices[i], vertices[i + 1]);
+	}
+
+	@Benchmark
+	public List<Integer> chbDijkstraSearch() {
+		int i = nextPair();
+		return mainGraph.chbDijkstraSearch(vertices[i], vertices[i + 1]);
+	}
+
+	@Benchmark
+	public Set<Integer> drivingDistance() {
+		return mainGraph.drivingDistance(vertices[nextPair()], radius);
+	}
+
+	@Benchmark
+	public List<List<Integer>> tsp() {
+		return mainGraph.tsp(points);
+	}
+}
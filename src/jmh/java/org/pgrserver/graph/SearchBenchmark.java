@@ -0,0 +1,107 @@
+package org.pgrserver.graph;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jgrapht.GraphPath;
+import org.jgrapht.alg.shortestpath.BFSShortestPath;
+import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time per point-to-point query of the JGraphT searches on CsrGraphView,
+ * CsrDijkstra and BidirectionalSearch, between random vertices with a
+ * route between them. With the gc profiler, gc.alloc.rate.norm is the
+ * number of bytes each query allocates:
+ *
+ * <pre>
+ * mvn -P jmh -DskipTests verify -Djmh.args="SearchBenchmark -prof gc -rf json -rff target/jmh-result.json"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+	private static final int PAIRS = 1024;
+
+	@Param({ "grid:100", "grid:300" })
+	public String network;
+
+	private CsrGraph graph;
+	private CsrGraphView view;
+	private BidirectionalSearch search;
+	private int[] vertices;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		BenchmarkNetwork net = BenchmarkNetwork.of(network);
+		MainGraph mainGraph = net.mainGraph();
+		mainGraph.createDirectedGraph();
+		graph = mainGraph.generation().getGraph();
+		view = new CsrGraphView(graph);
+		search = new BidirectionalSearch(graph.vertexCount());
+		vertices = net.routablePairs(mainGraph, PAIRS, 1);
+		for (int i = 0; i < vertices.length; i++) {
+			vertices[i] = graph.indexOf(vertices[i]);
+		}
+	}
+
+	/**
+	 * @return index of the next pair in vertices
+	 */
+	private int nextPair() {
+		next = (next + 2) & (2 * PAIRS - 1);
+		return next;
+	}
+
+	@Benchmark
+	public GraphPath<Integer, Integer> jgraphtDijkstra() {
+		int i = nextPair();
+		return DijkstraShortestPath.findPathBetween(view, vertices[i], vertices[i + 1]);
+	}
+
+	@Benchmark
+	public int[] csrDijkstra() {
+		int i = nextPair();
+		CsrDijkstra dijkstra = CsrDijkstra.acquire(graph);
+		try {
+			return dijkstra.path(vertices[i], vertices[i + 1], CsrDijkstra.NONE);
+		} finally {
+			dijkstra.release();
+		}
+	}
+
+	@Benchmark
+	public int[] bidirectionalDijkstra() {
+		int i = nextPair();
+		return search.shortestPath(graph, vertices[i], vertices[i + 1]);
+	}
+
+	@Benchmark
+	public GraphPath<Integer, Integer> jgraphtBfs() {
+		int i = nextPair();
+		return BFSShortestPath.findPathBetween(view, vertices[i], vertices[i + 1]);
+	}
+
+	@Benchmark
+	public int[] bidirectionalBfs() {
+		int i = nextPair();
+		return search.fewestHops(graph, vertices[i], vertices[i + 1]);
+	}
+}
@@ -0,0 +1,386 @@
+package org.pgrserver.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.pgrserver.PgrServerApplication;
+import org.pgrserver.graph.BenchmarkNetwork;
+import org.pgrserver.graph.GraphGeneration;
+import org.pgrserver.graph.MainGraph;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Replays queries against the GraphController endpoints at a target rate
+ * and reports latency percentiles, throughput and error rates per
+ * endpoint.
+ *
+ * The application is started on a free port with LoadTestStandIns in
+ * place of the database, over a BenchmarkNetwork, and the harness waits
+ * for the contraction hierarchy and the ALT landmarks before it starts.
+ * With --url a running server is loaded instead, which needs a --log.
+ *
+ * The queries are a query log recorded by QueryLogFilter, or a mix of all
+ * endpoints generated over the network. They are sent open loop: each at
+ * its own time, whether the earlier ones have been answered or not, and
+ * its latency counts from that time, so that a server that falls behind
+ * shows it in the percentiles. At --rate 0 a log is replayed at the pace
+ * it was recorded.
+ *
+ * <pre>
+ * mvn -P loadtest -DskipTests test-compile exec:java \
+ *     -Dexec.args="--network grid:100 --rate 200 --duration 60 --out target/loadtest.json"
+ * </pre>
+ *
+ * Options, with their defaults: --network grid:100 (grid:N, fixture or
+ * csv:path), --log none, --url none, --rate 100 (requests per second),
+ * --duration 30 (seconds, the queries are repeated as needed),
+ * --warmup 10 (seconds of the same load before, not reported),
+ * --concurrency 64 (connections), --queries 10000 (generated), --seed 1,
+ * --out none (JSON report). Other application properties can be given as
+ * -D system properties.
+ */
+public class LoadTestHarness {
+
+	private static final Map<String, String> DEFAULTS = new LinkedHashMap<String, String>();
+
+	static {
+		DEFAULTS.put("network", "grid:100");
+		DEFAULTS.put("log", null);
+		DEFAULTS.put("url", null);
+		DEFAULTS.put("rate", "100");
+		DEFAULTS.put("duration", "30");
+		DEFAULTS.put("warmup", "10");
+		DEFAULTS.put("concurrency", "64");
+		DEFAULTS.put("queries", "10000");
+		DEFAULTS.put("seed", "1");
+		DEFAULTS.put("out", null);
+	}
+
+	/**
+	 * Latencies and outcomes of the requests to one endpoint
+	 */
+	static final class EndpointStats {
+
+		private long[] latencies = new long[1024];
+		private int count;
+		private int errors;
+		private long bytes;
+		private final Map<Integer, Integer> statuses = new TreeMap<Integer, Integer>();
+
+		/**
+		 * @param status HTTP status, -1 when the request failed
+		 */
+		synchronized void add(long nanos, int status, long length) {
+			if (count == latencies.length) {
+				latencies = Arrays.copyOf(latencies, 2 * count);
+			}
+			latencies[count++] = nanos;
+			if (status < 200 || status >= 400) {
+				errors++;
+			}
+			bytes += length;
+			statuses.merge(status, 1, Integer::sum);
+		}
+
+		synchronized void addAll(EndpointStats other) {
+			synchronized (other) {
+				if (count + other.count > latencies.length) {
+					latencies = Arrays.copyOf(latencies, Math.max(2 * latencies.length, count + other.count));
+				}
+				System.arraycopy(other.latencies, 0, latencies, count, other.count);
+				count += other.count;
+				errors += other.errors;
+				bytes += other.bytes;
+				other.statuses.forEach((status, n) -> statuses.merge(status, n, Integer::sum));
+			}
+		}
+
+		/**
+		 * @return summary of the requests over seconds
+		 */
+		synchronized Map<String, Object> summary(double seconds) {
+			long[] sorted = Arrays.copyOf(latencies, count);
+			Arrays.sort(sorted);
+			Map<String, Object> retVal = new LinkedHashMap<String, Object>();
+			retVal.put("requests", count);
+			retVal.put("errors", errors);
+			retVal.put("errorRate", count == 0 ? 0.0 : (double) errors / count);
+			retVal.put("throughput", count / seconds);
+			retVal.put("p50Millis", percentile(sorted, 0.50));
+			retVal.put("p95Millis", percentile(sorted, 0.95));
+			retVal.put("p99Millis", percentile(sorted, 0.99));
+			retVal.put("maxMillis", count == 0 ? 0.0 : sorted[count - 1] / 1e6);
+			retVal.put("bytes", bytes);
+			retVal.put("statuses", new TreeMap<Integer, Integer>(statuses));
+			return retVal;
+		}
+
+		private static double percentile(long[] sorted, double p) {
+			if (sorted.length == 0) {
+				return 0;
+			}
+			int i = (int) Math.ceil(p * sorted.length) - 1;
+			return sorted[Math.max(0, i)] / 1e6;
+		}
+	}
+
+	private final Map<String, EndpointStats> stats = new TreeMap<String, EndpointStats>();
+	private final AtomicLong maxLag = new AtomicLong();
+	private final String baseUrl;
+
+	LoadTestHarness(String baseUrl) {
+		this.baseUrl = baseUrl;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = options(args);
+		int concurrency = Integer.parseInt(options.get("concurrency"));
+		System.setProperty("http.maxConnections", Integer.toString(concurrency));
+
+		ConfigurableApplicationContext context = null;
+		String baseUrl = options.get("url");
+		List<LoadTestQuery> queries;
+		try {
+			if (baseUrl == null) {
+				BenchmarkNetwork network = BenchmarkNetwork.of(options.get("network"));
+				context = start(network);
+				MainGraph mainGraph = context.getBean(MainGraph.class);
+				awaitPreparation(context, mainGraph);
+				baseUrl = "http://localhost:" + ((ServletWebServerApplicationContext) context).getWebServer().getPort()
+						+ context.getEnvironment().getProperty("server.servlet.context-path", "");
+				queries = options.get("log") != null ? LoadTestQuery.read(Paths.get(options.get("log")))
+						: LoadTestQuery.generate(network, mainGraph, Integer.parseInt(options.get("queries")),
+								Long.parseLong(options.get("seed")));
+			} else if (options.get("log") != null) {
+				queries = LoadTestQuery.read(Paths.get(options.get("log")));
+			} else {
+				throw new IllegalArgumentException("--url needs a --log to replay");
+			}
+			if (queries.isEmpty()) {
+				throw new IllegalArgumentException("No queries to replay");
+			}
+			System.out.printf("Replaying %d queries against %s%n", queries.size(), baseUrl);
+
+			LoadTestHarness harness = new LoadTestHarness(baseUrl);
+			double rate = Double.parseDouble(options.get("rate"));
+			long warmup = Long.parseLong(options.get("warmup"));
+			if (warmup > 0) {
+				harness.run(queries, rate, warmup, concurrency);
+				harness.reset();
+			}
+			double seconds = harness.run(queries, rate, Long.parseLong(options.get("duration")), concurrency);
+			Map<String, Object> report = harness.report(options, seconds);
+			harness.print(seconds);
+			if (options.get("out") != null) {
+				Path out = Paths.get(options.get("out"));
+				new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(out.toFile(), report);
+				System.out.println("Report written to " + out);
+			}
+		} finally {
+			if (context != null) {
+				context.close();
+			}
+		}
+	}
+
+	private static Map<String, String> options(String[] args) {
+		Map<String, String> retVal = new HashMap<String, String>(DEFAULTS);
+		for (int i = 0; i < args.length; i++) {
+			String name = args[i].startsWith("--") ? args[i].substring(2) : null;
+			if (name == null || !DEFAULTS.containsKey(name) || i + 1 == args.length) {
+				throw new IllegalArgumentException("Unknown option or missing value: " + args[i]
+						+ ", options are --" + String.join(" --", DEFAULTS.keySet()));
+			}
+			retVal.put(name, args[++i]);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Starts the application over network on a free port.
+	 */
+	static ConfigurableApplicationContext start(final BenchmarkNetwork network) throws IOException {
+		Path dataDir = Files.createTempDirectory("pgrserver-load");
+		return new SpringApplicationBuilder(PgrServerApplication.class, LoadTestStandIns.class)
+				.initializers(c -> c.getBeanFactory().registerSingleton("benchmarkNetwork", network))
+				.run("--server.port=0",
+						"--spring.main.allow-bean-definition-overriding=true",
+						"--spring.autoconfigure.exclude="
+								+ "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration,"
+								+ "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration,"
+								+ "org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration",
+						"--management.health.db.enabled=false",
+						"--pgrserver.metrics=" + BenchmarkNetwork.METRICS,
+						"--pgrserver.snapshot.enabled=false",
+						"--pgrserver.snap.enabled=" + network.hasCoordinates(),
+						"--pgrserver.data.dir=" + dataDir);
+	}
+
+	/**
+	 * Waits up to ten minutes for what is built in the background after a
+	 * load, so that the measurement does not include its fallbacks.
+	 */
+	private static void awaitPreparation(ConfigurableApplicationContext context, MainGraph mainGraph)
+			throws InterruptedException {
+		Environment env = context.getEnvironment();
+		boolean chEnabled = env.getProperty("pgrserver.ch.enabled", Boolean.class, true);
+		boolean altEnabled = env.getProperty("pgrserver.alt.enabled", Boolean.class, true);
+		long deadline = System.currentTimeMillis() + 600_000;
+		while (System.currentTimeMillis() < deadline) {
+			GraphGeneration gen = mainGraph.generation();
+			if (gen != null && (!chEnabled || gen.getHierarchy() != null)
+					&& (!altEnabled || gen.getLandmarks() != null)) {
+				return;
+			}
+			Thread.sleep(200);
+		}
+		System.out.println("Hierarchy or landmarks not ready, starting anyway");
+	}
+
+	/**
+	 * Sends the queries in turn, repeated until duration is over.
+	 *
+	 * @param rate requests per second, 0 for the pace of the log
+	 * @return seconds the queries took to send and answer
+	 */
+	double run(List<LoadTestQuery> queries, double rate, long duration, int concurrency)
+			throws InterruptedException {
+		ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+		long span = queries.get(queries.size() - 1).offset + 1;
+		long begin = System.nanoTime();
+		long end = begin + TimeUnit.SECONDS.toNanos(duration);
+		for (long i = 0;; i++) {
+			LoadTestQuery query = queries.get((int) (i % queries.size()));
+			long due;
+			if (rate > 0) {
+				due = begin + (long) (i * 1e9 / rate);
+			} else {
+				due = begin + TimeUnit.MILLISECONDS.toNanos(i / queries.size() * span + query.offset);
+			}
+			if (due >= end) {
+				break;
+			}
+			long wait;
+			while ((wait = due - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			final long scheduled = due;
+			workers.execute(() -> send(query, scheduled));
+		}
+		workers.shutdown();
+		workers.awaitTermination(1, TimeUnit.HOURS);
+		return (System.nanoTime() - begin) / 1e9;
+	}
+
+	private void send(LoadTestQuery query, long scheduled) {
+		maxLag.accumulateAndGet(System.nanoTime() - scheduled, Math::max);
+		int status = -1;
+		long length = 0;
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + query.uri()).openConnection();
+			connection.setRequestMethod(query.method);
+			if (query.body != null) {
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type", "application/json");
+				try (OutputStream out = connection.getOutputStream()) {
+					out.write(query.body.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			status = connection.getResponseCode();
+			InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			if (in != null) {
+				length = drain(in);
+			}
+		} catch (IOException e) {
+			status = -1;
+		}
+		stats(query.path).add(System.nanoTime() - scheduled, status, length);
+	}
+
+	private synchronized void reset() {
+		stats.clear();
+		maxLag.set(0);
+	}
+
+	private synchronized EndpointStats stats(String path) {
+		return stats.computeIfAbsent(path, p -> new EndpointStats());
+	}
+
+	private static long drain(InputStream in) throws IOException {
+		try (InputStream stream = in) {
+			byte[] buffer = new byte[8192];
+			long retVal = 0;
+			int n;
+			while ((n = stream.read(buffer)) > 0) {
+				retVal += n;
+			}
+			return retVal;
+		}
+	}
+
+	/**
+	 * @return the options and the summary of every endpoint and of all
+	 *         requests
+	 */
+	synchronized Map<String, Object> report(Map<String, String> options, double seconds) {
+		Map<String, Object> endpoints = new LinkedHashMap<String, Object>();
+		for (Map.Entry<String, EndpointStats> entry : stats.entrySet()) {
+			endpoints.put(entry.getKey(), entry.getValue().summary(seconds));
+		}
+		Map<String, Object> retVal = new LinkedHashMap<String, Object>();
+		retVal.put("options", new TreeMap<String, String>(options));
+		retVal.put("seconds", seconds);
+		retVal.put("maxSendLagMillis", maxLag.get() / 1e6);
+		retVal.put("all", all().summary(seconds));
+		retVal.put("endpoints", endpoints);
+		return retVal;
+	}
+
+	synchronized void print(double seconds) {
+		System.out.printf("%-32s %8s %7s %8s %9s %9s %9s %9s%n", "endpoint", "requests", "errors", "req/s", "p50 ms",
+				"p95 ms", "p99 ms", "max ms");
+		for (Map.Entry<String, EndpointStats> entry : stats.entrySet()) {
+			print(entry.getKey(), entry.getValue().summary(seconds));
+		}
+		print("all", all().summary(seconds));
+		System.out.printf("%.1f s, largest delay in sending a request: %.1f ms%n", seconds, maxLag.get() / 1e6);
+	}
+
+	private EndpointStats all() {
+		EndpointStats retVal = new EndpointStats();
+		for (EndpointStats s : stats.values()) {
+			retVal.addAll(s);
+		}
+		return retVal;
+	}
+
+	private static void print(String name, Map<String, Object> summary) {
+		System.out.printf("%-32s %8d %6.1f%% %8.1f %9.2f %9.2f %9.2f %9.2f%n", name, summary.get("requests"),
+				100 * (Double) summary.get("errorRate"), summary.get("throughput"), summary.get("p50Millis"),
+				summary.get("p95Millis"), summary.get("p99Millis"), summary.get("maxMillis"));
+	}
+}
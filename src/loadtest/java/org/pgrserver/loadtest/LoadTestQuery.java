@@ -0,0 +1,166 @@
+package org.pgrserver.loadtest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.pgrserver.graph.BenchmarkNetwork;
+import org.pgrserver.graph.MainGraph;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A request of a load test: read from a query log recorded by
+ * QueryLogFilter, or generated over a BenchmarkNetwork.
+ */
+final class LoadTestQuery {
+
+	/** Relative weights of the generated endpoints */
+	private static final Object[][] MIX = { { "/api/node/dijkstra", 10 }, { "/api/node/astar", 10 },
+			{ "/api/node/chbDijkstra", 10 }, { "/api/node/alt", 5 }, { "/api/node/bfs", 2 },
+			{ "/api/node/bellmanford", 1 }, { "/api/node/johnson", 1 }, { "/api/node/floydWarshall", 1 },
+			{ "/api/latlng/dijkstra", 10 }, { "/api/latlng/astar", 5 }, { "/api/latlng/chbDijkstra", 10 },
+			{ "/api/latlng/alt", 3 }, { "/api/latlng/bfs", 1 }, { "/api/latlng/bellmanford", 1 },
+			{ "/api/latlng/johnson", 1 }, { "/api/latlng/floydWarshall", 1 }, { "/api/node/drivingDistance", 3 },
+			{ "/api/latlng/drivingDistance", 3 }, { "/api/node/isochrone", 2 }, { "/api/latlng/isochrone", 2 },
+			{ "/api/node/spt", 2 }, { "/api/latlng/spt", 1 }, { "/api/node/allDirectedPaths", 1 },
+			{ "/api/latlng/allDirectedPaths", 1 }, { "/api/node/kShortestPaths", 2 },
+			{ "/api/latlng/kShortestPaths", 1 }, { "/api/node/alternatives", 2 }, { "/api/latlng/alternatives", 1 },
+			{ "/api/latlng/tsp", 1 }, { "/api/latlng/matrix", 1 }, { "/api/batch/route", 1 },
+			{ "/api/chstatus", 1 }, { "/api/cachestatus", 1 } };
+
+	final String method;
+	final String path;
+	final String query;
+	final String body;
+	/** Milliseconds since the first query of the log, 0 when generated */
+	final long offset;
+
+	LoadTestQuery(String method, String path, String query, String body, long offset) {
+		this.method = method;
+		this.path = path;
+		this.query = query;
+		this.body = body;
+		this.offset = offset;
+	}
+
+	/**
+	 * @return path and query string
+	 */
+	String uri() {
+		return query == null ? path : path + "?" + query;
+	}
+
+	/**
+	 * Reads a query log in the order the requests started, skipping those
+	 * whose body was too long to be recorded.
+	 */
+	static List<LoadTestQuery> read(Path file) throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		List<LoadTestQuery> retVal = new ArrayList<LoadTestQuery>();
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				JsonNode node = mapper.readTree(line);
+				if (node.path("truncated").asBoolean()) {
+					continue;
+				}
+				retVal.add(new LoadTestQuery(node.path("method").asText("GET"), node.path("path").asText(),
+						node.hasNonNull("query") ? node.get("query").asText() : null,
+						node.hasNonNull("body") ? node.get("body").asText() : null, node.path("time").asLong()));
+			}
+		}
+		retVal.sort(Comparator.comparingLong(q -> q.offset));
+		List<LoadTestQuery> sorted = new ArrayList<LoadTestQuery>();
+		for (LoadTestQuery q : retVal) {
+			sorted.add(new LoadTestQuery(q.method, q.path, q.query, q.body, q.offset - retVal.get(0).offset));
+		}
+		return sorted;
+	}
+
+	/**
+	 * Generates count requests to every endpoint of GraphController but
+	 * the reload and the weight update, in the proportions of MIX, between
+	 * vertices that have a route between them and random points.
+	 */
+	static List<LoadTestQuery> generate(BenchmarkNetwork network, MainGraph mainGraph, int count, long seed) {
+		int[] pairs = network.routablePairs(mainGraph, 1024, seed);
+		List<List<Double>> points = network.randomPoints(1024, seed);
+		int total = 0;
+		for (Object[] endpoint : MIX) {
+			total += (Integer) endpoint[1];
+		}
+		Random random = new Random(seed);
+		List<LoadTestQuery> retVal = new ArrayList<LoadTestQuery>();
+		for (int i = 0; i < count; i++) {
+			int pick = random.nextInt(total);
+			int e = 0;
+			while ((pick -= (Integer) MIX[e][1]) >= 0) {
+				e++;
+			}
+			String path = (String) MIX[e][0];
+			int p = 2 * random.nextInt(pairs.length / 2);
+			String nodes = "source=" + pairs[p] + "&target=" + pairs[p + 1];
+			List<Double> a = points.get(random.nextInt(points.size()));
+			List<Double> b = points.get(random.nextInt(points.size()));
+			String xy = "source_x=" + a.get(0) + "&source_y=" + a.get(1) + "&target_x=" + b.get(0) + "&target_y="
+					+ b.get(1);
+			String sourceXy = "source_x=" + a.get(0) + "&source_y=" + a.get(1);
+			String query;
+			String body = null;
+			if (path.endsWith("/drivingDistance")) {
+				query = (path.contains("/node/") ? "source=" + pairs[p] : sourceXy) + "&radius=1500";
+			} else if (path.endsWith("/isochrone")) {
+				query = (path.contains("/node/") ? "source=" + pairs[p] : sourceXy) + "&thresholds=500,1000,1500";
+			} else if (path.endsWith("/spt")) {
+				query = (path.contains("/node/") ? "source=" + pairs[p] : sourceXy) + "&radius=1500";
+			} else if (path.endsWith("/allDirectedPaths")) {
+				query = (path.contains("/node/") ? nodes : xy) + "&maxEdges=12";
+			} else if (path.endsWith("/kShortestPaths") || path.endsWith("/alternatives")) {
+				query = (path.contains("/node/") ? nodes : xy) + "&k=3";
+			} else if (path.endsWith("/tsp")) {
+				query = null;
+				body = pointsJson(points, random, 10);
+			} else if (path.endsWith("/matrix")) {
+				query = null;
+				body = "{\"sources\":" + pointsJson(points, random, 10) + ",\"targets\":"
+						+ pointsJson(points, random, 10) + "}";
+			} else if (path.endsWith("/batch/route")) {
+				query = null;
+				StringBuilder sb = new StringBuilder("{\"algorithm\":\"chbDijkstra\",\"pairs\":[");
+				for (int j = 0; j < 20; j++) {
+					int q = 2 * random.nextInt(pairs.length / 2);
+					sb.append(j > 0 ? "," : "").append('[').append(pairs[q]).append(',').append(pairs[q + 1])
+							.append(']');
+				}
+				body = sb.append("]}").toString();
+			} else if (path.endsWith("status")) {
+				query = null;
+			} else {
+				query = path.contains("/node/") ? nodes : xy;
+			}
+			retVal.add(new LoadTestQuery(body == null ? "GET" : "POST", path, query, body, 0));
+		}
+		return retVal;
+	}
+
+	private static String pointsJson(List<List<Double>> points, Random random, int count) {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < count; i++) {
+			List<Double> point = points.get(random.nextInt(points.size()));
+			sb.append(i > 0 ? "," : "").append('[').append(point.get(0)).append(',').append(point.get(1))
+					.append(']');
+		}
+		return sb.append(']').toString();
+	}
+}
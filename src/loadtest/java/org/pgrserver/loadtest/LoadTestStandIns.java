@@ -0,0 +1,74 @@
+package org.pgrserver.loadtest;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+
+import org.pgrserver.graph.BenchmarkNetwork;
+import org.pgrserver.repository.AuthRepository;
+import org.pgrserver.repository.CopyRepository;
+import org.pgrserver.repository.CustomRepository;
+import org.pgrserver.repository.GraphRepository;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Repositories of the application without a database, for
+ * LoadTestHarness: the graph and the geometries come from the
+ * BenchmarkNetwork registered in the context. The driving distance and
+ * isochrone polygons, which PostGIS computes, are answered with an empty
+ * Feature, so their database time is not part of a load test. Nothing
+ * is authorized, so the graph cannot be reloaded or updated.
+ *
+ * Given to SpringApplication as a source rather than annotated, so that
+ * component scans do not pick it up. The beans replace the scanned
+ * repositories of the same name.
+ */
+public class LoadTestStandIns {
+
+	/**
+	 * For the autowired fields of the repositories, never used
+	 */
+	@Bean
+	public DataSource dataSource() {
+		return mock(DataSource.class);
+	}
+
+	@Bean
+	public EntityManager entityManager() {
+		return mock(EntityManager.class);
+	}
+
+	@Bean
+	public GraphRepository graphRepository(BenchmarkNetwork network) {
+		return network.graphRepository();
+	}
+
+	@Bean
+	public CopyRepository copyRepository(BenchmarkNetwork network) {
+		return network.copyRepository();
+	}
+
+	@Bean
+	public AuthRepository authRepository() {
+		return mock(AuthRepository.class);
+	}
+
+	@Bean
+	public CustomRepository customRepository() {
+		return new CustomRepository() {
+			@Override
+			public Object createJsonDriveDistPoly(Set<Integer> list) {
+				return "{\"type\":\"Feature\",\"properties\":{\"nodes\":" + list.size() + "},\"geometry\":null}";
+			}
+
+			@Override
+			public Object createJsonIsochrone(Map<Integer, Integer> bands, double[] thresholds) {
+				return "{\"type\":\"FeatureCollection\",\"features\":[]}";
+			}
+		};
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * パッケージ名：org.pgrserver.bean
+ * ファイル名  ：GenerationInterceptor.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.bean;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.pgrserver.graph.GraphGeneration;
+import org.pgrserver.graph.MainGraph;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * 説明：
+ * Pins the current graph generation to the request thread for the whole
+ * request and reports it in the X-Graph-Generation response header. The
+ * metric request parameter selects the generation of another metric than
+ * the default one; an unknown metric is answered with 400.
+ * Responses streamed from another thread are unpinned when the request
+ * thread is released; they keep their generation themselves. The header
+ * of an asynchronous response is the one of its first dispatch, which
+ * RoutingExecutors passes on to its work.
+ *
+ * The request mapping is set as the endpoint tag of the route metrics
+ * for the same time.
+ */
+@Component
+public class GenerationInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String HEADER = "X-Graph-Generation";
+
+    public static final String METRIC_PARAMETER = "metric";
+
+    @Autowired
+    MainGraph mainGraph;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request,
+            HttpServletResponse response, Object handler) throws IOException {
+        GraphGeneration gen;
+        try {
+            gen = mainGraph.pinGeneration(
+                    request.getParameter(METRIC_PARAMETER));
+        }
+        catch(IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    e.getMessage());
+            return false;
+        }
+        if( gen != null && !response.containsHeader(HEADER) ) {
+            response.setHeader(HEADER, gen.getTag());
+        }
+        Object pattern = request.getAttribute(
+                HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        mainGraph.getRouteMetrics().setEndpoint(pattern == null ? 
+                request.getRequestURI() : pattern.toString());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request,
+            HttpServletResponse response, Object handler, Exception ex) {
+        mainGraph.getRouteMetrics().setEndpoint(null);
+        mainGraph.unpinGeneration();
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request,
+            HttpServletResponse response, Object handler) {
+        mainGraph.getRouteMetrics().setEndpoint(null);
+        mainGraph.unpinGeneration();
+    }
+}
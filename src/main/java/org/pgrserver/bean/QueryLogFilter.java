@@ -0,0 +1,242 @@
+/**
+ * パッケージ名：org.pgrserver.bean
+ * ファイル名  ：QueryLogFilter.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.bean;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 説明：
+ * Records the requests to /api as a query log that LoadTestHarness can
+ * replay, one JSON object per line:
+ *
+ * <pre>
+ * {"time":1760000000000,"method":"GET","path":"/api/node/dijkstra",
+ *  "query":"source=1&amp;target=2","status":200,"millis":1.234}
+ * </pre>
+ *
+ * with the request body as "body" for the POST services, or "truncated"
+ * when it was longer than pgrserver.querylog.max-body-kb. The time is
+ * when the request started and millis how long it took, until the end of
+ * the response for the services answered asynchronously.
+ * Graph reloads and weight updates are not recorded, since they carry
+ * the authcode and change the graph.
+ *
+ * Enabled by pgrserver.querylog.file. A share of the requests given by
+ * pgrserver.querylog.sample is recorded, so that a busy server can be
+ * sampled; lines are buffered and flushed every second.
+ */
+@Component
+@ConditionalOnProperty("pgrserver.querylog.file")
+public class QueryLogFilter extends OncePerRequestFilter {
+
+    private final Logger log = LoggerFactory.getLogger(
+            QueryLogFilter.class);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private Writer writer;
+
+    private ScheduledExecutorService flusher;
+
+    private boolean failed;
+
+    @Value("${pgrserver.querylog.file}")
+    String file;
+
+    @Value("${pgrserver.querylog.sample:1}")
+    double sample;
+
+    @Value("${pgrserver.querylog.max-body-kb:256}")
+    int maxBodyKb;
+
+    /**
+     * Opens the log. Called by Spring and again by the servlet container,
+     * as is destroy.
+     */
+    @Override
+    protected synchronized void initFilterBean() {
+        if( writer != null ) {
+            return;
+        }
+        try {
+            writer = Files.newBufferedWriter(Paths.get(file),
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        }
+        catch(IOException e) {
+            throw new IllegalStateException("Query log "+file
+                    +" cannot be opened", e);
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "querylog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, 1, 1, TimeUnit.SECONDS);
+        log.info("Recording the query log to "+file
+                +", sample: "+sample);
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if( flusher == null || flusher.isShutdown() ) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            synchronized( writer ) {
+                writer.close();
+            }
+        }
+        catch(IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = path(request);
+        return !path.startsWith("/api/")
+                || path.equals("/api/graphreload")
+                || path.equals("/api/weightupdate");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+            HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if( sample < 1 && ThreadLocalRandom.current().nextDouble() >= sample ) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        final ContentCachingRequestWrapper wrapped =
+                new ContentCachingRequestWrapper(request, maxBodyKb << 10);
+        final long time = System.currentTimeMillis();
+        final long start = System.nanoTime();
+        int status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        try {
+            filterChain.doFilter(wrapped, response);
+            status = response.getStatus();
+        }
+        finally {
+            if( wrapped.isAsyncStarted() ) {
+                wrapped.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(wrapped, time, response.getStatus(), 
+                                System.nanoTime() - start);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            }
+            else {
+                record(wrapped, time, status, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * @param time start of the request, epoch milliseconds
+     */
+    private void record(ContentCachingRequestWrapper request, long time,
+            int status, long nanos) {
+        Map<String, Object> line = new LinkedHashMap<String, Object>();
+        line.put("time", time);
+        line.put("method", request.getMethod());
+        line.put("path", path(request));
+        if( request.getQueryString() != null ) {
+            line.put("query", request.getQueryString());
+        }
+        line.put("status", status);
+        line.put("millis", Math.round(nanos / 1e3) / 1e3);
+        byte[] body = request.getContentAsByteArray();
+        if( request.getContentLength() > body.length ) {
+            line.put("truncated", true);
+        }
+        else if( body.length > 0 ) {
+            line.put("body", new String(body, StandardCharsets.UTF_8));
+        }
+        try {
+            String json = mapper.writeValueAsString(line);
+            synchronized( writer ) {
+                writer.write(json);
+                writer.write('\n');
+            }
+        }
+        catch(IOException e) {
+            fail(e);
+        }
+    }
+
+    private void flush() {
+        try {
+            synchronized( writer ) {
+                writer.flush();
+            }
+        }
+        catch(IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Logs the first failure to write the query log.
+     */
+    private void fail(IOException e) {
+        if( !failed ) {
+            failed = true;
+            log.warn("Query log not written to "+file+": "+e);
+        }
+    }
+
+    /**
+     * @return the request URI without the context path
+     */
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(
+                request.getContextPath().length());
+    }
+}
@@ -0,0 +1,395 @@
+/**
+ * パッケージ名：org.pgrserver.bean
+ * ファイル名  ：RoutingExecutors.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.bean;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.pgrserver.graph.GraphGeneration;
+import org.pgrserver.graph.MainGraph;
+import org.pgrserver.graph.RouteMetrics;
+import org.pgrserver.graph.SearchBudget;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 説明：
+ * Runs the work of the routing services off the request threads, on one
+ * pool per cost class, so that a burst of expensive searches cannot take
+ * every servlet thread and leave the cheap ones waiting behind them.
+ *
+ * Each class has its own number of threads and a bounded queue. A request
+ * that finds the queue of its class full is answered with 503 at once
+ * instead of waiting. Every request has a deadline, counted from when it
+ * was accepted: past it the response is a 503, a request still queued is
+ * dropped when its turn comes and a running one is interrupted.
+ *
+ * The work runs with the generation and the metrics endpoint of the
+ * request, as it would on the request thread, and with a search budget
+ * ending at the deadline, so that a search past it stops at its next
+ * check instead of running on after the response.
+ */
+@Component
+public class RoutingExecutors {
+
+    /**
+     * Cost classes of the routing services
+     */
+    public enum CostClass {
+        /** Hierarchy, landmark and all pairs table lookups */
+        FAST,
+        /** One-to-one searches over the graph */
+        STANDARD,
+        /** Searches that may settle the whole graph, or many searches */
+        HEAVY
+    }
+
+    /**
+     * Pool, limits and counters of a cost class
+     */
+    private static final class Lane {
+        final CostClass costClass;
+        final ThreadPoolExecutor pool;
+        final long deadlineMillis;
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong expired = new AtomicLong();
+
+        Lane(CostClass costClass, int threads, int queue,
+                long deadlineMillis) {
+            this.costClass = costClass;
+            this.deadlineMillis = deadlineMillis;
+            String name = "route-"+costClass.name().toLowerCase()+"-";
+            AtomicInteger counter = new AtomicInteger();
+            BlockingQueue<Runnable> workQueue = queue > 0 ?
+                    new ArrayBlockingQueue<Runnable>(queue) :
+                    new SynchronousQueue<Runnable>();
+            pool = new ThreadPoolExecutor(threads, threads, 0L,
+                    TimeUnit.MILLISECONDS, workQueue, r -> {
+                        Thread t = new Thread(r,
+                                name+counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }, new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    private final Map<CostClass, Lane> lanes =
+            new EnumMap<CostClass, Lane>(CostClass.class);
+
+    @Autowired
+    MainGraph mainGraph;
+
+    @Autowired(required=false)
+    MeterRegistry meterRegistry;
+
+    @Value("${pgrserver.executor.fast.threads:0}")
+    int fastThreads;
+
+    @Value("${pgrserver.executor.fast.queue:1000}")
+    int fastQueue;
+
+    @Value("${pgrserver.executor.fast.deadline-ms:5000}")
+    long fastDeadlineMs;
+
+    @Value("${pgrserver.executor.standard.threads:0}")
+    int standardThreads;
+
+    @Value("${pgrserver.executor.standard.queue:200}")
+    int standardQueue;
+
+    @Value("${pgrserver.executor.standard.deadline-ms:30000}")
+    long standardDeadlineMs;
+
+    @Value("${pgrserver.executor.heavy.threads:2}")
+    int heavyThreads;
+
+    @Value("${pgrserver.executor.heavy.queue:16}")
+    int heavyQueue;
+
+    @Value("${pgrserver.executor.heavy.deadline-ms:60000}")
+    long heavyDeadlineMs;
+
+    @PostConstruct
+    void createLanes() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        lanes.put(CostClass.FAST, new Lane(CostClass.FAST,
+                fastThreads > 0 ? fastThreads : cores, fastQueue,
+                fastDeadlineMs));
+        lanes.put(CostClass.STANDARD, new Lane(CostClass.STANDARD,
+                standardThreads > 0 ? standardThreads : cores,
+                standardQueue, standardDeadlineMs));
+        lanes.put(CostClass.HEAVY, new Lane(CostClass.HEAVY,
+                heavyThreads > 0 ? heavyThreads : cores, heavyQueue,
+                heavyDeadlineMs));
+        if( meterRegistry != null ) {
+            for(Lane lane : lanes.values()) {
+                bindMeters(lane);
+            }
+        }
+    }
+
+    private void bindMeters(Lane lane) {
+        String tag = lane.costClass.name().toLowerCase();
+        Gauge.builder("pgrserver.executor.active", lane.pool,
+                ThreadPoolExecutor::getActiveCount)
+            .tag("class", tag)
+            .description("Routing requests being served")
+            .register(meterRegistry);
+        Gauge.builder("pgrserver.executor.queued", lane.pool,
+                p -> p.getQueue().size())
+            .tag("class", tag)
+            .description("Routing requests waiting for a thread")
+            .register(meterRegistry);
+        FunctionCounter.builder("pgrserver.executor.rejected", lane.rejected,
+                AtomicLong::get)
+            .tag("class", tag)
+            .description("Routing requests shed with 503, queue full")
+            .register(meterRegistry);
+        FunctionCounter.builder("pgrserver.executor.expired", lane.expired,
+                AtomicLong::get)
+            .tag("class", tag)
+            .description("Routing requests past their deadline")
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        for(Lane lane : lanes.values()) {
+            lane.pool.shutdownNow();
+        }
+        for(Lane lane : lanes.values()) {
+            lane.pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Runs work on the pool of costClass.
+     *
+     * @return result of work, or its exception; a 503 when the deadline
+     *         of the class passes first, a 422 when a search settled more
+     *         vertices than its budget allows
+     * @throws ResponseStatusException 503 when the queue of the class is
+     *         full
+     */
+    public <T> DeferredResult<T> submit(CostClass costClass,
+            final Supplier<T> work) {
+        final Lane lane = lanes.get(costClass);
+        final DeferredResult<T> retVal =
+                new DeferredResult<T>(lane.deadlineMillis);
+        final long deadline = deadline(lane.deadlineMillis);
+        final SearchBudget budget = mainGraph.createBudget(deadline);
+        final Future<?> future = execute(lane, deadline, budget, () -> {
+            try {
+                retVal.setResult(work.get());
+            }
+            catch(SearchBudget.ExceededException e) {
+                retVal.setErrorResult(budgetExceeded(e));
+            }
+            catch(RuntimeException e) {
+                retVal.setErrorResult(e);
+            }
+        });
+        retVal.onTimeout(() -> {
+            lane.expired.incrementAndGet();
+            budget.cancel();
+            future.cancel(true);
+            retVal.setErrorResult(deadlineExceeded(lane));
+        });
+        retVal.onError(e -> {
+            budget.cancel();
+            future.cancel(true);
+        });
+        return retVal;
+    }
+
+    /**
+     * Writes a streamed response on the pool of costClass, see stream.
+     */
+    public ResponseBodyEmitter stream(CostClass costClass,
+            StreamingResponseBody body) {
+        return stream(costClass, lanes.get(costClass).deadlineMillis, body);
+    }
+
+    /**
+     * Writes a streamed response on the pool of costClass. The response
+     * ends at the deadline, whatever has been written by then, and body
+     * is interrupted.
+     *
+     * @param deadlineMillis deadline of this response instead of the one
+     *        of its class
+     * @throws ResponseStatusException 503 when the queue of the class is
+     *         full
+     */
+    public ResponseBodyEmitter stream(CostClass costClass,
+            long deadlineMillis, final StreamingResponseBody body) {
+        final Lane lane = lanes.get(costClass);
+        final ResponseBodyEmitter retVal =
+                new ResponseBodyEmitter(deadlineMillis);
+        final long deadline = deadline(deadlineMillis);
+        final SearchBudget budget = mainGraph.createBudget(deadline);
+        final Future<?> future = execute(lane, deadline, budget, () -> {
+            try( OutputStream out = new EmitterOutputStream(retVal) ) {
+                body.writeTo(out);
+            }
+            catch(IOException | RuntimeException e) {
+                retVal.completeWithError(e);
+                return;
+            }
+            retVal.complete();
+        });
+        retVal.onTimeout(() -> {
+            lane.expired.incrementAndGet();
+            budget.cancel();
+            future.cancel(true);
+            retVal.complete();
+        });
+        retVal.onError(e -> {
+            budget.cancel();
+            future.cancel(true);
+        });
+        return retVal;
+    }
+
+    /**
+     * @return System.nanoTime deadlineMillis from now
+     */
+    private static long deadline(long deadlineMillis) {
+        return System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    }
+
+    /**
+     * Queues work with the generation and the metrics endpoint of the
+     * calling request thread, and budget as its search budget. The work
+     * is dropped if it starts after deadline.
+     */
+    private Future<?> execute(final Lane lane, final long deadline,
+            final SearchBudget budget, final Runnable work) {
+        final GraphGeneration gen = mainGraph.generation();
+        final RouteMetrics metrics = mainGraph.getRouteMetrics();
+        final String endpoint = metrics.endpoint();
+        try {
+            return lane.pool.submit(() -> {
+                if( System.nanoTime() - deadline >= 0 ) {
+                    return;
+                }
+                GraphGeneration previous = mainGraph.pinTo(gen);
+                String previousEndpoint = metrics.setEndpoint(endpoint);
+                SearchBudget previousBudget = mainGraph.budgetTo(budget);
+                try {
+                    work.run();
+                }
+                finally {
+                    mainGraph.restoreBudget(previousBudget);
+                    metrics.setEndpoint(previousEndpoint);
+                    mainGraph.restorePin(previous);
+                }
+            });
+        }
+        catch(RejectedExecutionException e) {
+            lane.rejected.incrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "too many "+lane.costClass.name().toLowerCase()
+                    +" routing requests, try again later");
+        }
+    }
+
+    private static ResponseStatusException deadlineExceeded(Lane lane) {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                "deadline of "+lane.deadlineMillis+" ms exceeded");
+    }
+
+    /**
+     * 422 for a search that settled too many vertices, as the request
+     * asks for more than is served; 503 for one stopped at the deadline
+     * or cancelled.
+     */
+    private static ResponseStatusException budgetExceeded(
+            SearchBudget.ExceededException e) {
+        if( SearchBudget.SETTLED.equals(e.getReason()) ) {
+            return new ResponseStatusException(
+                    HttpStatus.UNPROCESSABLE_ENTITY, e.getMessage());
+        }
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                e.getMessage());
+    }
+
+    /**
+     * Sends what has been written to an emitter at each flush.
+     */
+    private static class EmitterOutputStream extends OutputStream {
+        private final ResponseBodyEmitter emitter;
+        private byte[] buffer = new byte[8192];
+        private int count;
+
+        EmitterOutputStream(ResponseBodyEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void write(int b) {
+            ensure(1);
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        private void ensure(int len) {
+            if( count + len > buffer.length ) {
+                byte[] grown = new byte[Math.max(2 * buffer.length,
+                        count + len)];
+                System.arraycopy(buffer, 0, grown, 0, count);
+                buffer = grown;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if( count > 0 ) {
+                byte[] bytes = new byte[count];
+                System.arraycopy(buffer, 0, bytes, 0, count);
+                count = 0;
+                emitter.send(bytes);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * パッケージ名：org.pgrserver.bean
+ * ファイル名  ：WebMvcConfig.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.bean;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * 説明：
+ * Adds the generation header of GenerationInterceptor to the responses of
+ * the /api services.
+ */
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    @Autowired
+    GenerationInterceptor generationInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(generationInterceptor)
+            .addPathPatterns("/api/**");
+    }
+}
@@ -7,28 +7,56 @@
  */
 package org.pgrserver.controller;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.IntSupplier;
 
+import javax.servlet.http.HttpServletResponse;
+
+import org.pgrserver.bean.GenerationInterceptor;
+import org.pgrserver.bean.RoutingExecutors;
+import org.pgrserver.bean.RoutingExecutors.CostClass;
 import org.pgrserver.entity.PgrServer;
 import org.pgrserver.entity.PgrsAuth;
+import org.pgrserver.graph.BatchRequest;
+import org.pgrserver.graph.CacheStatus;
+import org.pgrserver.graph.DistanceMatrix;
+import org.pgrserver.graph.GraphGeneration;
+import org.pgrserver.graph.HierarchyStatus;
 import org.pgrserver.graph.MainGraph;
+import org.pgrserver.graph.MatrixRequest;
+import org.pgrserver.graph.RouteBatch;
+import org.pgrserver.graph.ShortestPathTree;
 import org.pgrserver.repository.AuthRepository;
 import org.pgrserver.repository.CustomRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import io.swagger.annotations.ApiParam;
 
 /**
  * 説明：
- *
+ * The routing services run on the pools of RoutingExecutors by cost
+ * class and answer asynchronously; the status, reload and update
+ * services run on the request thread.
  */
 @RestController
 @RequestMapping("/api")
@@ -50,6 +78,14 @@ public class GraphController {
     @Autowired
     AuthRepository authRepository;
 
+    @Autowired
+    RoutingExecutors executors;
+
+    @Value("${pgrserver.batch.deadline-ms:600000}")
+    long batchDeadlineMs;
+
+    private static final String NDJSON = "application/x-ndjson";
+
     private final String noRouteMsg = "{\"type\" : \"Feature\", "
             + "\"properties\" : {\"feat_length\" : 0}, "
             + "\"geometry\" : {}}";
@@ -65,26 +101,230 @@ public class GraphController {
     @PostMapping(value="/latlng/tsp", 
             consumes = "application/json",
             produces = MediaType.APPLICATION_JSON_VALUE )
-    public String getTsp(
+    public DeferredResult<String> getTsp(
             @RequestBody 
             @ApiParam(required=true,value="Input Points in JSON Format "
                     + "ex: [ [x1 ,y1], [x2, y2], [x3, y3] ]")
-            List<List<Double>> inPoints ) {       
-        
-        if( inPoints.size() < 2 ) {
-            return this.noRouteMsg;
+            List<List<Double>> inPoints ) {
+        return executors.submit(CostClass.HEAVY, () -> {
+            if( inPoints.size() < 2 ) {
+                return this.noRouteMsg;
+            }
+
+            List<List<Integer>> retVal = mainGraph.tsp( inPoints ) ;
+
+            if( retVal == null || retVal.isEmpty() ) {
+                return this.noRouteMsg;
+            }
+
+            return mainGraph.createJsonCollectionResponse( retVal );
+        });
+    }
+            
+    /**
+     * 
+     * Cost matrix between points, without geometry
+     * 
+     * @param request sources and optional targets
+     * @return JSON matrix
+     */
+    @PostMapping(value="/latlng/matrix", 
+            consumes = "application/json",
+            produces = MediaType.APPLICATION_JSON_VALUE )
+    public DeferredResult<String> getMatrix(
+            @RequestBody 
+            @ApiParam(required=true,value="Points in JSON Format "
+                    + "ex: {\"sources\": [ [x1 ,y1], [x2, y2] ], "
+                    + "\"targets\": [ [x3, y3] ]} (targets optional)")
+            MatrixRequest request ) {
+        return executors.submit(CostClass.HEAVY, () ->
+                distanceMatrix(request).toJson());
+    }
+
+    /**
+     * 
+     * Cost matrix between points as little endian binary: int32 rows, 
+     * int32 columns, then float32 costs row by row (Infinity = no route)
+     * 
+     * @param request sources and optional targets
+     * @return binary matrix
+     */
+    @PostMapping(value="/latlng/matrix", 
+            params = "format=float32",
+            consumes = "application/json",
+            produces = MediaType.APPLICATION_OCTET_STREAM_VALUE )
+    public DeferredResult<byte[]> getMatrixFloat32(
+            @RequestBody 
+            @ApiParam(required=true,value="Points in JSON Format "
+                    + "ex: {\"sources\": [ [x1 ,y1], [x2, y2] ], "
+                    + "\"targets\": [ [x3, y3] ]} (targets optional)")
+            MatrixRequest request ) {
+        return executors.submit(CostClass.HEAVY, () ->
+                distanceMatrix(request).toFloat32());
+    }
+
+    private DistanceMatrix distanceMatrix(MatrixRequest request) {
+        if( request == null || request.getSources() == null 
+                || request.getSources().isEmpty() ) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+                    "sources are required");
         }
-        
-        List<List<Integer>> retVal = mainGraph.tsp( inPoints ) ; 
-        
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
+        for(List<List<Double>> points : Arrays.asList(
+                request.getSources(), request.getTargets())) {
+            if( points == null ) {
+                continue;
+            }
+            for(List<Double> p : points) {
+                if( p == null || p.size() < 2 
+                        || p.get(0) == null || p.get(1) == null ) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                            "expected [lng, lat] points");
+                }
+            }
+        }
+        DistanceMatrix matrix;
+        try {
+            matrix = mainGraph.distanceMatrix(request.getSources(), 
+                    request.getTargets());
+        }
+        catch(IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+                    e.getMessage());
         }
-        
-        return ((String) customRepo.createJsonCollectionResponse(
-                retVal ) );
+        if( matrix == null ) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "no graph loaded");
+        }
+        return matrix;
     }
-            
+
+    /**
+     * 
+     * Routes between many pairs of nodes or points, searched in parallel
+     * and streamed as each one is found: one GeoJSON Feature per line 
+     * (NDJSON), or a FeatureCollection with format=geojson. The id of a 
+     * Feature is the position of its pair in the request; pairs without a
+     * route give a Feature with an error property and no geometry.
+     * 
+     * @param request algorithm and pairs or points
+     * @param format ndjson or geojson
+     * @return streamed Features
+     */
+    @PostMapping(value="/batch/route", 
+            consumes = "application/json",
+            produces = { NDJSON, MediaType.APPLICATION_JSON_VALUE } )
+    public ResponseEntity<ResponseBodyEmitter> getBatchRoutes(
+            @RequestBody 
+            @ApiParam(required=true,value="Routes in JSON Format "
+                    + "ex: {\"algorithm\": \"dijkstra\", "
+                    + "\"pairs\": [ [source1, target1], [source2, target2] ]} "
+                    + "or {\"algorithm\": \"astar\", "
+                    + "\"points\": [ [source_x, source_y, target_x, target_y] ]}")
+            BatchRequest request,
+            @RequestParam(required=false, defaultValue="ndjson")
+            @ApiParam(value="ndjson or geojson") String format ) {
+
+        final boolean collection = "geojson".equals(format);
+        if( !collection && !"ndjson".equals(format) ) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+                    "format must be ndjson or geojson");
+        }
+        if( request == null ) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+                    "pairs or points are required");
+        }
+        try {
+            mainGraph.checkBatch(request);
+        }
+        catch(IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+                    e.getMessage());
+        }
+        if( mainGraph.generation() == null ) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "no graph loaded");
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(collection ? 
+                        MediaType.APPLICATION_JSON_VALUE : NDJSON))
+                .body(executors.stream(CostClass.HEAVY, batchDeadlineMs, 
+                        out -> streamBatch(request, collection, out)));
+    }
+
+    /**
+     * Snaps the routes of a batch, then writes their Features in the 
+     * order they are found, each one flushed right away.
+     */
+    private void streamBatch(BatchRequest request, boolean collection,
+            OutputStream out) throws IOException {
+        RouteBatch batch = mainGraph.prepareBatch(request);
+        final FeatureStream features = new FeatureStream(out, collection);
+        features.begin();
+        try {
+            mainGraph.runBatch(batch, (feature, index) -> 
+                features.write(feature));
+        }
+        catch(IllegalStateException e) {
+            if( e.getCause() instanceof UncheckedIOException ) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+        catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+        features.end();
+    }
+
+    /**
+     * Features written one per line (NDJSON) or as a FeatureCollection, 
+     * each one flushed right away. write may be called from several 
+     * threads and throws UncheckedIOException.
+     */
+    private static class FeatureStream {
+        private final OutputStream out;
+        private final boolean collection;
+        private boolean first = true;
+
+        FeatureStream(OutputStream out, boolean collection) {
+            this.out = out;
+            this.collection = collection;
+        }
+
+        void begin() throws IOException {
+            if( collection ) {
+                out.write("{\"type\":\"FeatureCollection\",\"features\":["
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        void write(String feature) {
+            byte[] bytes = feature.getBytes(StandardCharsets.UTF_8);
+            synchronized( this ) {
+                try {
+                    if( collection && !first ) {
+                        out.write(',');
+                    }
+                    first = false;
+                    out.write(bytes);
+                    if( !collection ) {
+                        out.write('\n');
+                    }
+                    out.flush();
+                }
+                catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        void end() throws IOException {
+            if( collection ) {
+                out.write("]}".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
     /**
      * 
      * DrivingDistance
@@ -96,26 +336,27 @@ public class GraphController {
      */
     @GetMapping(value="/latlng/drivingDistance", 
             produces = MediaType.APPLICATION_JSON_VALUE )
-    public String getDrivingDistanceXY(
+    public DeferredResult<String> getDrivingDistanceXY(
             @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
             @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
             @RequestParam @ApiParam(required=true,value="Radius") double radius ) {
+        return executors.submit(CostClass.HEAVY, () -> {
+            int source = 0;
+            PgrServer pgrs;
 
-        int source = 0;
-        PgrServer pgrs;
-
-        pgrs = customRepo.findNearestNode(source_x, source_y);
+            pgrs = mainGraph.findNearestNode(source_x, source_y);
 
-        if( pgrs != null ) {
-            source = pgrs.getSource();
-        }
+            if( pgrs != null ) {
+                source = pgrs.getSource();
+            }
 
-        Set<Integer> retVal = mainGraph.drivingDistance(source, radius);
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
-        }
+            Set<Integer> retVal = mainGraph.drivingDistance(source, radius);
+            if( retVal == null || retVal.isEmpty() ) {
+                return this.noRouteMsg;
+            }
 
-        return((String)customRepo.createJsonDriveDistPoly(retVal));
+            return((String)customRepo.createJsonDriveDistPoly(retVal));
+        });
     }
 
     /**
@@ -128,21 +369,181 @@ public class GraphController {
      */
     @GetMapping(value="/node/drivingDistance",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getDrivingDistance(
+    public DeferredResult<String> getDrivingDistance(
+            @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
+            @RequestParam @ApiParam(required=true,value="Radius") double radius) {
+        return executors.submit(CostClass.HEAVY, () -> {
+            Set<Integer> retVal = mainGraph.drivingDistance(source, radius);
+            if( retVal == null || retVal.isEmpty() ) {
+                return this.noRouteMsg;
+            }
+
+            return((String)customRepo.createJsonDriveDistPoly(retVal));
+        });
+    }    
+
+    /**
+     * 
+     * Isochrone bands from one search
+     * 
+     * @param source_x
+     * @param source_y
+     * @param thresholds
+     * @return GeoJson FeatureCollection
+     */
+    @GetMapping(value="/latlng/isochrone", 
+            produces = MediaType.APPLICATION_JSON_VALUE )
+    public DeferredResult<String> getIsochroneXY(
+            @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
+            @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
+            @RequestParam @ApiParam(required=true,value="Band limits, ex: 300,600,900") double[] thresholds ) {
+        return executors.submit(CostClass.HEAVY, () -> {
+            int source = 0;
+            PgrServer pgrs;
+
+            pgrs = mainGraph.findNearestNode(source_x, source_y);
+
+            if( pgrs != null ) {
+                source = pgrs.getSource();
+            }
+
+            return isochrone(source, thresholds);
+        });
+    }
+
+    /**
+     * 
+     * Isochrone bands from one search
+     * 
+     * @param source
+     * @param thresholds
+     * @return GeoJson FeatureCollection
+     */
+    @GetMapping(value="/node/isochrone",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<String> getIsochrone(
             @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
-            @RequestParam @ApiParam(required=true,value="Radius") double radius) { 
+            @RequestParam @ApiParam(required=true,value="Band limits, ex: 300,600,900") double[] thresholds ) {
+        return executors.submit(CostClass.HEAVY, () ->
+                isochrone(source, thresholds));
+    }
 
-        Set<Integer> retVal = mainGraph.drivingDistance(source, radius);
-        if( retVal == null || retVal.isEmpty() ) {
+    private String isochrone(int source, double[] thresholds) {
+        double[] sorted = thresholds.clone();
+        Arrays.sort(sorted);
+        if( sorted.length == 0 || !(sorted[0] >= 0) 
+                || Double.isInfinite(sorted[sorted.length - 1]) ) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+                    "expected finite thresholds of 0 or more");
+        }
+        Map<Integer, Integer> retVal = mainGraph.isochrone(source, sorted);
+        if( retVal.isEmpty() ) {
             return this.noRouteMsg;
         }
+        return (String) customRepo.createJsonIsochrone(retVal, sorted);
+    }
 
-        return((String)customRepo.createJsonDriveDistPoly(retVal)); 
-    }    
+    /**
+     * 
+     * Shortest path tree: cost and predecessor edge of every node within 
+     * radius, as columns
+     * 
+     * @param source
+     * @param radius
+     * @return JSON tree
+     */
+    @GetMapping(value="/node/spt",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<String> getShortestPathTree(
+            @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
+            @RequestParam(required=false) @ApiParam(value="Radius, all reachable nodes when omitted") Double radius) {
+        return executors.submit(CostClass.HEAVY, () ->
+                shortestPathTree(source, radius).toJson());
+    }
+
+    /**
+     * 
+     * Shortest path tree as little endian binary: int32 node count, then 
+     * int32 node ids, float32 costs and int32 edge ids (-1 for the source)
+     * 
+     * @param source
+     * @param radius
+     * @return binary tree
+     */
+    @GetMapping(value="/node/spt",
+            params = "format=binary",
+            produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public DeferredResult<byte[]> getShortestPathTreeBinary(
+            @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
+            @RequestParam(required=false) @ApiParam(value="Radius, all reachable nodes when omitted") Double radius) {
+        return executors.submit(CostClass.HEAVY, () ->
+                shortestPathTree(source, radius).toBinary());
+    }
+
+    /**
+     * 
+     * Shortest path tree, see /node/spt
+     * 
+     * @param source_x
+     * @param source_y
+     * @param radius
+     * @return JSON tree
+     */
+    @GetMapping(value="/latlng/spt",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<String> getShortestPathTreeXY(
+            @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
+            @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
+            @RequestParam(required=false) @ApiParam(value="Radius, all reachable nodes when omitted") Double radius) {
+        return executors.submit(CostClass.HEAVY, () ->
+                shortestPathTree(snapSource(source_x, source_y), radius)
+                        .toJson());
+    }
 
     /**
      * 
-     * Finds All Directed Paths between 2 points
+     * Shortest path tree as binary, see /node/spt
+     * 
+     * @param source_x
+     * @param source_y
+     * @param radius
+     * @return binary tree
+     */
+    @GetMapping(value="/latlng/spt",
+            params = "format=binary",
+            produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public DeferredResult<byte[]> getShortestPathTreeXYBinary(
+            @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
+            @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
+            @RequestParam(required=false) @ApiParam(value="Radius, all reachable nodes when omitted") Double radius) {
+        return executors.submit(CostClass.HEAVY, () ->
+                shortestPathTree(snapSource(source_x, source_y), radius)
+                        .toBinary());
+    }
+
+    private int snapSource(double source_x, double source_y) {
+        PgrServer pgrs = mainGraph.findNearestNode(source_x, source_y);
+        return pgrs == null ? 0 : pgrs.getSource();
+    }
+
+    private ShortestPathTree shortestPathTree(int source, Double radius) {
+        if( radius != null && !(radius >= 0) ) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+                    "radius must be 0 or more");
+        }
+        ShortestPathTree tree = mainGraph.shortestPathTree(source, 
+                radius == null ? Double.POSITIVE_INFINITY : radius);
+        if( tree == null ) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, 
+                    "source node not found");
+        }
+        return tree;
+    }
+
+    /**
+     * 
+     * Finds the shortest directed paths with at most maxEdges edges 
+     * between 2 points, see MainGraph.allDirectedPaths
      * 
      * @param source
      * @param target
@@ -151,19 +552,21 @@ public class GraphController {
      */
     @GetMapping(value="/node/allDirectedPaths",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getAllDirected(
+    public DeferredResult<String> getAllDirected(
             @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
             @RequestParam @ApiParam(required=true,value="Target Node ID") int target,
-            @RequestParam @ApiParam(required=true,value="Maximum number of edges to allow in a path") int maxEdges) { 
-        
-        return(customRepo.createJsonCollectionResponse(
-                mainGraph.allDirectedPaths(source, target,maxEdges) 
-        ));
+            @RequestParam @ApiParam(required=true,value="Maximum number of edges to allow in a path") int maxEdges) {
+        return executors.submit(CostClass.HEAVY, () -> {
+            return(mainGraph.createJsonCollectionResponse(
+                    mainGraph.allDirectedPaths(source, target,maxEdges)
+            ));
+        });
     }
 
     /**
      * 
-     * Finds All Directed Paths between 2 points
+     * Finds the shortest directed paths with at most maxEdges edges 
+     * between 2 points, see MainGraph.allDirectedPaths
      * 
      * @param source_x
      * @param source_y
@@ -174,29 +577,198 @@ public class GraphController {
      */
     @GetMapping(value="/latlng/allDirectedPaths",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getAllDirectedXY(
+    public DeferredResult<String> getAllDirectedXY(
             @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
             @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
             @RequestParam @ApiParam(required=true,value="Target Longitude") double target_x,
             @RequestParam @ApiParam(required=true,value="Target Latitude" ) double target_y,
-            @RequestParam @ApiParam(required=true,value="Maximum number of edges to allow in a path") int maxEdges) { 
-        
-        int source = 0,target = 0;
-        PgrServer pgrs;
-
-        pgrs = customRepo.findNearestNode(source_x, source_y);
-        if( pgrs != null ) {
-            source = pgrs.getSource();
-        }
+            @RequestParam @ApiParam(required=true,value="Maximum number of edges to allow in a path") int maxEdges) {
+        return executors.submit(CostClass.HEAVY, () -> {
+            int source = 0,target = 0;
+            PgrServer pgrs;
+
+            pgrs = mainGraph.findNearestNode(source_x, source_y);
+            if( pgrs != null ) {
+                source = pgrs.getSource();
+            }
 
-        pgrs = customRepo.findNearestNode(target_x, target_y);
-        if( pgrs != null ) {
-            target = pgrs.getTarget();
-        }
+            pgrs = mainGraph.findNearestNode(target_x, target_y);
+            if( pgrs != null ) {
+                target = pgrs.getTarget();
+            }
+
+            return(mainGraph.createJsonCollectionResponse(
+                    mainGraph.allDirectedPaths(source, target,maxEdges)
+            ));
+        });
+    }
+
+    /**
+     * 
+     * K shortest simple paths (Yen) between 2 nodes, streamed in order of
+     * cost as each one is found
+     * 
+     * @param source
+     * @param target
+     * @param k
+     * @param maxDetour
+     * @param maxSharing
+     * @param format
+     * @return streamed Features
+     */
+    @GetMapping(value="/node/kShortestPaths",
+            produces = { NDJSON, MediaType.APPLICATION_JSON_VALUE } )
+    public ResponseEntity<ResponseBodyEmitter> getKShortestPaths(
+            @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
+            @RequestParam @ApiParam(required=true,value="Target Node ID") int target,
+            @RequestParam(required=false, defaultValue="3") @ApiParam(value="Maximum number of paths") int k,
+            @RequestParam(required=false, defaultValue="1.5") @ApiParam(value="Maximum cost relative to the shortest path") double maxDetour,
+            @RequestParam(required=false, defaultValue="1") @ApiParam(value="Maximum share of cost on edges of an earlier path") double maxSharing,
+            @RequestParam(required=false, defaultValue="ndjson") @ApiParam(value="ndjson or geojson") String format) { 
+
+        return streamPaths(false, () -> source, () -> target, k, maxDetour, 
+                maxSharing, format);
+    }
+
+    /**
+     * 
+     * K shortest simple paths (Yen) between 2 points, streamed in order 
+     * of cost as each one is found
+     * 
+     * @param source_x
+     * @param source_y
+     * @param target_x
+     * @param target_y
+     * @param k
+     * @param maxDetour
+     * @param maxSharing
+     * @param format
+     * @return streamed Features
+     */
+    @GetMapping(value="/latlng/kShortestPaths",
+            produces = { NDJSON, MediaType.APPLICATION_JSON_VALUE } )
+    public ResponseEntity<ResponseBodyEmitter> getKShortestPathsXY(
+            @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
+            @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
+            @RequestParam @ApiParam(required=true,value="Target Longitude") double target_x,
+            @RequestParam @ApiParam(required=true,value="Target Latitude" ) double target_y,
+            @RequestParam(required=false, defaultValue="3") @ApiParam(value="Maximum number of paths") int k,
+            @RequestParam(required=false, defaultValue="1.5") @ApiParam(value="Maximum cost relative to the shortest path") double maxDetour,
+            @RequestParam(required=false, defaultValue="1") @ApiParam(value="Maximum share of cost on edges of an earlier path") double maxSharing,
+            @RequestParam(required=false, defaultValue="ndjson") @ApiParam(value="ndjson or geojson") String format) { 
+
+        return streamPaths(false, () -> snapSource(source_x, source_y), 
+                () -> snapTarget(target_x, target_y), k, maxDetour, 
+                maxSharing, format);
+    }
+
+    /**
+     * 
+     * Alternative routes between 2 nodes (via nodes of the contraction
+     * hierarchy), streamed as each one is found
+     * 
+     * @param source
+     * @param target
+     * @param k
+     * @param maxDetour
+     * @param maxSharing
+     * @param format
+     * @return streamed Features
+     */
+    @GetMapping(value="/node/alternatives",
+            produces = { NDJSON, MediaType.APPLICATION_JSON_VALUE } )
+    public ResponseEntity<ResponseBodyEmitter> getAlternatives(
+            @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
+            @RequestParam @ApiParam(required=true,value="Target Node ID") int target,
+            @RequestParam(required=false, defaultValue="3") @ApiParam(value="Maximum number of routes") int k,
+            @RequestParam(required=false, defaultValue="1.4") @ApiParam(value="Maximum cost relative to the shortest route") double maxDetour,
+            @RequestParam(required=false, defaultValue="0.8") @ApiParam(value="Maximum share of cost on edges of an earlier route") double maxSharing,
+            @RequestParam(required=false, defaultValue="ndjson") @ApiParam(value="ndjson or geojson") String format) { 
+
+        return streamPaths(true, () -> source, () -> target, k, maxDetour, 
+                maxSharing, format);
+    }
+
+    /**
+     * 
+     * Alternative routes between 2 points (via nodes of the contraction
+     * hierarchy), streamed as each one is found
+     * 
+     * @param source_x
+     * @param source_y
+     * @param target_x
+     * @param target_y
+     * @param k
+     * @param maxDetour
+     * @param maxSharing
+     * @param format
+     * @return streamed Features
+     */
+    @GetMapping(value="/latlng/alternatives",
+            produces = { NDJSON, MediaType.APPLICATION_JSON_VALUE } )
+    public ResponseEntity<ResponseBodyEmitter> getAlternativesXY(
+            @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
+            @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
+            @RequestParam @ApiParam(required=true,value="Target Longitude") double target_x,
+            @RequestParam @ApiParam(required=true,value="Target Latitude" ) double target_y,
+            @RequestParam(required=false, defaultValue="3") @ApiParam(value="Maximum number of routes") int k,
+            @RequestParam(required=false, defaultValue="1.4") @ApiParam(value="Maximum cost relative to the shortest route") double maxDetour,
+            @RequestParam(required=false, defaultValue="0.8") @ApiParam(value="Maximum share of cost on edges of an earlier route") double maxSharing,
+            @RequestParam(required=false, defaultValue="ndjson") @ApiParam(value="ndjson or geojson") String format) { 
+
+        return streamPaths(true, () -> snapSource(source_x, source_y), 
+                () -> snapTarget(target_x, target_y), k, maxDetour, 
+                maxSharing, format);
+    }
 
-        return(customRepo.createJsonCollectionResponse(
-                mainGraph.allDirectedPaths(source, target,maxEdges) 
-        ));
+    private int snapTarget(double target_x, double target_y) {
+        PgrServer pgrs = mainGraph.findNearestNode(target_x, target_y);
+        return pgrs == null ? 0 : pgrs.getTarget();
+    }
+
+    /**
+     * Checks the request, then snaps the nodes and streams the paths on 
+     * the generation of the request, off the request thread.
+     */
+    private ResponseEntity<ResponseBodyEmitter> streamPaths(
+            final boolean alternatives, final IntSupplier source, 
+            final IntSupplier target,
+            final int k, final double maxDetour, final double maxSharing, 
+            String format) {
+        final boolean collection = "geojson".equals(format);
+        if( !collection && !"ndjson".equals(format) ) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+                    "format must be ndjson or geojson");
+        }
+        try {
+            mainGraph.checkPathBounds(k, maxDetour, maxSharing);
+        }
+        catch(IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+                    e.getMessage());
+        }
+        final GraphGeneration gen = mainGraph.generation();
+        if( gen == null ) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "no graph loaded");
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(collection ? 
+                        MediaType.APPLICATION_JSON_VALUE : NDJSON))
+                .body(executors.stream(CostClass.HEAVY, out -> {
+                    FeatureStream features = 
+                            new FeatureStream(out, collection);
+                    features.begin();
+                    try {
+                        mainGraph.paths(gen, alternatives, 
+                                source.getAsInt(), target.getAsInt(), 
+                                k, maxDetour, maxSharing, features::write);
+                    }
+                    catch(UncheckedIOException e) {
+                        throw e.getCause();
+                    }
+                    features.end();
+                }));
     }
 
     /**
@@ -210,15 +782,16 @@ public class GraphController {
      */
     @GetMapping(value="/node/chbDijkstra",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getRouteChbDijkstra(
+    public DeferredResult<String> getRouteChbDijkstra(
             @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
-            @RequestParam @ApiParam(required=true,value="Target Node ID") int target) { 
-
-        List<Integer> retVal = mainGraph.chbDijkstraSearch(source, target);
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
-        }
-        return (String)customRepo.createJsonRouteResponse(retVal,1);
+            @RequestParam @ApiParam(required=true,value="Target Node ID") int target) {
+        return executors.submit(CostClass.FAST, () -> {
+            String retVal = mainGraph.routeJson("chbDijkstra", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
     }
 
     /**
@@ -234,31 +807,32 @@ public class GraphController {
      */
     @GetMapping(value="/latlng/chbDijkstra", 
             produces = MediaType.APPLICATION_JSON_VALUE )
-    public String getRouteXYChbDijkstra(
+    public DeferredResult<String> getRouteXYChbDijkstra(
             @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
             @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
             @RequestParam @ApiParam(required=true,value="Target Longitude") double target_x,
             @RequestParam @ApiParam(required=true,value="Target Latitude" ) double target_y) 
     {
+        return executors.submit(CostClass.FAST, () -> {
+            int source = 0,target = 0;
+            PgrServer pgrs;
 
-        int source = 0,target = 0;
-        PgrServer pgrs;
-
-        pgrs = customRepo.findNearestNode(source_x, source_y);
-        if( pgrs != null ) {
-            source = pgrs.getSource();
-        }
+            pgrs = mainGraph.findNearestNode(source_x, source_y);
+            if( pgrs != null ) {
+                source = pgrs.getSource();
+            }
 
-        pgrs = customRepo.findNearestNode(target_x, target_y);
-        if( pgrs != null ) {
-            target = pgrs.getTarget();
-        }
+            pgrs = mainGraph.findNearestNode(target_x, target_y);
+            if( pgrs != null ) {
+                target = pgrs.getTarget();
+            }
 
-        List<Integer> retVal = mainGraph.chbDijkstraSearch(source, target);
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
-        }
-        return (String)customRepo.createJsonRouteResponse(retVal,1);
+            String retVal = mainGraph.routeJson("chbDijkstra", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
     }
 
     /**
@@ -272,15 +846,16 @@ public class GraphController {
      */
     @GetMapping(value="/node/dijkstra",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getRouteDijkstra(
+    public DeferredResult<String> getRouteDijkstra(
             @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
-            @RequestParam @ApiParam(required=true,value="Target Node ID") int target) { 
-
-        List<Integer> retVal = mainGraph.dijkstraSearch(source, target);
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
-        }
-        return (String)customRepo.createJsonRouteResponse(retVal,1);
+            @RequestParam @ApiParam(required=true,value="Target Node ID") int target) {
+        return executors.submit(CostClass.STANDARD, () -> {
+            String retVal = mainGraph.routeJson("dijkstra", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
     }
 
     /**
@@ -296,31 +871,32 @@ public class GraphController {
      */
     @GetMapping(value="/latlng/dijkstra", 
             produces = MediaType.APPLICATION_JSON_VALUE )
-    public String getRouteXYDijkstra(
+    public DeferredResult<String> getRouteXYDijkstra(
             @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
             @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
             @RequestParam @ApiParam(required=true,value="Target Longitude") double target_x,
             @RequestParam @ApiParam(required=true,value="Target Latitude" ) double target_y) 
     {
+        return executors.submit(CostClass.STANDARD, () -> {
+            int source = 0,target = 0;
+            PgrServer pgrs;
 
-        int source = 0,target = 0;
-        PgrServer pgrs;
-
-        pgrs = customRepo.findNearestNode(source_x, source_y);
-        if( pgrs != null ) {
-            source = pgrs.getSource();
-        }
+            pgrs = mainGraph.findNearestNode(source_x, source_y);
+            if( pgrs != null ) {
+                source = pgrs.getSource();
+            }
 
-        pgrs = customRepo.findNearestNode(target_x, target_y);
-        if( pgrs != null ) {
-            target = pgrs.getTarget();
-        }
+            pgrs = mainGraph.findNearestNode(target_x, target_y);
+            if( pgrs != null ) {
+                target = pgrs.getTarget();
+            }
 
-        List<Integer> retVal = mainGraph.dijkstraSearch(source, target);
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
-        }
-        return (String)customRepo.createJsonRouteResponse(retVal,1);
+            String retVal = mainGraph.routeJson("dijkstra", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
     }
 
     /**
@@ -333,15 +909,16 @@ public class GraphController {
      * @return GeoJson
      */
     @GetMapping(value="/node/astar",produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getRouteAstar(
+    public DeferredResult<String> getRouteAstar(
             @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
-            @RequestParam @ApiParam(required=true,value="Target Node ID") int target) {         
-        List<Integer> retVal = mainGraph.astarSearch(source, target);
-
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
-        }
-        return (String)customRepo.createJsonRouteResponse(retVal,1);
+            @RequestParam @ApiParam(required=true,value="Target Node ID") int target) {
+        return executors.submit(CostClass.STANDARD, () -> {
+            String retVal = mainGraph.routeJson("astar", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
     }
 
     /**
@@ -357,32 +934,95 @@ public class GraphController {
      */
     @GetMapping(value="/latlng/astar",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getRouteXYAstar(
+    public DeferredResult<String> getRouteXYAstar(
             @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
             @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
             @RequestParam @ApiParam(required=true,value="Target Longitude") double target_x,
             @RequestParam @ApiParam(required=true,value="Target Latitude" ) double target_y) 
     {
+        return executors.submit(CostClass.STANDARD, () -> {
+            int source = 0,target = 0;
+            PgrServer pgrs;
 
-        int source = 0,target = 0;
-        PgrServer pgrs;
+            pgrs = mainGraph.findNearestNode(source_x, source_y);
+            if( pgrs != null ) {
+                source = pgrs.getSource();
+            }
 
-        pgrs = customRepo.findNearestNode(source_x, source_y);
-        if( pgrs != null ) {
-            source = pgrs.getSource();
-        }
+            pgrs = mainGraph.findNearestNode(target_x, target_y);
+            if( pgrs != null ) {
+                target = pgrs.getTarget();
+            }
 
-        pgrs = customRepo.findNearestNode(target_x, target_y);
-        if( pgrs != null ) {
-            target = pgrs.getTarget();
-        }
+            String retVal = mainGraph.routeJson("astar", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
+    }
 
-        List<Integer> retVal = mainGraph.astarSearch(source, target);
+    /**
+     * 
+     * ALT (A-Star with landmarks) with node parameters
+     * (for dense networks)
+     * 
+     * @param source
+     * @param target
+     * @return GeoJson
+     */
+    @GetMapping(value="/node/alt",produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<String> getRouteAlt(
+            @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
+            @RequestParam @ApiParam(required=true,value="Target Node ID") int target) {
+        return executors.submit(CostClass.FAST, () -> {
+            String retVal = mainGraph.routeJson("alt", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
+    }
 
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
-        }
-        return (String)customRepo.createJsonRouteResponse(retVal,1);
+    /**
+     * 
+     * ALT (A-Star with landmarks) with Latitude,Longitude parameters
+     * (for dense networks)
+     * 
+     * @param source_x
+     * @param source_y
+     * @param target_x
+     * @param target_y
+     * @return GeoJson
+     */
+    @GetMapping(value="/latlng/alt",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<String> getRouteXYAlt(
+            @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
+            @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
+            @RequestParam @ApiParam(required=true,value="Target Longitude") double target_x,
+            @RequestParam @ApiParam(required=true,value="Target Latitude" ) double target_y) 
+    {
+        return executors.submit(CostClass.FAST, () -> {
+            int source = 0,target = 0;
+            PgrServer pgrs;
+
+            pgrs = mainGraph.findNearestNode(source_x, source_y);
+            if( pgrs != null ) {
+                source = pgrs.getSource();
+            }
+
+            pgrs = mainGraph.findNearestNode(target_x, target_y);
+            if( pgrs != null ) {
+                target = pgrs.getTarget();
+            }
+
+            String retVal = mainGraph.routeJson("alt", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
     }
 
     /**
@@ -397,15 +1037,17 @@ public class GraphController {
      */
     @GetMapping(value="/node/bellmanford",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getRouteBellmanFord(
+    public DeferredResult<String> getRouteBellmanFord(
             @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
             @RequestParam @ApiParam(required=true,value="Target Node ID") int target) 
-    {        
-        List<Integer> retVal = mainGraph.bellmanFordSearch(source, target);        
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
-        }
-        return (String)customRepo.createJsonRouteResponse(retVal,1);
+    {
+        return executors.submit(CostClass.HEAVY, () -> {
+            String retVal = mainGraph.routeJson("bellmanford", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
     }
 
     /**
@@ -421,30 +1063,32 @@ public class GraphController {
      */
     @GetMapping(value="/latlng/bellmanford",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getRouteXYBellmanFord(
+    public DeferredResult<String> getRouteXYBellmanFord(
             @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
             @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
             @RequestParam @ApiParam(required=true,value="Target Longitude") double target_x,
             @RequestParam @ApiParam(required=true,value="Target Latitude" ) double target_y) 
-    {        
-        int source = 0,target = 0;
-        PgrServer pgrs;
+    {
+        return executors.submit(CostClass.HEAVY, () -> {
+            int source = 0,target = 0;
+            PgrServer pgrs;
 
-        pgrs = customRepo.findNearestNode(source_x, source_y);
-        if( pgrs != null ) {
-            source = pgrs.getSource();
-        }
+            pgrs = mainGraph.findNearestNode(source_x, source_y);
+            if( pgrs != null ) {
+                source = pgrs.getSource();
+            }
 
-        pgrs = customRepo.findNearestNode(target_x, target_y);
-        if( pgrs != null ) {
-            target = pgrs.getTarget();
-        }
+            pgrs = mainGraph.findNearestNode(target_x, target_y);
+            if( pgrs != null ) {
+                target = pgrs.getTarget();
+            }
 
-        List<Integer> retVal = mainGraph.bellmanFordSearch(source, target);        
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
-        }
-        return (String)customRepo.createJsonRouteResponse(retVal,1);
+            String retVal = mainGraph.routeJson("bellmanford", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
     }
 
     /**
@@ -458,15 +1102,17 @@ public class GraphController {
      */
     @GetMapping(value="/node/bfs",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getRouteBfs(
+    public DeferredResult<String> getRouteBfs(
             @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
             @RequestParam @ApiParam(required=true,value="Target Node ID") int target) 
-    {        
-        List<Integer> retVal = mainGraph.bfsSearch(source, target);        
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
-        }
-        return (String)customRepo.createJsonRouteResponse(retVal,1);
+    {
+        return executors.submit(CostClass.STANDARD, () -> {
+            String retVal = mainGraph.routeJson("bfs", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
     }
 
     /**
@@ -482,31 +1128,32 @@ public class GraphController {
      */
     @GetMapping(value="/latlng/bfs",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getRouteXYBfs(
+    public DeferredResult<String> getRouteXYBfs(
             @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
             @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
             @RequestParam @ApiParam(required=true,value="Target Longitude") double target_x,
             @RequestParam @ApiParam(required=true,value="Target Latitude" ) double target_y) 
     {
+        return executors.submit(CostClass.STANDARD, () -> {
+            int source = 0,target = 0;
+            PgrServer pgrs;
 
-        int source = 0,target = 0;
-        PgrServer pgrs;
-
-        pgrs = customRepo.findNearestNode(source_x, source_y);
-        if( pgrs != null ) {
-            source = pgrs.getSource();
-        }
+            pgrs = mainGraph.findNearestNode(source_x, source_y);
+            if( pgrs != null ) {
+                source = pgrs.getSource();
+            }
 
-        pgrs = customRepo.findNearestNode(target_x, target_y);
-        if( pgrs != null ) {
-            target = pgrs.getTarget();
-        }
+            pgrs = mainGraph.findNearestNode(target_x, target_y);
+            if( pgrs != null ) {
+                target = pgrs.getTarget();
+            }
 
-        List<Integer> retVal = mainGraph.bfsSearch(source, target);        
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
-        }
-        return (String)customRepo.createJsonRouteResponse(retVal,1);
+            String retVal = mainGraph.routeJson("bfs", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
     }
 
     /**
@@ -520,15 +1167,17 @@ public class GraphController {
      */
     @GetMapping(value="/node/johnson",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getRouteJohnson(
+    public DeferredResult<String> getRouteJohnson(
             @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
             @RequestParam @ApiParam(required=true,value="Target Node ID") int target) 
-    {        
-        List<Integer> retVal = mainGraph.johnsonSearch(source, target);        
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
-        }
-        return (String)customRepo.createJsonRouteResponse(retVal,1);
+    {
+        return executors.submit(CostClass.FAST, () -> {
+            String retVal = allPairsRoute("johnson", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
     }
 
     /**
@@ -544,30 +1193,32 @@ public class GraphController {
      */
     @GetMapping(value="/latlng/johnson",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getRouteXYJohnson(
+    public DeferredResult<String> getRouteXYJohnson(
             @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
             @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
             @RequestParam @ApiParam(required=true,value="Target Longitude") double target_x,
             @RequestParam @ApiParam(required=true,value="Target Latitude" ) double target_y) 
-    {        
-        int source = 0,target = 0;
-        PgrServer pgrs;
+    {
+        return executors.submit(CostClass.FAST, () -> {
+            int source = 0,target = 0;
+            PgrServer pgrs;
 
-        pgrs = customRepo.findNearestNode(source_x, source_y);
-        if( pgrs != null ) {
-            source = pgrs.getSource();
-        }
+            pgrs = mainGraph.findNearestNode(source_x, source_y);
+            if( pgrs != null ) {
+                source = pgrs.getSource();
+            }
 
-        pgrs = customRepo.findNearestNode(target_x, target_y);
-        if( pgrs != null ) {
-            target = pgrs.getTarget();
-        }
+            pgrs = mainGraph.findNearestNode(target_x, target_y);
+            if( pgrs != null ) {
+                target = pgrs.getTarget();
+            }
 
-        List<Integer> retVal = mainGraph.johnsonSearch(source, target);        
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
-        }
-        return (String)customRepo.createJsonRouteResponse(retVal,1);
+            String retVal = allPairsRoute("johnson", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
     }
 
     /**
@@ -581,15 +1232,17 @@ public class GraphController {
      */
     @GetMapping(value="/node/floydWarshall",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getRouteFloydWarshall(
+    public DeferredResult<String> getRouteFloydWarshall(
             @RequestParam @ApiParam(required=true,value="Source Node ID") int source,
             @RequestParam @ApiParam(required=true,value="Target Node ID") int target) 
-    {        
-        List<Integer> retVal = mainGraph.floydWarshallSearch(source, target);        
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
-        }
-        return (String)customRepo.createJsonRouteResponse(retVal,1);
+    {
+        return executors.submit(CostClass.FAST, () -> {
+            String retVal = allPairsRoute("floydWarshall", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
     }
 
     /**
@@ -605,32 +1258,70 @@ public class GraphController {
      */
     @GetMapping(value="/latlng/floydWarshall",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getRouteXYFloydWarshall(
+    public DeferredResult<String> getRouteXYFloydWarshall(
             @RequestParam @ApiParam(required=true,value="Source Longitude") double source_x,
             @RequestParam @ApiParam(required=true,value="Source Latitude" ) double source_y,
             @RequestParam @ApiParam(required=true,value="Target Longitude") double target_x,
             @RequestParam @ApiParam(required=true,value="Target Latitude" ) double target_y) 
     {
+        return executors.submit(CostClass.FAST, () -> {
+            int source = 0,target = 0;
+            PgrServer pgrs;
 
-        int source = 0,target = 0;
-        PgrServer pgrs;
-
-        pgrs = customRepo.findNearestNode(source_x, source_y);
-        if( pgrs != null ) {
-            source = pgrs.getSource();
-        }
+            pgrs = mainGraph.findNearestNode(source_x, source_y);
+            if( pgrs != null ) {
+                source = pgrs.getSource();
+            }
 
-        pgrs = customRepo.findNearestNode(target_x, target_y);
-        if( pgrs != null ) {
-            target = pgrs.getTarget();
-        }        
+            pgrs = mainGraph.findNearestNode(target_x, target_y);
+            if( pgrs != null ) {
+                target = pgrs.getTarget();
+            }
 
-        List<Integer> retVal = mainGraph.floydWarshallSearch(source, target);        
+            String retVal = allPairsRoute("floydWarshall", source, target);
+            if( retVal == null ) {
+                return this.noRouteMsg;
+            }
+            return retVal;
+        });
+    }
 
-        if( retVal == null || retVal.isEmpty() ) {
-            return this.noRouteMsg;
+    /**
+     * Route of the all pairs services, rejected when the graph is too 
+     * large for the all pairs tables.
+     */
+    private String allPairsRoute(String algorithm, int source, int target) {
+        try {
+            return mainGraph.routeJson(algorithm, source, target);
+        }
+        catch(IllegalStateException e) {
+            throw new ResponseStatusException(
+                    HttpStatus.UNPROCESSABLE_ENTITY, e.getMessage());
         }
-        return (String)customRepo.createJsonRouteResponse(retVal,1);
+    }
+
+    /**
+     * 
+     * State of the Contraction Hierarchy used by chbDijkstra
+     * 
+     * @return HierarchyStatus
+     */
+    @GetMapping(value="/chstatus",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public HierarchyStatus getHierarchyStatus() {
+        return mainGraph.getHierarchyStatus();
+    }
+
+    /**
+     * 
+     * Counters of the route cache
+     * 
+     * @return CacheStatus
+     */
+    @GetMapping(value="/cachestatus",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public CacheStatus getCacheStatus() {
+        return mainGraph.getCacheStatus();
     }
 
     /**
@@ -641,16 +1332,87 @@ public class GraphController {
      * @return String
      */
     @PostMapping("/graphreload")
-    String graphReload(@RequestParam(required=true) String authcode) {
+    String graphReload(@RequestParam(required=true) String authcode,
+            HttpServletResponse response) {
 
         if( authcode != null && !authcode.isEmpty()) {
             List<PgrsAuth> p = authRepository.findByAuthcode(authcode);
 
             if( p != null && !p.isEmpty()) {
                 mainGraph.createDirectedGraph();                
+                GraphGeneration gen = mainGraph.pinGeneration();
+                if( gen != null ) {
+                    response.setHeader(GenerationInterceptor.HEADER, 
+                            gen.getTag());
+                }
                 return "graph has been reloded";
             }
         }
         return "graph  was not reloaded ";
     }
+
+    /**
+     * 
+     * Update the edge costs without reloading the Graph
+     * 
+     * @param authcode
+     * @param costs [[edge id, cost],...], all costs are read from the
+     *        database when omitted
+     * @param metric metric whose costs are updated, the default one when
+     *        omitted
+     * @return String
+     */
+    @PostMapping("/weightupdate")
+    String weightUpdate(@RequestParam(required=true) String authcode,
+            @RequestParam(required=false) 
+            @ApiParam(value="Metric to update, the default one when omitted")
+            String metric,
+            @ApiParam(value="[[edge id, cost],...] . Omit to re-read all "
+                    + "costs from the database",
+            example = "[[1024,35.5],[1025,-1]]")
+            @RequestBody(required=false) List<List<Double>> costs,
+            HttpServletResponse response) {
+
+        if( authcode != null && !authcode.isEmpty()) {
+            List<PgrsAuth> p = authRepository.findByAuthcode(authcode);
+
+            if( p != null && !p.isEmpty()) {
+                int[] edgeIds = null;
+                double[] edgeCosts = null;
+                
+                if( costs != null ) {
+                    edgeIds = new int[costs.size()];
+                    edgeCosts = new double[costs.size()];
+                    for(int i=0;i<costs.size();i++) {
+                        List<Double> c = costs.get(i);
+                        if( c == null || c.size() < 2 
+                                || c.get(0) == null || c.get(1) == null ) {
+                            return "weights were not updated: "
+                                    + "expected [edge id, cost] pairs";
+                        }
+                        edgeIds[i] = c.get(0).intValue();
+                        edgeCosts[i] = c.get(1);
+                    }
+                }
+                int updated;
+                try {
+                    updated = mainGraph.updateWeights(metric, edgeIds, 
+                            edgeCosts);
+                }
+                catch(IllegalArgumentException e) {
+                    return "weights were not updated: "+e.getMessage();
+                }
+                if( updated < 0 ) {
+                    return "weights were not updated: no graph loaded";
+                }
+                GraphGeneration gen = mainGraph.pinGeneration(metric);
+                if( gen != null ) {
+                    response.setHeader(GenerationInterceptor.HEADER, 
+                            gen.getTag());
+                }
+                return "weights of "+updated+" edges have been updated";
+            }
+        }
+        return "weights were not updated";
+    }
 }
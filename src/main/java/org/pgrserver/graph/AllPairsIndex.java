@@ -0,0 +1,172 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：AllPairsIndex.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.Arrays;
+
+import org.pgrserver.util.IntDoubleHeap;
+import org.pgrserver.util.IntList;
+import org.pgrserver.util.ParallelLoop;
+
+/**
+ * 説明：
+ * Shortest paths between all pairs of vertices, computed once per graph
+ * generation and answered by lookup.
+ *
+ * Row s of the tables is the shortest path tree of s: the cost to every
+ * vertex as float and the edge every vertex is reached by, 8 bytes per
+ * pair. A path is read backwards along the predecessors of its own row,
+ * so it needs no search. The rows are filled by one Dijkstra search per
+ * source, in parallel; edge costs are never negative, so this gives the
+ * same paths as Floyd-Warshall or Johnson in O(V E log V) instead of
+ * O(V^3).
+ */
+public class AllPairsIndex {
+
+    /**
+     * Heap bytes per vertex pair
+     */
+    static final int BYTES_PER_PAIR = 8;
+
+    private final CsrGraph graph;
+    private final int n;
+    private final float[] costs;
+    private final int[] predEdges;
+
+    private AllPairsIndex(CsrGraph graph, float[] costs, int[] predEdges) {
+        this.graph     = graph;
+        this.n         = graph.vertexCount();
+        this.costs     = costs;
+        this.predEdges = predEdges;
+    }
+
+    /**
+     * @return heap the tables of a graph with vertexCount vertices need
+     */
+    public static long estimatedHeapBytes(int vertexCount) {
+        return BYTES_PER_PAIR * (long) vertexCount * vertexCount;
+    }
+
+    /**
+     * @return whether the tables of graph fit in maxBytes and in Java
+     *         arrays
+     */
+    public static boolean fits(CsrGraph graph, long maxBytes) {
+        long pairs = (long) graph.vertexCount() * graph.vertexCount();
+        return pairs <= Integer.MAX_VALUE - 8
+                && estimatedHeapBytes(graph.vertexCount()) <= maxBytes;
+    }
+
+    /**
+     * Computes the tables with one search per vertex.
+     *
+     * @throws IllegalArgumentException when the tables do not fit in
+     *         Java arrays
+     */
+    public static AllPairsIndex build(final CsrGraph graph,
+            ParallelLoop loop) {
+        final int n = graph.vertexCount();
+        if( (long) n * n > Integer.MAX_VALUE - 8 ) {
+            throw new IllegalArgumentException("All pairs tables of "+n
+                    +" vertices do not fit in an array");
+        }
+        final float[] costs = new float[n * n];
+        final int[] predEdges = new int[n * n];
+        Arrays.fill(costs, Float.POSITIVE_INFINITY);
+        Arrays.fill(predEdges, -1);
+
+        final ThreadLocal<Workspace> workspace =
+                ThreadLocal.withInitial(() -> new Workspace(n));
+        loop.run(n, s -> workspace.get().search(graph, s, costs, predEdges));
+        return new AllPairsIndex(graph, costs, predEdges);
+    }
+
+    public int vertexCount() {
+        return n;
+    }
+
+    public long estimatedHeapBytes() {
+        return estimatedHeapBytes(n);
+    }
+
+    /**
+     * @return cost from s to t, +Infinity when t is not reachable
+     */
+    public double cost(int s, int t) {
+        return costs[s * n + t];
+    }
+
+    /**
+     * @return edge indices of the shortest path from s to t, empty when
+     *         they are the same vertex, null when t is not reachable
+     */
+    public int[] path(int s, int t) {
+        int row = s * n;
+        int length = 0;
+        for(int v=t; v!=s; v=graph.source(predEdges[row + v])) {
+            if( predEdges[row + v] < 0 ) {
+                return null;
+            }
+            length++;
+        }
+        int[] retVal = new int[length];
+        for(int v=t; v!=s; v=graph.source(retVal[length])) {
+            retVal[--length] = predEdges[row + v];
+        }
+        return retVal;
+    }
+
+    /**
+     * Dijkstra from one source into its row, resetting only what it
+     * touched.
+     */
+    private static class Workspace {
+        final double[] dist;
+        final IntList reached = new IntList();
+        final IntDoubleHeap heap = new IntDoubleHeap(64);
+
+        Workspace(int n) {
+            dist = new double[n];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        }
+
+        void search(CsrGraph graph, int s, float[] costs, int[] predEdges) {
+            int n = graph.vertexCount();
+            int row = s * n;
+            for(int i=0;i<reached.size();i++) {
+                dist[reached.get(i)] = Double.POSITIVE_INFINITY;
+            }
+            reached.clear();
+            heap.clear();
+
+            dist[s] = 0d;
+            reached.add(s);
+            heap.push(s, 0d);
+            while( !heap.isEmpty() ) {
+                double du = heap.peekKey();
+                int u = heap.poll();
+                if( du > dist[u] ) {
+                    continue;
+                }
+                costs[row + u] = (float) du;
+                for(int e=graph.firstOut(u), end=graph.endOut(u);
+                        e<end; e++) {
+                    int v = graph.target(e);
+                    double dv = du + graph.weight(e);
+                    if( dv < dist[v] ) {
+                        if( dist[v] == Double.POSITIVE_INFINITY ) {
+                            reached.add(v);
+                        }
+                        dist[v] = dv;
+                        predEdges[row + v] = e;
+                        heap.push(v, dv);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,487 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：AlternativePaths.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.pgrserver.util.IntDoubleHeap;
+import org.pgrserver.util.IntList;
+
+/**
+ * 説明：
+ * Several reasonable paths between two vertices, at bounded cost: at most
+ * k paths, none costing more than maxDetour times the shortest path and
+ * none sharing more than maxSharing of its cost with a path given before
+ * it. The search stops when its deadline has passed or its SearchBudget
+ * runs out, keeping the paths found so far. Every path is handed to the
+ * listener as soon as it is accepted; a listener that throws stops the
+ * search.
+ *
+ * kShortest is Yen's algorithm: each accepted path is deviated from at
+ * each of its vertices with a search that avoids the edges already taken
+ * there by paths with the same prefix. Paths come in order of cost and are
+ * simple. viaNodes is the via vertex method on a contraction hierarchy:
+ * the upward search spaces of source and target are explored once, and
+ * every vertex reached by both gives the path up to it and down from it,
+ * in order of cost, without further searches.
+ */
+public class AlternativePaths {
+
+    /**
+     * Vertices settled between two looks at the clock
+     */
+    private static final int CLOCK_INTERVAL = 1024;
+
+    private final CsrGraph graph;
+    private final int k;
+    private final double maxDetour;
+    private final double maxSharing;
+    private final long deadline;
+    private int maxEdges = Integer.MAX_VALUE;
+    private SearchBudget budget = SearchBudget.UNLIMITED;
+
+    private final List<int[]> accepted = new ArrayList<int[]>();
+    private boolean timedOut;
+
+    /**
+     * Spur search workspace, allocated with the first search
+     */
+    private double[] dist;
+    private int[] predEdge;
+    private int[] banned;
+    private int banStamp;
+    private final IntList reached = new IntList();
+    private final IntDoubleHeap heap = new IntDoubleHeap(64);
+
+    /**
+     * @param k largest number of paths
+     * @param maxDetour largest cost of a path relative to the shortest,
+     *        at least 1
+     * @param maxSharing largest share of the cost of a path on edges of
+     *        a path given before it, 1 for no limit
+     * @param deadline System.nanoTime after which the search stops
+     */
+    public AlternativePaths(CsrGraph graph, int k, double maxDetour,
+            double maxSharing, long deadline) {
+        this.graph      = graph;
+        this.k          = k;
+        this.maxDetour  = maxDetour;
+        this.maxSharing = maxSharing;
+        this.deadline   = deadline;
+    }
+
+    /**
+     * @param maxEdges paths with more edges are not given; they are still
+     *        deviated from
+     */
+    public void setMaxEdges(int maxEdges) {
+        this.maxEdges = maxEdges;
+    }
+
+    /**
+     * @param budget checked with the deadline; its settled limit applies
+     *        to each spur search
+     */
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return whether the last search stopped at its deadline or budget
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Yen's k shortest simple paths.
+     *
+     * @param heuristic lower bound of the cost to t, CsrDijkstra.NONE for
+     *        plain Dijkstra spur searches
+     * @param listener receives CsrGraph edge indices of each path
+     * @return number of paths given
+     */
+    public int kShortest(int s, int t, CsrDijkstra.Heuristic heuristic,
+            Consumer<int[]> listener) {
+        reset();
+        if( s == t ) {
+            listener.accept(new int[0]);
+            return 1;
+        }
+        int[] shortest = spur(s, t, heuristic, Double.POSITIVE_INFINITY);
+        if( shortest == null ) {
+            return 0;
+        }
+        double bound = cost(shortest) * maxDetour;
+
+        List<int[]> found = new ArrayList<int[]>();
+        PriorityQueue<Candidate> candidates = new PriorityQueue<Candidate>();
+        Set<PathKey> seen = new HashSet<PathKey>();
+        seen.add(new PathKey(shortest));
+        candidates.add(new Candidate(shortest, cost(shortest)));
+
+        while( accepted.size() < k && !candidates.isEmpty() ) {
+            Candidate c = candidates.poll();
+            found.add(c.edges);
+            offer(c.edges, c.cost, listener);
+            if( accepted.size() == k || expired() ) {
+                break;
+            }
+            deviate(c.edges, found, t, heuristic, bound, candidates, seen);
+        }
+        return accepted.size();
+    }
+
+    /**
+     * Via vertex alternatives on the hierarchy of the graph, the shortest
+     * path first.
+     *
+     * @param listener receives CsrGraph edge indices of each path
+     * @return number of paths given
+     */
+    public int viaNodes(ContractionHierarchy ch, int s, int t,
+            Consumer<int[]> listener) {
+        reset();
+        if( s == t ) {
+            listener.accept(new int[0]);
+            return 1;
+        }
+        int n = graph.vertexCount();
+        ManyToMany.Upward forward = ManyToMany.Upward.acquire(n);
+        ManyToMany.Upward backward = ManyToMany.Upward.acquire(n);
+        try {
+            return viaNodes(ch, s, t, forward, backward, listener);
+        }
+        finally {
+            forward.release();
+            backward.release();
+        }
+    }
+
+    private int viaNodes(ContractionHierarchy ch, int s, int t,
+            final ManyToMany.Upward forward, final ManyToMany.Upward backward,
+            Consumer<int[]> listener) {
+        forward.run(ch, s, true);
+        backward.run(ch, t, false);
+
+        IntList vias = new IntList();
+        double best = Double.POSITIVE_INFINITY;
+        for(int i=0;i<forward.reached.size();i++) {
+            int v = forward.reached.get(i);
+            double d = forward.dist[v] + backward.dist[v];
+            if( d < Double.POSITIVE_INFINITY ) {
+                vias.add(v);
+                best = Math.min(best, d);
+            }
+        }
+        if( best == Double.POSITIVE_INFINITY ) {
+            return 0;
+        }
+        double bound = best * maxDetour;
+
+        Integer[] order = new Integer[vias.size()];
+        for(int i=0;i<order.length;i++) {
+            order[i] = vias.get(i);
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(
+                forward.dist[a] + backward.dist[a],
+                forward.dist[b] + backward.dist[b]));
+
+        for(int i=0;i<order.length && accepted.size()<k;i++) {
+            int v = order[i];
+            double d = forward.dist[v] + backward.dist[v];
+            if( d > bound || expired() ) {
+                break;
+            }
+            int[] path = viaPath(ch, forward, backward, s, t, v);
+            /**
+             * Up and down paths that cross each other give a loop
+             */
+            forward.clearMarks();
+            forward.mark(s);
+            boolean simple = true;
+            for(int e : path) {
+                if( !forward.mark(graph.target(e)) ) {
+                    simple = false;
+                    break;
+                }
+            }
+            if( simple ) {
+                offer(path, d, listener);
+            }
+        }
+        return accepted.size();
+    }
+
+    private void reset() {
+        accepted.clear();
+        timedOut = false;
+    }
+
+    private boolean expired() {
+        return expired(0);
+    }
+
+    /**
+     * @param settled vertices settled by the current spur search
+     */
+    private boolean expired(int settled) {
+        if( !timedOut && (System.nanoTime() - deadline > 0 
+                || budget.isExceeded(settled)) ) {
+            timedOut = true;
+        }
+        return timedOut;
+    }
+
+    /**
+     * Gives a path unless it is too long, or too similar to one given
+     * before.
+     */
+    private void offer(int[] path, double cost, Consumer<int[]> listener) {
+        if( path.length > maxEdges ) {
+            return;
+        }
+        for(int i=0;i<accepted.size();i++) {
+            if( shared(path, accepted.get(i)) > maxSharing * cost ) {
+                return;
+            }
+        }
+        accepted.add(path);
+        listener.accept(path);
+    }
+
+    /**
+     * @return cost of the edges of path that other also uses
+     */
+    private double shared(int[] path, int[] other) {
+        int[] sorted = other.clone();
+        Arrays.sort(sorted);
+        double retVal = 0;
+        for(int e : path) {
+            if( Arrays.binarySearch(sorted, e) >= 0 ) {
+                retVal += graph.weight(e);
+            }
+        }
+        return retVal;
+    }
+
+    private double cost(int[] path) {
+        double retVal = 0;
+        for(int e : path) {
+            retVal += graph.weight(e);
+        }
+        return retVal;
+    }
+
+    /**
+     * Adds the deviations of path at each of its vertices to candidates.
+     */
+    private void deviate(int[] path, List<int[]> found, int t,
+            CsrDijkstra.Heuristic heuristic, double bound,
+            PriorityQueue<Candidate> candidates, Set<PathKey> seen) {
+        /**
+         * samePrefix[q]: found path q starts with the root path so far
+         */
+        boolean[] samePrefix = new boolean[found.size()];
+        Arrays.fill(samePrefix, true);
+        IntList bannedEdges = new IntList();
+        double rootCost = 0;
+
+        for(int i=0;i<path.length;i++) {
+            if( expired() ) {
+                return;
+            }
+            int spurVertex = graph.source(path[i]);
+            newBans();
+            for(int j=0;j<i;j++) {
+                banned[graph.source(path[j])] = banStamp;
+            }
+            bannedEdges.clear();
+            for(int q=0;q<found.size();q++) {
+                int[] other = found.get(q);
+                if( samePrefix[q] && other.length > i ) {
+                    bannedEdges.add(other[i]);
+                }
+            }
+
+            int[] spurPath = spur(spurVertex, t, heuristic, bound - rootCost,
+                    bannedEdges);
+            if( spurPath != null ) {
+                int[] total = Arrays.copyOf(path, i + spurPath.length);
+                System.arraycopy(spurPath, 0, total, i, spurPath.length);
+                PathKey key = new PathKey(total);
+                if( seen.add(key) ) {
+                    candidates.add(new Candidate(total,
+                            rootCost + cost(spurPath)));
+                }
+            }
+
+            for(int q=0;q<found.size();q++) {
+                int[] other = found.get(q);
+                samePrefix[q] &= other.length > i && other[i] == path[i];
+            }
+            rootCost += graph.weight(path[i]);
+        }
+    }
+
+    private int[] spur(int s, int t, CsrDijkstra.Heuristic heuristic,
+            double radius) {
+        newBans();
+        return spur(s, t, heuristic, radius, new IntList());
+    }
+
+    /**
+     * Lifts the vertex bans of the previous spur search.
+     */
+    private void newBans() {
+        if( dist == null ) {
+            int n = graph.vertexCount();
+            dist = new double[n];
+            predEdge = new int[n];
+            banned = new int[n];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        }
+        banStamp++;
+    }
+
+    /**
+     * A* from s to t that does not enter the vertices banned since
+     * newBans nor leave s by bannedEdges, and gives up beyond radius.
+     *
+     * @return edge indices of the path, null when there is none
+     */
+    private int[] spur(int s, int t, CsrDijkstra.Heuristic heuristic,
+            double radius, IntList bannedEdges) {
+        for(int i=0;i<reached.size();i++) {
+            dist[reached.get(i)] = Double.POSITIVE_INFINITY;
+        }
+        reached.clear();
+        heap.clear();
+
+        dist[s] = 0d;
+        reached.add(s);
+        heap.push(s, heuristic.estimate(s, t));
+        int settled = 0;
+        while( !heap.isEmpty() ) {
+            double key = heap.peekKey();
+            int u = heap.poll();
+            double du = dist[u];
+            if( key > du + heuristic.estimate(u, t) ) {
+                continue;
+            }
+            if( key > radius ) {
+                return null;
+            }
+            if( u == t ) {
+                return trace(s, t);
+            }
+            if( ++settled % CLOCK_INTERVAL == 0 && expired(settled) ) {
+                return null;
+            }
+            edges:
+            for(int e=graph.firstOut(u), end=graph.endOut(u); e<end; e++) {
+                int v = graph.target(e);
+                if( banned[v] == banStamp ) {
+                    continue;
+                }
+                if( u == s ) {
+                    for(int i=0;i<bannedEdges.size();i++) {
+                        if( bannedEdges.get(i) == e ) {
+                            continue edges;
+                        }
+                    }
+                }
+                double dv = du + graph.weight(e);
+                if( dv < dist[v] ) {
+                    if( dist[v] == Double.POSITIVE_INFINITY ) {
+                        reached.add(v);
+                    }
+                    dist[v] = dv;
+                    predEdge[v] = e;
+                    heap.push(v, dv + heuristic.estimate(v, t));
+                }
+            }
+        }
+        return null;
+    }
+
+    private int[] trace(int s, int t) {
+        int length = 0;
+        for(int v=t; v!=s; v=graph.source(predEdge[v])) {
+            length++;
+        }
+        int[] retVal = new int[length];
+        for(int v=t; v!=s; v=graph.source(predEdge[v])) {
+            retVal[--length] = predEdge[v];
+        }
+        return retVal;
+    }
+
+    /**
+     * Unpacks the upward arcs from s to v and the downward arcs from v to
+     * t.
+     */
+    private static int[] viaPath(ContractionHierarchy ch,
+            ManyToMany.Upward forward, ManyToMany.Upward backward,
+            int s, int t, int v) {
+        ContractionHierarchy.EdgeList edges =
+                new ContractionHierarchy.EdgeList();
+        IntList up = new IntList();
+        for(int w=v; w!=s; w=ch.arcTail[forward.pred[w]]) {
+            up.add(forward.pred[w]);
+        }
+        for(int i=up.size()-1;i>=0;i--) {
+            ch.unpack(up.get(i), edges);
+        }
+        for(int w=v; w!=t; w=ch.arcHead[backward.pred[w]]) {
+            ch.unpack(backward.pred[w], edges);
+        }
+        return edges.toArray();
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+        final int[] edges;
+        final double cost;
+
+        Candidate(int[] edges, double cost) {
+            this.edges = edges;
+            this.cost  = cost;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            return Double.compare(cost, o.cost);
+        }
+    }
+
+    private static final class PathKey {
+        final int[] edges;
+        final int hash;
+
+        PathKey(int[] edges) {
+            this.edges = edges;
+            this.hash  = Arrays.hashCode(edges);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PathKey
+                    && Arrays.equals(edges, ((PathKey) o).edges);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：BatchRequest.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.List;
+
+/**
+ * 説明：
+ * Routes of a batch request, either as [source, target] node id pairs or
+ * as [source_x, source_y, target_x, target_y] points, and the algorithm
+ * that searches them (dijkstra when omitted).
+ */
+public class BatchRequest {
+
+    private String algorithm;
+    private List<List<Integer>> pairs;
+    private List<List<Double>> points;
+
+    /**
+     * @return algorithm を取得する
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @param algorithm algorithm を設定する
+     */
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * @return pairs を取得する
+     */
+    public List<List<Integer>> getPairs() {
+        return pairs;
+    }
+
+    /**
+     * @param pairs pairs を設定する
+     */
+    public void setPairs(List<List<Integer>> pairs) {
+        this.pairs = pairs;
+    }
+
+    /**
+     * @return points を取得する
+     */
+    public List<List<Double>> getPoints() {
+        return points;
+    }
+
+    /**
+     * @param points points を設定する
+     */
+    public void setPoints(List<List<Double>> points) {
+        this.points = points;
+    }
+}
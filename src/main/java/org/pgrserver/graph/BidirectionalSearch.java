@@ -0,0 +1,387 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：BidirectionalSearch.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.pgrserver.util.IndexedIntHeap;
+import org.pgrserver.util.IntIntHashMap;
+
+/**
+ * 説明：
+ * Bidirectional Dijkstra and breadth first searches on a CsrGraph, run
+ * on a reusable workspace.
+ *
+ * A workspace holds the distance, predecessor and queue arrays of both
+ * directions, sized for the graph once. Instead of clearing them, every
+ * search takes a new stamp, and an entry only counts when its vertex
+ * carries the current stamp. Workspaces are kept in a small pool, so that
+ * a search in steady state allocates nothing but the returned path.
+ *
+ * Edges with an infinite weight (closed by a weight update) are not
+ * followed by either search. A search that exhausts its SearchBudget
+ * stops as if the target were not reachable.
+ */
+public class BidirectionalSearch {
+
+    private static final int[] EMPTY = new int[0];
+
+    private static final ArrayBlockingQueue<BidirectionalSearch> POOL =
+            new ArrayBlockingQueue<BidirectionalSearch>(
+                    2 * Runtime.getRuntime().availableProcessors());
+
+    private final int capacity;
+    private final int[] stampF;
+    private final int[] stampB;
+    private final double[] distF;
+    private final double[] distB;
+    private final int[] predF;
+    private final int[] predB;
+    private final IndexedIntHeap heapF;
+    private final IndexedIntHeap heapB;
+    private final int[] queueF;
+    private final int[] queueB;
+    private int stamp;
+    private int settled;
+
+    /**
+     * @param capacity largest vertex count of the graphs to search
+     */
+    public BidirectionalSearch(int capacity) {
+        this.capacity = capacity;
+        stampF = new int[capacity];
+        stampB = new int[capacity];
+        distF  = new double[capacity];
+        distB  = new double[capacity];
+        predF  = new int[capacity];
+        predB  = new int[capacity];
+        heapF  = new IndexedIntHeap(capacity);
+        heapB  = new IndexedIntHeap(capacity);
+        queueF = new int[capacity];
+        queueB = new int[capacity];
+    }
+
+    /**
+     * Takes a workspace for a graph with vertexCount vertices from the
+     * pool, or creates one. Hand it back with release.
+     */
+    public static BidirectionalSearch acquire(int vertexCount) {
+        BidirectionalSearch search;
+        while( (search = POOL.poll()) != null ) {
+            if( search.capacity >= vertexCount ) {
+                return search;
+            }
+        }
+        return new BidirectionalSearch(vertexCount);
+    }
+
+    /**
+     * Returns the workspace to the pool; it is dropped when the pool is
+     * full.
+     */
+    public void release() {
+        POOL.offer(this);
+    }
+
+    /**
+     * @return vertices settled (Dijkstra) or expanded (BFS) by the
+     *         searches of this workspace so far
+     */
+    public int settledCount() {
+        return settled;
+    }
+
+    /**
+     * Bidirectional Dijkstra. The side with the smaller queue key is
+     * expanded, and the search stops once the two keys add up to at least
+     * the best connection found.
+     *
+     * @return edge indices of the shortest path from source to target,
+     *         an empty array when source equals target, or null when the
+     *         target is not reachable
+     */
+    public int[] shortestPath(CsrGraph graph, int source, int target) {
+        return shortestPath(graph, source, target, SearchBudget.UNLIMITED);
+    }
+
+    public int[] shortestPath(CsrGraph graph, int source, int target,
+            SearchBudget budget) {
+        if( source == target ) {
+            return EMPTY;
+        }
+        begin();
+        heapF.clear();
+        heapB.clear();
+        stampF[source] = stamp;
+        distF[source]  = 0d;
+        predF[source]  = -1;
+        heapF.pushOrDecrease(source, 0d);
+        stampB[target] = stamp;
+        distB[target]  = 0d;
+        predB[target]  = -1;
+        heapB.pushOrDecrease(target, 0d);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        int count = 0;
+        while( heapF.peekKey() + heapB.peekKey() < best ) {
+            if( SearchBudget.due(++count) && budget.isExceeded(count) ) {
+                return null;
+            }
+            boolean forward = heapF.peekKey() <= heapB.peekKey();
+            IndexedIntHeap heap = forward ? heapF : heapB;
+            double[] dist  = forward ? distF : distB;
+            int[] pred     = forward ? predF : predB;
+            int[] seen     = forward ? stampF : stampB;
+            double[] other = forward ? distB : distF;
+            int[] otherSeen = forward ? stampB : stampF;
+
+            int u = heap.poll();
+            double du = dist[u];
+            settled++;
+            int first = forward ? graph.firstOut(u) : graph.firstIn(u);
+            int end = forward ? graph.endOut(u) : graph.endIn(u);
+            for(int i=first;i<end;i++) {
+                int e = forward ? i : graph.inEdge(i);
+                double w = graph.weight(e);
+                if( w == Double.POSITIVE_INFINITY ) {
+                    continue;
+                }
+                int v = forward ? graph.target(e) : graph.source(e);
+                double dv = du + w;
+                if( seen[v] != stamp || dv < dist[v] ) {
+                    seen[v] = stamp;
+                    dist[v] = dv;
+                    pred[v] = e;
+                    heap.pushOrDecrease(v, dv);
+                    if( otherSeen[v] == stamp && dv + other[v] < best ) {
+                        best = dv + other[v];
+                        meet = v;
+                    }
+                }
+            }
+        }
+        return meet < 0 ? null : tracePath(graph, meet, -1);
+    }
+
+    /**
+     * Bidirectional breadth first search. Whole levels of the side with
+     * the smaller frontier are expanded; the first level that touches the
+     * other side gives the path with the fewest edges.
+     *
+     * @return edge indices of a path from source to target with the
+     *         fewest edges, an empty array when source equals target, or
+     *         null when the target is not reachable
+     */
+    public int[] fewestHops(CsrGraph graph, int source, int target) {
+        return fewestHops(graph, source, target, SearchBudget.UNLIMITED);
+    }
+
+    public int[] fewestHops(CsrGraph graph, int source, int target,
+            SearchBudget budget) {
+        if( source == target ) {
+            return EMPTY;
+        }
+        begin();
+        stampF[source] = stamp;
+        distF[source]  = 0d;
+        predF[source]  = -1;
+        queueF[0] = source;
+        stampB[target] = stamp;
+        distB[target]  = 0d;
+        predB[target]  = -1;
+        queueB[0] = target;
+        int headF = 0, tailF = 1, headB = 0, tailB = 1;
+        int count = 0;
+
+        while( headF < tailF && headB < tailB ) {
+            boolean forward = tailF - headF <= tailB - headB;
+            int[] queue    = forward ? queueF : queueB;
+            double[] dist  = forward ? distF : distB;
+            int[] pred     = forward ? predF : predB;
+            int[] seen     = forward ? stampF : stampB;
+            double[] other = forward ? distB : distF;
+            int[] otherSeen = forward ? stampB : stampF;
+            int head = forward ? headF : headB;
+            int tail = forward ? tailF : tailB;
+            int level = tail;
+
+            double best = Double.POSITIVE_INFINITY;
+            int meetEdge = -1;
+            for(int q=head;q<level;q++) {
+                int u = queue[q];
+                settled++;
+                if( SearchBudget.due(++count) && budget.isExceeded(count) ) {
+                    return null;
+                }
+                int first = forward ? graph.firstOut(u) : graph.firstIn(u);
+                int end = forward ? graph.endOut(u) : graph.endIn(u);
+                for(int i=first;i<end;i++) {
+                    int e = forward ? i : graph.inEdge(i);
+                    if( graph.weight(e) == Double.POSITIVE_INFINITY ) {
+                        continue;
+                    }
+                    int v = forward ? graph.target(e) : graph.source(e);
+                    if( otherSeen[v] == stamp && other[v] < best ) {
+                        best = other[v];
+                        meetEdge = e;
+                    }
+                    if( seen[v] != stamp ) {
+                        seen[v] = stamp;
+                        dist[v] = dist[u] + 1;
+                        pred[v] = e;
+                        queue[tail++] = v;
+                    }
+                }
+            }
+            if( meetEdge >= 0 ) {
+                return tracePath(graph, graph.source(meetEdge), meetEdge);
+            }
+            if( forward ) {
+                headF = level;
+                tailF = tail;
+            }
+            else {
+                headB = level;
+                tailB = tail;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Dijkstra from source until every target is settled, using the
+     * forward arrays of the workspace.
+     *
+     * @param out receives the cost to targets[j] at offset + j, +Infinity
+     *        when not reachable or the target is negative
+     */
+    public void oneToMany(CsrGraph graph, int source, int[] targets,
+            double[] out, int offset) {
+        oneToMany(graph, source, targets, out, offset, 
+                SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * See oneToMany; the whole row is +Infinity when the budget runs out.
+     */
+    public void oneToMany(CsrGraph graph, int source, int[] targets,
+            double[] out, int offset, SearchBudget budget) {
+        begin();
+        heapF.clear();
+        int pending = 0;
+        for(int t : targets) {
+            if( t >= 0 && stampB[t] != stamp ) {
+                stampB[t] = stamp;
+                pending++;
+            }
+        }
+        stampF[source] = stamp;
+        distF[source]  = 0d;
+        predF[source]  = -1;
+        heapF.pushOrDecrease(source, 0d);
+
+        int count = 0;
+        while( pending > 0 && !heapF.isEmpty() ) {
+            if( SearchBudget.due(++count) && budget.isExceeded(count) ) {
+                Arrays.fill(out, offset, offset + targets.length, 
+                        Double.POSITIVE_INFINITY);
+                return;
+            }
+            int u = heapF.poll();
+            double du = distF[u];
+            settled++;
+            if( stampB[u] == stamp ) {
+                pending--;
+            }
+            for(int e=graph.firstOut(u), end=graph.endOut(u); e<end; e++) {
+                double w = graph.weight(e);
+                if( w == Double.POSITIVE_INFINITY ) {
+                    continue;
+                }
+                int v = graph.target(e);
+                double dv = du + w;
+                if( stampF[v] != stamp || dv < distF[v] ) {
+                    stampF[v] = stamp;
+                    distF[v] = dv;
+                    predF[v] = e;
+                    heapF.pushOrDecrease(v, dv);
+                }
+            }
+        }
+        for(int j=0;j<targets.length;j++) {
+            int t = targets[j];
+            out[offset + j] = t >= 0 && stampF[t] == stamp ? distF[t] :
+                Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Keeps the shortest paths of the last oneToMany search to the given
+     * targets: the predecessor edge of every vertex on them, shared 
+     * prefixes stored once. Unreachable targets are left out.
+     * 
+     * @return vertex to predecessor edge, -1 for vertices not on a path
+     */
+    public IntIntHashMap pathTree(CsrGraph graph, int[] targets) {
+        IntIntHashMap tree = new IntIntHashMap(64, -1);
+        for(int t : targets) {
+            if( t < 0 || stampF[t] != stamp ) {
+                continue;
+            }
+            for(int v=t; predF[v]>=0 && !tree.containsKey(v); 
+                    v=graph.source(predF[v])) {
+                tree.put(v, predF[v]);
+            }
+        }
+        return tree;
+    }
+
+    private void begin() {
+        if( stamp == Integer.MAX_VALUE ) {
+            Arrays.fill(stampF, 0);
+            Arrays.fill(stampB, 0);
+            stamp = 0;
+        }
+        stamp++;
+    }
+
+    /**
+     * Joins the forward tree path from the source to meet, the edge
+     * between the trees when there is one, and the backward tree path to
+     * the target.
+     *
+     * @param meet vertex reached from the source
+     * @param bridge edge from meet to a vertex reached from the target,
+     *        or -1 when meet was reached from both sides
+     */
+    private int[] tracePath(CsrGraph graph, int meet, int bridge) {
+        int forward = 0;
+        for(int v=meet; predF[v]>=0; v=graph.source(predF[v])) {
+            forward++;
+        }
+        int last = bridge < 0 ? meet : graph.target(bridge);
+        int length = bridge < 0 ? forward : forward + 1;
+        for(int v=last; predB[v]>=0; v=graph.target(predB[v])) {
+            length++;
+        }
+        int[] retVal = new int[length];
+        int pos = forward;
+        for(int v=meet; predF[v]>=0; v=graph.source(predF[v])) {
+            retVal[--pos] = predF[v];
+        }
+        pos = forward;
+        if( bridge >= 0 ) {
+            retVal[pos++] = bridge;
+        }
+        for(int v=last; predB[v]>=0; v=graph.target(predB[v])) {
+            retVal[pos++] = predB[v];
+        }
+        return retVal;
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：CacheStatus.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+/**
+ * 説明：
+ * Counters of the route cache, returned by the status service. Requests
+ * that waited for an identical search in flight count as coalesced, not
+ * as hits or misses.
+ */
+public class CacheStatus {
+
+    private boolean enabled;
+    private int entries;
+    private long bytes;
+    private long maxBytes;
+    private long hits;
+    private long misses;
+    private long coalesced;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * @return enabled を取得する
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled enabled を設定する
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return entries を取得する
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * @param entries entries を設定する
+     */
+    public void setEntries(int entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * @return bytes を取得する
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @param bytes bytes を設定する
+     */
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return maxBytes を取得する
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @param maxBytes maxBytes を設定する
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return hits を取得する
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @param hits hits を設定する
+     */
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    /**
+     * @return misses を取得する
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @param misses misses を設定する
+     */
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+
+    /**
+     * @return coalesced を取得する
+     */
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * @param coalesced coalesced を設定する
+     */
+    public void setCoalesced(long coalesced) {
+        this.coalesced = coalesced;
+    }
+
+    /**
+     * @return evictions を取得する
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @param evictions evictions を設定する
+     */
+    public void setEvictions(long evictions) {
+        this.evictions = evictions;
+    }
+
+    /**
+     * @return invalidations を取得する
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * @param invalidations invalidations を設定する
+     */
+    public void setInvalidations(long invalidations) {
+        this.invalidations = invalidations;
+    }
+}
@@ -0,0 +1,568 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：ChPreprocessor.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.IntConsumer;
+
+import org.pgrserver.util.IntDoubleHeap;
+import org.pgrserver.util.ParallelLoop;
+
+/**
+ * 説明：
+ * Builds a ContractionHierarchy by contracting the graph in rounds.
+ *
+ * Each round picks an independent set of vertices whose priority
+ * (edge difference, contracted neighbours and depth) is a local minimum,
+ * computes the shortcuts every one of them needs, and then applies the
+ * shortcuts and removes the vertices. Witness searches of a round never
+ * pass through a vertex of the same round, so the shortcut and priority
+ * computations of a round only read the working graph and are spread over
+ * a thread pool. Graph updates are applied by the calling thread in a
+ * fixed order, which keeps the result independent of the thread count.
+ */
+class ChPreprocessor {
+
+    private static final int PRIORITY_SETTLE_LIMIT = 50;
+    private static final int CONTRACT_SETTLE_LIMIT = 500;
+    private static final int PARALLEL_CHUNK = 64;
+
+    private final CsrGraph graph;
+    private final int n;
+    private final int threads;
+    private ParallelLoop loop;
+
+    private final ThreadLocal<WitnessSearch> witnesses;
+    private final ThreadLocal<ShortcutBuffer> buffers;
+    private final List<ShortcutBuffer> allBuffers =
+            new ArrayList<ShortcutBuffer>();
+
+    private volatile int contractedCount;
+    private volatile boolean cancelled;
+
+    /** working adjacency, arc indices per vertex */
+    private final int[][] out;
+    private final int[] outSize;
+    private final int[][] in;
+    private final int[] inSize;
+
+    /** upward arcs recorded when a vertex is contracted */
+    private final int[][] up;
+    private final int[][] down;
+
+    private final int[] rank;
+    private final boolean[] contracted;
+    private final boolean[] contracting;
+    private final int[] priority;
+    private final int[] contractedNeighbours;
+    private final int[] depth;
+    private final int[] lastUpdate;
+
+    private int[] arcTail;
+    private int[] arcHead;
+    private double[] arcWeight;
+    private int[] arcChild1;
+    private int[] arcChild2;
+    private int arcCount;
+
+    ChPreprocessor(CsrGraph graph, int threads) {
+        this.graph = graph;
+        this.n = graph.vertexCount();
+        this.threads = Math.max(1, threads);
+        this.witnesses = ThreadLocal.withInitial(() -> new WitnessSearch(n));
+        this.buffers = ThreadLocal.withInitial(() -> {
+            ShortcutBuffer buffer = new ShortcutBuffer();
+            synchronized( allBuffers ) {
+                allBuffers.add(buffer);
+            }
+            return buffer;
+        });
+
+        out = new int[n][];
+        in  = new int[n][];
+        outSize = new int[n];
+        inSize  = new int[n];
+        up   = new int[n][];
+        down = new int[n][];
+
+        rank = new int[n];
+        contracted  = new boolean[n];
+        contracting = new boolean[n];
+        priority = new int[n];
+        contractedNeighbours = new int[n];
+        depth = new int[n];
+        lastUpdate = new int[n];
+
+        int m = graph.edgeCount();
+        arcTail   = new int[m + 16];
+        arcHead   = new int[m + 16];
+        arcWeight = new double[m + 16];
+        arcChild1 = new int[m + 16];
+        arcChild2 = new int[m + 16];
+    }
+
+    /**
+     * @return number of vertices contracted so far
+     */
+    int progress() {
+        return contractedCount;
+    }
+
+    int vertexCount() {
+        return n;
+    }
+
+    /**
+     * Makes a running contraction stop with a CancellationException at
+     * the end of its current round.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    ContractionHierarchy run() {
+        loop = new ParallelLoop(threads, PARALLEL_CHUNK, "ch-contract");
+        try {
+            return contract();
+        }
+        finally {
+            loop.close();
+            loop = null;
+            witnesses.remove();
+            buffers.remove();
+        }
+    }
+
+    private ContractionHierarchy contract() {
+        for(int v=0;v<n;v++) {
+            out[v] = new int[Math.max(2, graph.endOut(v) - graph.firstOut(v))];
+            in[v]  = new int[Math.max(2, graph.endIn(v) - graph.firstIn(v))];
+        }
+        for(int e=0;e<graph.edgeCount();e++) {
+            int s = graph.source(e);
+            int t = graph.target(e);
+            if( s != t ) {
+                addOrImprove(s, t, graph.weight(e), -1, e);
+            }
+        }
+
+        parallelFor(n, v -> priority[v] = computePriority(v));
+
+        int[] remaining = new int[n];
+        for(int v=0;v<n;v++) {
+            remaining[v] = v;
+        }
+        int remainingCount = n;
+        int nextRank = 0;
+        int round = 0;
+
+        while( remainingCount > 0 ) {
+            if( cancelled ) {
+                throw new CancellationException("Contraction cancelled");
+            }
+            final int[] set = selectIndependentSet(remaining, remainingCount);
+
+            for(int v : set) {
+                contracting[v] = true;
+            }
+            for(ShortcutBuffer buffer : allBuffers) {
+                buffer.clear();
+            }
+            final ShortcutBuffer[] owner = new ShortcutBuffer[set.length];
+            final int[] first = new int[set.length];
+            final int[] last = new int[set.length];
+            parallelFor(set.length, i -> {
+                ShortcutBuffer buffer = buffers.get();
+                owner[i] = buffer;
+                first[i] = buffer.size;
+                findShortcuts(set[i], set[i], CONTRACT_SETTLE_LIMIT, buffer);
+                last[i] = buffer.size;
+            });
+
+            for(int i=0;i<set.length;i++) {
+                ShortcutBuffer shortcuts = owner[i];
+                for(int k=first[i];k<last[i];k++) {
+                    addOrImprove(shortcuts.from[k], shortcuts.to[k],
+                            shortcuts.weight[k], shortcuts.child1[k],
+                            shortcuts.child2[k]);
+                }
+            }
+            for(int v : set) {
+                removeVertex(v);
+                rank[v] = nextRank++;
+            }
+            contractedCount = nextRank;
+
+            int kept = 0;
+            for(int i=0;i<remainingCount;i++) {
+                if( !contracted[remaining[i]] ) {
+                    remaining[kept++] = remaining[i];
+                }
+            }
+            remainingCount = kept;
+
+            updateNeighbourPriorities(set, ++round);
+        }
+        return buildHierarchy();
+    }
+
+    private void parallelFor(int count, IntConsumer body) {
+        loop.run(count, body);
+    }
+
+    /**
+     * A vertex is selected when its priority is smaller than the priority
+     * of every remaining neighbour; ties are broken by a vertex hash.
+     */
+    private int[] selectIndependentSet(int[] remaining, int count) {
+        int[] set = new int[16];
+        int size = 0;
+        for(int i=0;i<count;i++) {
+            int v = remaining[i];
+            if( isLocalMinimum(v) ) {
+                if( size == set.length ) {
+                    set = Arrays.copyOf(set, size * 2);
+                }
+                set[size++] = v;
+            }
+        }
+        return Arrays.copyOf(set, size);
+    }
+
+    private boolean isLocalMinimum(int v) {
+        for(int i=0;i<outSize[v];i++) {
+            if( !before(v, arcHead[out[v][i]]) ) {
+                return false;
+            }
+        }
+        for(int i=0;i<inSize[v];i++) {
+            if( !before(v, arcTail[in[v][i]]) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean before(int v, int u) {
+        if( priority[v] != priority[u] ) {
+            return priority[v] < priority[u];
+        }
+        int hv = hash(v), hu = hash(u);
+        return hv != hu ? hv < hu : v < u;
+    }
+
+    private static int hash(int v) {
+        int h = v * 0x9E3779B9;
+        return h ^ (h >>> 15);
+    }
+
+    private int computePriority(int v) {
+        int shortcuts = findShortcuts(v, v, PRIORITY_SETTLE_LIMIT, null);
+        int edgeDifference = shortcuts - inSize[v] - outSize[v];
+        return 2 * edgeDifference + contractedNeighbours[v] + depth[v];
+    }
+
+    /**
+     * Updates contracted-neighbour counts and depths around the vertices
+     * of a finished round and recomputes the priority of each neighbour
+     * once.
+     */
+    private void updateNeighbourPriorities(int[] set, int round) {
+        int[] touched = new int[16];
+        int count = 0;
+        for(int v : set) {
+            for(int pass=0;pass<2;pass++) {
+                int[] arcs = pass == 0 ? up[v] : down[v];
+                for(int a : arcs) {
+                    int u = pass == 0 ? arcHead[a] : arcTail[a];
+                    contractedNeighbours[u]++;
+                    depth[u] = Math.max(depth[u], depth[v] + 1);
+                    if( lastUpdate[u] != round ) {
+                        lastUpdate[u] = round;
+                        if( count == touched.length ) {
+                            touched = Arrays.copyOf(touched, count * 2);
+                        }
+                        touched[count++] = u;
+                    }
+                }
+            }
+        }
+        final int[] update = touched;
+        parallelFor(count, i -> priority[update[i]] = computePriority(update[i]));
+    }
+
+    /**
+     * Counts, and collects into buffer when given, the shortcuts needed
+     * to contract v. Witness searches skip the excluded vertex and every
+     * vertex flagged as contracting.
+     */
+    private int findShortcuts(int v, int excluded, int settleLimit,
+            ShortcutBuffer buffer) {
+        WitnessSearch witness = witnesses.get();
+        int count = 0;
+        double maxOut = 0d;
+        for(int j=0;j<outSize[v];j++) {
+            maxOut = Math.max(maxOut, arcWeight[out[v][j]]);
+        }
+        for(int i=0;i<inSize[v];i++) {
+            int inArc = in[v][i];
+            int u = arcTail[inArc];
+            double wIn = arcWeight[inArc];
+
+            witness.run(u, wIn + maxOut, settleLimit, excluded);
+
+            for(int j=0;j<outSize[v];j++) {
+                int outArc = out[v][j];
+                int w = arcHead[outArc];
+                if( w == u ) {
+                    continue;
+                }
+                double via = wIn + arcWeight[outArc];
+                if( witness.distance(w) > via ) {
+                    count++;
+                    if( buffer != null ) {
+                        buffer.add(u, w, via, inArc, outArc);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private void addOrImprove(int from, int to, double weight,
+            int child1, int child2) {
+        for(int i=0;i<outSize[from];i++) {
+            int a = out[from][i];
+            if( arcHead[a] == to ) {
+                if( arcWeight[a] <= weight ) {
+                    return;
+                }
+                int b = newArc(from, to, weight, child1, child2);
+                out[from][i] = b;
+                for(int j=0;j<inSize[to];j++) {
+                    if( in[to][j] == a ) {
+                        in[to][j] = b;
+                    }
+                }
+                return;
+            }
+        }
+        int b = newArc(from, to, weight, child1, child2);
+        if( outSize[from] == out[from].length ) {
+            out[from] = Arrays.copyOf(out[from], outSize[from] * 2);
+        }
+        out[from][outSize[from]++] = b;
+        if( inSize[to] == in[to].length ) {
+            in[to] = Arrays.copyOf(in[to], inSize[to] * 2);
+        }
+        in[to][inSize[to]++] = b;
+    }
+
+    private int newArc(int from, int to, double weight,
+            int child1, int child2) {
+        if( arcCount == arcTail.length ) {
+            int capacity = arcCount + (arcCount >> 1);
+            arcTail   = Arrays.copyOf(arcTail, capacity);
+            arcHead   = Arrays.copyOf(arcHead, capacity);
+            arcWeight = Arrays.copyOf(arcWeight, capacity);
+            arcChild1 = Arrays.copyOf(arcChild1, capacity);
+            arcChild2 = Arrays.copyOf(arcChild2, capacity);
+        }
+        arcTail[arcCount]   = from;
+        arcHead[arcCount]   = to;
+        arcWeight[arcCount] = weight;
+        arcChild1[arcCount] = child1;
+        arcChild2[arcCount] = child2;
+        return arcCount++;
+    }
+
+    /**
+     * Records the remaining arcs of v as its upward arcs and unlinks v
+     * from its neighbours.
+     */
+    private void removeVertex(int v) {
+        up[v]   = Arrays.copyOf(out[v], outSize[v]);
+        down[v] = Arrays.copyOf(in[v], inSize[v]);
+
+        for(int a : up[v]) {
+            int w = arcHead[a];
+            inSize[w] = removeArc(in[w], inSize[w], a);
+        }
+        for(int a : down[v]) {
+            int u = arcTail[a];
+            outSize[u] = removeArc(out[u], outSize[u], a);
+        }
+        out[v] = null;
+        in[v]  = null;
+        outSize[v] = 0;
+        inSize[v]  = 0;
+        contracting[v] = false;
+        contracted[v]  = true;
+    }
+
+    private static int removeArc(int[] list, int size, int arc) {
+        for(int i=0;i<size;i++) {
+            if( list[i] == arc ) {
+                list[i] = list[size - 1];
+                return size - 1;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Keeps only the recorded upward arcs, renumbers them and lays them
+     * out as offset arrays.
+     */
+    private ContractionHierarchy buildHierarchy() {
+        int[] newIndex = new int[arcCount];
+        Arrays.fill(newIndex, -1);
+        int kept = 0;
+        for(int v=0;v<n;v++) {
+            for(int a : up[v]) {
+                newIndex[a] = kept++;
+            }
+            for(int a : down[v]) {
+                newIndex[a] = kept++;
+            }
+        }
+
+        int[] tail = new int[kept];
+        int[] head = new int[kept];
+        double[] weight = new double[kept];
+        int[] child1 = new int[kept];
+        int[] child2 = new int[kept];
+        for(int a=0;a<arcCount;a++) {
+            int b = newIndex[a];
+            if( b < 0 ) {
+                continue;
+            }
+            tail[b]   = arcTail[a];
+            head[b]   = arcHead[a];
+            weight[b] = arcWeight[a];
+            if( arcChild1[a] < 0 ) {
+                child1[b] = -1;
+                child2[b] = arcChild2[a];
+            }
+            else {
+                child1[b] = newIndex[arcChild1[a]];
+                child2[b] = newIndex[arcChild2[a]];
+            }
+        }
+
+        int[] upOffsets = new int[n + 1];
+        int[] downOffsets = new int[n + 1];
+        for(int v=0;v<n;v++) {
+            upOffsets[v + 1]   = upOffsets[v] + up[v].length;
+            downOffsets[v + 1] = downOffsets[v] + down[v].length;
+        }
+        int[] upArcs = new int[upOffsets[n]];
+        int[] downArcs = new int[downOffsets[n]];
+        for(int v=0;v<n;v++) {
+            for(int i=0;i<up[v].length;i++) {
+                upArcs[upOffsets[v] + i] = newIndex[up[v][i]];
+            }
+            for(int i=0;i<down[v].length;i++) {
+                downArcs[downOffsets[v] + i] = newIndex[down[v][i]];
+            }
+        }
+
+        return new ContractionHierarchy(rank, upOffsets, upArcs,
+                downOffsets, downArcs, tail, head, weight, child1, child2);
+    }
+
+    /**
+     * Shortcuts found for the vertices of one round.
+     */
+    private static class ShortcutBuffer {
+        int[] from = new int[16];
+        int[] to = new int[16];
+        double[] weight = new double[16];
+        int[] child1 = new int[16];
+        int[] child2 = new int[16];
+        int size;
+
+        void add(int f, int t, double w, int c1, int c2) {
+            if( size == from.length ) {
+                int capacity = size * 2;
+                from   = Arrays.copyOf(from, capacity);
+                to     = Arrays.copyOf(to, capacity);
+                weight = Arrays.copyOf(weight, capacity);
+                child1 = Arrays.copyOf(child1, capacity);
+                child2 = Arrays.copyOf(child2, capacity);
+            }
+            from[size]   = f;
+            to[size]     = t;
+            weight[size] = w;
+            child1[size] = c1;
+            child2[size] = c2;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Bounded Dijkstra on the not yet contracted vertices. Distances are
+     * invalidated by bumping a timestamp instead of clearing the arrays.
+     */
+    private class WitnessSearch {
+        private final double[] dist;
+        private final int[] stamp;
+        private final IntDoubleHeap heap = new IntDoubleHeap(64);
+        private int now;
+
+        WitnessSearch(int n) {
+            dist = new double[n];
+            stamp = new int[n];
+        }
+
+        void run(int source, double maxDist, int settleLimit,
+                int excluded) {
+            now++;
+            heap.clear();
+            dist[source] = 0d;
+            stamp[source] = now;
+            heap.push(source, 0d);
+
+            int settled = 0;
+            while( !heap.isEmpty() && settled < settleLimit ) {
+                double du = heap.peekKey();
+                if( du > maxDist ) {
+                    break;
+                }
+                int u = heap.poll();
+                if( du > dist[u] ) {
+                    continue;
+                }
+                settled++;
+                for(int i=0;i<outSize[u];i++) {
+                    int a = out[u][i];
+                    int w = arcHead[a];
+                    if( w == excluded || contracting[w] ) {
+                        continue;
+                    }
+                    double dw = du + arcWeight[a];
+                    if( stamp[w] != now || dw < dist[w] ) {
+                        dist[w] = dw;
+                        stamp[w] = now;
+                        heap.push(w, dw);
+                    }
+                }
+            }
+        }
+
+        double distance(int v) {
+            return stamp[v] == now ? dist[v] : Double.POSITIVE_INFINITY;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：ContractionHierarchy.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.pgrserver.util.BinaryFileReader;
+import org.pgrserver.util.BinaryFileWriter;
+
+/**
+ * 説明：
+ * Contraction hierarchy over a CsrGraph, stored in primitive arrays.
+ *
+ * Every arc is either an original graph edge or a shortcut made of two
+ * other arcs. The upward arcs leaving a vertex (towards a higher rank) are
+ * used by the forward search, the arcs entering a vertex from a higher
+ * rank by the backward search. For an original edge arcChild1 is -1 and
+ * arcChild2 holds the CsrGraph edge index.
+ */
+public class ContractionHierarchy {
+
+    private static final int FILE_MAGIC = 0x50474348;
+    private static final int FILE_VERSION = 1;
+
+    final int[] rank;
+
+    final int[] upOffsets;
+    final int[] upArcs;
+    final int[] downOffsets;
+    final int[] downArcs;
+
+    final int[] arcTail;
+    final int[] arcHead;
+    final double[] arcWeight;
+    final int[] arcChild1;
+    final int[] arcChild2;
+
+    ContractionHierarchy(int[] rank, int[] upOffsets, int[] upArcs,
+            int[] downOffsets, int[] downArcs, int[] arcTail, int[] arcHead,
+            double[] arcWeight, int[] arcChild1, int[] arcChild2) {
+        this.rank        = rank;
+        this.upOffsets   = upOffsets;
+        this.upArcs      = upArcs;
+        this.downOffsets = downOffsets;
+        this.downArcs    = downArcs;
+        this.arcTail     = arcTail;
+        this.arcHead     = arcHead;
+        this.arcWeight   = arcWeight;
+        this.arcChild1   = arcChild1;
+        this.arcChild2   = arcChild2;
+    }
+
+    /**
+     * Contracts every vertex of the graph using all available cores.
+     */
+    public static ContractionHierarchy build(CsrGraph graph) {
+        return build(graph, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static ContractionHierarchy build(CsrGraph graph, int threads) {
+        return new ChPreprocessor(graph, threads).run();
+    }
+
+    /**
+     * Writes the hierarchy to file, tagged with the checksum of the graph
+     * it was built from.
+     */
+    public void write(Path file, long graphChecksum) throws IOException {
+        try( BinaryFileWriter writer = new BinaryFileWriter(file) ) {
+            writer.writeInt(FILE_MAGIC);
+            writer.writeInt(FILE_VERSION);
+            writer.writeLong(graphChecksum);
+            writer.writeInts(rank);
+            writer.writeInts(upOffsets);
+            writer.writeInts(upArcs);
+            writer.writeInts(downOffsets);
+            writer.writeInts(downArcs);
+            writer.writeInts(arcTail);
+            writer.writeInts(arcHead);
+            writer.writeDoubles(arcWeight);
+            writer.writeInts(arcChild1);
+            writer.writeInts(arcChild2);
+            writer.commit();
+        }
+    }
+
+    /**
+     * Reads a hierarchy written by write.
+     *
+     * @return the hierarchy, or null when the file has another format
+     *         version or was built from a different graph
+     */
+    public static ContractionHierarchy read(Path file, long graphChecksum)
+            throws IOException {
+        try( BinaryFileReader reader = new BinaryFileReader(file) ) {
+            if( reader.readInt() != FILE_MAGIC
+                    || reader.readInt() != FILE_VERSION
+                    || reader.readLong() != graphChecksum ) {
+                return null;
+            }
+            return new ContractionHierarchy(reader.readInts(),
+                    reader.readInts(), reader.readInts(), reader.readInts(),
+                    reader.readInts(), reader.readInts(), reader.readInts(),
+                    reader.readDoubles(), reader.readInts(),
+                    reader.readInts());
+        }
+    }
+
+    public int vertexCount() {
+        return rank.length;
+    }
+
+    public int arcCount() {
+        return arcTail.length;
+    }
+
+    /**
+     * @return approximate heap footprint of this hierarchy in bytes
+     */
+    public long estimatedHeapBytes() {
+        long n = rank.length;
+        long a = arcTail.length;
+        return n * 4L * 3L + (upArcs.length + downArcs.length) * 4L
+                + a * (4L + 4L + 8L + 4L + 4L);
+    }
+
+    /**
+     * Bidirectional upward search on a pooled HierarchySearch workspace.
+     *
+     * @return CsrGraph edge indices of the shortest path, empty when
+     *         source equals target, null when not reachable
+     */
+    public int[] path(int source, int target) {
+        return path(source, target, SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * @return see path, null as well when the search stopped at its
+     *         budget
+     */
+    public int[] path(int source, int target, SearchBudget budget) {
+        HierarchySearch search = HierarchySearch.acquire(rank.length);
+        try {
+            return search.path(this, source, target, budget);
+        }
+        finally {
+            search.release();
+        }
+    }
+
+    /**
+     * Expands an arc into its original edges, in path order.
+     */
+    void unpack(int arc, EdgeList out) {
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = arc;
+        while( top > 0 ) {
+            int a = stack[--top];
+            if( arcChild1[a] < 0 ) {
+                out.add(arcChild2[a]);
+                continue;
+            }
+            if( top + 2 > stack.length ) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = arcChild2[a];
+            stack[top++] = arcChild1[a];
+        }
+    }
+
+    /**
+     * Growable int list for unpacked paths.
+     */
+    static class EdgeList {
+        private int[] data = new int[64];
+        private int size;
+
+        void add(int e) {
+            if( size == data.length ) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = e;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
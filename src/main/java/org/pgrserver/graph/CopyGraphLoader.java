@@ -0,0 +1,249 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：CopyGraphLoader.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.pgrserver.util.PgCopyReader;
+
+/**
+ * 説明：
+ * Builds a CsrGraph from the binary COPY output of COPY_SQL, or of the
+ * copySql of its GraphMetrics, without entity objects or a list of all
+ * rows.
+ *
+ * The calling thread reads and decodes the stream into chunks of primitive
+ * arrays and hands them to a builder thread, which adds them to a
+ * CsrGraph.Builder (remapping the vertex ids as it goes) while the next
+ * chunk is read. A few chunks are recycled between the two threads, so
+ * the memory held besides the builder is bounded.
+ */
+public class CopyGraphLoader {
+
+    public static final String COPY_SQL = "COPY (select id::int8,"
+            + "source::int8,target::int8,cost::float8 from pgrserver) "
+            + "TO STDOUT (FORMAT binary)";
+
+    static final int CHUNK_SIZE = 1 << 16;
+
+    private static final int QUEUE_SIZE = 4;
+
+    private static final long NULL = Long.MIN_VALUE;
+
+    private final int expectedEdges;
+    private final GraphMetrics metrics;
+    private long rowCount;
+
+    /**
+     * @param expectedEdges initial capacity of the builder
+     */
+    public CopyGraphLoader(int expectedEdges) {
+        this(expectedEdges, GraphMetrics.parse(GraphMetrics.DEFAULT));
+    }
+
+    /**
+     * @param expectedEdges initial capacity of the builder
+     * @param metrics weight columns of the rows
+     */
+    public CopyGraphLoader(int expectedEdges, GraphMetrics metrics) {
+        this.expectedEdges = expectedEdges;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return number of rows read by the last load, including the rows
+     *         that were not added as edges
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Reads rows of (id, source, target, cost) up to the end of the COPY
+     * data. Rows with a NULL id, source or target are skipped, a NULL cost
+     * is treated like a negative one.
+     *
+     * @return the graph of the default metric
+     */
+    public CsrGraph load(InputStream in) throws IOException {
+        return loadAll(in)[0];
+    }
+
+    /**
+     * Reads rows of (id, source, target, weights...) as described by the
+     * metrics up to the end of the COPY data, see load.
+     *
+     * @return one graph per metric, sharing their topology
+     */
+    public CsrGraph[] loadAll(InputStream in) throws IOException {
+        rowCount = 0;
+        final int weightCount = metrics.fieldCount() - 3;
+        PgCopyReader reader = new PgCopyReader(in);
+
+        final BlockingQueue<EdgeChunk> filled =
+                new ArrayBlockingQueue<EdgeChunk>(QUEUE_SIZE + 1);
+        final BlockingQueue<EdgeChunk> free =
+                new ArrayBlockingQueue<EdgeChunk>(QUEUE_SIZE);
+        for(int i=0;i<QUEUE_SIZE;i++) {
+            free.add(new EdgeChunk(CHUNK_SIZE, weightCount));
+        }
+        FutureTask<CsrGraph[]> build = new FutureTask<CsrGraph[]>(() -> {
+            CsrGraph.Builder builder = new CsrGraph.Builder(expectedEdges,
+                    metrics.count());
+            while( true ) {
+                EdgeChunk chunk = filled.take();
+                if( chunk == EdgeChunk.END ) {
+                    return builder.buildAll();
+                }
+                chunk.addTo(builder, metrics);
+                chunk.size = 0;
+                free.put(chunk);
+            }
+        });
+        Thread builderThread = new Thread(build, "graph-builder");
+        builderThread.setDaemon(true);
+        builderThread.start();
+
+        boolean completed = false;
+        try {
+            EdgeChunk chunk = handOver(free, null, build);
+            int fields;
+            double[] weights = new double[weightCount];
+            while( (fields = reader.nextRow()) >= 0 ) {
+                if( fields != metrics.fieldCount() ) {
+                    throw new IOException("Expected "+metrics.fieldCount()
+                            +" fields, got "+fields);
+                }
+                long id     = reader.readLong(NULL);
+                long source = reader.readLong(NULL);
+                long target = reader.readLong(NULL);
+                for(int i=0;i<weightCount;i++) {
+                    weights[i] = reader.readDouble(Double.NaN);
+                }
+                rowCount++;
+                if( id == NULL || source == NULL || target == NULL ) {
+                    continue;
+                }
+                chunk.add(toInt(id), toInt(source), toInt(target), weights);
+                if( chunk.size == CHUNK_SIZE ) {
+                    handOver(filled, chunk, build);
+                    chunk = handOver(free, null, build);
+                }
+            }
+            handOver(filled, chunk, build);
+            handOver(filled, EdgeChunk.END, build);
+            CsrGraph[] retVal = build.get();
+            completed = true;
+            return retVal;
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Graph load interrupted");
+        }
+        catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            if( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        finally {
+            if( !completed ) {
+                build.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Puts chunk into queue or, when chunk is null, takes one from it,
+     * giving up if the builder thread has stopped.
+     */
+    private static EdgeChunk handOver(BlockingQueue<EdgeChunk> queue,
+            EdgeChunk chunk, FutureTask<CsrGraph[]> build)
+                    throws InterruptedException, ExecutionException {
+        while( true ) {
+            if( chunk == null ) {
+                EdgeChunk retVal = queue.poll(100, TimeUnit.MILLISECONDS);
+                if( retVal != null ) {
+                    return retVal;
+                }
+            }
+            else if( queue.offer(chunk, 100, TimeUnit.MILLISECONDS) ) {
+                return chunk;
+            }
+            if( build.isDone() ) {
+                build.get();
+                throw new IllegalStateException("Graph builder stopped");
+            }
+        }
+    }
+
+    private static int toInt(long value) throws IOException {
+        if( value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ) {
+            throw new IOException("Id out of int range: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * A block of rows passed from the reading to the building thread.
+     */
+    private static class EdgeChunk {
+
+        static final EdgeChunk END = new EdgeChunk(0, 1);
+
+        final int[] ids;
+        final int[] sources;
+        final int[] targets;
+        final double[] weights;
+        final int weightCount;
+        int size;
+
+        EdgeChunk(int capacity, int weightCount) {
+            ids     = new int[capacity];
+            sources = new int[capacity];
+            targets = new int[capacity];
+            weights = new double[capacity * weightCount];
+            this.weightCount = weightCount;
+        }
+
+        void add(int id, int source, int target, double[] rowWeights) {
+            ids[size]     = id;
+            sources[size] = source;
+            targets[size] = target;
+            System.arraycopy(rowWeights, 0, weights, size * weightCount,
+                    weightCount);
+            size++;
+        }
+
+        void addTo(CsrGraph.Builder builder, GraphMetrics metrics) {
+            double[] row = new double[weightCount];
+            double[] scratch = new double[metrics.count()];
+            for(int i=0;i<size;i++) {
+                if( weightCount == 1 ) {
+                    builder.addEdge(ids[i], sources[i], targets[i],
+                            weights[i]);
+                    continue;
+                }
+                System.arraycopy(weights, i * weightCount, row, 0,
+                        weightCount);
+                metrics.addRow(builder, ids[i], sources[i], targets[i], row,
+                        scratch);
+            }
+        }
+    }
+}
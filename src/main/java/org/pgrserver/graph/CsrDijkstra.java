@@ -0,0 +1,247 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：CsrDijkstra.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.pgrserver.util.IntDoubleHeap;
+
+/**
+ * 説明：
+ * Dijkstra and A* searches on a CsrGraph. Distances and predecessor edges
+ * are held in primitive arrays indexed by the dense vertex index, the
+ * queue is a primitive binary heap.
+ *
+ * As in BidirectionalSearch, the arrays are sized once and every search
+ * takes a new stamp instead of clearing them: distance and predecessor
+ * answer for the vertices reached by the last search only. Workspaces
+ * taken with acquire come from a small pool and go back with release.
+ * Closed edges (+Infinity) are never followed.
+ */
+public class CsrDijkstra {
+
+    /**
+     * Lower bound of the remaining cost from v to target, for A*.
+     */
+    public interface Heuristic {
+        double estimate(int v, int target);
+    }
+
+    public static final Heuristic NONE = new Heuristic() {
+        @Override
+        public double estimate(int v, int target) {
+            return 0d;
+        }
+    };
+
+    private static final ArrayBlockingQueue<CsrDijkstra> POOL =
+            new ArrayBlockingQueue<CsrDijkstra>(
+                    2 * Runtime.getRuntime().availableProcessors());
+
+    private CsrGraph graph;
+    private final int capacity;
+    private final int[] seen;
+    private final double[] dist;
+    private final int[] predEdge;
+    private final IntDoubleHeap heap = new IntDoubleHeap(64);
+    private int stamp;
+    private int settled;
+
+    public CsrDijkstra(CsrGraph graph) {
+        this(graph, graph.vertexCount());
+    }
+
+    private CsrDijkstra(CsrGraph graph, int capacity) {
+        this.graph    = graph;
+        this.capacity = capacity;
+        this.seen     = new int[capacity];
+        this.dist     = new double[capacity];
+        this.predEdge = new int[capacity];
+    }
+
+    /**
+     * Takes a workspace for graph from the pool, or creates one. Hand it
+     * back with release.
+     */
+    public static CsrDijkstra acquire(CsrGraph graph) {
+        CsrDijkstra search;
+        while( (search = POOL.poll()) != null ) {
+            if( search.capacity >= graph.vertexCount() ) {
+                search.graph = graph;
+                return search;
+            }
+        }
+        return new CsrDijkstra(graph);
+    }
+
+    /**
+     * Returns the workspace to the pool; it is dropped when the pool is
+     * full.
+     */
+    public void release() {
+        graph = null;
+        POOL.offer(this);
+    }
+
+    /**
+     * @return edge indices of the shortest path from source to target,
+     *         an empty array when source equals target, or null when
+     *         the target is not reachable
+     */
+    public int[] path(int source, int target, Heuristic heuristic) {
+        return path(source, target, heuristic, SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * @return see path, null as well when the search stopped at its
+     *         budget
+     */
+    public int[] path(int source, int target, Heuristic heuristic,
+            SearchBudget budget) {
+        int count = 0;
+        begin(source);
+        heap.push(source, heuristic.estimate(source, target));
+
+        while( !heap.isEmpty() ) {
+            double key = heap.peekKey();
+            int u = heap.poll();
+            double du = dist[u];
+            if( key > du + heuristic.estimate(u, target) ) {
+                continue;
+            }
+            settled++;
+            if( u == target ) {
+                return tracePath(source, target);
+            }
+            if( SearchBudget.due(++count) && budget.isExceeded(count) ) {
+                return null;
+            }
+            for(int e=graph.firstOut(u), end=graph.endOut(u); e<end; e++) {
+                double w = graph.weight(e);
+                if( w == Double.POSITIVE_INFINITY ) {
+                    continue;
+                }
+                int v = graph.target(e);
+                double dv = du + w;
+                if( seen[v] != stamp || dv < dist[v] ) {
+                    seen[v] = stamp;
+                    dist[v] = dv;
+                    predEdge[v] = e;
+                    heap.push(v, dv + heuristic.estimate(v, target));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Settles every vertex whose distance from source is at most radius.
+     *
+     * @return dense indices of the settled vertices in order of distance
+     */
+    public int[] withinRadius(int source, double radius) {
+        return withinRadius(source, radius, SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * @return see withinRadius, only the vertices settled so far when the
+     *         search stopped at its budget
+     */
+    public int[] withinRadius(int source, double radius,
+            SearchBudget budget) {
+        int[] order = new int[64];
+        int count = 0;
+
+        begin(source);
+        heap.push(source, 0d);
+
+        while( !heap.isEmpty() ) {
+            double du = heap.peekKey();
+            int u = heap.poll();
+            if( du > dist[u] ) {
+                continue;
+            }
+            if( count == order.length ) {
+                order = Arrays.copyOf(order, count * 2);
+            }
+            order[count++] = u;
+            settled++;
+            if( SearchBudget.due(count) && budget.isExceeded(count) ) {
+                break;
+            }
+
+            for(int e=graph.firstOut(u), end=graph.endOut(u); e<end; e++) {
+                double w = graph.weight(e);
+                if( w == Double.POSITIVE_INFINITY ) {
+                    continue;
+                }
+                int v = graph.target(e);
+                double dv = du + w;
+                if( dv <= radius && (seen[v] != stamp || dv < dist[v]) ) {
+                    seen[v] = stamp;
+                    dist[v] = dv;
+                    predEdge[v] = e;
+                    heap.push(v, dv);
+                }
+            }
+        }
+        return Arrays.copyOf(order, count);
+    }
+
+    /**
+     * @return distance of v found by the last search, +Infinity when it
+     *         was not reached
+     */
+    public double distance(int v) {
+        return seen[v] == stamp ? dist[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return edge index by which v was reached, -1 for the source and
+     *         vertices not reached
+     */
+    public int predecessor(int v) {
+        return seen[v] == stamp ? predEdge[v] : -1;
+    }
+
+    /**
+     * @return number of vertices settled (taken from the queue with their
+     *         final distance) by the searches so far
+     */
+    public int settledCount() {
+        return settled;
+    }
+
+    /**
+     * Takes a new stamp, clearing the stamps when they wrap around, and
+     * queues nothing but source.
+     */
+    private void begin(int source) {
+        if( stamp == Integer.MAX_VALUE ) {
+            Arrays.fill(seen, 0);
+            stamp = 0;
+        }
+        stamp++;
+        heap.clear();
+        seen[source]     = stamp;
+        dist[source]     = 0d;
+        predEdge[source] = -1;
+    }
+
+    private int[] tracePath(int source, int target) {
+        int length = 0;
+        for(int v=target; v!=source; v=graph.source(predEdge[v])) {
+            length++;
+        }
+        int[] retVal = new int[length];
+        for(int v=target; v!=source; v=graph.source(predEdge[v])) {
+            retVal[--length] = predEdge[v];
+        }
+        return retVal;
+    }
+}
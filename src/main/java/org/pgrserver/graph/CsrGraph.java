@@ -0,0 +1,529 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：CsrGraph.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.pgrserver.util.BinaryFileWriter;
+import org.pgrserver.util.IntIntHashMap;
+import org.pgrserver.util.MappedFileReader;
+
+/**
+ * 説明：
+ * Immutable directed graph stored in compressed sparse row form.
+ *
+ * pgRouting vertex ids are remapped to dense indices 0..n-1. Edges are
+ * numbered 0..m-1 sorted by their source index so that the outgoing edges
+ * of vertex v are exactly the edge indices firstOut(v)..endOut(v)-1. The
+ * incoming edges are kept as a second offset array pointing back into the
+ * edge arrays. All searches work on the dense indices; vertexId/edgeId
+ * translate back to the pgRouting ids.
+ *
+ * An edge added for the reverse column of a row is flagged as such, so
+ * that a weight update of the row can tell it from the forward edge with
+ * the same id.
+ */
+public class CsrGraph {
+
+    private final int[] vertexIds;
+    private final IntIntHashMap vertexIndex;
+
+    private final int[] outOffsets;
+    private final int[] edgeIds;
+    private final int[] edgeSources;
+    private final int[] edgeTargets;
+    private final double[] weights;
+
+    private final int[] inOffsets;
+    private final int[] inEdges;
+    private final long[] reverseEdges;
+
+    private volatile long checksum;
+    private volatile long topologyChecksum;
+    private volatile long[] edgesById;
+
+    /**
+     * @param reverseEdges bit per edge index set for the edges of reverse
+     *        columns, null when there are none
+     */
+    CsrGraph(int[] vertexIds, IntIntHashMap vertexIndex,
+            int[] outOffsets, int[] edgeIds, int[] edgeSources,
+            int[] edgeTargets, double[] weights,
+            int[] inOffsets, int[] inEdges, long[] reverseEdges) {
+        this.vertexIds   = vertexIds;
+        this.vertexIndex = vertexIndex;
+        this.outOffsets  = outOffsets;
+        this.edgeIds     = edgeIds;
+        this.edgeSources = edgeSources;
+        this.edgeTargets = edgeTargets;
+        this.weights     = weights;
+        this.inOffsets   = inOffsets;
+        this.inEdges     = inEdges;
+        this.reverseEdges = reverseEdges;
+    }
+
+    public int vertexCount() {
+        return vertexIds.length;
+    }
+
+    public int edgeCount() {
+        return edgeIds.length;
+    }
+
+    /**
+     * @return dense index of a pgRouting vertex id, or -1 if not in graph
+     */
+    public int indexOf(int vertexId) {
+        return vertexIndex.get(vertexId);
+    }
+
+    public int vertexId(int v) {
+        return vertexIds[v];
+    }
+
+    public int firstOut(int v) {
+        return outOffsets[v];
+    }
+
+    public int endOut(int v) {
+        return outOffsets[v + 1];
+    }
+
+    public int firstIn(int v) {
+        return inOffsets[v];
+    }
+
+    public int endIn(int v) {
+        return inOffsets[v + 1];
+    }
+
+    /**
+     * @param i position between firstIn(v) and endIn(v)
+     * @return edge index of the incoming edge
+     */
+    public int inEdge(int i) {
+        return inEdges[i];
+    }
+
+    public int source(int e) {
+        return edgeSources[e];
+    }
+
+    public int target(int e) {
+        return edgeTargets[e];
+    }
+
+    public int edgeId(int e) {
+        return edgeIds[e];
+    }
+
+    public double weight(int e) {
+        return weights[e];
+    }
+
+    /**
+     * @return true if edge e was added for the reverse column of its row,
+     *         i.e. runs from the row's target to its source
+     */
+    public boolean isReverse(int e) {
+        return reverseEdges != null
+                && (reverseEdges[e >>> 6] & (1L << e)) != 0;
+    }
+
+    /**
+     * Translates a path of edge indices into pgRouting edge ids.
+     */
+    public int[] toEdgeIds(int[] path) {
+        int[] retVal = new int[path.length];
+        for(int i=0;i<path.length;i++) {
+            retVal[i] = edgeIds[path[i]];
+        }
+        return retVal;
+    }
+
+    /**
+     * Graph with the same vertices and edges but other edge weights. All
+     * topology arrays are shared with this graph.
+     *
+     * @param weights one weight per edge index, +Infinity for an edge
+     *        that is closed
+     */
+    public CsrGraph withWeights(double[] weights) {
+        if( weights.length != edgeIds.length ) {
+            throw new IllegalArgumentException("Expected "+edgeIds.length
+                    +" weights, got "+weights.length);
+        }
+        CsrGraph retVal = new CsrGraph(vertexIds, vertexIndex, outOffsets,
+                edgeIds, edgeSources, edgeTargets, weights, inOffsets, inEdges,
+                reverseEdges);
+        retVal.topologyChecksum = topologyChecksum;
+        retVal.edgesById = edgesById;
+        return retVal;
+    }
+
+    /**
+     * @return copy of the weights, indexed by edge index
+     */
+    public double[] copyWeights() {
+        return weights.clone();
+    }
+
+    /**
+     * Edge indices carrying a pgRouting edge id. An id normally names one
+     * edge, but nothing stops a table from using it for both directions.
+     *
+     * @return edge indices, empty if the id is not in the graph
+     */
+    public int[] edgesWithId(int edgeId) {
+        long[] sorted = edgesById;
+        if( sorted == null ) {
+            sorted = new long[edgeIds.length];
+            for(int e=0;e<edgeIds.length;e++) {
+                sorted[e] = ((long) edgeIds[e] << 32) | e;
+            }
+            Arrays.sort(sorted);
+            edgesById = sorted;
+        }
+        int i = Arrays.binarySearch(sorted, (long) edgeId << 32);
+        if( i < 0 ) {
+            i = -i - 1;
+        }
+        int end = i;
+        while( end < sorted.length && (int) (sorted[end] >> 32) == edgeId ) {
+            end++;
+        }
+        int[] retVal = new int[end - i];
+        for(int k=i;k<end;k++) {
+            retVal[k - i] = (int) sorted[k];
+        }
+        return retVal;
+    }
+
+    /**
+     * 64-bit hash over the topology and the weights. Files derived from
+     * the graph (e.g. a contraction hierarchy) are keyed by it.
+     */
+    public long checksum() {
+        long h = checksum;
+        if( h == 0 ) {
+            h = topologyChecksum();
+            for(int e=0;e<edgeIds.length;e++) {
+                h = mix(h, Double.doubleToLongBits(weights[e]));
+            }
+            checksum = h == 0 ? 1 : h;
+        }
+        return checksum;
+    }
+
+    /**
+     * 64-bit hash over vertex ids, edge ids and edge endpoints only. Two
+     * graphs that differ in their weights alone share this value, and with
+     * it everything that does not depend on the metric.
+     */
+    public long topologyChecksum() {
+        long h = topologyChecksum;
+        if( h == 0 ) {
+            h = 0x5DEECE66DL;
+            h = mix(h, vertexIds.length);
+            h = mix(h, edgeIds.length);
+            for(int v=0;v<vertexIds.length;v++) {
+                h = mix(h, vertexIds[v]);
+            }
+            for(int e=0;e<edgeIds.length;e++) {
+                h = mix(h, edgeIds[e]);
+                h = mix(h, edgeTargets[e]);
+            }
+            for(int v=0;v<outOffsets.length;v++) {
+                h = mix(h, outOffsets[v]);
+            }
+            topologyChecksum = h == 0 ? 1 : h;
+        }
+        return topologyChecksum;
+    }
+
+    private static long mix(long h, long value) {
+        long z = h ^ (value + 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Writes the arrays of the graph, to be read back by read.
+     */
+    void write(BinaryFileWriter writer) throws IOException {
+        writer.writeInts(vertexIds);
+        writer.writeInts(outOffsets);
+        writer.writeInts(edgeIds);
+        writer.writeInts(edgeSources);
+        writer.writeInts(edgeTargets);
+        writer.writeDoubles(weights);
+        writer.writeInts(inOffsets);
+        writer.writeInts(inEdges);
+        writer.writeLongs(reverseEdges == null ? new long[0] : reverseEdges);
+    }
+
+    /**
+     * Reads a graph written by write. Only the vertex id index is rebuilt,
+     * everything else is taken as stored.
+     */
+    static CsrGraph read(MappedFileReader reader) throws IOException {
+        int[] vertexIds   = reader.readInts();
+        int[] outOffsets  = reader.readInts();
+        int[] edgeIds     = reader.readInts();
+        int[] edgeSources = reader.readInts();
+        int[] edgeTargets = reader.readInts();
+        double[] weights  = reader.readDoubles();
+        int[] inOffsets   = reader.readInts();
+        int[] inEdges     = reader.readInts();
+        long[] reverseEdges = reader.readLongs();
+
+        int n = vertexIds.length;
+        int m = edgeIds.length;
+        if( outOffsets.length != n + 1 || inOffsets.length != n + 1
+                || edgeSources.length != m || edgeTargets.length != m
+                || weights.length != m || inEdges.length != m
+                || reverseEdges.length != 0
+                && reverseEdges.length != (m + 63) >>> 6 ) {
+            throw new IOException("Inconsistent graph arrays");
+        }
+        IntIntHashMap index = new IntIntHashMap(n, -1);
+        for(int v=0;v<n;v++) {
+            index.put(vertexIds[v], v);
+        }
+        return new CsrGraph(vertexIds, index, outOffsets, edgeIds,
+                edgeSources, edgeTargets, weights, inOffsets, inEdges,
+                reverseEdges.length == 0 ? null : reverseEdges);
+    }
+
+    /**
+     * @return approximate heap footprint of this graph in bytes
+     */
+    public long estimatedHeapBytes() {
+        long n = vertexIds.length;
+        long m = edgeIds.length;
+        return n * 4L
+                + vertexIndex.estimatedBytes()
+                + 2L * (n + 1) * 4L
+                + m * (4L + 4L + 4L + 8L + 4L)
+                + (reverseEdges == null ? 0 : reverseEdges.length * 8L);
+    }
+
+    /**
+     * Collects edges into growable primitive buffers and then lays them out
+     * as a CsrGraph. Vertex indices are assigned as the edges are added, in
+     * order of first appearance, the same order the JGraphT graph used to
+     * add them. A builder for several metrics keeps one cost per metric
+     * and edge, and buildAll lays out one graph per metric over the same
+     * topology arrays.
+     */
+    public static class Builder {
+
+        private int[] ids;
+        private int[] sources;
+        private int[] targets;
+        private double[][] costs;
+        private long[] reverse;
+        private int size;
+
+        private final IntIntHashMap index;
+        private int[] vertexIds = new int[16];
+        private int vertexCount;
+
+        public Builder() {
+            this(1024);
+        }
+
+        public Builder(int expectedEdges) {
+            this(expectedEdges, 1);
+        }
+
+        /**
+         * @param metricCount costs per edge
+         */
+        public Builder(int expectedEdges, int metricCount) {
+            int capacity = Math.max(16, expectedEdges);
+            ids     = new int[capacity];
+            sources = new int[capacity];
+            targets = new int[capacity];
+            costs   = new double[metricCount][capacity];
+            index   = new IntIntHashMap(capacity / 2, -1);
+        }
+
+        /**
+         * Adds a directed edge. As in pgRouting a negative cost means the
+         * edge does not exist, so such rows are skipped.
+         */
+        public Builder addEdge(int id, int source, int target, double cost) {
+            if( cost < 0 || Double.isNaN(cost) ) {
+                return this;
+            }
+            add(id, source, target);
+            costs[0][size++] = cost;
+            return this;
+        }
+
+        /**
+         * Adds a directed edge with a cost per metric. The edge is skipped
+         * when no cost is 0 or more; metrics in which its cost is negative
+         * or NaN see it closed (+Infinity).
+         */
+        public Builder addEdge(int id, int source, int target,
+                double[] metricCosts) {
+            boolean exists = false;
+            for(double cost : metricCosts) {
+                exists |= cost >= 0;
+            }
+            if( !exists ) {
+                return this;
+            }
+            add(id, source, target);
+            setCosts(metricCosts);
+            return this;
+        }
+
+        /**
+         * Adds the edge target -> source of the row source -> target, with
+         * the costs of its reverse columns, and flags it as a reverse edge.
+         * Skipped under the same rule as addEdge.
+         */
+        public Builder addReverseEdge(int id, int source, int target,
+                double[] metricCosts) {
+            boolean exists = false;
+            for(double cost : metricCosts) {
+                exists |= cost >= 0;
+            }
+            if( !exists ) {
+                return this;
+            }
+            add(id, target, source);
+            if( reverse == null ) {
+                reverse = new long[(ids.length + 63) >>> 6];
+            }
+            reverse[size >>> 6] |= 1L << size;
+            setCosts(metricCosts);
+            return this;
+        }
+
+        private void setCosts(double[] metricCosts) {
+            for(int i=0;i<costs.length;i++) {
+                double cost = metricCosts[i];
+                costs[i][size] = cost >= 0 ? cost : Double.POSITIVE_INFINITY;
+            }
+            size++;
+        }
+
+        private void add(int id, int source, int target) {
+            if( size == ids.length ) {
+                int capacity = size + (size >> 1);
+                ids     = Arrays.copyOf(ids, capacity);
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                for(int i=0;i<costs.length;i++) {
+                    costs[i] = Arrays.copyOf(costs[i], capacity);
+                }
+                if( reverse != null ) {
+                    reverse = Arrays.copyOf(reverse, (capacity + 63) >>> 6);
+                }
+            }
+            ids[size]     = id;
+            sources[size] = indexOf(source);
+            targets[size] = indexOf(target);
+        }
+
+        private int indexOf(int vertexId) {
+            int v = index.get(vertexId);
+            if( v < 0 ) {
+                if( vertexCount == vertexIds.length ) {
+                    vertexIds = Arrays.copyOf(vertexIds, vertexCount * 2);
+                }
+                v = vertexCount++;
+                index.put(vertexId, v);
+                vertexIds[v] = vertexId;
+            }
+            return v;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the graph of the first metric
+         */
+        public CsrGraph build() {
+            return buildAll()[0];
+        }
+
+        /**
+         * @return one graph per metric, all sharing the topology arrays
+         */
+        public CsrGraph[] buildAll() {
+            int n = vertexCount;
+
+            /**
+             * Counting sort of the edges by source index
+             */
+            int[] outOffsets = new int[n + 1];
+            for(int i=0;i<size;i++) {
+                outOffsets[sources[i] + 1]++;
+            }
+            for(int v=0;v<n;v++) {
+                outOffsets[v + 1] += outOffsets[v];
+            }
+
+            int[] fill = Arrays.copyOf(outOffsets, n);
+            int[] edgeIds     = new int[size];
+            int[] edgeSources = new int[size];
+            int[] edgeTargets = new int[size];
+            double[][] weights = new double[costs.length][size];
+            long[] reverseEdges = reverse == null ? null
+                    : new long[(size + 63) >>> 6];
+
+            for(int i=0;i<size;i++) {
+                int s = sources[i];
+                int e = fill[s]++;
+                edgeIds[e]     = ids[i];
+                edgeSources[e] = s;
+                edgeTargets[e] = targets[i];
+                for(int k=0;k<costs.length;k++) {
+                    weights[k][e] = costs[k][i];
+                }
+                if( reverse != null && (reverse[i >>> 6] & (1L << i)) != 0 ) {
+                    reverseEdges[e >>> 6] |= 1L << e;
+                }
+            }
+
+            /**
+             * Incoming edges, again by counting sort on the target index
+             */
+            int[] inOffsets = new int[n + 1];
+            for(int e=0;e<size;e++) {
+                inOffsets[edgeTargets[e] + 1]++;
+            }
+            for(int v=0;v<n;v++) {
+                inOffsets[v + 1] += inOffsets[v];
+            }
+            fill = Arrays.copyOf(inOffsets, n);
+            int[] inEdges = new int[size];
+            for(int e=0;e<size;e++) {
+                inEdges[fill[edgeTargets[e]]++] = e;
+            }
+
+            CsrGraph[] retVal = new CsrGraph[costs.length];
+            retVal[0] = new CsrGraph(Arrays.copyOf(vertexIds, n), index,
+                    outOffsets, edgeIds,
+                    edgeSources, edgeTargets, weights[0], inOffsets, inEdges,
+                    reverseEdges);
+            for(int k=1;k<costs.length;k++) {
+                retVal[k] = retVal[0].withWeights(weights[k]);
+            }
+            return retVal;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：CsrGraphView.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.jgrapht.GraphType;
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.DefaultGraphType;
+
+/**
+ * 説明：
+ * Read-only JGraphT view of a CsrGraph, so that the JGraphT algorithms
+ * without a primitive counterpart (Bellman-Ford, BFS, Johnson,
+ * Floyd-Warshall, AllDirectedPaths) can run without a second copy of the
+ * graph. Vertices are the dense vertex indices and edges the CsrGraph edge
+ * indices; both are boxed only while an algorithm touches them.
+ *
+ * A view made with a SearchBudget counts the vertices whose edges an
+ * algorithm asks for, and throws SearchBudget.ExceededException from
+ * there once the budget runs out, which stops the algorithm.
+ */
+public class CsrGraphView extends AbstractGraph<Integer, Integer> {
+
+    private static final GraphType TYPE = new DefaultGraphType.Builder()
+            .directed().weighted(true).allowMultipleEdges(true)
+            .allowSelfLoops(true).modifiable(false).build();
+
+    private final CsrGraph graph;
+
+    private final SearchBudget budget;
+
+    private long scanned;
+
+    public CsrGraphView(CsrGraph graph) {
+        this(graph, SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * View for one search, which is not shared between threads.
+     */
+    public CsrGraphView(CsrGraph graph, SearchBudget budget) {
+        this.graph  = graph;
+        this.budget = budget;
+    }
+
+    private void scan() {
+        if( budget == SearchBudget.UNLIMITED ) {
+            return;
+        }
+        if( SearchBudget.due(++scanned) && budget.isExceeded(scanned) ) {
+            budget.check();
+        }
+    }
+
+    @Override
+    public Set<Integer> getAllEdges(Integer u, Integer v) {
+        if( !containsVertex(u) || !containsVertex(v) ) {
+            return null;
+        }
+        Set<Integer> retVal = new HashSet<Integer>();
+        for(int e=graph.firstOut(u), end=graph.endOut(u); e<end; e++) {
+            if( graph.target(e) == v ) {
+                retVal.add(e);
+            }
+        }
+        return retVal;
+    }
+
+    @Override
+    public Integer getEdge(Integer u, Integer v) {
+        if( !containsVertex(u) || !containsVertex(v) ) {
+            return null;
+        }
+        for(int e=graph.firstOut(u), end=graph.endOut(u); e<end; e++) {
+            if( graph.target(e) == v ) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Supplier<Integer> getVertexSupplier() {
+        return null;
+    }
+
+    @Override
+    public Supplier<Integer> getEdgeSupplier() {
+        return null;
+    }
+
+    @Override
+    public Integer addEdge(Integer u, Integer v) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addEdge(Integer u, Integer v, Integer e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Integer addVertex() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addVertex(Integer v) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean containsEdge(Integer e) {
+        return e != null && e >= 0 && e < graph.edgeCount();
+    }
+
+    @Override
+    public boolean containsVertex(Integer v) {
+        return v != null && v >= 0 && v < graph.vertexCount();
+    }
+
+    @Override
+    public Set<Integer> edgeSet() {
+        return new IntRangeSet(0, graph.edgeCount());
+    }
+
+    @Override
+    public int degreeOf(Integer v) {
+        return inDegreeOf(v) + outDegreeOf(v);
+    }
+
+    @Override
+    public Set<Integer> edgesOf(Integer v) {
+        Set<Integer> retVal = new HashSet<Integer>(outgoingEdgesOf(v));
+        retVal.addAll(incomingEdgesOf(v));
+        return retVal;
+    }
+
+    @Override
+    public int inDegreeOf(Integer v) {
+        assertVertexExist(v);
+        return graph.endIn(v) - graph.firstIn(v);
+    }
+
+    @Override
+    public Set<Integer> incomingEdgesOf(Integer v) {
+        assertVertexExist(v);
+        scan();
+        final int first = graph.firstIn(v);
+        final int end = graph.endIn(v);
+        return new AbstractSet<Integer>() {
+            @Override
+            public Iterator<Integer> iterator() {
+                return new Iterator<Integer>() {
+                    private int i = first;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < end;
+                    }
+
+                    @Override
+                    public Integer next() {
+                        if( i >= end ) {
+                            throw new NoSuchElementException();
+                        }
+                        return graph.inEdge(i++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return end - first;
+            }
+        };
+    }
+
+    @Override
+    public int outDegreeOf(Integer v) {
+        assertVertexExist(v);
+        return graph.endOut(v) - graph.firstOut(v);
+    }
+
+    @Override
+    public Set<Integer> outgoingEdgesOf(Integer v) {
+        assertVertexExist(v);
+        scan();
+        return new IntRangeSet(graph.firstOut(v), graph.endOut(v));
+    }
+
+    @Override
+    public boolean removeAllEdges(Collection<? extends Integer> edges) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<Integer> removeAllEdges(Integer u, Integer v) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAllVertices(Collection<? extends Integer> vertices) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Integer removeEdge(Integer u, Integer v) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeEdge(Integer e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeVertex(Integer v) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<Integer> vertexSet() {
+        return new IntRangeSet(0, graph.vertexCount());
+    }
+
+    @Override
+    public Integer getEdgeSource(Integer e) {
+        return graph.source(e);
+    }
+
+    @Override
+    public Integer getEdgeTarget(Integer e) {
+        return graph.target(e);
+    }
+
+    @Override
+    public GraphType getType() {
+        return TYPE;
+    }
+
+    @Override
+    public double getEdgeWeight(Integer e) {
+        return graph.weight(e);
+    }
+
+    @Override
+    public void setEdgeWeight(Integer e, double weight) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Set view of the integers first..end-1.
+     */
+    private static class IntRangeSet extends AbstractSet<Integer> {
+        private final int first;
+        private final int end;
+
+        IntRangeSet(int first, int end) {
+            this.first = first;
+            this.end = end;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if( !(o instanceof Integer) ) {
+                return false;
+            }
+            int i = (Integer) o;
+            return i >= first && i < end;
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return new Iterator<Integer>() {
+                private int i = first;
+
+                @Override
+                public boolean hasNext() {
+                    return i < end;
+                }
+
+                @Override
+                public Integer next() {
+                    if( i >= end ) {
+                        throw new NoSuchElementException();
+                    }
+                    return i++;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return end - first;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：CustomizableHierarchy.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.Arrays;
+
+import org.pgrserver.util.ParallelLoop;
+
+/**
+ * 説明：
+ * Metric independent part of a customizable contraction hierarchy.
+ *
+ * The vertex order is a nested dissection of the undirected graph and
+ * every fill-in edge of eliminating the vertices in that order becomes a
+ * shortcut, so the arcs depend on the topology only. Arc a joins a lower
+ * and an upper vertex; directed arc 2a runs upwards, 2a+1 downwards.
+ *
+ * customize turns a set of edge weights into a ContractionHierarchy that
+ * shares the arrays of this object. Every arc takes the best of its
+ * original edges and of the lower triangles below it. Arcs are processed
+ * by the level of their lower vertex, and since a lower triangle only
+ * involves arcs of lower levels, all arcs of one level are customized in
+ * parallel. Because the upper neighbours of a vertex form a clique, the
+ * lower triangles of all arcs of u are found by walking the upper arcs of
+ * the lower neighbours of u.
+ */
+public class CustomizableHierarchy {
+
+    private static final int PARALLEL_CHUNK = 256;
+
+    private final long topologyChecksum;
+    private final int edgeCount;
+
+    final int[] rank;
+
+    /** arcs grouped by lower vertex, upper vertices ascending per group */
+    final int[] upOffsets;
+    final int[] arcLower;
+    final int[] arcUpper;
+
+    /** arcs grouped by upper vertex */
+    final int[] downOffsets;
+    final int[] downArcs;
+
+    /** vertices grouped by elimination tree level */
+    final int[] levelOffsets;
+    final int[] levelVertices;
+
+    /** directed arc of every graph edge, -1 for a loop */
+    final int[] edgeArc;
+
+    /** ContractionHierarchy adjacency, shared by every customization */
+    private final int[] chUpArcs;
+    private final int[] chDownArcs;
+    private final int[] chTail;
+    private final int[] chHead;
+
+    CustomizableHierarchy(CsrGraph graph, int[] rank, int[] upOffsets,
+            int[] arcUpper, int[] edgeArc) {
+        int n = rank.length;
+        int arcs = arcUpper.length;
+        this.topologyChecksum = graph.topologyChecksum();
+        this.edgeCount = graph.edgeCount();
+        this.rank = rank;
+        this.upOffsets = upOffsets;
+        this.arcUpper = arcUpper;
+        this.edgeArc = edgeArc;
+
+        arcLower = new int[arcs];
+        for(int v=0;v<n;v++) {
+            for(int a=upOffsets[v];a<upOffsets[v + 1];a++) {
+                arcLower[a] = v;
+            }
+        }
+
+        downOffsets = new int[n + 1];
+        for(int a=0;a<arcs;a++) {
+            downOffsets[arcUpper[a] + 1]++;
+        }
+        for(int v=0;v<n;v++) {
+            downOffsets[v + 1] += downOffsets[v];
+        }
+        int[] fill = Arrays.copyOf(downOffsets, n);
+        downArcs = new int[arcs];
+        for(int a=0;a<arcs;a++) {
+            downArcs[fill[arcUpper[a]]++] = a;
+        }
+
+        /**
+         * Level of a vertex: one above the highest of its lower neighbours
+         */
+        int[] byRank = new int[n];
+        for(int v=0;v<n;v++) {
+            byRank[rank[v]] = v;
+        }
+        int[] level = new int[n];
+        int levels = n > 0 ? 1 : 0;
+        for(int r=0;r<n;r++) {
+            int v = byRank[r];
+            for(int a=upOffsets[v];a<upOffsets[v + 1];a++) {
+                int w = arcUpper[a];
+                if( level[w] <= level[v] ) {
+                    level[w] = level[v] + 1;
+                    levels = Math.max(levels, level[w] + 1);
+                }
+            }
+        }
+        levelOffsets = new int[levels + 1];
+        for(int v=0;v<n;v++) {
+            levelOffsets[level[v] + 1]++;
+        }
+        for(int l=0;l<levels;l++) {
+            levelOffsets[l + 1] += levelOffsets[l];
+        }
+        fill = Arrays.copyOf(levelOffsets, levels);
+        levelVertices = new int[n];
+        for(int v=0;v<n;v++) {
+            levelVertices[fill[level[v]]++] = v;
+        }
+
+        chUpArcs   = new int[arcs];
+        chDownArcs = new int[arcs];
+        chTail = new int[2 * arcs];
+        chHead = new int[2 * arcs];
+        for(int a=0;a<arcs;a++) {
+            chUpArcs[a]   = 2 * a;
+            chDownArcs[a] = 2 * a + 1;
+            chTail[2 * a]     = arcLower[a];
+            chHead[2 * a]     = arcUpper[a];
+            chTail[2 * a + 1] = arcUpper[a];
+            chHead[2 * a + 1] = arcLower[a];
+        }
+    }
+
+    /**
+     * Orders the vertices by nested dissection and records the chordal
+     * supergraph that eliminating them in that order produces.
+     */
+    public static CustomizableHierarchy build(CsrGraph graph) {
+        int n = graph.vertexCount();
+        int[][] adj = new int[n][];
+        int[] mark = new int[n];
+        Arrays.fill(mark, -1);
+
+        for(int v=0;v<n;v++) {
+            int[] list = new int[graph.endOut(v) - graph.firstOut(v)
+                    + graph.endIn(v) - graph.firstIn(v)];
+            int size = 0;
+            mark[v] = v;
+            for(int e=graph.firstOut(v);e<graph.endOut(v);e++) {
+                int w = graph.target(e);
+                if( mark[w] != v ) {
+                    mark[w] = v;
+                    list[size++] = w;
+                }
+            }
+            for(int i=graph.firstIn(v);i<graph.endIn(v);i++) {
+                int w = graph.source(graph.inEdge(i));
+                if( mark[w] != v ) {
+                    mark[w] = v;
+                    list[size++] = w;
+                }
+            }
+            adj[v] = Arrays.copyOf(list, size);
+        }
+
+        int[] rank = new NestedDissection(adj).order();
+
+        /**
+         * Symbolic elimination: the upper neighbours of v are its original
+         * upper neighbours plus those of its children in the elimination
+         * tree, v itself excluded.
+         */
+        int[] byRank = new int[n];
+        for(int v=0;v<n;v++) {
+            byRank[rank[v]] = v;
+        }
+        int[][] upper = new int[n][];
+        int[] firstChild = new int[n];
+        int[] nextSibling = new int[n];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(mark, -1);
+        int[] buffer = new int[16];
+        int arcs = 0;
+
+        for(int r=0;r<n;r++) {
+            int v = byRank[r];
+            int size = 0;
+            mark[v] = v;
+            for(int w : adj[v]) {
+                if( rank[w] > r && mark[w] != v ) {
+                    if( size == buffer.length ) {
+                        buffer = Arrays.copyOf(buffer, size * 2);
+                    }
+                    mark[w] = v;
+                    buffer[size++] = w;
+                }
+            }
+            adj[v] = null;
+            for(int c=firstChild[v];c>=0;c=nextSibling[c]) {
+                for(int w : upper[c]) {
+                    if( mark[w] != v ) {
+                        if( size == buffer.length ) {
+                            buffer = Arrays.copyOf(buffer, size * 2);
+                        }
+                        mark[w] = v;
+                        buffer[size++] = w;
+                    }
+                }
+            }
+            int[] list = Arrays.copyOf(buffer, size);
+            Arrays.sort(list);
+            upper[v] = list;
+            arcs += size;
+
+            int parent = -1;
+            for(int w : list) {
+                if( parent < 0 || rank[w] < rank[parent] ) {
+                    parent = w;
+                }
+            }
+            if( parent >= 0 ) {
+                nextSibling[v] = firstChild[parent];
+                firstChild[parent] = v;
+            }
+        }
+
+        int[] upOffsets = new int[n + 1];
+        int[] arcUpper = new int[arcs];
+        for(int v=0;v<n;v++) {
+            int[] list = upper[v];
+            upOffsets[v + 1] = upOffsets[v] + list.length;
+            System.arraycopy(list, 0, arcUpper, upOffsets[v], list.length);
+            upper[v] = null;
+        }
+
+        int[] edgeArc = new int[graph.edgeCount()];
+        for(int e=0;e<edgeArc.length;e++) {
+            int s = graph.source(e);
+            int t = graph.target(e);
+            if( s == t ) {
+                edgeArc[e] = -1;
+            }
+            else if( rank[s] < rank[t] ) {
+                edgeArc[e] = 2 * findArc(upOffsets, arcUpper, s, t);
+            }
+            else {
+                edgeArc[e] = 2 * findArc(upOffsets, arcUpper, t, s) + 1;
+            }
+        }
+        return new CustomizableHierarchy(graph, rank, upOffsets, arcUpper,
+                edgeArc);
+    }
+
+    private static int findArc(int[] upOffsets, int[] arcUpper,
+            int lower, int upper) {
+        int i = Arrays.binarySearch(arcUpper, upOffsets[lower],
+                upOffsets[lower + 1], upper);
+        return i < 0 ? -1 : i;
+    }
+
+    /**
+     * @return whether graph has the topology this object was built for
+     */
+    public boolean fits(CsrGraph graph) {
+        return graph.edgeCount() == edgeCount
+                && graph.vertexCount() == rank.length
+                && graph.topologyChecksum() == topologyChecksum;
+    }
+
+    /**
+     * Computes the arc weights for the weights of graph, which must have
+     * the topology this object was built from.
+     *
+     * @param threads customization threads, 0 for all cores
+     */
+    public ContractionHierarchy customize(CsrGraph graph, int threads) {
+        if( !fits(graph) ) {
+            throw new IllegalArgumentException(
+                    "Graph topology differs from the customizable hierarchy");
+        }
+        final int arcs = arcUpper.length;
+        final double[] weight = new double[2 * arcs];
+        final int[] child1 = new int[2 * arcs];
+        final int[] child2 = new int[2 * arcs];
+        Arrays.fill(weight, Double.POSITIVE_INFINITY);
+        Arrays.fill(child1, -1);
+        Arrays.fill(child2, -1);
+
+        for(int e=0;e<edgeArc.length;e++) {
+            int d = edgeArc[e];
+            if( d >= 0 && graph.weight(e) < weight[d] ) {
+                weight[d] = graph.weight(e);
+                child2[d] = e;
+            }
+        }
+
+        final int n = rank.length;
+        final ThreadLocal<int[]> slots = ThreadLocal.withInitial(() -> {
+            int[] slot = new int[n];
+            Arrays.fill(slot, -1);
+            return slot;
+        });
+        try( ParallelLoop loop = new ParallelLoop(threads, PARALLEL_CHUNK,
+                "cch-customize") ) {
+            for(int l=0;l<levelOffsets.length - 1;l++) {
+                final int first = levelOffsets[l];
+                loop.run(levelOffsets[l + 1] - first, i -> customizeVertex(
+                        levelVertices[first + i], slots.get(), weight,
+                        child1, child2));
+            }
+        }
+        finally {
+            slots.remove();
+        }
+
+        return new ContractionHierarchy(rank, upOffsets, chUpArcs,
+                upOffsets, chDownArcs, chTail, chHead, weight, child1, child2);
+    }
+
+    /**
+     * Relaxes the arcs u-w whose lower vertex is u over all lower
+     * triangles u-x-w. The arcs x-u and x-w belong to lower levels and are
+     * final; slot maps an upper neighbour of u to its arc and is -1
+     * everywhere else on return.
+     */
+    private void customizeVertex(int u, int[] slot, double[] weight,
+            int[] child1, int[] child2) {
+        for(int a=upOffsets[u];a<upOffsets[u + 1];a++) {
+            slot[arcUpper[a]] = a;
+        }
+        for(int i=downOffsets[u];i<downOffsets[u + 1];i++) {
+            int ux = downArcs[i];
+            int x = arcLower[ux];
+            double xToU = weight[2 * ux];
+            double uToX = weight[2 * ux + 1];
+            for(int xw=upOffsets[x];xw<upOffsets[x + 1];xw++) {
+                int a = slot[arcUpper[xw]];
+                if( a < 0 ) {
+                    continue;
+                }
+                double up = uToX + weight[2 * xw];
+                if( up < weight[2 * a] ) {
+                    weight[2 * a] = up;
+                    child1[2 * a] = 2 * ux + 1;
+                    child2[2 * a] = 2 * xw;
+                }
+                double down = weight[2 * xw + 1] + xToU;
+                if( down < weight[2 * a + 1] ) {
+                    weight[2 * a + 1] = down;
+                    child1[2 * a + 1] = 2 * xw + 1;
+                    child2[2 * a + 1] = 2 * ux;
+                }
+            }
+        }
+        for(int a=upOffsets[u];a<upOffsets[u + 1];a++) {
+            slot[arcUpper[a]] = -1;
+        }
+    }
+
+    public long topologyChecksum() {
+        return topologyChecksum;
+    }
+
+    public int vertexCount() {
+        return rank.length;
+    }
+
+    /**
+     * @return number of undirected arcs, original edges and shortcuts
+     */
+    public int arcCount() {
+        return arcUpper.length;
+    }
+
+    public int levelCount() {
+        return levelOffsets.length - 1;
+    }
+
+    /**
+     * @return approximate heap footprint of the metric independent
+     *         arrays in bytes
+     */
+    public long estimatedHeapBytes() {
+        long n = rank.length;
+        long a = arcUpper.length;
+        return n * 4L * 5L + a * 4L * 9L + edgeArc.length * 4L;
+    }
+}
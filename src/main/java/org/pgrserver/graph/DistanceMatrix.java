@@ -0,0 +1,110 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：DistanceMatrix.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 説明：
+ * Costs between snapped sources and targets, without geometry.
+ *
+ * As JSON the matrix is an object with the snapped node ids of the
+ * sources and targets and a costs array of rows, null marking pairs
+ * without a route. The binary form is little endian: the row and column
+ * count as int32, followed by the costs row by row as float32, +Infinity
+ * marking pairs without a route.
+ */
+public class DistanceMatrix {
+
+    private final CsrGraph graph;
+    private final int[] sources;
+    private final int[] targets;
+    private final double[] costs;
+
+    /**
+     * @param sources dense vertex index per row, negative if not snapped
+     * @param targets dense vertex index per column, negative if not 
+     *        snapped
+     * @param costs row major costs
+     */
+    public DistanceMatrix(CsrGraph graph, int[] sources, int[] targets,
+            double[] costs) {
+        this.graph   = graph;
+        this.sources = sources;
+        this.targets = targets;
+        this.costs   = costs;
+    }
+
+    public int rows() {
+        return sources.length;
+    }
+
+    public int columns() {
+        return targets.length;
+    }
+
+    /**
+     * @return cost from source row to target column, +Infinity when there
+     *         is no route
+     */
+    public double cost(int row, int column) {
+        return costs[row * targets.length + column];
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(32 + costs.length * 10);
+        sb.append("{\"sources\":");
+        appendNodes(sb, sources);
+        sb.append(",\"targets\":");
+        appendNodes(sb, targets);
+        sb.append(",\"costs\":[");
+        for(int i=0;i<sources.length;i++) {
+            sb.append(i == 0 ? "[" : ",[");
+            for(int j=0;j<targets.length;j++) {
+                if( j > 0 ) {
+                    sb.append(',');
+                }
+                double c = cost(i, j);
+                if( c == Double.POSITIVE_INFINITY ) {
+                    sb.append("null");
+                }
+                else {
+                    sb.append(c);
+                }
+            }
+            sb.append(']');
+        }
+        return sb.append("]}").toString();
+    }
+
+    public byte[] toFloat32() {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 4 * costs.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(sources.length).putInt(targets.length);
+        for(double c : costs) {
+            buffer.putFloat((float) c);
+        }
+        return buffer.array();
+    }
+
+    private void appendNodes(StringBuilder sb, int[] vertices) {
+        sb.append('[');
+        for(int i=0;i<vertices.length;i++) {
+            if( i > 0 ) {
+                sb.append(',');
+            }
+            if( vertices[i] < 0 ) {
+                sb.append("null");
+            }
+            else {
+                sb.append(graph.vertexId(vertices[i]));
+            }
+        }
+        sb.append(']');
+    }
+}
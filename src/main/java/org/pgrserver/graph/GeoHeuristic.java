@@ -0,0 +1,100 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：GeoHeuristic.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+/**
+ * 説明：
+ * A* heuristic from the vertex coordinates: the straight line distance to
+ * the target times the smallest cost per metre of any edge.
+ *
+ * Vertices are kept as points on a sphere with the polar radius of the
+ * earth, and distances are chords through it. The cost rate is taken over
+ * the chord between the end points of every edge, so that for any path
+ * cost >= rate * sum of chords >= rate * chord(v, target) by the triangle
+ * inequality. The estimate therefore never exceeds the remaining cost and
+ * is consistent, whatever the geometry lengths, the edge costs (time,
+ * distance, anything non-negative) or the shape of the earth.
+ */
+public class GeoHeuristic implements CsrDijkstra.Heuristic {
+
+    private static final double RADIUS = 6356752.0;
+
+    /**
+     * Keeps rounding from pushing an estimate above the true cost
+     */
+    private static final double SAFETY = 1 - 1e-9;
+
+    private final double[] points;
+    private final double costPerMetre;
+
+    private GeoHeuristic(double[] points, double costPerMetre) {
+        this.points = points;
+        this.costPerMetre = costPerMetre;
+    }
+
+    /**
+     * @return heuristic for the graph, or null when a vertex has no
+     *         coordinates
+     */
+    public static GeoHeuristic create(CsrGraph graph, GeometryStore geometry) {
+        int n = graph.vertexCount();
+        double[] points = new double[3 * n];
+        for(int v=0;v<n;v++) {
+            if( !geometry.hasCoordinates(v) ) {
+                return null;
+            }
+            double lng = Math.toRadians(geometry.vertexX(v));
+            double lat = Math.toRadians(geometry.vertexY(v));
+            points[3 * v]     = RADIUS * Math.cos(lat) * Math.cos(lng);
+            points[3 * v + 1] = RADIUS * Math.cos(lat) * Math.sin(lng);
+            points[3 * v + 2] = RADIUS * Math.sin(lat);
+        }
+        return new GeoHeuristic(points, costPerMetre(graph, points));
+    }
+
+    /**
+     * Heuristic for a graph with the same vertices but other weights,
+     * sharing the vertex points.
+     */
+    public GeoHeuristic withGraph(CsrGraph graph) {
+        return new GeoHeuristic(points, costPerMetre(graph, points));
+    }
+
+    /**
+     * @return smallest cost per metre of straight line over all edges
+     */
+    public double getCostPerMetre() {
+        return costPerMetre;
+    }
+
+    @Override
+    public double estimate(int v, int target) {
+        return costPerMetre * chord(points, v, target);
+    }
+
+    private static double costPerMetre(CsrGraph graph, double[] points) {
+        double rate = Double.POSITIVE_INFINITY;
+        for(int e=0;e<graph.edgeCount();e++) {
+            double w = graph.weight(e);
+            if( w == Double.POSITIVE_INFINITY ) {
+                continue;
+            }
+            double length = chord(points, graph.source(e), graph.target(e));
+            if( length > 0 ) {
+                rate = Math.min(rate, w / length);
+            }
+        }
+        return rate == Double.POSITIVE_INFINITY ? 0 : rate * SAFETY;
+    }
+
+    private static double chord(double[] points, int u, int v) {
+        double dx = points[3 * u] - points[3 * v];
+        double dy = points[3 * u + 1] - points[3 * v + 1];
+        double dz = points[3 * u + 2] - points[3 * v + 2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+}
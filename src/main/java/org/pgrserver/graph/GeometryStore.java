@@ -0,0 +1,345 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：GeometryStore.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.pgrserver.util.BinaryFileWriter;
+import org.pgrserver.util.DistanceUtil;
+import org.pgrserver.util.DoubleList;
+import org.pgrserver.util.IntList;
+import org.pgrserver.util.MappedFileReader;
+import org.pgrserver.util.WkbReader;
+
+/**
+ * 説明：
+ * Edge geometries and vertex coordinates of a CsrGraph, kept as fixed
+ * point integers (1e-7 degrees, about 1 cm) in packed arrays.
+ *
+ * Geometry g holds the points pointOffsets[g]..pointOffsets[g+1]-1 and
+ * belongs to the pgRouting edge id geometryIds[g]; graph edges find their
+ * geometry through edgeGeometry. The coordinate of a vertex is the line
+ * end point shared by most of its edges, which copes with tables whose
+ * lines do not all run from source to target. An edge whose line runs
+ * from its target to its source is flagged as reversed. The length of
+ * each line in metres is kept as well, for route properties.
+ */
+public class GeometryStore {
+
+    public static final double SCALE = 1e7;
+
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private final int[] geometryIds;
+    private final int[] pointOffsets;
+    private final int[] coords;
+    private final double[] lengths;
+    private final int[] edgeGeometry;
+    private final long[] reversed;
+    private final int[] vertexCoords;
+
+    GeometryStore(int[] geometryIds, int[] pointOffsets, int[] coords,
+            double[] lengths, int[] edgeGeometry, long[] reversed,
+            int[] vertexCoords) {
+        this.geometryIds  = geometryIds;
+        this.pointOffsets = pointOffsets;
+        this.coords       = coords;
+        this.lengths      = lengths;
+        this.edgeGeometry = edgeGeometry;
+        this.reversed     = reversed;
+        this.vertexCoords = vertexCoords;
+    }
+
+    public int geometryCount() {
+        return geometryIds.length;
+    }
+
+    /**
+     * @return pgRouting edge id of geometry g
+     */
+    public int geometryId(int g) {
+        return geometryIds[g];
+    }
+
+    public int pointCount(int g) {
+        return pointOffsets[g + 1] - pointOffsets[g];
+    }
+
+    public double x(int g, int i) {
+        return coords[2 * (pointOffsets[g] + i)] / SCALE;
+    }
+
+    public double y(int g, int i) {
+        return coords[2 * (pointOffsets[g] + i) + 1] / SCALE;
+    }
+
+    /**
+     * @return x of point i of geometry g in units of 1/SCALE degrees
+     */
+    int fixedX(int g, int i) {
+        return coords[2 * (pointOffsets[g] + i)];
+    }
+
+    int fixedY(int g, int i) {
+        return coords[2 * (pointOffsets[g] + i) + 1];
+    }
+
+    /**
+     * @return length of geometry g in metres
+     */
+    public double length(int g) {
+        return lengths[g];
+    }
+
+    /**
+     * @return geometry of graph edge e, -1 if the edge has none
+     */
+    public int geometryOf(int e) {
+        return edgeGeometry[e];
+    }
+
+    /**
+     * @return whether the geometry of edge e runs from target to source
+     */
+    public boolean isReversed(int e) {
+        return (reversed[e >>> 6] & (1L << e)) != 0;
+    }
+
+    public boolean hasCoordinates(int v) {
+        return vertexCoords[2 * v] != UNKNOWN;
+    }
+
+    /**
+     * @return longitude of vertex v, NaN if unknown
+     */
+    public double vertexX(int v) {
+        int x = vertexCoords[2 * v];
+        return x == UNKNOWN ? Double.NaN : x / SCALE;
+    }
+
+    /**
+     * @return latitude of vertex v, NaN if unknown
+     */
+    public double vertexY(int v) {
+        int x = vertexCoords[2 * v];
+        return x == UNKNOWN ? Double.NaN : vertexCoords[2 * v + 1] / SCALE;
+    }
+
+    /**
+     * @return approximate heap footprint in bytes
+     */
+    public long estimatedHeapBytes() {
+        return geometryIds.length * 16L + coords.length * 4L
+                + edgeGeometry.length * 4L + reversed.length * 8L
+                + vertexCoords.length * 4L;
+    }
+
+    /**
+     * Writes the arrays of the store, to be read back by read.
+     */
+    void write(BinaryFileWriter writer) throws IOException {
+        writer.writeInts(geometryIds);
+        writer.writeInts(pointOffsets);
+        writer.writeInts(coords);
+        writer.writeDoubles(lengths);
+        writer.writeInts(edgeGeometry);
+        writer.writeLongs(reversed);
+        writer.writeInts(vertexCoords);
+    }
+
+    /**
+     * Reads a store written by write for the given graph.
+     */
+    static GeometryStore read(MappedFileReader reader, CsrGraph graph)
+            throws IOException {
+        int[] geometryIds  = reader.readInts();
+        int[] pointOffsets = reader.readInts();
+        int[] coords       = reader.readInts();
+        double[] lengths   = reader.readDoubles();
+        int[] edgeGeometry = reader.readInts();
+        long[] reversed    = reader.readLongs();
+        int[] vertexCoords = reader.readInts();
+
+        int count = geometryIds.length;
+        if( pointOffsets.length != count + 1 || lengths.length != count
+                || coords.length != 2 * pointOffsets[count]
+                || edgeGeometry.length != graph.edgeCount()
+                || reversed.length != (graph.edgeCount() + 63) >>> 6
+                || vertexCoords.length != 2 * graph.vertexCount() ) {
+            throw new IOException("Inconsistent geometry arrays");
+        }
+        return new GeometryStore(geometryIds, pointOffsets, coords, lengths,
+                edgeGeometry, reversed, vertexCoords);
+    }
+
+    private static int fixed(double value) {
+        return (int) Math.round(value * SCALE);
+    }
+
+    /**
+     * Collects the WKB line geometries of the graph rows.
+     */
+    public static class Builder {
+
+        private final IntList ids = new IntList();
+        private final IntList offsets = new IntList();
+        private final IntList coords = new IntList(1024);
+        private final DoubleList lengths = new DoubleList();
+        private final DoubleList scratch = new DoubleList();
+
+        public Builder() {
+            offsets.add(0);
+        }
+
+        /**
+         * Adds a line whose length is computed on a sphere.
+         *
+         * @param edgeId pgRouting edge id of the row
+         * @param wkb line geometry of the row, ignored when null
+         */
+        public Builder add(int edgeId, byte[] wkb) {
+            return add(edgeId, wkb, Double.NaN);
+        }
+
+        /**
+         * @param length length in metres as computed by the database,
+         *        NaN to compute it on a sphere
+         */
+        public Builder add(int edgeId, byte[] wkb, double length) {
+            if( wkb == null ) {
+                return this;
+            }
+            scratch.clear();
+            int points = WkbReader.readLine(wkb, scratch);
+            if( points == 0 ) {
+                return this;
+            }
+            for(int i=0;i<scratch.size();i++) {
+                coords.add(fixed(scratch.get(i)));
+            }
+            if( Double.isNaN(length) ) {
+                length = 0;
+                for(int i=2;i<scratch.size();i+=2) {
+                    length += 1000d * DistanceUtil.euclidean(
+                            scratch.get(i - 1), scratch.get(i - 2),
+                            scratch.get(i + 1), scratch.get(i));
+                }
+            }
+            lengths.add(length);
+            ids.add(edgeId);
+            offsets.add(coords.size() / 2);
+            return this;
+        }
+
+        public int size() {
+            return ids.size();
+        }
+
+        public GeometryStore build(CsrGraph graph) {
+            int[] geometryIds = ids.toArray();
+            int[] pointOffsets = offsets.toArray();
+            int[] xy = coords.toArray();
+
+            int[] edgeGeometry = new int[graph.edgeCount()];
+            Arrays.fill(edgeGeometry, -1);
+            for(int g=0;g<geometryIds.length;g++) {
+                for(int e : graph.edgesWithId(geometryIds[g])) {
+                    edgeGeometry[e] = g;
+                }
+            }
+
+            int n = graph.vertexCount();
+            int[] vertexCoords = new int[2 * n];
+            Arrays.fill(vertexCoords, UNKNOWN);
+            long[] candidates = new long[16];
+            for(int v=0;v<n;v++) {
+                int count = 0;
+                for(int e=graph.firstOut(v);e<graph.endOut(v);e++) {
+                    int g = edgeGeometry[e];
+                    if( g >= 0 ) {
+                        candidates = grow(candidates, count + 2);
+                        candidates[count++] = point(xy, pointOffsets[g]);
+                        candidates[count++] = point(xy, pointOffsets[g + 1] - 1);
+                    }
+                }
+                for(int i=graph.firstIn(v);i<graph.endIn(v);i++) {
+                    int g = edgeGeometry[graph.inEdge(i)];
+                    if( g >= 0 ) {
+                        candidates = grow(candidates, count + 2);
+                        candidates[count++] = point(xy, pointOffsets[g + 1] - 1);
+                        candidates[count++] = point(xy, pointOffsets[g]);
+                    }
+                }
+                /**
+                 * Each edge contributes its near end first, so on a tie
+                 * the end that follows the source-to-target convention wins
+                 */
+                long best = 0;
+                int bestVotes = 0;
+                for(int c=0;c<count;c++) {
+                    int votes = 0;
+                    for(int k=0;k<count;k+=2) {
+                        if( candidates[k] == candidates[c]
+                                || candidates[k + 1] == candidates[c] ) {
+                            votes++;
+                        }
+                    }
+                    if( votes > bestVotes ) {
+                        best = candidates[c];
+                        bestVotes = votes;
+                    }
+                }
+                if( bestVotes > 0 ) {
+                    vertexCoords[2 * v]     = (int) (best >> 32);
+                    vertexCoords[2 * v + 1] = (int) best;
+                }
+            }
+
+            long[] reversed = new long[(graph.edgeCount() + 63) >>> 6];
+            for(int e=0;e<graph.edgeCount();e++) {
+                int g = edgeGeometry[e];
+                if( g < 0 ) {
+                    continue;
+                }
+                long first = point(xy, pointOffsets[g]);
+                long last = point(xy, pointOffsets[g + 1] - 1);
+                double along = distanceSq(vertexCoords, graph.source(e), first)
+                        + distanceSq(vertexCoords, graph.target(e), last);
+                double against = distanceSq(vertexCoords, graph.source(e), last)
+                        + distanceSq(vertexCoords, graph.target(e), first);
+                if( against < along ) {
+                    reversed[e >>> 6] |= 1L << e;
+                }
+            }
+            double[] lineLengths = new double[lengths.size()];
+            for(int g=0;g<lineLengths.length;g++) {
+                lineLengths[g] = lengths.get(g);
+            }
+            return new GeometryStore(geometryIds, pointOffsets, xy,
+                    lineLengths, edgeGeometry, reversed, vertexCoords);
+        }
+
+        private static long[] grow(long[] array, int capacity) {
+            return capacity <= array.length ? array
+                    : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+        }
+
+        private static long point(int[] xy, int p) {
+            return ((long) xy[2 * p] << 32) | (xy[2 * p + 1] & 0xFFFFFFFFL);
+        }
+
+        private static double distanceSq(int[] vertexCoords, int v, long p) {
+            if( vertexCoords[2 * v] == UNKNOWN ) {
+                return 0;
+            }
+            double dx = (double) vertexCoords[2 * v] - (int) (p >> 32);
+            double dy = (double) vertexCoords[2 * v + 1] - (int) p;
+            return dx * dx + dy * dy;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：GraphGeneration.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 説明：
+ * One loaded version of the routing data. The graph of a generation is
+ * never modified, so a request that picked up a generation can finish on
+ * it while a reload prepares the next one.
+ *
+ * The id, metric and graph are final. Everything else is held in volatile
+ * fields. The spatial index, the geographic heuristic and the generations
+ * of the other metrics are set before MainGraph publishes the generation.
+ * The contraction hierarchy, the customizable hierarchy, the ALT landmarks
+ * and the all pairs tables may be attached afterwards, by the background
+ * builders, once they are complete. A reader takes each of them once per
+ * request and falls back to a plain search while it is still null.
+ *
+ * A weight update creates a new generation that shares the topology and
+ * the customizable hierarchy of the one it replaces.
+ *
+ * With several metrics (see GraphMetrics) there is one generation per
+ * metric, all with the same id, topology and spatial index. The one of
+ * the default metric is published, and metric(name) leads from any of
+ * them to the others.
+ */
+public class GraphGeneration {
+
+    private final long id;
+    private final String metric;
+    private final long createdAt;
+    private final CsrGraph graph;
+    private final CsrGraphView view;
+    private volatile Map<String, GraphGeneration> metrics;
+
+    private volatile ContractionHierarchy hierarchy;
+    private volatile HierarchyBuildTask hierarchyTask;
+    private volatile CustomizableHierarchy customizable;
+    private volatile SpatialIndex spatialIndex;
+    private volatile GeoHeuristic geoHeuristic;
+    private volatile LandmarkIndex landmarks;
+    private volatile AllPairsIndex allPairs;
+
+    public GraphGeneration(long id, CsrGraph graph) {
+        this(id, "cost", graph);
+    }
+
+    /**
+     * @param metric name of the metric of the graph weights
+     */
+    public GraphGeneration(long id, String metric, CsrGraph graph) {
+        this.id = id;
+        this.metric = metric;
+        this.createdAt = System.currentTimeMillis();
+        this.graph = graph;
+        this.view = new CsrGraphView(graph);
+    }
+
+    /**
+     * Generation with another id and everything else of this one, for a
+     * metric that a weight update of another metric leaves as it is.
+     */
+    GraphGeneration withId(long id) {
+        GraphGeneration retVal = new GraphGeneration(id, metric, graph);
+        retVal.hierarchy    = hierarchy;
+        retVal.customizable = customizable;
+        retVal.spatialIndex = spatialIndex;
+        retVal.geoHeuristic = geoHeuristic;
+        retVal.landmarks    = landmarks;
+        retVal.allPairs     = allPairs;
+        return retVal;
+    }
+
+    /**
+     * @return id を取得する
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return metric を取得する
+     */
+    public String getMetric() {
+        return metric;
+    }
+
+    /**
+     * @return generation of the named metric with the same id, null when
+     *         there is no such metric
+     */
+    public GraphGeneration metric(String name) {
+        Map<String, GraphGeneration> all = metrics;
+        if( all == null ) {
+            return metric.equals(name) ? this : null;
+        }
+        return all.get(name);
+    }
+
+    /**
+     * @return generation per metric name, the default metric first
+     */
+    public Map<String, GraphGeneration> getMetrics() {
+        Map<String, GraphGeneration> all = metrics;
+        return all == null ? Collections.singletonMap(metric, this) : all;
+    }
+
+    /**
+     * Links the generations of all metrics; set on each of them before
+     * they are published.
+     */
+    void setMetrics(Map<String, GraphGeneration> metrics) {
+        this.metrics = Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * @return createdAt を取得する
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return graph を取得する
+     */
+    public CsrGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return JGraphT view of the graph
+     */
+    public CsrGraphView getView() {
+        return view;
+    }
+
+    /**
+     * @return the contraction hierarchy, or null while it is not ready
+     */
+    public ContractionHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    void setHierarchy(ContractionHierarchy hierarchy) {
+        if( this.hierarchy == null ) {
+            this.hierarchy = hierarchy;
+        }
+    }
+
+    HierarchyBuildTask getHierarchyTask() {
+        return hierarchyTask;
+    }
+
+    void setHierarchyTask(HierarchyBuildTask hierarchyTask) {
+        this.hierarchyTask = hierarchyTask;
+    }
+
+    /**
+     * @return the metric independent hierarchy for weight updates, or
+     *         null while it is not ready
+     */
+    public CustomizableHierarchy getCustomizable() {
+        return customizable;
+    }
+
+    void setCustomizable(CustomizableHierarchy customizable) {
+        if( this.customizable == null ) {
+            this.customizable = customizable;
+        }
+    }
+
+    /**
+     * @return index for snapping points to the graph, or null when the 
+     *         geometries were not loaded
+     */
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    void setSpatialIndex(SpatialIndex spatialIndex) {
+        this.spatialIndex = spatialIndex;
+    }
+
+    /**
+     * @return A* heuristic from the vertex coordinates, or null when the
+     *         geometries were not loaded
+     */
+    public GeoHeuristic getGeoHeuristic() {
+        return geoHeuristic;
+    }
+
+    void setGeoHeuristic(GeoHeuristic geoHeuristic) {
+        this.geoHeuristic = geoHeuristic;
+    }
+
+    /**
+     * @return landmark distances for ALT searches, or null while they are
+     *         not ready
+     */
+    public LandmarkIndex getLandmarks() {
+        return landmarks;
+    }
+
+    void setLandmarks(LandmarkIndex landmarks) {
+        if( this.landmarks == null ) {
+            this.landmarks = landmarks;
+        }
+    }
+
+    /**
+     * @return shortest paths between all pairs of vertices, or null while
+     *         they are not ready or when they do not fit the budget
+     */
+    public AllPairsIndex getAllPairs() {
+        return allPairs;
+    }
+
+    void setAllPairs(AllPairsIndex allPairs) {
+        if( this.allPairs == null ) {
+            this.allPairs = allPairs;
+        }
+    }
+
+    /**
+     * @return approximate heap footprint of the graph and of what has 
+     *         been built for it so far, every metric included; shared 
+     *         topology and structures are counted once
+     */
+    public long estimatedHeapBytes() {
+        long retVal = graph.estimatedHeapBytes();
+        if( customizable != null ) {
+            retVal += customizable.estimatedHeapBytes();
+        }
+        if( spatialIndex != null ) {
+            retVal += spatialIndex.getGeometry().estimatedHeapBytes();
+        }
+        if( allPairs != null ) {
+            retVal += allPairs.estimatedHeapBytes();
+        }
+        for(GraphGeneration gen : getMetrics().values()) {
+            if( gen != this ) {
+                retVal += 8L * gen.graph.edgeCount();
+            }
+            if( gen.hierarchy != null ) {
+                retVal += gen.hierarchy.estimatedHeapBytes();
+            }
+            if( gen.landmarks != null ) {
+                retVal += gen.landmarks.estimatedHeapBytes();
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Value for response headers and cache keys: the generation counter
+     * followed by the graph checksum, so that generations of different
+     * runs of the service can be told apart as well.
+     */
+    public String getTag() {
+        return id + "-" + Long.toHexString(graph.checksum());
+    }
+}
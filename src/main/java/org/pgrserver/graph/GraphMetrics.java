@@ -0,0 +1,199 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：GraphMetrics.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 説明：
+ * The edge weights read from the pgrserver view: one metric per weight
+ * column, each optionally with a reverse column in the manner of
+ * pgRouting's reverse_cost.
+ *
+ * A metric is written as name:column or name:column:reverse_column, and
+ * several are separated by commas; the first one is the default. All
+ * metrics share one topology: a row gives the edge source -> target when
+ * any of its forward columns is 0 or more, and the edge target -> source
+ * when any of its reverse columns is. In a metric whose column is
+ * negative or NULL for such an edge, the edge is closed (+Infinity).
+ */
+public class GraphMetrics {
+
+    /**
+     * The pgrserver view as it has always been read: cost, one way
+     */
+    public static final String DEFAULT = "cost:cost";
+
+    private static final Pattern IDENTIFIER =
+            Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final String spec;
+    private final String[] names;
+    private final String[] columns;
+    private final String[] reverseColumns;
+    private final int[] reverseFields;
+    private final int reverseCount;
+
+    private GraphMetrics(String spec, String[] names, String[] columns,
+            String[] reverseColumns) {
+        this.spec           = spec;
+        this.names          = names;
+        this.columns        = columns;
+        this.reverseColumns = reverseColumns;
+        this.reverseFields  = new int[names.length];
+        int count = 0;
+        for(int i=0;i<names.length;i++) {
+            reverseFields[i] = reverseColumns[i] == null ? -1 :
+                names.length + count++;
+        }
+        this.reverseCount = count;
+    }
+
+    /**
+     * @param spec metrics as described above, DEFAULT when null or empty
+     * @throws IllegalArgumentException when a metric is malformed, a name
+     *         is repeated or a column is not a plain identifier
+     */
+    public static GraphMetrics parse(String spec) {
+        if( spec == null || spec.trim().isEmpty() ) {
+            spec = DEFAULT;
+        }
+        List<String> names = new ArrayList<String>();
+        List<String> columns = new ArrayList<String>();
+        List<String> reverseColumns = new ArrayList<String>();
+        for(String metric : spec.split(",")) {
+            String[] parts = metric.trim().split(":");
+            if( parts.length < 2 || parts.length > 3 ) {
+                throw new IllegalArgumentException("Metric '"+metric.trim()
+                        +"' is not name:column or name:column:reverse_column");
+            }
+            for(String part : parts) {
+                if( !IDENTIFIER.matcher(part).matches() ) {
+                    throw new IllegalArgumentException("Metric '"
+                            +metric.trim()+"': '"+part
+                            +"' is not a plain identifier");
+                }
+            }
+            if( names.contains(parts[0]) ) {
+                throw new IllegalArgumentException("Metric "+parts[0]
+                        +" is defined twice");
+            }
+            names.add(parts[0]);
+            columns.add(parts[1]);
+            reverseColumns.add(parts.length == 3 ? parts[2] : null);
+        }
+        return new GraphMetrics(spec,
+                names.toArray(new String[names.size()]),
+                columns.toArray(new String[columns.size()]),
+                reverseColumns.toArray(new String[reverseColumns.size()]));
+    }
+
+    /**
+     * @return the metrics as given to parse
+     */
+    public String getSpec() {
+        return spec;
+    }
+
+    public int count() {
+        return names.length;
+    }
+
+    public String name(int i) {
+        return names[i];
+    }
+
+    /**
+     * @return name of the default metric
+     */
+    public String defaultName() {
+        return names[0];
+    }
+
+    /**
+     * @return position of a metric, -1 when there is none of that name
+     */
+    public int indexOf(String name) {
+        return Arrays.asList(names).indexOf(name);
+    }
+
+    /**
+     * @return whether the graph is the one DEFAULT describes
+     */
+    public boolean isDefault() {
+        return names.length == 1 && reverseCount == 0
+                && "cost".equals(names[0]) && "cost".equals(columns[0]);
+    }
+
+    /**
+     * @return fields per row: id, source, target, the forward columns and
+     *         the reverse columns
+     */
+    public int fieldCount() {
+        return 3 + names.length + reverseCount;
+    }
+
+    /**
+     * @return query of the rows for JPA, fields as in fieldCount
+     */
+    public String selectSql() {
+        StringBuilder sb = new StringBuilder("select id,source,target");
+        for(String column : columns) {
+            sb.append(',').append(column);
+        }
+        for(String column : reverseColumns) {
+            if( column != null ) {
+                sb.append(',').append(column);
+            }
+        }
+        return sb.append(" from pgrserver").toString();
+    }
+
+    /**
+     * @return binary COPY of the rows for CopyGraphLoader, fields as in
+     *         fieldCount
+     */
+    public String copySql() {
+        StringBuilder sb = new StringBuilder(
+                "COPY (select id::int8,source::int8,target::int8");
+        for(String column : columns) {
+            sb.append(',').append(column).append("::float8");
+        }
+        for(String column : reverseColumns) {
+            if( column != null ) {
+                sb.append(',').append(column).append("::float8");
+            }
+        }
+        return sb.append(" from pgrserver) TO STDOUT (FORMAT binary)")
+                .toString();
+    }
+
+    /**
+     * Adds the edges of one row.
+     *
+     * @param values the weight fields of the row in the order of
+     *        fieldCount, NaN for NULL
+     * @param scratch array of count() weights, overwritten
+     */
+    void addRow(CsrGraph.Builder builder, int id, int source, int target,
+            double[] values, double[] scratch) {
+        for(int i=0;i<names.length;i++) {
+            scratch[i] = values[i];
+        }
+        builder.addEdge(id, source, target, scratch);
+        if( reverseCount == 0 ) {
+            return;
+        }
+        for(int i=0;i<names.length;i++) {
+            scratch[i] = reverseFields[i] < 0 ? -1 : values[reverseFields[i]];
+        }
+        builder.addReverseEdge(id, source, target, scratch);
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：GraphSnapshot.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.pgrserver.util.BinaryFileWriter;
+import org.pgrserver.util.MappedFileReader;
+
+/**
+ * 説明：
+ * On-disk copy of a loaded graph, so that a restart does not have to read
+ * the pgrserver view again.
+ *
+ * The file starts with a header (magic, format version, creation time, a
+ * key of the database it was read from and the graph checksum), followed
+ * by sections and a table of their positions at the end. The graph
+ * section holds the vertex ids and all CsrGraph arrays; the geometry
+ * section, present when the edge geometries were loaded, the GeometryStore
+ * arrays; the metrics section, present when there are several metrics,
+ * the name and weights of every metric besides the default one. Readers
+ * skip sections they do not know.
+ *
+ * The contraction hierarchy is not part of the snapshot: it is already
+ * cached in its own file, keyed by the same graph checksum.
+ */
+public class GraphSnapshot {
+
+    private static final int FILE_MAGIC = 0x50475253;
+    private static final int FILE_VERSION = 2;
+
+    private static final int SECTION_GRAPH = 1;
+    private static final int SECTION_GEOMETRY = 2;
+    private static final int SECTION_METRICS = 3;
+
+    private final CsrGraph graph;
+    private final Map<String, CsrGraph> metrics;
+    private final GeometryStore geometry;
+    private final long createdAt;
+
+    GraphSnapshot(CsrGraph graph, Map<String, CsrGraph> metrics,
+            GeometryStore geometry, long createdAt) {
+        this.graph     = graph;
+        this.metrics   = metrics;
+        this.geometry  = geometry;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * @return graph of the default metric
+     */
+    public CsrGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return graphs of the other metrics by name, sharing the topology
+     *         of getGraph
+     */
+    public Map<String, CsrGraph> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the edge geometries, null if they were not saved
+     */
+    public GeometryStore getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * @return time the snapshot was written, in epoch milliseconds
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * 64-bit key of a data source description, e.g. the database URL and
+     * user, stored with a snapshot to tell which database it came from.
+     */
+    public static long sourceKey(String source) {
+        long h = 0xCBF29CE484222325L;
+        for(byte b : source.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return h;
+    }
+
+    /**
+     * Writes a snapshot of graph and, unless null, its geometries. The
+     * file is replaced atomically.
+     */
+    public static void write(Path file, CsrGraph graph, GeometryStore geometry,
+            long sourceKey) throws IOException {
+        write(file, graph, Collections.<String, CsrGraph>emptyMap(),
+                geometry, sourceKey);
+    }
+
+    /**
+     * Writes a snapshot of graph, the weights of the other metrics and,
+     * unless null, the geometries. The file is replaced atomically.
+     *
+     * @param metrics graphs of the other metrics by name, with the
+     *        topology of graph
+     */
+    public static void write(Path file, CsrGraph graph,
+            Map<String, CsrGraph> metrics, GeometryStore geometry,
+            long sourceKey) throws IOException {
+        try( BinaryFileWriter writer = new BinaryFileWriter(file) ) {
+            writer.writeInt(FILE_MAGIC);
+            writer.writeInt(FILE_VERSION);
+            writer.writeLong(System.currentTimeMillis());
+            writer.writeLong(sourceKey);
+            writer.writeLong(graph.checksum());
+
+            long graphSection = writer.position();
+            graph.write(writer);
+            long geometrySection = writer.position();
+            if( geometry != null ) {
+                geometry.write(writer);
+            }
+            long metricsSection = writer.position();
+            if( !metrics.isEmpty() ) {
+                writer.writeInt(metrics.size());
+                for(Map.Entry<String, CsrGraph> m : metrics.entrySet()) {
+                    writer.writeInts(m.getKey().codePoints().toArray());
+                    writer.writeDoubles(m.getValue().copyWeights());
+                }
+            }
+
+            long table = writer.position();
+            writer.writeInt(1 + (geometry != null ? 1 : 0)
+                    + (metrics.isEmpty() ? 0 : 1));
+            writer.writeInt(SECTION_GRAPH);
+            writer.writeLong(graphSection);
+            if( geometry != null ) {
+                writer.writeInt(SECTION_GEOMETRY);
+                writer.writeLong(geometrySection);
+            }
+            if( !metrics.isEmpty() ) {
+                writer.writeInt(SECTION_METRICS);
+                writer.writeLong(metricsSection);
+            }
+            writer.writeLong(table);
+            writer.commit();
+        }
+    }
+
+    /**
+     * Reads a snapshot written by write.
+     *
+     * @param notBefore oldest acceptable creation time, in epoch
+     *        milliseconds
+     * @return the snapshot, or null when there is no file or it has
+     *         another format version, comes from another source or is
+     *         older than notBefore
+     * @throws IOException when the file cannot be read or is damaged
+     */
+    public static GraphSnapshot read(Path file, long sourceKey,
+            long notBefore) throws IOException {
+        if( !Files.isRegularFile(file) ) {
+            return null;
+        }
+        try( MappedFileReader reader = new MappedFileReader(file) ) {
+            if( reader.readInt() != FILE_MAGIC
+                    || reader.readInt() != FILE_VERSION ) {
+                return null;
+            }
+            long createdAt = reader.readLong();
+            if( reader.readLong() != sourceKey || createdAt < notBefore ) {
+                return null;
+            }
+            long checksum = reader.readLong();
+
+            reader.seek(reader.size() - 8);
+            reader.seek(reader.readLong());
+            long graphSection = -1;
+            long geometrySection = -1;
+            long metricsSection = -1;
+            int sections = reader.readInt();
+            for(int i=0;i<sections;i++) {
+                int id = reader.readInt();
+                long position = reader.readLong();
+                if( id == SECTION_GRAPH ) {
+                    graphSection = position;
+                }
+                else if( id == SECTION_GEOMETRY ) {
+                    geometrySection = position;
+                }
+                else if( id == SECTION_METRICS ) {
+                    metricsSection = position;
+                }
+            }
+            if( graphSection < 0 ) {
+                throw new IOException("Snapshot without graph section");
+            }
+
+            reader.seek(graphSection);
+            CsrGraph graph = CsrGraph.read(reader);
+            if( graph.checksum() != checksum ) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+            GeometryStore geometry = null;
+            if( geometrySection >= 0 ) {
+                reader.seek(geometrySection);
+                geometry = GeometryStore.read(reader, graph);
+            }
+            Map<String, CsrGraph> metrics =
+                    new LinkedHashMap<String, CsrGraph>();
+            if( metricsSection >= 0 ) {
+                reader.seek(metricsSection);
+                int count = reader.readInt();
+                for(int i=0;i<count;i++) {
+                    int[] name = reader.readInts();
+                    metrics.put(new String(name, 0, name.length),
+                            graph.withWeights(reader.readDoubles()));
+                }
+            }
+            return new GraphSnapshot(graph, metrics, geometry, createdAt);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：HierarchyBuildTask.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 説明：
+ * Provides the contraction hierarchy of one graph in the background.
+ *
+ * A hierarchy file written for a graph with the same checksum is loaded
+ * when present; otherwise the graph is contracted on all configured
+ * threads and the result is written for the next start or reload.
+ */
+public class HierarchyBuildTask implements Runnable {
+
+    public static final String PENDING   = "PENDING";
+    public static final String LOADING   = "LOADING";
+    public static final String BUILDING  = "BUILDING";
+    public static final String READY     = "READY";
+    public static final String FAILED    = "FAILED";
+    public static final String CANCELLED = "CANCELLED";
+
+    private static final String FILE_PREFIX = "ch-";
+    private static final String FILE_SUFFIX = ".bin";
+
+    private final Logger logger =
+            LoggerFactory.getLogger(HierarchyBuildTask.class);
+
+    private final CsrGraph graph;
+    private final Path directory;
+    private final int threads;
+    private final Consumer<ContractionHierarchy> onReady;
+
+    private volatile String state = PENDING;
+    private volatile String origin;
+    private volatile String error;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile ChPreprocessor preprocessor;
+    private volatile ContractionHierarchy result;
+    private volatile boolean cancelled;
+
+    /**
+     * @param directory where hierarchy files are kept, null to disable
+     * @param threads contraction threads
+     * @param onReady receives the hierarchy once it is available
+     */
+    public HierarchyBuildTask(CsrGraph graph, Path directory, int threads,
+            Consumer<ContractionHierarchy> onReady) {
+        this.graph = graph;
+        this.directory = directory;
+        this.threads = threads;
+        this.onReady = onReady;
+    }
+
+    @Override
+    public void run() {
+        if( cancelled ) {
+            state = CANCELLED;
+            return;
+        }
+        startedAt = System.currentTimeMillis();
+        try {
+            ContractionHierarchy ch = load();
+            if( ch != null ) {
+                origin = "file";
+            }
+            else {
+                state = BUILDING;
+                logger.info("Contracting graph with "+threads+" threads");
+                preprocessor = new ChPreprocessor(graph, threads);
+                if( cancelled ) {
+                    preprocessor.cancel();
+                }
+                ch = preprocessor.run();
+                origin = "built";
+                save(ch);
+            }
+            result = ch;
+            finishedAt = System.currentTimeMillis();
+            state = READY;
+            logger.info("Contraction hierarchy ready ("+origin+", "
+                    +ch.arcCount()+" arcs, "
+                    +(finishedAt - startedAt)+" ms)");
+            onReady.accept(ch);
+        }
+        catch(CancellationException e) {
+            finishedAt = System.currentTimeMillis();
+            state = CANCELLED;
+            logger.info("Contraction hierarchy build cancelled");
+        }
+        catch(Exception | OutOfMemoryError e) {
+            finishedAt = System.currentTimeMillis();
+            error = e.toString();
+            state = FAILED;
+            logger.error("Contraction hierarchy build failed", e);
+        }
+        finally {
+            preprocessor = null;
+        }
+    }
+
+    /**
+     * Stops a running contraction at the end of its current round.
+     */
+    public void cancel() {
+        cancelled = true;
+        ChPreprocessor p = preprocessor;
+        if( p != null ) {
+            p.cancel();
+        }
+    }
+
+    public HierarchyStatus getStatus() {
+        HierarchyStatus status = new HierarchyStatus();
+        status.setState(state);
+        status.setOrigin(origin);
+        status.setVertices(graph.vertexCount());
+        status.setChecksum(Long.toHexString(graph.checksum()));
+        status.setError(error);
+
+        ChPreprocessor p = preprocessor;
+        ContractionHierarchy ch = result;
+        if( ch != null ) {
+            status.setContracted(ch.vertexCount());
+            status.setArcs(ch.arcCount());
+        }
+        else if( p != null ) {
+            status.setContracted(p.progress());
+        }
+        if( startedAt > 0 ) {
+            long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+            status.setElapsedMillis(end - startedAt);
+        }
+        return status;
+    }
+
+    private Path file() {
+        return directory.resolve(FILE_PREFIX
+                + Long.toHexString(graph.checksum()) + FILE_SUFFIX);
+    }
+
+    private ContractionHierarchy load() {
+        if( directory == null || !Files.isRegularFile(file()) ) {
+            return null;
+        }
+        state = LOADING;
+        try {
+            ContractionHierarchy ch =
+                    ContractionHierarchy.read(file(), graph.checksum());
+            if( ch != null && ch.vertexCount() == graph.vertexCount() ) {
+                return ch;
+            }
+            logger.info("Ignoring outdated hierarchy file "+file());
+        }
+        catch(IOException e) {
+            logger.warn("Could not read hierarchy file "+file()+": "+e);
+        }
+        return null;
+    }
+
+    /**
+     * Writes the hierarchy and removes the files of older graphs.
+     */
+    private void save(ContractionHierarchy ch) {
+        if( directory == null ) {
+            return;
+        }
+        Path file = file();
+        try {
+            ch.write(file, graph.checksum());
+            try( DirectoryStream<Path> files = Files.newDirectoryStream(
+                    directory, FILE_PREFIX + "*" + FILE_SUFFIX) ) {
+                for( Path old : files ) {
+                    if( !old.equals(file) ) {
+                        Files.deleteIfExists(old);
+                    }
+                }
+            }
+            logger.info("Contraction hierarchy written to "+file);
+        }
+        catch(IOException e) {
+            logger.warn("Could not write hierarchy file "+file+": "+e);
+        }
+    }
+}
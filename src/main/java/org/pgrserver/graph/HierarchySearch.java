@@ -0,0 +1,186 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：HierarchySearch.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.pgrserver.util.IntDoubleHeap;
+
+/**
+ * 説明：
+ * Bidirectional upward search in a ContractionHierarchy, run on a
+ * reusable workspace.
+ *
+ * As in BidirectionalSearch, the distance and predecessor arrays of both
+ * directions are sized once and every query takes a new stamp instead of
+ * clearing them, so a query costs the vertices it settles and not the
+ * size of the graph. Workspaces are kept in a small pool.
+ */
+public class HierarchySearch {
+
+    private static final ArrayBlockingQueue<HierarchySearch> POOL =
+            new ArrayBlockingQueue<HierarchySearch>(
+                    2 * Runtime.getRuntime().availableProcessors());
+
+    private final int capacity;
+    private final int[] stampF;
+    private final int[] stampB;
+    private final double[] distF;
+    private final double[] distB;
+    private final int[] predF;
+    private final int[] predB;
+    private final IntDoubleHeap heapF = new IntDoubleHeap(64);
+    private final IntDoubleHeap heapB = new IntDoubleHeap(64);
+    private int[] upward = new int[16];
+    private int stamp;
+    private int settled;
+
+    /**
+     * @param capacity largest vertex count of the hierarchies to search
+     */
+    public HierarchySearch(int capacity) {
+        this.capacity = capacity;
+        stampF = new int[capacity];
+        stampB = new int[capacity];
+        distF  = new double[capacity];
+        distB  = new double[capacity];
+        predF  = new int[capacity];
+        predB  = new int[capacity];
+    }
+
+    /**
+     * Takes a workspace for a hierarchy with vertexCount vertices from the
+     * pool, or creates one. Hand it back with release.
+     */
+    public static HierarchySearch acquire(int vertexCount) {
+        HierarchySearch search;
+        while( (search = POOL.poll()) != null ) {
+            if( search.capacity >= vertexCount ) {
+                return search;
+            }
+        }
+        return new HierarchySearch(vertexCount);
+    }
+
+    /**
+     * Returns the workspace to the pool; it is dropped when the pool is
+     * full.
+     */
+    public void release() {
+        POOL.offer(this);
+    }
+
+    /**
+     * @return vertices settled by the queries of this workspace so far
+     */
+    public int settledCount() {
+        return settled;
+    }
+
+    /**
+     * Both directions stop once their smallest queued key is not below
+     * the best meeting distance.
+     *
+     * @return CsrGraph edge indices of the shortest path, empty when
+     *         source equals target, null when not reachable or when the
+     *         search stopped at its budget
+     */
+    public int[] path(ContractionHierarchy ch, int source, int target,
+            SearchBudget budget) {
+        begin();
+        heapF.clear();
+        heapB.clear();
+        stampF[source] = stamp;
+        distF[source]  = 0d;
+        predF[source]  = -1;
+        heapF.push(source, 0d);
+        stampB[target] = stamp;
+        distB[target]  = 0d;
+        predB[target]  = -1;
+        heapB.push(target, 0d);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        int count = 0;
+
+        while( heapF.peekKey() < best || heapB.peekKey() < best ) {
+            boolean forward = heapF.peekKey() <= heapB.peekKey();
+            IntDoubleHeap heap = forward ? heapF : heapB;
+            double[] dist   = forward ? distF : distB;
+            int[] seen      = forward ? stampF : stampB;
+            double[] other  = forward ? distB : distF;
+            int[] otherSeen = forward ? stampB : stampF;
+            int[] pred      = forward ? predF : predB;
+            int[] offsets   = forward ? ch.upOffsets : ch.downOffsets;
+            int[] arcs      = forward ? ch.upArcs : ch.downArcs;
+            int[] ends      = forward ? ch.arcHead : ch.arcTail;
+
+            double du = heap.peekKey();
+            int u = heap.poll();
+            if( du > dist[u] ) {
+                continue;
+            }
+            settled++;
+            if( SearchBudget.due(++count) && budget.isExceeded(count) ) {
+                return null;
+            }
+            if( otherSeen[u] == stamp && du + other[u] < best ) {
+                best = du + other[u];
+                meet = u;
+            }
+            for(int i=offsets[u], end=offsets[u + 1]; i<end; i++) {
+                int a = arcs[i];
+                double w = ch.arcWeight[a];
+                if( w == Double.POSITIVE_INFINITY ) {
+                    continue;
+                }
+                int v = ends[a];
+                double dv = du + w;
+                if( seen[v] != stamp || dv < dist[v] ) {
+                    seen[v] = stamp;
+                    dist[v] = dv;
+                    pred[v] = a;
+                    heap.push(v, dv);
+                }
+            }
+        }
+
+        if( meet < 0 ) {
+            return null;
+        }
+
+        ContractionHierarchy.EdgeList edges =
+                new ContractionHierarchy.EdgeList();
+        int length = 0;
+        for(int v=meet; v!=source; v=ch.arcTail[predF[v]]) {
+            if( length == upward.length ) {
+                upward = Arrays.copyOf(upward, length * 2);
+            }
+            upward[length++] = predF[v];
+        }
+        while( length > 0 ) {
+            ch.unpack(upward[--length], edges);
+        }
+        for(int v=meet; v!=target; v=ch.arcHead[predB[v]]) {
+            ch.unpack(predB[v], edges);
+        }
+        return edges.toArray();
+    }
+
+    /**
+     * Takes a new stamp, clearing the stamps when they wrap around.
+     */
+    private void begin() {
+        if( stamp == Integer.MAX_VALUE ) {
+            Arrays.fill(stampF, 0);
+            Arrays.fill(stampB, 0);
+            stamp = 0;
+        }
+        stamp++;
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：HierarchyStatus.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+/**
+ * 説明：
+ * Snapshot of the contraction hierarchy build, returned by the status
+ * service.
+ */
+public class HierarchyStatus {
+
+    private String generation;
+    private String state;
+    private String origin;
+    private int vertices;
+    private int contracted;
+    private int arcs;
+    private long elapsedMillis;
+    private String checksum;
+    private String error;
+
+    /**
+     * @return generation を取得する
+     */
+    public String getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @param generation generation を設定する
+     */
+    public void setGeneration(String generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * @return state を取得する
+     */
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * @param state state を設定する
+     */
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    /**
+     * @return origin を取得する
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    /**
+     * @param origin origin を設定する
+     */
+    public void setOrigin(String origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * @return vertices を取得する
+     */
+    public int getVertices() {
+        return vertices;
+    }
+
+    /**
+     * @param vertices vertices を設定する
+     */
+    public void setVertices(int vertices) {
+        this.vertices = vertices;
+    }
+
+    /**
+     * @return contracted を取得する
+     */
+    public int getContracted() {
+        return contracted;
+    }
+
+    /**
+     * @param contracted contracted を設定する
+     */
+    public void setContracted(int contracted) {
+        this.contracted = contracted;
+    }
+
+    /**
+     * @return arcs を取得する
+     */
+    public int getArcs() {
+        return arcs;
+    }
+
+    /**
+     * @param arcs arcs を設定する
+     */
+    public void setArcs(int arcs) {
+        this.arcs = arcs;
+    }
+
+    /**
+     * @return elapsedMillis を取得する
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @param elapsedMillis elapsedMillis を設定する
+     */
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return checksum を取得する
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @param checksum checksum を設定する
+     */
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    /**
+     * @return error を取得する
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @param error error を設定する
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,361 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：LandmarkIndex.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.pgrserver.util.IntDoubleHeap;
+import org.pgrserver.util.ParallelLoop;
+
+/**
+ * 説明：
+ * Landmark distances for ALT (A*, landmarks, triangle inequality).
+ *
+ * For every landmark L the distances d(L,v) and d(v,L) to and from all
+ * vertices are kept, and d(v,t) >= max(d(L,t) - d(L,v), d(v,L) - d(t,L))
+ * gives A* a lower bound towards the target. The tables are float arrays
+ * laid out per vertex (the count values of vertex v start at v*count), so
+ * that a bound reads two short contiguous runs. Values are rounded down
+ * when stored, and every bound is lowered by the largest rounding step,
+ * which keeps it admissible.
+ *
+ * The first landmark is the vertex farthest from a random root, the
+ * others are chosen by avoid: grow a shortest path tree from a random
+ * root, weigh each vertex by how much the current landmarks underestimate
+ * its distance from the root, and take a leaf below the heaviest subtree
+ * that holds no landmark yet.
+ */
+public class LandmarkIndex {
+
+    /**
+     * Landmarks used per query, those with the best bound between source
+     * and target
+     */
+    static final int ACTIVE = 4;
+
+    private final int count;
+    private final int[] landmarks;
+    private final float[] fromLandmark;
+    private final float[] toLandmark;
+    private final double slack;
+
+    private LandmarkIndex(int count, int[] landmarks, float[] fromLandmark,
+            float[] toLandmark) {
+        this.count        = count;
+        this.landmarks    = landmarks;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark   = toLandmark;
+
+        float max = 0;
+        for(float d : fromLandmark) {
+            if( d != Float.POSITIVE_INFINITY ) {
+                max = Math.max(max, d);
+            }
+        }
+        for(float d : toLandmark) {
+            if( d != Float.POSITIVE_INFINITY ) {
+                max = Math.max(max, d);
+            }
+        }
+        this.slack = Math.ulp(max);
+    }
+
+    /**
+     * Selects up to count landmarks and computes their distance tables.
+     *
+     * @param threads threads for the searches, of which up to three run
+     *        at once: both tables of a landmark and the tree for the next
+     */
+    public static LandmarkIndex build(CsrGraph graph, int count,
+            int threads) {
+        final int n = graph.vertexCount();
+        count = Math.max(1, Math.min(count, n));
+        final int k = count;
+        final float[] from = new float[n * k];
+        final float[] to = new float[n * k];
+        int[] landmarks = new int[k];
+        Random random = new Random(graph.topologyChecksum());
+
+        final double[] rootDist = new double[n];
+        final int[] rootPred = new int[n];
+        final int[] rootOrder = new int[n];
+        final int[] settled = new int[1];
+
+        try( ParallelLoop loop = new ParallelLoop(
+                Math.max(1, Math.min(threads, 3)), 1,
+                "alt-landmarks") ) {
+            settled[0] = search(graph, random.nextInt(n), false, rootDist,
+                    rootPred, rootOrder);
+            int first = rootOrder[0];
+            for(int i=0;i<settled[0];i++) {
+                if( rootDist[rootOrder[i]] > rootDist[first] ) {
+                    first = rootOrder[i];
+                }
+            }
+            landmarks[0] = first;
+
+            for(int l=0;l<k;l++) {
+                final int landmark = l;
+                final int L = landmarks[l];
+                final int root = random.nextInt(n);
+                final boolean last = l + 1 == k;
+                loop.run(3, task -> {
+                    if( task == 2 ) {
+                        if( !last ) {
+                            settled[0] = search(graph, root, false,
+                                    rootDist, rootPred, rootOrder);
+                        }
+                        return;
+                    }
+                    double[] dist = new double[n];
+                    search(graph, L, task == 1, dist, null, null);
+                    float[] table = task == 1 ? to : from;
+                    for(int v=0;v<n;v++) {
+                        table[v * k + landmark] = roundDown(dist[v]);
+                    }
+                });
+                if( !last ) {
+                    landmarks[l + 1] = avoid(graph, k, l + 1, landmarks,
+                            from, to, rootDist, rootPred, rootOrder,
+                            settled[0]);
+                }
+            }
+        }
+        return new LandmarkIndex(k, landmarks, from, to);
+    }
+
+    /**
+     * Picks the next landmark from the shortest path tree of a root.
+     */
+    private static int avoid(CsrGraph graph, int k, int selected,
+            int[] landmarks, float[] from, float[] to, double[] dist,
+            int[] pred, int[] order, int settled) {
+        int n = graph.vertexCount();
+        int root = order[0];
+        boolean[] isLandmark = new boolean[n];
+        for(int l=0;l<selected;l++) {
+            isLandmark[landmarks[l]] = true;
+        }
+
+        /**
+         * Subtree sizes, children before parents
+         */
+        double[] size = new double[n];
+        boolean[] covered = new boolean[n];
+        for(int i=settled-1;i>=0;i--) {
+            int v = order[i];
+            size[v] += dist[v] - bound(from, to, k, selected, root, v);
+            covered[v] |= isLandmark[v];
+            if( covered[v] ) {
+                size[v] = 0;
+            }
+            if( i > 0 ) {
+                int parent = graph.source(pred[v]);
+                size[parent] += size[v];
+                covered[parent] |= covered[v];
+            }
+        }
+
+        int best = -1;
+        for(int i=0;i<settled;i++) {
+            int v = order[i];
+            if( !covered[v] && (best < 0 || size[v] > size[best]) ) {
+                best = v;
+            }
+        }
+        if( best < 0 ) {
+            for(int v=0;v<n;v++) {
+                if( !isLandmark[v] ) {
+                    return v;
+                }
+            }
+        }
+
+        /**
+         * Down to a leaf, always into the heaviest child
+         */
+        int[] childOffsets = new int[n + 1];
+        for(int i=1;i<settled;i++) {
+            childOffsets[graph.source(pred[order[i]]) + 1]++;
+        }
+        for(int v=0;v<n;v++) {
+            childOffsets[v + 1] += childOffsets[v];
+        }
+        int[] fill = Arrays.copyOf(childOffsets, n);
+        int[] children = new int[Math.max(0, settled - 1)];
+        for(int i=1;i<settled;i++) {
+            int v = order[i];
+            children[fill[graph.source(pred[v])]++] = v;
+        }
+        int v = best;
+        while( true ) {
+            int next = -1;
+            for(int c=childOffsets[v];c<childOffsets[v + 1];c++) {
+                int child = children[c];
+                if( next < 0 || size[child] > size[next] ) {
+                    next = child;
+                }
+            }
+            if( next < 0 ) {
+                return v;
+            }
+            v = next;
+        }
+    }
+
+    public int landmarkCount() {
+        return count;
+    }
+
+    /**
+     * @return dense index of landmark i
+     */
+    public int landmark(int i) {
+        return landmarks[i];
+    }
+
+    /**
+     * @return approximate heap footprint in bytes
+     */
+    public long estimatedHeapBytes() {
+        return (fromLandmark.length + toLandmark.length) * 4L;
+    }
+
+    /**
+     * @return lower bound of the distance from u to w
+     */
+    public double lowerBound(int u, int w) {
+        return Math.max(0,
+                bound(fromLandmark, toLandmark, count, count, u, w) - slack);
+    }
+
+    /**
+     * A* heuristic towards target using the landmarks with the best bound
+     * between source and target.
+     */
+    public CsrDijkstra.Heuristic heuristic(int source, int target) {
+        int active = Math.min(ACTIVE, count);
+        final int[] chosen = new int[active];
+        double[] value = new double[active];
+        Arrays.fill(value, Double.NEGATIVE_INFINITY);
+        for(int i=0;i<count;i++) {
+            double b = bound(fromLandmark, toLandmark, count, i, i + 1,
+                    source, target);
+            for(int a=0;a<active;a++) {
+                if( b > value[a] ) {
+                    System.arraycopy(value, a, value, a + 1, active - a - 1);
+                    System.arraycopy(chosen, a, chosen, a + 1, active - a - 1);
+                    value[a] = b;
+                    chosen[a] = i;
+                    break;
+                }
+            }
+        }
+        return (v, t) -> {
+            double best = 0;
+            int bv = v * count;
+            int bt = t * count;
+            for(int i : chosen) {
+                best = Math.max(best, term(fromLandmark[bt + i],
+                        fromLandmark[bv + i]));
+                best = Math.max(best, term(toLandmark[bv + i],
+                        toLandmark[bt + i]));
+            }
+            return Math.max(0, best - slack);
+        };
+    }
+
+    /**
+     * Searches from source to target with the landmark heuristic.
+     *
+     * @return edge indices of the shortest path, empty when source equals
+     *         target, null when not reachable
+     */
+    public int[] path(CsrGraph graph, int source, int target) {
+        CsrDijkstra dijkstra = CsrDijkstra.acquire(graph);
+        try {
+            return dijkstra.path(source, target, heuristic(source, target));
+        }
+        finally {
+            dijkstra.release();
+        }
+    }
+
+    private static double bound(float[] from, float[] to, int k,
+            int selected, int u, int w) {
+        return bound(from, to, k, 0, selected, u, w);
+    }
+
+    /**
+     * Bound from landmarks first..end-1, without the rounding slack.
+     */
+    private static double bound(float[] from, float[] to, int k, int first,
+            int end, int u, int w) {
+        double best = 0;
+        int bu = u * k;
+        int bw = w * k;
+        for(int i=first;i<end;i++) {
+            best = Math.max(best, term(from[bw + i], from[bu + i]));
+            best = Math.max(best, term(to[bu + i], to[bw + i]));
+        }
+        return best;
+    }
+
+    private static double term(float a, float b) {
+        return a != Float.POSITIVE_INFINITY && b != Float.POSITIVE_INFINITY ?
+                (double) a - b : 0;
+    }
+
+    private static float roundDown(double d) {
+        float f = (float) d;
+        return f > d ? Math.nextDown(f) : f;
+    }
+
+    /**
+     * Dijkstra from source over all vertices, along the edges or against
+     * them.
+     *
+     * @param pred predecessor edge per vertex, may be null
+     * @param order settled vertices in order, may be null
+     * @return number of settled vertices
+     */
+    private static int search(CsrGraph graph, int source, boolean reverse,
+            double[] dist, int[] pred, int[] order) {
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        IntDoubleHeap heap = new IntDoubleHeap(64);
+        dist[source] = 0d;
+        heap.push(source, 0d);
+        int settled = 0;
+        while( !heap.isEmpty() ) {
+            double du = heap.peekKey();
+            int u = heap.poll();
+            if( du > dist[u] ) {
+                continue;
+            }
+            if( order != null ) {
+                order[settled] = u;
+            }
+            settled++;
+            int first = reverse ? graph.firstIn(u) : graph.firstOut(u);
+            int end = reverse ? graph.endIn(u) : graph.endOut(u);
+            for(int i=first;i<end;i++) {
+                int e = reverse ? graph.inEdge(i) : i;
+                int v = reverse ? graph.source(e) : graph.target(e);
+                double dv = du + graph.weight(e);
+                if( dv < dist[v] ) {
+                    dist[v] = dv;
+                    if( pred != null ) {
+                        pred[v] = e;
+                    }
+                    heap.push(v, dv);
+                }
+            }
+        }
+        return settled;
+    }
+}
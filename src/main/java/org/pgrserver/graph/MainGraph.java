@@ -7,35 +7,46 @@
  */
 package org.pgrserver.graph;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.jgrapht.GraphPath;
-import org.jgrapht.alg.interfaces.AStarAdmissibleHeuristic;
-import org.jgrapht.alg.shortestpath.AStarShortestPath;
-import org.jgrapht.alg.shortestpath.AllDirectedPaths;
-import org.jgrapht.alg.shortestpath.BFSShortestPath;
 import org.jgrapht.alg.shortestpath.BellmanFordShortestPath;
-import org.jgrapht.alg.shortestpath.ContractionHierarchyBidirectionalDijkstra;
-import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
-import org.jgrapht.alg.shortestpath.FloydWarshallShortestPaths;
-import org.jgrapht.alg.shortestpath.JohnsonShortestPaths;
-import org.jgrapht.alg.tour.NearestNeighborHeuristicTSP;
-import org.jgrapht.graph.DefaultDirectedWeightedGraph;
-import org.jgrapht.graph.DefaultUndirectedWeightedGraph;
-import org.jgrapht.traverse.ClosestFirstIterator;
 import org.pgrserver.entity.PgrServer;
+import org.pgrserver.repository.CopyRepository;
 import org.pgrserver.repository.CustomRepository;
 import org.pgrserver.repository.GraphRepository;
-import org.pgrserver.util.DistanceUtil;
+import org.pgrserver.util.IntIntHashMap;
+import org.pgrserver.util.ParallelLoop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 /**
  * 説明：
  *
@@ -44,20 +55,164 @@ import org.springframework.stereotype.Service;
 @Configurable
 public class MainGraph {
         
-    private static DefaultDirectedWeightedGraph<Integer, LabeledWeightedEdge> 
-        defaultGraph;
+    /**
+     * Published generation. A reload builds the next generation aside and
+     * swaps it in with a single set.
+     */
+    private final AtomicReference<GraphGeneration> currentGeneration = 
+            new AtomicReference<GraphGeneration>();
+    
+    /**
+     * Generation a request thread was pinned to, see pinGeneration.
+     */
+    private final ThreadLocal<GraphGeneration> pinnedGeneration = 
+            new ThreadLocal<GraphGeneration>();
+    
+    /**
+     * Search budget of the request a thread works for, see budgetTo.
+     */
+    private final ThreadLocal<SearchBudget> requestBudget = 
+            new ThreadLocal<SearchBudget>();
     
-    private static ContractionHierarchyBidirectionalDijkstra<Integer, 
-        LabeledWeightedEdge> chbd = null;
+    private final AtomicLong generationCounter = new AtomicLong();
     
     private final Logger logger = LoggerFactory.getLogger(MainGraph.class);
     
+    /**
+     * Guards the creation of the worker loops apart from the monitor of
+     * MainGraph, which a reload holds while it builds the new graph.
+     */
+    private final Object loopLock = new Object();
+    
+    /**
+     * Workers of the matrix searches, created with the first matrix.
+     */
+    private volatile ParallelLoop matrixLoop;
+    
+    /**
+     * Workers of the batch routes, created with the first batch and 
+     * shared by all batches so that they never use more threads than 
+     * configured.
+     */
+    private volatile ParallelLoop batchLoop;
+    
+    /**
+     * Weight columns of the graph, parsed from pgrserver.metrics with the
+     * first load.
+     */
+    private volatile GraphMetrics graphMetrics;
+    
+    /**
+     * Routes of the current generation, null when caching is disabled.
+     */
+    private volatile RouteCache routeCache;
+    
+    /**
+     * Timers and gauges, recording nothing without a meter registry.
+     */
+    private volatile RouteMetrics routeMetrics = RouteMetrics.disabled();
+    
+    /**
+     * Algorithms a batch can be searched with, named as their services.
+     */
+    static final List<String> BATCH_ALGORITHMS = Arrays.asList(
+            "dijkstra", "astar", "alt", "chbDijkstra", "bfs", "bellmanford",
+            "johnson", "floydWarshall");
+    
+    private final ExecutorService chbdExecutor = 
+            Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "ch-builder");
+                t.setDaemon(true);
+                return t;
+            });
+    
+    @Value("${pgrserver.metrics:cost:cost}")
+    String metricsSpec;
+    
+    @Value("${pgrserver.ch.enabled:true}")
+    boolean chEnabled;
+    
+    @Value("${pgrserver.ch.threads:0}")
+    int chThreads;
+    
+    @Value("${pgrserver.cch.enabled:true}")
+    boolean cchEnabled;
+    
+    @Value("${pgrserver.alt.enabled:true}")
+    boolean altEnabled;
+    
+    @Value("${pgrserver.alt.landmarks:16}")
+    int altLandmarks;
+    
+    @Value("${pgrserver.apsp.enabled:true}")
+    boolean apspEnabled;
+    
+    @Value("${pgrserver.apsp.max-mb:256}")
+    long apspMaxMb;
+    
+    @Value("${pgrserver.matrix.max-cells:1000000}")
+    long matrixMaxCells;
+    
+    @Value("${pgrserver.tsp.time-budget-ms:1000}")
+    long tspBudgetMillis;
+    
+    @Value("${pgrserver.batch.max-routes:10000}")
+    int batchMaxRoutes;
+    
+    @Value("${pgrserver.batch.threads:0}")
+    int batchThreads;
+    
+    @Value("${pgrserver.paths.max-k:10}")
+    int pathsMaxK;
+    
+    @Value("${pgrserver.paths.time-budget-ms:2000}")
+    long pathsBudgetMillis;
+    
+    @Value("${pgrserver.search.max-settled:0}")
+    long searchMaxSettled;
+    
+    @Value("${pgrserver.search.max-millis:0}")
+    long searchMaxMillis;
+    
+    @Value("${pgrserver.cache.enabled:true}")
+    boolean cacheEnabled;
+    
+    @Value("${pgrserver.cache.max-mb:64}")
+    long cacheMaxMb;
+    
+    @Value("${pgrserver.snap.enabled:true}")
+    boolean snapEnabled;
+    
+    @Value("${pgrserver.copy.enabled:true}")
+    boolean copyEnabled;
+    
+    @Value("${pgrserver.snapshot.enabled:true}")
+    boolean snapshotEnabled;
+    
+    @Value("${pgrserver.snapshot.max-age-hours:24}")
+    long snapshotMaxAgeHours;
+    
+    @Value("${pgrserver.data.dir:}")
+    String dataDir;
+    
+    @Value("${spring.datasource.url:}")
+    String datasourceUrl;
+    
+    @Value("${spring.datasource.username:}")
+    String datasourceUser;
+    
     @Autowired
     GraphRepository graphRepository;
 
     @Autowired
     CustomRepository custRepository;
     
+    @Autowired
+    CopyRepository copyRepository;
+    
+    @Autowired(required=false)
+    MeterRegistry meterRegistry;
+    
 
     /**
      * コンストラクタ
@@ -66,303 +221,1945 @@ public class MainGraph {
     public MainGraph() {
     }
     
+    @PostConstruct
+    void createRouteCache() {
+        routeCache = cacheEnabled && cacheMaxMb > 0 ? 
+                new RouteCache(cacheMaxMb << 20) : null;
+    }
+    
+    @PostConstruct
+    void createRouteMetrics() {
+        if( meterRegistry != null ) {
+            RouteMetrics metrics = new RouteMetrics(meterRegistry);
+            metrics.bindGraph(currentGeneration::get);
+            routeMetrics = metrics;
+        }
+    }
+    
+    /**
+     * @return routeMetrics を取得する
+     */
+    public RouteMetrics getRouteMetrics() {
+        return routeMetrics;
+    }
+    
    
-    public void createDirectedGraph() {
+    /**
+     * Loads the graph at start up. A snapshot written by an earlier run is
+     * used when it comes from the same database and is recent enough, so
+     * that the service answers without reading the pgrserver view; 
+     * otherwise the graph is read from the database.
+     */
+    public synchronized void initGraph() {
+        GraphSnapshot snapshot = snapshotEnabled ? readSnapshot() : null;
+        if( snapshot == null ) {
+            createDirectedGraph();
+            return;
+        }
+        GraphMetrics metrics = graphMetrics();
+        CsrGraph[] graphs = new CsrGraph[metrics.count()];
+        graphs[0] = snapshot.getGraph();
+        for(int i=1;i<graphs.length;i++) {
+            graphs[i] = snapshot.getMetrics().get(metrics.name(i));
+            if( graphs[i] == null ) {
+                logger.info("Graph snapshot without metric "
+                        +metrics.name(i));
+                createDirectedGraph();
+                return;
+            }
+        }
+        CsrGraph graph = graphs[0];
+        GeometryStore geometry = snapshot.getGeometry();
+        SpatialIndex index = null;
+        if( snapEnabled ) {
+            index = geometry != null ? indexGeometry(graph, geometry) : 
+                loadSpatialIndex(graph);
+        }
+        publish(graphs, index, index != null && geometry == null);
+    }
+    
+    /**
+     * Loads the graph from the database into a new generation and 
+     * publishes it. Requests that are running keep the generation they 
+     * started on. The contraction hierarchy is loaded or built in the 
+     * background after the swap, so that neither the service nor a 
+     * reload or weight update waits for it; chbDijkstra falls back to a
+     * bidirectional search until it is ready.
+     */
+    public synchronized void createDirectedGraph() {
         logger.info("Creating Graph");
         
-        List<PgrServer> pgrData = graphRepository.getGraph();
-        
-        chbd = null;
-        
-        defaultGraph = new DefaultDirectedWeightedGraph<Integer, 
-                LabeledWeightedEdge>(LabeledWeightedEdge.class);
-
-        for(PgrServer p : pgrData) {
-            defaultGraph.addVertex((int)p.getSource());
-            defaultGraph.addVertex((int)p.getTarget());
+        long start = System.currentTimeMillis();
+        CsrGraph[] graphs = loadGraphs();
+        routeMetrics.build("load", System.currentTimeMillis() - start);
+        publish(graphs, snapEnabled ? loadSpatialIndex(graphs[0]) : null, 
+                true);
+    }
+    
+    /**
+     * @return the weight columns of the graph
+     * @throws IllegalArgumentException when pgrserver.metrics is malformed
+     */
+    GraphMetrics graphMetrics() {
+        GraphMetrics metrics = graphMetrics;
+        if( metrics == null ) {
+            metrics = GraphMetrics.parse(metricsSpec);
+            graphMetrics = metrics;
         }
-
-        for(PgrServer p : pgrData) {      
-            LabeledWeightedEdge lwe = new LabeledWeightedEdge();
-            lwe.setEdgeId(p.getId());
-                       
-            defaultGraph.addEdge(
-                    (int)p.getSource(),(int)p.getTarget(),lwe);
-            
-            defaultGraph.setEdgeWeight(
-                    defaultGraph.getEdge((int)p.getSource(),
-                            (int)p.getTarget()), p.getCost());
-        } 
-        logger.info("Data received: "+pgrData.size());
+        return metrics;
     }
-
     
-    public List<List<Integer>> tsp(List<List<Double>> inPoints) {        
-        List<List<Integer>> retVal = new ArrayList<List<Integer>>();
-        
-        DefaultUndirectedWeightedGraph<Integer, LabeledWeightedEdge> tspGraph = 
-                new DefaultUndirectedWeightedGraph<Integer, 
-                LabeledWeightedEdge>(LabeledWeightedEdge.class);
-        
-        List<PgrServer> pgrServer = new ArrayList<PgrServer>();
+    /**
+     * @param graphs graph per metric, sharing one topology
+     * @param saveSnapshot whether to write the new generation to the 
+     *        snapshot file afterwards
+     */
+    private void publish(CsrGraph[] graphs, SpatialIndex index, 
+            boolean saveSnapshot) {
+        CsrGraph graph = graphs[0];
+        GraphMetrics metrics = graphMetrics();
+        logger.info("Graph vertices: "+graph.vertexCount()
+                +", edges: "+graph.edgeCount()
+                +", estimated size: "
+                +((graph.estimatedHeapBytes() 
+                        + 8L * graph.edgeCount() * (graphs.length - 1)) >> 20)
+                +" MB, metrics: "+metrics.getSpec());
         
-        /**
-         * Populating the TSP Graph
-         */
-        int i = 0;
-        for(List<Double> pts : inPoints ) {
-            tspGraph.addVertex(i);
-            i++;
-            
-            pgrServer.add( custRepository.findNearestNode(
-                    pts.get(0), pts.get(1)) );            
+        final GraphGeneration next = new GraphGeneration(
+                generationCounter.incrementAndGet(), metrics.name(0), graph);
+        next.setSpatialIndex(index);
+        if( index != null ) {
+            next.setGeoHeuristic(GeoHeuristic.create(graph, 
+                    index.getGeometry()));
+            logHeuristic(next);
         }
-        
-        i = 0;
-        double fromLat,fromLng,toLat,toLng;
-        
-        for(int j=0;j<inPoints.size();j++) {
-            List<Double> pts = inPoints.get(j);
-            fromLng = pts.get(0);
-            fromLat = pts.get(1);
-            
-            for(int k=0;k<inPoints.size();k++) {
-                if( k == j )
-                    continue;
-                
-                List<Double> pts2 = inPoints.get(k);
-                toLng = pts2.get(0);
-                toLat = pts2.get(1);
-                
-                LabeledWeightedEdge lwe = new LabeledWeightedEdge();
-                lwe.setEdgeId(i);
-                i++;
-                
-                double dist = DistanceUtil.euclidean(
-                        fromLat, fromLng, toLat, toLng);
-                
-                tspGraph.addEdge(j, k, lwe);
-                tspGraph.setEdgeWeight(j, k, dist);
+        Map<String, GraphGeneration> generations = 
+                new LinkedHashMap<String, GraphGeneration>();
+        generations.put(next.getMetric(), next);
+        for(int i=1;i<graphs.length;i++) {
+            GraphGeneration gen = new GraphGeneration(next.getId(), 
+                    metrics.name(i), graphs[i]);
+            gen.setSpatialIndex(index);
+            if( next.getGeoHeuristic() != null ) {
+                gen.setGeoHeuristic(next.getGeoHeuristic()
+                        .withGraph(graphs[i]));
             }
+            generations.put(gen.getMetric(), gen);
         }
-                     
-        /**
-         * Running the TSP search. First point will be visited first.
-         */
-        NearestNeighborHeuristicTSP<Integer, LabeledWeightedEdge> nnhTsp = 
-                new NearestNeighborHeuristicTSP<Integer, LabeledWeightedEdge>(
-                        new Integer(0));
+        for(GraphGeneration gen : generations.values()) {
+            gen.setMetrics(generations);
+        }
+        GraphGeneration previous = currentGeneration.get();
         
-        GraphPath<Integer,LabeledWeightedEdge> path = nnhTsp.getTour(tspGraph);
-        List<Integer> vertexList = path.getVertexList();
+        if( previous != null && previous.getHierarchyTask() != null ) {
+            previous.getHierarchyTask().cancel();
+        }
+        if( previous != null && previous.getCustomizable() != null 
+                && previous.getCustomizable().fits(graph) ) {
+            next.setCustomizable(previous.getCustomizable());
+        }
         
-        for(i=0; i<vertexList.size()-2; i++) {
-            int v1 = vertexList.get(i);
-            int v2 = vertexList.get(i+1);
-            int source = pgrServer.get(v1).getSource();
-            int target = pgrServer.get(v2).getTarget();
-            
-            List<Integer> dPath = dijkstraSearch(source, target);
-            
-            if( dPath != null && !dPath.isEmpty()) {
-                retVal.add( dPath  );
+        HierarchyBuildTask task = createHierarchyTask(next);
+        
+        currentGeneration.set(next);
+        invalidateRoutes(next);
+        logger.info("Published graph generation "+next.getTag());
+        
+        if( snapshotEnabled && saveSnapshot ) {
+            chbdExecutor.execute(() -> writeSnapshot(next));
+        }
+        if( altEnabled ) {
+            chbdExecutor.execute(() -> prepareLandmarks(next));
+        }
+        if( apspEnabled ) {
+            chbdExecutor.execute(() -> prepareAllPairs(next));
+        }
+        if( task != null ) {
+            chbdExecutor.execute(task);
+        }
+        if( cchEnabled && next.getCustomizable() == null ) {
+            chbdExecutor.execute(() -> prepareCustomizable(next));
+        }
+        prepareMetrics(next);
+    }
+    
+    /**
+     * Queues the hierarchies and landmarks that the metrics of a new 
+     * generation are still missing. The hierarchy of a metric besides 
+     * the default one is customized from the customizable hierarchy of 
+     * the topology, so it needs pgrserver.cch.enabled.
+     */
+    private void prepareMetrics(final GraphGeneration published) {
+        for(final GraphGeneration gen : published.getMetrics().values()) {
+            if( gen.getHierarchy() == null && gen.getHierarchyTask() == null
+                    && chEnabled && cchEnabled ) {
+                chbdExecutor.execute(() -> 
+                    prepareMetricHierarchy(published, gen));
             }
-            else {
-                logger.error("*** PATH Not Found ("+source+","+target+") ***");
+            if( altEnabled && gen != published 
+                    && gen.getLandmarks() == null ) {
+                chbdExecutor.execute(() -> prepareLandmarks(gen));
             }
         }
-        
-        return retVal;
-    }
- 
-    public List<List<Integer>> allDirectedPaths(int start,int end,
-            int maxEdges) {
-        List<List<Integer>> arrList = new ArrayList<>();
-
-        AllDirectedPaths<Integer, LabeledWeightedEdge> adp = 
-                new AllDirectedPaths<Integer,LabeledWeightedEdge>(defaultGraph);                
-
-        for( GraphPath<Integer,LabeledWeightedEdge> p : 
-            adp.getAllPaths(start, end, true, maxEdges) ) {           
-            List<Integer> list = p.getVertexList();
-            arrList.add(convertVerticesToEdges(list));
-        }     
-        return arrList;
     }
     
-    public List<Integer> astarSearch(int start,int end) {
-        AStarAdmissibleHeuristic<Integer> heuristic = 
-                new AStarAdmissibleHeuristic<Integer>() {
-            @Override
-            public double getCostEstimate(Integer o, Integer v1) {
-                return 5d;
-            }
-        };
-        
-        AStarShortestPath<Integer,LabeledWeightedEdge> astarShortestPath = 
-           new AStarShortestPath<Integer,LabeledWeightedEdge>(defaultGraph, 
-                   heuristic);
-
-        List<Integer> retVal = new ArrayList<Integer>();
-        if( defaultGraph == null ) 
-            return  retVal;
-                
+    /**
+     * Customizes the contraction hierarchy of one metric in the 
+     * background, unless a newer generation has been published meanwhile.
+     */
+    private void prepareMetricHierarchy(GraphGeneration published, 
+            GraphGeneration gen) {
+        if( !isCurrent(gen) || gen.getHierarchy() != null ) {
+            return;
+        }
         try {
-            List<Integer> list =  astarShortestPath.getPath(
-                    Integer.valueOf(start),
-                    Integer.valueOf(end)).getVertexList();
-            retVal = convertVerticesToEdges(list);
+            long start = System.currentTimeMillis();
+            gen.setHierarchy(customizable(published).customize(
+                    gen.getGraph(), chThreads));
+            routeMetrics.build("customization", 
+                    System.currentTimeMillis() - start);
+            logger.info("Contraction hierarchy of metric "+gen.getMetric()
+                    +" ready ("+(System.currentTimeMillis() - start)+" ms)");
         }
-        catch(Exception e) {
-            ;
+        catch(Exception | OutOfMemoryError e) {
+            logger.error("Contraction hierarchy of metric "+gen.getMetric()
+                    +" failed", e);
         }
-        return retVal;                
     }
     
-    public List<Integer> bellmanFordSearch(int start,int end) {
-        List<Integer> retVal = new ArrayList<Integer>();
-        if( defaultGraph == null ) 
-            return  retVal;
-                
-        try {
-            List<Integer> list = BellmanFordShortestPath.findPathBetween(
-                    defaultGraph,start, end).getVertexList();
-            retVal = convertVerticesToEdges(list);
+    /**
+     * @return whether gen is the published generation of its metric
+     */
+    private boolean isCurrent(GraphGeneration gen) {
+        GraphGeneration current = currentGeneration.get();
+        return current != null && current.metric(gen.getMetric()) == gen;
+    }
+    
+    private void invalidateRoutes(GraphGeneration gen) {
+        RouteCache cache = routeCache;
+        if( cache != null ) {
+            cache.invalidate(gen.getId());
         }
-        catch(Exception e) {
-            ;
+    }
+    
+    private void logHeuristic(GraphGeneration gen) {
+        GeoHeuristic heuristic = gen.getGeoHeuristic();
+        if( heuristic == null ) {
+            logger.info("A* heuristic disabled: "
+                    + "not every vertex has coordinates");
+        }
+        else {
+            logger.info("A* heuristic cost per metre: "
+                    +heuristic.getCostPerMetre());
         }
-        return retVal;        
     }
-        
-    public List<Integer> chbDijkstraSearch(int start,int end) {
-        List<Integer> retVal = new ArrayList<Integer>();
-        
-        if( defaultGraph == null ) 
-            return  retVal;
-                
+    
+    /**
+     * @return the snapshot to start from, null when there is none that 
+     *         can be used
+     */
+    private GraphSnapshot readSnapshot() {
+        Path file = snapshotFile();
+        long start = System.currentTimeMillis();
+        long notBefore = snapshotMaxAgeHours > 0 ? 
+                start - TimeUnit.HOURS.toMillis(snapshotMaxAgeHours) : 
+                Long.MIN_VALUE;
         try {
-            if( chbd == null ) {
-                chbd = new ContractionHierarchyBidirectionalDijkstra<Integer, 
-                    LabeledWeightedEdge>(defaultGraph);
+            GraphSnapshot snapshot = GraphSnapshot.read(file, 
+                    snapshotKey(), notBefore);
+            if( snapshot == null ) {
+                logger.info("No current graph snapshot in "+file);
             }
-            
-            List<Integer> list =  
-                    chbd.getPath(start, end).getVertexList();
-            
-            retVal = convertVerticesToEdges(list);                        
+            else {
+                routeMetrics.build("snapshot", 
+                        System.currentTimeMillis() - start);
+                logger.info("Graph snapshot of "
+                        +new Date(snapshot.getCreatedAt())+" loaded in "
+                        +(System.currentTimeMillis() - start)+" ms");
+            }
+            return snapshot;
         }
-        catch(Exception e) {
-            ;
+        catch(IOException | RuntimeException e) {
+            logger.warn("Graph snapshot not loaded: "+e);
+            return null;
         }
-        return retVal;        
     }
     
-    public List<Integer> dijkstraSearch(int start,int end) {
-        List<Integer> retVal = new ArrayList<Integer>();
-        if( defaultGraph == null ) 
-            return  retVal;
-                
+    /**
+     * Writes the generation to the snapshot file for the next start, 
+     * unless a newer generation has been published meanwhile.
+     * 
+     * @return whether the snapshot was written
+     */
+    boolean writeSnapshot(GraphGeneration gen) {
+        if( currentGeneration.get() != gen ) {
+            return false;
+        }
+        Path file = snapshotFile();
+        SpatialIndex index = gen.getSpatialIndex();
         try {
-            List<Integer> list =  
-                    DijkstraShortestPath.findPathBetween(defaultGraph,
-                    start, end).getVertexList();            
-            retVal = convertVerticesToEdges(list);                        
+            long start = System.currentTimeMillis();
+            Map<String, CsrGraph> metrics = 
+                    new LinkedHashMap<String, CsrGraph>();
+            for(GraphGeneration m : gen.getMetrics().values()) {
+                if( m != gen ) {
+                    metrics.put(m.getMetric(), m.getGraph());
+                }
+            }
+            GraphSnapshot.write(file, gen.getGraph(), metrics,
+                    index == null ? null : index.getGeometry(), 
+                    snapshotKey());
+            logger.info("Graph snapshot written to "+file+" in "
+                    +(System.currentTimeMillis() - start)+" ms");
+            return true;
         }
-        catch(Exception e) {
-            ;
+        catch(IOException | RuntimeException e) {
+            logger.warn("Graph snapshot not written: "+e);
+            return false;
         }
-        return retVal;        
     }
     
-    public List<Integer> bfsSearch(int start,int end) {
-        List<Integer> retVal = new ArrayList<Integer>();
-        if( defaultGraph == null ) 
-            return  retVal;
-                
-        try {
-            List<Integer> list =  
-                    BFSShortestPath.findPathBetween(defaultGraph,
-                    start, end).getVertexList();            
-            retVal = convertVerticesToEdges(list);                        
-        }
-        catch(Exception e) {
-            ;
+    private Path snapshotFile() {
+        return dataDirectory().resolve("graph.snapshot");
+    }
+    
+    /**
+     * Snapshots are only used with the database and the metrics they were
+     * read with.
+     */
+    private long snapshotKey() {
+        String source = datasourceUrl+"|"+datasourceUser;
+        if( !graphMetrics().isDefault() ) {
+            source += "|"+graphMetrics().getSpec();
         }
-        return retVal;        
+        return GraphSnapshot.sourceKey(source);
     }
     
-    public List<Integer> floydWarshallSearch(int start,int end) {
-        List<Integer> retVal = new ArrayList<Integer>();
-        if( defaultGraph == null ) 
-            return  retVal;
-                
-        try {
-            FloydWarshallShortestPaths<Integer, LabeledWeightedEdge> fwSp = 
-                    new FloydWarshallShortestPaths<Integer, 
-                    LabeledWeightedEdge>(defaultGraph);
-            
-            List<Integer> list =  
-                    fwSp.getPath(start, end).getVertexList();            
-            retVal = convertVerticesToEdges(list);                        
+    /**
+     * Reads the graph rows, streamed with a binary COPY when possible and 
+     * through JPA otherwise.
+     * 
+     * @return graph per metric, sharing one topology
+     */
+    private CsrGraph[] loadGraphs() {
+        GraphMetrics metrics = graphMetrics();
+        if( copyEnabled && copyRepository != null ) {
+            GraphGeneration previous = currentGeneration.get();
+            CopyGraphLoader loader = new CopyGraphLoader(previous == null ?
+                    1024 : previous.getGraph().edgeCount(), metrics);
+            try {
+                CsrGraph[] graphs = copyRepository.copyOut(
+                        metrics.copySql(), loader::loadAll);
+                logger.info("Data received: "+loader.getRowCount());
+                return graphs;
+            }
+            catch(Exception e) {
+                logger.warn("Binary COPY of the graph failed, "
+                        + "reading it through JPA: "+e.getMessage());
+            }
         }
-        catch(Exception e) {
-            ;
+        if( !metrics.isDefault() ) {
+            return loadMetricRows(metrics);
         }
-        return retVal;        
+        List<PgrServer> pgrData = graphRepository.getGraph();
+        
+        CsrGraph.Builder builder = new CsrGraph.Builder(pgrData.size());
+        for(PgrServer p : pgrData) {
+            builder.addEdge(p.getId(), p.getSource(), p.getTarget(), 
+                    p.getCost());
+        }
+        logger.info("Data received: "+pgrData.size());
+        return new CsrGraph[] { builder.build() };
     }
     
-    public List<Integer> johnsonSearch(int start,int end) {
-        List<Integer> retVal = new ArrayList<Integer>();
-        if( defaultGraph == null ) 
-            return  retVal;
-                
+    /**
+     * Reads the rows of several weight columns through JPA.
+     */
+    private CsrGraph[] loadMetricRows(GraphMetrics metrics) {
+        List<Object[]> rows = custRepository.getGraphRows(
+                metrics.selectSql());
+        CsrGraph.Builder builder = new CsrGraph.Builder(rows.size(), 
+                metrics.count());
+        double[] values = new double[metrics.fieldCount() - 3];
+        double[] scratch = new double[metrics.count()];
+        for(Object[] row : rows) {
+            if( row[0] == null || row[1] == null || row[2] == null ) {
+                continue;
+            }
+            for(int i=0;i<values.length;i++) {
+                values[i] = row[3 + i] == null ? Double.NaN : 
+                    ((Number)row[3 + i]).doubleValue();
+            }
+            metrics.addRow(builder, ((Number)row[0]).intValue(), 
+                    ((Number)row[1]).intValue(), ((Number)row[2]).intValue(),
+                    values, scratch);
+        }
+        logger.info("Data received: "+rows.size());
+        return builder.buildAll();
+    }
+    
+    /**
+     * Reads the edge geometries and indexes them for snapping.
+     * 
+     * @return the index, or null when the geometries cannot be read, in 
+     *         which case points are snapped by the database
+     */
+    private SpatialIndex loadSpatialIndex(CsrGraph graph) {
         try {
-            JohnsonShortestPaths<Integer, LabeledWeightedEdge> jsp = 
-                    new JohnsonShortestPaths<Integer, 
-                    LabeledWeightedEdge>(defaultGraph);
-            
-            List<Integer> list =  
-                    jsp.getPath(start, end).getVertexList();            
-            retVal = convertVerticesToEdges(list);                        
+            long start = System.currentTimeMillis();
+            List<Object[]> rows = graphRepository.getGeometries();
+            GeometryStore.Builder builder = new GeometryStore.Builder();
+            for(Object[] row : rows) {
+                builder.add(((Number)row[0]).intValue(), (byte[])row[1],
+                        row[2] == null ? Double.NaN : 
+                            ((Number)row[2]).doubleValue());
+            }
+            GeometryStore store = builder.build(graph);
+            routeMetrics.build("geometry", 
+                    System.currentTimeMillis() - start);
+            logger.info("Geometries received: "+builder.size()
+                    +", estimated size: "
+                    +(store.estimatedHeapBytes() >> 20)+" MB, "
+                    +(System.currentTimeMillis() - start)+" ms");
+            return indexGeometry(graph, store);
         }
         catch(Exception e) {
-            ;
+            logger.warn("Edge geometries not loaded, "
+                    + "snapping points in the database: "+e);
+            return null;
         }
-        return retVal;        
     }
     
-    public Set<Integer> drivingDistance(int source,double radius) {
-        final Set<Integer> visited = new HashSet<Integer>();
-        
-        if( defaultGraph == null ) {
-            return visited;
-        }
-
-        try {
-            ClosestFirstIterator<Integer, LabeledWeightedEdge> driveDist = 
-                    new ClosestFirstIterator<Integer, LabeledWeightedEdge>(
-                            defaultGraph, source, radius);
-            
-            while( driveDist.hasNext() ) {
-                visited.add(driveDist.next());
+    /**
+     * @return index over the geometries, null when there are none
+     */
+    private static SpatialIndex indexGeometry(CsrGraph graph, 
+            GeometryStore store) {
+        SpatialIndex index = new SpatialIndex(graph, store);
+        return index.isEmpty() ? null : index;
+    }
+    
+    /**
+     * Finds the edge nearest to a point, in memory when the geometries 
+     * are loaded and with a database query otherwise.
+     * 
+     * @return the edge with its source and target, null if none was found
+     */
+    public PgrServer findNearestNode(double lng, double lat) {
+        GraphGeneration gen = generation();
+        SpatialIndex index = gen == null ? null : gen.getSpatialIndex();
+        long start = routeMetrics.start();
+        PgrServer retVal = index == null ? 
+                custRepository.findNearestNode(lng, lat) :
+                toPgrServer(gen.getGraph(), index.nearestEdge(lng, lat));
+        routeMetrics.record(RouteMetrics.SNAP, start);
+        return retVal;
+    }
+    
+    /**
+     * findNearestNode for a list of [lng, lat] points, snapped in one 
+     * batch when the geometries are loaded.
+     */
+    public List<PgrServer> findNearestNodes(List<List<Double>> points) {
+        List<PgrServer> retVal = new ArrayList<PgrServer>();
+        GraphGeneration gen = generation();
+        SpatialIndex index = gen == null ? null : gen.getSpatialIndex();
+        long start = routeMetrics.start();
+        if( index == null ) {
+            for(List<Double> pts : points) {
+                retVal.add(custRepository.findNearestNode(
+                        pts.get(0), pts.get(1)));
             }
+            routeMetrics.record(RouteMetrics.SNAP, start);
+            return retVal;
         }
-        catch(Exception e) {
-            ;
+        double[] lng = new double[points.size()];
+        double[] lat = new double[points.size()];
+        for(int i=0;i<points.size();i++) {
+            lng[i] = points.get(i).get(0);
+            lat[i] = points.get(i).get(1);
         }
-        
-        return visited;
+        for(int e : index.nearestEdges(lng, lat)) {
+            retVal.add(toPgrServer(gen.getGraph(), e));
+        }
+        routeMetrics.record(RouteMetrics.SNAP, start);
+        return retVal;
     }
     
-    private List<Integer> convertVerticesToEdges(List<Integer> list) {
+    /**
+     * @return id of the vertex nearest to a point, -1 when unknown or the
+     *         geometries are not loaded
+     */
+    public int findNearestVertex(double lng, double lat) {
+        GraphGeneration gen = generation();
+        SpatialIndex index = gen == null ? null : gen.getSpatialIndex();
+        if( index == null ) {
+            return -1;
+        }
+        int v = index.nearestVertex(lng, lat);
+        return v < 0 ? -1 : gen.getGraph().vertexId(v);
+    }
+    
+    /**
+     * Route GeoJSON Feature for a list of edge ids, assembled in memory
+     * when the geometries are loaded and by the database otherwise.
+     */
+    public String createJsonRouteResponse(List<Integer> list, int gid) {
+        long start = routeMetrics.start();
+        String retVal = routeFeature(list, gid);
+        routeMetrics.record(RouteMetrics.GEOMETRY, start);
+        return retVal;
+    }
+    
+    private String routeFeature(List<Integer> list, int gid) {
+        GraphGeneration gen = generation();
+        SpatialIndex index = gen == null ? null : gen.getSpatialIndex();
+        if( index == null ) {
+            return (String) custRepository.createJsonRouteResponse(list, gid);
+        }
+        return RouteGeoJson.feature(gen.getGraph(), index.getGeometry(), 
+                list, gid);
+    }
+    
+    /**
+     * FeatureCollection of routes, see createJsonRouteResponse.
+     */
+    public String createJsonCollectionResponse(List<List<Integer>> list) {
+        GraphGeneration gen = generation();
+        SpatialIndex index = gen == null ? null : gen.getSpatialIndex();
+        long start = routeMetrics.start();
+        String retVal = index == null ? 
+                custRepository.createJsonCollectionResponse(list) :
+                RouteGeoJson.featureCollection(gen.getGraph(), 
+                        index.getGeometry(), list);
+        routeMetrics.record(RouteMetrics.GEOMETRY, start);
+        return retVal;
+    }
+    
+    private static PgrServer toPgrServer(CsrGraph graph, int e) {
+        if( e < 0 ) {
+            return null;
+        }
+        PgrServer p = new PgrServer();
+        p.setId(graph.edgeId(e));
+        p.setSource(graph.vertexId(graph.source(e)));
+        p.setTarget(graph.vertexId(graph.target(e)));
+        p.setCost((int) graph.weight(e));
+        return p;
+    }
+    
+    /**
+     * Builds the customizable hierarchy of a generation in the background,
+     * unless a weight update or reload has made it unnecessary.
+     */
+    private void prepareCustomizable(GraphGeneration gen) {
+        GraphGeneration current = currentGeneration.get();
+        if( current == null || gen.getCustomizable() != null 
+                || current.getGraph().topologyChecksum() != 
+                   gen.getGraph().topologyChecksum() ) {
+            return;
+        }
+        try {
+            customizable(gen);
+        }
+        catch(Exception | OutOfMemoryError e) {
+            logger.error("Customizable hierarchy build failed", e);
+        }
+    }
+    
+    /**
+     * Selects the ALT landmarks of a generation and computes their 
+     * distance tables in the background, unless a newer generation has 
+     * been published meanwhile.
+     */
+    private void prepareLandmarks(GraphGeneration gen) {
+        if( !isCurrent(gen) || gen.getLandmarks() != null ) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            LandmarkIndex landmarks = LandmarkIndex.build(gen.getGraph(), 
+                    altLandmarks, threads());
+            gen.setLandmarks(landmarks);
+            routeMetrics.build("landmarks", 
+                    System.currentTimeMillis() - start);
+            logger.info("ALT landmarks of metric "+gen.getMetric()
+                    +" ready ("+landmarks.landmarkCount()
+                    +" landmarks, "
+                    +(landmarks.estimatedHeapBytes() >> 20)+" MB, "
+                    +(System.currentTimeMillis() - start)+" ms)");
+        }
+        catch(Exception | OutOfMemoryError e) {
+            logger.error("ALT landmark build failed", e);
+        }
+    }
+    
+    /**
+     * Computes the all pairs tables of a generation in the background if 
+     * they fit pgrserver.apsp.max-mb, unless a newer generation has been
+     * published meanwhile.
+     */
+    private void prepareAllPairs(GraphGeneration gen) {
+        if( currentGeneration.get() != gen || gen.getAllPairs() != null ) {
+            return;
+        }
+        CsrGraph graph = gen.getGraph();
+        if( !AllPairsIndex.fits(graph, apspMaxMb << 20) ) {
+            logger.info("All pairs tables skipped: "+allPairsTooLarge(graph));
+            return;
+        }
+        try( ParallelLoop loop = new ParallelLoop(threads(), 16, 
+                "all-pairs") ) {
+            long start = System.currentTimeMillis();
+            AllPairsIndex allPairs = AllPairsIndex.build(graph, loop);
+            gen.setAllPairs(allPairs);
+            routeMetrics.build("allpairs", 
+                    System.currentTimeMillis() - start);
+            logger.info("All pairs tables ready ("
+                    +(allPairs.estimatedHeapBytes() >> 20)+" MB, "
+                    +(System.currentTimeMillis() - start)+" ms)");
+        }
+        catch(Exception | OutOfMemoryError e) {
+            logger.error("All pairs build failed", e);
+        }
+    }
+    
+    private String allPairsTooLarge(CsrGraph graph) {
+        return "a graph of "+graph.vertexCount()+" vertices needs "
+                +(AllPairsIndex.estimatedHeapBytes(graph.vertexCount()) >> 20)
+                +" MB, pgrserver.apsp.max-mb is "+apspMaxMb;
+    }
+    
+    /**
+     * @return the customizable hierarchy of the generation, built now if 
+     *         the background build has not provided it yet
+     */
+    private CustomizableHierarchy customizable(GraphGeneration gen) {
+        CustomizableHierarchy cch = gen.getCustomizable();
+        if( cch == null ) {
+            long start = System.currentTimeMillis();
+            cch = CustomizableHierarchy.build(gen.getGraph());
+            gen.setCustomizable(cch);
+            routeMetrics.build("customizable", 
+                    System.currentTimeMillis() - start);
+            logger.info("Customizable hierarchy ready ("+cch.arcCount()
+                    +" arcs, "+cch.levelCount()+" levels, "
+                    +(System.currentTimeMillis() - start)+" ms)");
+        }
+        return cch;
+    }
+    
+    /**
+     * Replaces edge costs without reloading the topology. The new weights
+     * are customized into a fresh contraction hierarchy on the configured
+     * threads and published as a new generation that shares vertices, 
+     * edges and the customizable hierarchy with the current one. Negative 
+     * costs close an edge; ids of edges that are not in the graph are 
+     * ignored. A cost applies to the edge in the direction of its row 
+     * only: the edge of a reverse column keeps its cost, so a one-way 
+     * street stays one-way.
+     * 
+     * @param edgeIds pgRouting edge ids, null to read all costs from the 
+     *        database
+     * @param costs new cost per edge id
+     * @return number of graph edges given a new cost, -1 when no graph 
+     *         is loaded
+     */
+    public synchronized int updateWeights(int[] edgeIds, double[] costs) {
+        return updateWeights(null, edgeIds, costs);
+    }
+    
+    /**
+     * Replaces edge costs of one metric, see updateWeights. The other 
+     * metrics are published unchanged with the new generation. With 
+     * several weight columns all costs are re-read by reloading the graph,
+     * which keeps the hierarchies of an unchanged topology.
+     * 
+     * @param metric name of the metric, null for the default one
+     * @throws IllegalArgumentException when there is no such metric
+     */
+    public synchronized int updateWeights(String metric, int[] edgeIds, 
+            double[] costs) {
+        GraphGeneration published = currentGeneration.get();
+        if( published == null ) {
+            return -1;
+        }
+        GraphGeneration current = metric == null ? published : 
+            published.metric(metric);
+        if( current == null ) {
+            throw new IllegalArgumentException("Unknown metric "+metric
+                    +", expected one of "+published.getMetrics().keySet());
+        }
+        if( edgeIds == null && !graphMetrics().isDefault() ) {
+            createDirectedGraph();
+            return currentGeneration.get().getGraph().edgeCount();
+        }
+        CsrGraph graph = current.getGraph();
+        double[] weights = graph.copyWeights();
+        int updated = 0;
+        boolean decreased = false;
+        
+        if( edgeIds == null ) {
+            List<Object[]> rows = graphRepository.getCosts();
+            for(Object[] row : rows) {
+                updated += applyCost(graph, weights, 
+                        ((Number)row[0]).intValue(), 
+                        ((Number)row[1]).doubleValue());
+            }
+            logger.info("Costs received: "+rows.size());
+        }
+        else {
+            for(int i=0;i<edgeIds.length;i++) {
+                updated += applyCost(graph, weights, edgeIds[i], costs[i]);
+            }
+        }
+        
+        for(int e=0;e<weights.length && !decreased;e++) {
+            decreased = weights[e] < graph.weight(e);
+        }
+        
+        long start = System.currentTimeMillis();
+        CustomizableHierarchy cch = customizable(published);
+        CsrGraph next = graph.withWeights(weights);
+        ContractionHierarchy ch = cch.customize(next, chThreads);
+        routeMetrics.build("customization", 
+                System.currentTimeMillis() - start);
+        logger.info("Customized "+updated+" edge weights of metric "
+                +current.getMetric()+" in "
+                +(System.currentTimeMillis() - start)+" ms");
+        
+        long id = generationCounter.incrementAndGet();
+        GraphGeneration gen = new GraphGeneration(id, current.getMetric(), 
+                next);
+        gen.setCustomizable(cch);
+        gen.setHierarchy(ch);
+        gen.setSpatialIndex(current.getSpatialIndex());
+        if( current.getGeoHeuristic() != null ) {
+            gen.setGeoHeuristic(current.getGeoHeuristic().withGraph(next));
+            logHeuristic(gen);
+        }
+        /**
+         * Landmark distances of the old weights are still lower bounds as
+         * long as no edge became cheaper.
+         */
+        if( !decreased ) {
+            gen.setLandmarks(current.getLandmarks());
+        }
+        Map<String, GraphGeneration> generations = 
+                new LinkedHashMap<String, GraphGeneration>();
+        for(GraphGeneration m : published.getMetrics().values()) {
+            generations.put(m.getMetric(), m == current ? gen : m.withId(id));
+        }
+        for(GraphGeneration m : generations.values()) {
+            m.setMetrics(generations);
+        }
+        final GraphGeneration nextPublished = 
+                generations.get(published.getMetric());
+        
+        if( published.getHierarchyTask() != null ) {
+            published.getHierarchyTask().cancel();
+        }
+        currentGeneration.set(nextPublished);
+        invalidateRoutes(nextPublished);
+        logger.info("Published graph generation "+nextPublished.getTag());
+        if( snapshotEnabled ) {
+            chbdExecutor.execute(() -> writeSnapshot(nextPublished));
+        }
+        if( altEnabled && nextPublished.getLandmarks() == null ) {
+            chbdExecutor.execute(() -> prepareLandmarks(nextPublished));
+        }
+        if( apspEnabled ) {
+            chbdExecutor.execute(() -> prepareAllPairs(nextPublished));
+        }
+        prepareMetrics(nextPublished);
+        return updated;
+    }
+    
+    private static int applyCost(CsrGraph graph, double[] weights, 
+            int edgeId, double cost) {
+        int[] edges = graph.edgesWithId(edgeId);
+        double w = cost < 0 || Double.isNaN(cost) ? 
+                Double.POSITIVE_INFINITY : cost;
+        int updated = 0;
+        for(int e : edges) {
+            if( !graph.isReverse(e) ) {
+                weights[e] = w;
+                updated++;
+            }
+        }
+        return updated;
+    }
+    
+    /**
+     * @return task that provides the hierarchy of the generation, or null
+     *         when hierarchies are disabled
+     */
+    private HierarchyBuildTask createHierarchyTask(GraphGeneration gen) {
+        if( !chEnabled ) {
+            return null;
+        }
+        
+        HierarchyBuildTask task = new HierarchyBuildTask(gen.getGraph(), 
+                dataDirectory(), threads(), ch -> {
+                    gen.setHierarchy(ch);
+                    routeMetrics.build("hierarchy", gen.getHierarchyTask()
+                            .getStatus().getElapsedMillis());
+                });
+        gen.setHierarchyTask(task);
+        return task;
+    }
+    
+    /**
+     * @return threads for the background builds
+     */
+    private int threads() {
+        return chThreads > 0 ? chThreads : 
+            Runtime.getRuntime().availableProcessors();
+    }
+    
+    /**
+     * @return directory of the hierarchy and snapshot files
+     */
+    private Path dataDirectory() {
+        return dataDir == null || dataDir.isEmpty() ? 
+                Paths.get(System.getProperty("java.io.tmpdir"), "pgrserver") :
+                Paths.get(dataDir);
+    }
+    
+    /**
+     * @return the generation pinned to this thread, or else the published
+     *         one; null before the first load
+     */
+    public GraphGeneration generation() {
+        GraphGeneration gen = pinnedGeneration.get();
+        return gen != null ? gen : currentGeneration.get();
+    }
+    
+    /**
+     * Pins the current generation to the calling thread, so that all 
+     * steps of one request (snapping, search, geometry) use the same 
+     * generation even if a reload publishes a new one meanwhile.
+     * 
+     * @return the pinned generation, null before the first load
+     */
+    public GraphGeneration pinGeneration() {
+        return pinGeneration(null);
+    }
+    
+    /**
+     * Pins the current generation of a metric, see pinGeneration.
+     * 
+     * @param metric name of the metric, null for the default one
+     * @return the pinned generation, null before the first load
+     * @throws IllegalArgumentException when there is no such metric
+     */
+    public GraphGeneration pinGeneration(String metric) {
+        GraphGeneration gen = currentGeneration.get();
+        if( gen != null && metric != null ) {
+            GraphGeneration m = gen.metric(metric);
+            if( m == null ) {
+                throw new IllegalArgumentException("Unknown metric "+metric
+                        +", expected one of "+gen.getMetrics().keySet());
+            }
+            gen = m;
+        }
+        if( gen != null ) {
+            pinnedGeneration.set(gen);
+        }
+        return gen;
+    }
+    
+    public void unpinGeneration() {
+        pinnedGeneration.remove();
+    }
+    
+    /**
+     * @return state of the contraction hierarchy of the current graph
+     */
+    public HierarchyStatus getHierarchyStatus() {
+        GraphGeneration gen = generation();
+        HierarchyBuildTask task = gen == null ? null : gen.getHierarchyTask();
+        HierarchyStatus status;
+        if( task == null && gen != null && gen.getHierarchy() != null ) {
+            status = new HierarchyStatus();
+            status.setState(HierarchyBuildTask.READY);
+            status.setOrigin("customized");
+            status.setVertices(gen.getHierarchy().vertexCount());
+            status.setContracted(gen.getHierarchy().vertexCount());
+            status.setArcs(gen.getHierarchy().arcCount());
+            status.setChecksum(Long.toHexString(gen.getGraph().checksum()));
+        }
+        else if( task == null ) {
+            status = new HierarchyStatus();
+            if( !chEnabled ) {
+                status.setState("DISABLED");
+            }
+            else if( gen == null ) {
+                status.setState("NO_GRAPH");
+            }
+            else {
+                /**
+                 * A metric waiting for its customized hierarchy
+                 */
+                status.setState(cchEnabled ? HierarchyBuildTask.PENDING : 
+                    "DISABLED");
+            }
+        }
+        else {
+            status = task.getStatus();
+        }
+        if( gen != null ) {
+            status.setGeneration(gen.getTag());
+        }
+        return status;
+    }
+    
+    /**
+     * Stops the background work; a snapshot that is being written is
+     * abandoned and leaves the previous file in place.
+     */
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        GraphGeneration gen = currentGeneration.get();
+        if( gen != null && gen.getHierarchyTask() != null ) {
+            gen.getHierarchyTask().cancel();
+        }
+        synchronized( loopLock ) {
+            if( matrixLoop != null ) {
+                matrixLoop.close();
+            }
+            if( batchLoop != null ) {
+                batchLoop.close();
+            }
+        }
+        chbdExecutor.shutdownNow();
+        chbdExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    
+    /**
+     * Visits every point once, starting with the first one. The costs 
+     * between all points are computed with parallel one-to-many searches 
+     * on the network, the order is the nearest neighbour tour improved by
+     * 2-opt and Or-opt within pgrserver.tsp.time-budget-ms, and the legs 
+     * are taken from the paths those searches found.
+     * 
+     * @return the edge ids of each leg in visiting order
+     */
+    public List<List<Integer>> tsp(List<List<Double>> inPoints) {        
+        List<List<Integer>> retVal = new ArrayList<List<Integer>>();
+        GraphGeneration gen = generation();
+        if( gen == null ) {
+            return retVal;
+        }
+        
+        CsrGraph graph = gen.getGraph();
+        int n = inPoints.size();
+        List<PgrServer> pgrServer = findNearestNodes(inPoints);
+        int[] from = snapVertices(graph, pgrServer, true);
+        int[] to = snapVertices(graph, pgrServer, false);
+        
+        long metered = routeMetrics.start();
+        long start = System.currentTimeMillis();
+        IntIntHashMap[] trees = new IntIntHashMap[n];
+        SearchBudget budget = budget();
+        double[] costs = ManyToMany.dijkstra(graph, from, to, matrixLoop(), 
+                trees, budget);
+        budget.check();
+        long searched = System.currentTimeMillis();
+        int[] order = TourOptimizer.solve(costs, n, tspBudgetMillis);
+        routeMetrics.record(RouteMetrics.SEARCH, "tsp", metered);
+        logger.info("TSP of "+n+" points: costs in "+(searched - start)
+                +" ms, tour in "+(System.currentTimeMillis() - searched)
+                +" ms");
+        
+        for(int k=0;k<n - 1;k++) {
+            int i = order[k];
+            int j = order[k + 1];
+            int[] path = trees[i] == null || to[j] < 0 ? null :
+                ManyToMany.path(graph, trees[i], from[i], to[j]);
+            
+            if( path != null && path.length > 0 ) {
+                retVal.add( convertPath(graph, path) );
+            }
+            else {
+                logger.error("*** PATH Not Found ("
+                        +(pgrServer.get(i) == null ? null : 
+                            pgrServer.get(i).getSource())+","
+                        +(pgrServer.get(j) == null ? null : 
+                            pgrServer.get(j).getTarget())+") ***");
+            }
+        }
+        
+        return retVal;
+    }
+ 
+    /**
+     * Costs from every source to every target point. The points are 
+     * snapped in one batch, sources to the source and targets to the 
+     * target of their nearest edge, as for a route. The matrix is computed
+     * with buckets on the contraction hierarchy, or with one-to-many 
+     * Dijkstra searches while there is none.
+     * 
+     * @param targets null for the matrix between all sources
+     * @return the matrix, null before the first load
+     * @throws IllegalArgumentException when the matrix has more than
+     *         pgrserver.matrix.max-cells cells
+     */
+    public DistanceMatrix distanceMatrix(List<List<Double>> sources,
+            List<List<Double>> targets) {
+        if( targets == null ) {
+            targets = sources;
+        }
+        if( (long) sources.size() * targets.size() > matrixMaxCells ) {
+            throw new IllegalArgumentException("Matrix of "+sources.size()
+                    +" x "+targets.size()+" points exceeds "
+                    +matrixMaxCells+" cells");
+        }
+        GraphGeneration gen = generation();
+        if( gen == null ) {
+            return null;
+        }
+        CsrGraph graph = gen.getGraph();
+        int[] s = snapVertices(graph, findNearestNodes(sources), true);
+        int[] t = snapVertices(graph, findNearestNodes(targets), false);
+        
+        long start = routeMetrics.start();
+        ContractionHierarchy ch = gen.getHierarchy();
+        SearchBudget budget = budget();
+        double[] costs = ch != null ? 
+                ManyToMany.hierarchy(ch, s, t, matrixLoop(), budget) :
+                ManyToMany.dijkstra(graph, s, t, matrixLoop(), null, budget);
+        budget.check();
+        routeMetrics.record(RouteMetrics.SEARCH, "matrix", start);
+        return new DistanceMatrix(graph, s, t, costs);
+    }
+    
+    /**
+     * @param nearest edges found by findNearestNodes
+     * @return dense index of the source or target vertex of each edge, 
+     *         -1 where nothing was found
+     */
+    private static int[] snapVertices(CsrGraph graph, 
+            List<PgrServer> nearest, boolean source) {
+        int[] retVal = new int[nearest.size()];
+        for(int i=0;i<retVal.length;i++) {
+            PgrServer p = nearest.get(i);
+            retVal[i] = p == null ? -1 : 
+                graph.indexOf(source ? p.getSource() : p.getTarget());
+        }
+        return retVal;
+    }
+    
+    private ParallelLoop matrixLoop() {
+        ParallelLoop retVal = matrixLoop;
+        if( retVal == null ) {
+            synchronized( loopLock ) {
+                retVal = matrixLoop;
+                if( retVal == null ) {
+                    retVal = new ParallelLoop(threads(), 1, "matrix");
+                    matrixLoop = retVal;
+                }
+            }
+        }
+        return retVal;
+    }
+    
+    /**
+     * Checks the shape of a batch request, without looking at the graph.
+     * 
+     * @throws IllegalArgumentException when the request has no routes, 
+     *         both pairs and points, more than pgrserver.batch.max-routes 
+     *         routes or an unknown algorithm
+     */
+    public void checkBatch(BatchRequest request) {
+        List<List<Integer>> pairs = request.getPairs();
+        List<List<Double>> points = request.getPoints();
+        if( (pairs == null) == (points == null) ) {
+            throw new IllegalArgumentException(
+                    "either pairs or points are required");
+        }
+        int n = pairs != null ? pairs.size() : points.size();
+        if( n > batchMaxRoutes ) {
+            throw new IllegalArgumentException("Batch of "+n
+                    +" routes exceeds "+batchMaxRoutes+" routes");
+        }
+        String algorithm = batchAlgorithm(request);
+        if( !BATCH_ALGORITHMS.contains(algorithm) ) {
+            throw new IllegalArgumentException("Unknown algorithm "
+                    +algorithm+", expected one of "+BATCH_ALGORITHMS);
+        }
+    }
+    
+    private static String batchAlgorithm(BatchRequest request) {
+        return request.getAlgorithm() == null ? 
+                "dijkstra" : request.getAlgorithm();
+    }
+    
+    /**
+     * Validates and snaps the routes of a batch request on the current 
+     * generation. Lng/lat points are snapped in one batch, the source to
+     * the source and the target to the target of the nearest edge. 
+     * Entries that cannot be searched do not fail the batch, they are 
+     * answered with an error feature by runBatch.
+     * 
+     * @return the batch, null before the first load
+     * @throws IllegalArgumentException see checkBatch
+     */
+    public RouteBatch prepareBatch(BatchRequest request) {
+        checkBatch(request);
+        List<List<Integer>> pairs = request.getPairs();
+        List<List<Double>> points = request.getPoints();
+        String algorithm = batchAlgorithm(request);
+        int n = pairs != null ? pairs.size() : points.size();
+        GraphGeneration gen = generation();
+        if( gen == null ) {
+            return null;
+        }
+        
+        CsrGraph graph = gen.getGraph();
+        int[] sources = new int[n];
+        int[] targets = new int[n];
+        String[] errors = new String[n];
+        if( pairs != null ) {
+            for(int i=0;i<n;i++) {
+                List<Integer> p = pairs.get(i);
+                if( p == null || p.size() != 2 
+                        || p.get(0) == null || p.get(1) == null ) {
+                    errors[i] = "expected [source, target] node ids";
+                    continue;
+                }
+                sources[i] = p.get(0);
+                targets[i] = p.get(1);
+                if( graph.indexOf(sources[i]) < 0 ) {
+                    errors[i] = "unknown source node "+sources[i];
+                }
+                else if( graph.indexOf(targets[i]) < 0 ) {
+                    errors[i] = "unknown target node "+targets[i];
+                }
+            }
+            return new RouteBatch(gen, algorithm, sources, targets, errors,
+                    routeMetrics.endpoint());
+        }
+        
+        List<Integer> valid = new ArrayList<Integer>();
+        List<List<Double>> from = new ArrayList<List<Double>>();
+        List<List<Double>> to = new ArrayList<List<Double>>();
+        for(int i=0;i<n;i++) {
+            List<Double> p = points.get(i);
+            if( p == null || p.size() != 4 || p.contains(null) ) {
+                errors[i] = "expected [source_x, source_y, target_x, "
+                        + "target_y]";
+                continue;
+            }
+            valid.add(i);
+            from.add(p.subList(0, 2));
+            to.add(p.subList(2, 4));
+        }
+        List<PgrServer> nearestFrom = findNearestNodes(from);
+        List<PgrServer> nearestTo = findNearestNodes(to);
+        for(int k=0;k<valid.size();k++) {
+            int i = valid.get(k);
+            if( nearestFrom.get(k) == null || nearestTo.get(k) == null ) {
+                errors[i] = "point not snapped";
+                continue;
+            }
+            sources[i] = nearestFrom.get(k).getSource();
+            targets[i] = nearestTo.get(k).getTarget();
+        }
+        return new RouteBatch(gen, algorithm, sources, targets, errors,
+                routeMetrics.endpoint());
+    }
+    
+    /**
+     * Searches the routes of a batch on pgrserver.batch.threads workers 
+     * and hands every route to listener as soon as it is found, as a 
+     * GeoJSON Feature whose id is the position of the route in the 
+     * request. Routes that cannot be searched or are not found give a 
+     * Feature with an error property and no geometry. The listener is 
+     * called from several threads, and once it throws no further routes 
+     * are searched. All routes share the search budget of the calling 
+     * thread.
+     */
+    public void runBatch(final RouteBatch batch, 
+            final ObjIntConsumer<String> listener) {
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final SearchBudget budget = budget();
+        batchLoop().run(batch.size(), i -> {
+            if( stopped.get() ) {
+                return;
+            }
+            String feature = batchFeature(batch, i, budget);
+            try {
+                listener.accept(feature, i);
+            }
+            catch(RuntimeException e) {
+                stopped.set(true);
+                throw e;
+            }
+        });
+    }
+    
+    /**
+     * Searches item i of a batch with the generation of the batch pinned
+     * to the calling thread.
+     */
+    private String batchFeature(RouteBatch batch, int i, 
+            SearchBudget budget) {
+        String error = batch.error(i);
+        if( error != null ) {
+            return RouteGeoJson.errorFeature(i, error);
+        }
+        GraphGeneration previous = pinTo(batch.getGeneration());
+        String endpoint = routeMetrics.setEndpoint(batch.getEndpoint());
+        SearchBudget previousBudget = budgetTo(budget.split());
+        try {
+            List<Integer> route = route(batch.getAlgorithm(), 
+                    batch.source(i), batch.target(i));
+            if( route.isEmpty() ) {
+                return RouteGeoJson.errorFeature(i, "no route");
+            }
+            return routeFeature(batch.getAlgorithm(), route, i);
+        }
+        catch(SearchBudget.ExceededException e) {
+            return RouteGeoJson.errorFeature(i, e.getMessage());
+        }
+        catch(RuntimeException e) {
+            logger.warn("Batch route "+batch.source(i)+" -> "
+                    +batch.target(i)+" failed: "+e);
+            return RouteGeoJson.errorFeature(i, "search failed: "+e);
+        }
+        finally {
+            restoreBudget(previousBudget);
+            routeMetrics.setEndpoint(endpoint);
+            restorePin(previous);
+        }
+    }
+    
+    /**
+     * Pins gen to the calling thread, for work done on behalf of a 
+     * request on another thread.
+     * 
+     * @return the generation pinned before, for restorePin
+     */
+    public GraphGeneration pinTo(GraphGeneration gen) {
+        GraphGeneration previous = pinnedGeneration.get();
+        pinnedGeneration.set(gen);
+        return previous;
+    }
+    
+    /**
+     * Pins back the generation pinTo returned.
+     */
+    public void restorePin(GraphGeneration previous) {
+        if( previous == null ) {
+            pinnedGeneration.remove();
+        }
+        else {
+            pinnedGeneration.set(previous);
+        }
+    }
+    
+    /**
+     * Budget with the limits of pgrserver.search.max-settled and 
+     * pgrserver.search.max-millis.
+     * 
+     * @param deadline System.nanoTime at which the request ends, 0 for 
+     *        none; the earlier of it and max-millis applies
+     */
+    public SearchBudget createBudget(long deadline) {
+        if( searchMaxMillis > 0 ) {
+            long own = System.nanoTime() 
+                    + TimeUnit.MILLISECONDS.toNanos(searchMaxMillis);
+            if( deadline == 0 || own - deadline < 0 ) {
+                deadline = own;
+            }
+        }
+        return new SearchBudget(searchMaxSettled, deadline);
+    }
+    
+    /**
+     * @return the budget of the request of the calling thread, or else a 
+     *         new one with the configured limits
+     */
+    public SearchBudget budget() {
+        SearchBudget retVal = requestBudget.get();
+        return retVal != null ? retVal : createBudget(0);
+    }
+    
+    /**
+     * Sets the budget of the searches of the calling thread, for the 
+     * work of one request.
+     * 
+     * @return the budget set before, for restoreBudget
+     */
+    public SearchBudget budgetTo(SearchBudget budget) {
+        SearchBudget previous = requestBudget.get();
+        requestBudget.set(budget);
+        return previous;
+    }
+    
+    public void restoreBudget(SearchBudget previous) {
+        if( previous == null ) {
+            requestBudget.remove();
+        }
+        else {
+            requestBudget.set(previous);
+        }
+    }
+    
+    /**
+     * Route between two nodes with one of the algorithms of the route 
+     * services, taken from the route cache of the generation when it has 
+     * been searched before. Identical searches running at the same time 
+     * are done once.
+     * 
+     * @param algorithm name of the route service, e.g. chbDijkstra
+     * @return pgRouting edge ids, empty when there is no route; not 
+     *         modifiable
+     * @throws SearchBudget.ExceededException when the search stopped at 
+     *         its budget
+     */
+    public List<Integer> route(final String algorithm, final int source, 
+            final int target) {
+        GraphGeneration gen = generation();
+        RouteCache cache = routeCache;
+        RouteCache.Route route = gen == null || cache == null ? null :
+            cachedRoute(cache, gen, algorithm, source, target);
+        if( route == null ) {
+            return search(algorithm, source, target);
+        }
+        return route.getEdgeIds();
+    }
+    
+    /**
+     * GeoJSON Feature of a route, see route. The Feature is cached with 
+     * the route, so that a repeated route needs neither the search nor 
+     * the geometry query.
+     * 
+     * @return the Feature with id 1, null when there is no route
+     * @throws SearchBudget.ExceededException when the search stopped at 
+     *         its budget
+     */
+    public String routeJson(final String algorithm, final int source, 
+            final int target) {
+        GraphGeneration gen = generation();
+        RouteCache cache = routeCache;
+        RouteCache.Route route = gen == null || cache == null ? null :
+            cachedRoute(cache, gen, algorithm, source, target);
+        if( route == null ) {
+            List<Integer> edgeIds = search(algorithm, source, target);
+            return edgeIds.isEmpty() ? null : 
+                routeFeature(algorithm, edgeIds);
+        }
+        if( route.getEdgeIds().isEmpty() ) {
+            return null;
+        }
+        String json = route.getGeoJson();
+        if( json == null ) {
+            json = routeFeature(algorithm, route.getEdgeIds());
+            cache.setGeoJson(route, json);
+        }
+        return json;
+    }
+    
+    /**
+     * Route from the cache, or searched and cached. A search stopped by 
+     * its budget is not cached.
+     * 
+     * @return null when the identical search this one waited for was 
+     *         stopped by the budget of its own request, and this one has 
+     *         to search by itself
+     */
+    private RouteCache.Route cachedRoute(RouteCache cache, 
+            GraphGeneration gen, final String algorithm, final int source, 
+            final int target) {
+        SearchBudget budget = requestBudget.get();
+        try {
+            return cache.get(cacheKey(gen, algorithm), source, target, 
+                    gen.getId(), () -> search(algorithm, source, target));
+        }
+        catch(SearchBudget.ExceededException e) {
+            if( budget == null || budget.isExhausted() ) {
+                throw e;
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * Feature of a route, timed as the geometry of algorithm.
+     */
+    private String routeFeature(String algorithm, List<Integer> edgeIds) {
+        return routeFeature(algorithm, edgeIds, 1);
+    }
+    
+    private String routeFeature(String algorithm, List<Integer> edgeIds, 
+            int gid) {
+        long start = routeMetrics.start();
+        String retVal = routeFeature(edgeIds, gid);
+        routeMetrics.record(RouteMetrics.GEOMETRY, algorithm, start);
+        return retVal;
+    }
+    
+    /**
+     * Generations of all metrics share their id, so the metric is part of
+     * the key of a cached route.
+     */
+    private static String cacheKey(GraphGeneration gen, String algorithm) {
+        return algorithm + "@" + gen.getMetric();
+    }
+    
+    /**
+     * @return counters of the route cache
+     */
+    public CacheStatus getCacheStatus() {
+        RouteCache cache = routeCache;
+        if( cache == null ) {
+            return new CacheStatus();
+        }
+        return cache.getStatus();
+    }
+    
+    private List<Integer> search(String algorithm, int source, int target) {
+        long start = routeMetrics.start();
+        List<Integer> retVal = searchWith(algorithm, source, target);
+        routeMetrics.record(RouteMetrics.SEARCH, algorithm, start);
+        return retVal;
+    }
+    
+    private List<Integer> searchWith(String algorithm, int source, 
+            int target) {
+        switch( algorithm ) {
+        case "astar":
+            return astarSearch(source, target);
+        case "alt":
+            return altSearch(source, target);
+        case "chbDijkstra":
+            return chbDijkstraSearch(source, target);
+        case "bfs":
+            return bfsSearch(source, target);
+        case "bellmanford":
+            return bellmanFordSearch(source, target);
+        case "johnson":
+            return johnsonSearch(source, target);
+        case "floydWarshall":
+            return floydWarshallSearch(source, target);
+        default:
+            return dijkstraSearch(source, target);
+        }
+    }
+    
+    private ParallelLoop batchLoop() {
+        ParallelLoop retVal = batchLoop;
+        if( retVal == null ) {
+            synchronized( loopLock ) {
+                retVal = batchLoop;
+                if( retVal == null ) {
+                    retVal = new ParallelLoop(batchThreads, 1, "batch");
+                    batchLoop = retVal;
+                }
+            }
+        }
+        return retVal;
+    }
+    
+    /**
+     * Checks the bounds of a path search, see paths.
+     * 
+     * @throws IllegalArgumentException when k is not between 1 and 
+     *         pgrserver.paths.max-k, maxDetour is below 1 or maxSharing is
+     *         not in (0, 1]
+     */
+    public void checkPathBounds(int k, double maxDetour, double maxSharing) {
+        if( k < 1 || k > pathsMaxK ) {
+            throw new IllegalArgumentException("k must be between 1 and "
+                    +pathsMaxK);
+        }
+        if( !(maxDetour >= 1) ) {
+            throw new IllegalArgumentException("maxDetour must be at least 1");
+        }
+        if( !(maxSharing > 0 && maxSharing <= 1) ) {
+            throw new IllegalArgumentException(
+                    "maxSharing must be above 0 and at most 1");
+        }
+    }
+    
+    /**
+     * Several paths between two nodes of gen, each handed to listener as 
+     * a GeoJSON Feature as soon as it is found, numbered from 1. The 
+     * search gives at most k paths, none costing more than maxDetour 
+     * times the shortest or sharing more than maxSharing of its cost with
+     * an earlier path, and stops after pgrserver.paths.time-budget-ms with
+     * the paths found so far. Once the listener throws no further paths 
+     * are searched.
+     * 
+     * @param alternatives via vertex alternatives on the contraction 
+     *        hierarchy, or else Yen's k shortest paths; alternatives are 
+     *        k shortest paths until the hierarchy is built
+     * @return number of paths found
+     * @throws IllegalArgumentException see checkPathBounds
+     */
+    public int paths(GraphGeneration gen, boolean alternatives, int start, 
+            int end, int k, double maxDetour, double maxSharing, 
+            final Consumer<String> listener) {
+        checkPathBounds(k, maxDetour, maxSharing);
+        final CsrGraph graph = gen.getGraph();
+        int s = graph.indexOf(start);
+        int t = graph.indexOf(end);
+        if( s < 0 || t < 0 ) {
+            return 0;
+        }
+        
+        GraphGeneration previous = pinTo(gen);
+        try {
+            final String algorithm = alternatives ? 
+                    "alternatives" : "kShortestPaths";
+            final int[] gid = { 0 };
+            /**
+             * The time spent in the listener (GeoJSON and writing) is
+             * added to the start, so that only the search is timed.
+             */
+            final long[] searched = { routeMetrics.start() };
+            Consumer<int[]> features = path -> {
+                long begin = System.nanoTime();
+                listener.accept(routeFeature(algorithm, 
+                        convertPath(graph, path), ++gid[0]));
+                searched[0] += System.nanoTime() - begin;
+            };
+            AlternativePaths search = new AlternativePaths(graph, k, 
+                    maxDetour, maxSharing, pathDeadline());
+            search.setBudget(budget());
+            ContractionHierarchy ch = gen.getHierarchy();
+            int count = alternatives && ch != null ? 
+                    search.viaNodes(ch, s, t, features) : 
+                    search.kShortest(s, t, pathHeuristic(gen, s, t), features);
+            routeMetrics.record(RouteMetrics.SEARCH, algorithm, searched[0]);
+            if( search.isTimedOut() ) {
+                logger.info("Paths "+start+" -> "+end+" stopped at their "
+                        +"time or search budget with "+count+" paths");
+            }
+            return count;
+        }
+        finally {
+            restorePin(previous);
+        }
+    }
+    
+    /**
+     * Shortest simple paths with at most maxEdges edges, in order of 
+     * cost: no more than pgrserver.paths.max-k of them, and only those 
+     * found within pgrserver.paths.time-budget-ms. This used to be every
+     * simple path, whose number grows exponentially with maxEdges.
+     */
+    public List<List<Integer>> allDirectedPaths(int start,int end,
+            int maxEdges) {
+        final List<List<Integer>> arrList = new ArrayList<>();
+        GraphGeneration gen = generation();
+        if( gen == null ) 
+            return arrList;
+        
+        final CsrGraph graph = gen.getGraph();
+        int s = graph.indexOf(start);
+        int t = graph.indexOf(end);
+        if( s < 0 || t < 0 )
+            return arrList;
+
+        long searched = routeMetrics.start();
+        AlternativePaths search = new AlternativePaths(graph, pathsMaxK, 
+                Double.POSITIVE_INFINITY, 1d, pathDeadline());
+        search.setMaxEdges(maxEdges);
+        search.setBudget(budget());
+        search.kShortest(s, t, pathHeuristic(gen, s, t), 
+                path -> arrList.add(convertPath(graph, path)));
+        routeMetrics.record(RouteMetrics.SEARCH, "allDirectedPaths", 
+                searched);
+        return arrList;
+    }
+    
+    private long pathDeadline() {
+        return System.nanoTime() 
+                + TimeUnit.MILLISECONDS.toNanos(pathsBudgetMillis);
+    }
+    
+    /**
+     * Landmark bounds for the spur searches of k shortest paths when they
+     * are ready, straight line bounds otherwise.
+     */
+    private static CsrDijkstra.Heuristic pathHeuristic(GraphGeneration gen,
+            int s, int t) {
+        if( gen.getLandmarks() != null ) {
+            return gen.getLandmarks().heuristic(s, t);
+        }
+        return gen.getGeoHeuristic() != null ? 
+                gen.getGeoHeuristic() : CsrDijkstra.NONE;
+    }
+    
+    /**
+     * A* towards the target by straight line distance. Without vertex 
+     * coordinates (geometries not loaded) this is a plain Dijkstra search.
+     */
+    public List<Integer> astarSearch(int start,int end) {
+        List<Integer> retVal = new ArrayList<Integer>();
+        GraphGeneration gen = generation();
+        if( gen == null ) 
+            return  retVal;
+                
+        CsrDijkstra.Heuristic heuristic = gen.getGeoHeuristic() != null ?
+                gen.getGeoHeuristic() : CsrDijkstra.NONE;
+        CsrGraph graph = gen.getGraph();
+        int s = graph.indexOf(start);
+        int t = graph.indexOf(end);
+        if( s < 0 || t < 0 )
+            return retVal;
+
+        SearchBudget budget = budget();
+        CsrDijkstra dijkstra = CsrDijkstra.acquire(graph);
+        int[] path;
+        try {
+            int settled = dijkstra.settledCount();
+            path = dijkstra.path(s, t, heuristic, budget);
+            routeMetrics.settled("astar", dijkstra.settledCount() - settled);
+        }
+        finally {
+            dijkstra.release();
+        }
+        budget.check();
+        return convertPath(graph, path);
+    }
+    
+    /**
+     * A* with ALT landmark bounds. Until the landmarks of the generation 
+     * are ready this is a plain Dijkstra search.
+     */
+    public List<Integer> altSearch(int start,int end) {
+        List<Integer> retVal = new ArrayList<Integer>();
+        GraphGeneration gen = generation();
+        if( gen == null ) 
+            return  retVal;
+                
+        CsrGraph graph = gen.getGraph();
+        int s = graph.indexOf(start);
+        int t = graph.indexOf(end);
+        if( s < 0 || t < 0 )
+            return retVal;
+
+        LandmarkIndex landmarks = gen.getLandmarks();
+        if( landmarks == null ) {
+            return convertPath(graph, bidirectional("alt", graph, s, t, false));
+        }
+        SearchBudget budget = budget();
+        CsrDijkstra dijkstra = CsrDijkstra.acquire(graph);
+        int[] path;
+        try {
+            int settled = dijkstra.settledCount();
+            path = dijkstra.path(s, t, landmarks.heuristic(s, t), budget);
+            routeMetrics.settled("alt", dijkstra.settledCount() - settled);
+        }
+        finally {
+            dijkstra.release();
+        }
+        budget.check();
+        return convertPath(graph, path);
+    }
+    
+    /**
+     * Bellman-Ford on the JGraphT view of the graph, which checks the 
+     * search budget as the algorithm visits the vertices.
+     */
+    public List<Integer> bellmanFordSearch(int start,int end) {
+        List<Integer> retVal = new ArrayList<Integer>();
+        GraphGeneration gen = generation();
+        if( gen == null ) 
+            return  retVal;
+                
+        CsrGraph graph = gen.getGraph();
+        int s = graph.indexOf(start);
+        int t = graph.indexOf(end);
+        if( s < 0 || t < 0 )
+            return retVal;
+
+        GraphPath<Integer, Integer> path;
+        try {
+            path = BellmanFordShortestPath.findPathBetween(
+                    new CsrGraphView(graph, budget()), s, t);
+        }
+        catch(SearchBudget.ExceededException e) {
+            throw e;
+        }
+        catch(RuntimeException e) {
+            logger.warn("Bellman-Ford "+start+" -> "+end+" failed: "+e);
+            return retVal;
+        }
+        if( path != null ) {
+            retVal = convertEdges(graph, path.getEdgeList());
+        }
+        return retVal;        
+    }
+        
+    public List<Integer> chbDijkstraSearch(int start,int end) {
+        List<Integer> retVal = new ArrayList<Integer>();
+        GraphGeneration gen = generation();
+        if( gen == null ) 
+            return  retVal;
+                
+        CsrGraph graph = gen.getGraph();
+        int s = graph.indexOf(start);
+        int t = graph.indexOf(end);
+        if( s < 0 || t < 0 )
+            return retVal;
+
+        /**
+         * Until the background build has finished the route is answered
+         * by a plain Dijkstra search.
+         */
+        ContractionHierarchy ch = gen.getHierarchy();
+        if( ch == null ) {
+            return convertPath(graph, bidirectional("chbDijkstra", graph, s, t, false));
+        }
+        SearchBudget budget = budget();
+        int[] path = ch.path(s, t, budget);
+        budget.check();
+        return convertPath(graph, path);
+    }
+    
+    public List<Integer> dijkstraSearch(int start,int end) {
+        List<Integer> retVal = new ArrayList<Integer>();
+        GraphGeneration gen = generation();
+        if( gen == null ) 
+            return  retVal;
+                
+        CsrGraph graph = gen.getGraph();
+        int s = graph.indexOf(start);
+        int t = graph.indexOf(end);
+        if( s < 0 || t < 0 )
+            return retVal;
+
+        return convertPath(graph, bidirectional("dijkstra", graph, s, t, false));
+    }
+    
+    /**
+     * Path with the fewest edges, whatever their costs.
+     */
+    public List<Integer> bfsSearch(int start,int end) {
+        List<Integer> retVal = new ArrayList<Integer>();
+        GraphGeneration gen = generation();
+        if( gen == null ) 
+            return  retVal;
+                
+        CsrGraph graph = gen.getGraph();
+        int s = graph.indexOf(start);
+        int t = graph.indexOf(end);
+        if( s < 0 || t < 0 )
+            return retVal;
+
+        return convertPath(graph, bidirectional("bfs", graph, s, t, true));
+    }
+    
+    /**
+     * Bidirectional Dijkstra, or BFS when hops, on a pooled workspace.
+     * 
+     * @param algorithm the search it is done for, for the settled count
+     * @throws SearchBudget.ExceededException when the search stopped at 
+     *         its budget
+     */
+    private int[] bidirectional(String algorithm, CsrGraph graph, int s, 
+            int t, boolean hops) {
+        SearchBudget budget = budget();
+        BidirectionalSearch search = 
+                BidirectionalSearch.acquire(graph.vertexCount());
+        int[] retVal;
+        try {
+            int settled = search.settledCount();
+            retVal = hops ? search.fewestHops(graph, s, t, budget) : 
+                search.shortestPath(graph, s, t, budget);
+            routeMetrics.settled(algorithm, search.settledCount() - settled);
+        }
+        finally {
+            search.release();
+        }
+        budget.check();
+        return retVal;
+    }
+    
+    /**
+     * Shortest path looked up in the all pairs tables, see allPairsSearch.
+     */
+    public List<Integer> floydWarshallSearch(int start,int end) {
+        return allPairsSearch("floydWarshall", start, end);
+    }
+    
+    /**
+     * Shortest path looked up in the all pairs tables, see allPairsSearch.
+     */
+    public List<Integer> johnsonSearch(int start,int end) {
+        return allPairsSearch("johnson", start, end);
+    }
+    
+    /**
+     * Answers the all pairs services from the tables computed once per 
+     * generation. Until they are ready the path is found by a 
+     * bidirectional Dijkstra search, which gives the same result.
+     * 
+     * @throws IllegalStateException when the tables are disabled or the 
+     *         graph is too large for pgrserver.apsp.max-mb
+     */
+    private List<Integer> allPairsSearch(String algorithm, int start,
+            int end) {
+        List<Integer> retVal = new ArrayList<Integer>();
+        GraphGeneration gen = generation();
+        if( gen == null ) 
+            return  retVal;
+                
+        CsrGraph graph = gen.getGraph();
+        if( !apspEnabled ) {
+            throw new IllegalStateException(
+                    "All pairs searches are disabled");
+        }
+        if( !AllPairsIndex.fits(graph, apspMaxMb << 20) ) {
+            throw new IllegalStateException("All pairs searches are not "
+                    + "available: "+allPairsTooLarge(graph));
+        }
+        int s = graph.indexOf(start);
+        int t = graph.indexOf(end);
+        if( s < 0 || t < 0 )
+            return retVal;
+
+        AllPairsIndex allPairs = gen.getAllPairs();
+        if( allPairs == null ) {
+            return convertPath(graph, bidirectional(algorithm, graph, s, t, false));
+        }
+        return convertPath(graph, allPairs.path(s, t));
+    }
+    
+    public Set<Integer> drivingDistance(int source,double radius) {
+        final Set<Integer> visited = new HashSet<Integer>();
+        
+        GraphGeneration gen = generation();
+        if( gen == null ) {
+            return visited;
+        }
+
+        CsrGraph graph = gen.getGraph();
+        int s = graph.indexOf(source);
+        if( s < 0 ) {
+            return visited;
+        }
+
+        long start = routeMetrics.start();
+        SearchBudget budget = budget();
+        CsrDijkstra dijkstra = CsrDijkstra.acquire(graph);
+        int[] settled;
+        try {
+            int before = dijkstra.settledCount();
+            settled = dijkstra.withinRadius(s, radius, budget);
+            routeMetrics.settled("drivingDistance", 
+                    dijkstra.settledCount() - before);
+        }
+        finally {
+            dijkstra.release();
+        }
+        budget.check();
+        for( int v : settled ) {
+            visited.add(graph.vertexId(v));
+        }
+        routeMetrics.record(RouteMetrics.SEARCH, "drivingDistance", start);
+        return visited;
+    }
+    
+    /**
+     * Costs and predecessor edges from a source to every node within 
+     * radius.
+     * 
+     * @param radius largest cost, +Infinity for all reachable nodes
+     * @return the tree, null before the first load or when the source is
+     *         not in the graph
+     */
+    public ShortestPathTree shortestPathTree(int source, double radius) {
+        GraphGeneration gen = generation();
+        if( gen == null ) {
+            return null;
+        }
+        CsrGraph graph = gen.getGraph();
+        int s = graph.indexOf(source);
+        if( s < 0 ) {
+            return null;
+        }
+        long start = routeMetrics.start();
+        SearchBudget budget = budget();
+        ShortestPathTree retVal = ShortestPathTree.search(graph, s, radius, 
+                budget);
+        routeMetrics.settled("spt", retVal.size());
+        budget.check();
+        routeMetrics.record(RouteMetrics.SEARCH, "spt", start);
+        return retVal;
+    }
+    
+    /**
+     * Nodes within several costs of a source, found by one search up to 
+     * the largest cost.
+     * 
+     * @param thresholds band limits in ascending order
+     * @return node id to the index of the first band that contains it, in
+     *         order of cost; empty when the source is not in the graph
+     */
+    public Map<Integer, Integer> isochrone(int source, double[] thresholds) {
+        Map<Integer, Integer> retVal = new LinkedHashMap<Integer, Integer>();
+        GraphGeneration gen = generation();
+        if( gen == null || thresholds.length == 0 ) {
+            return retVal;
+        }
+        
+        CsrGraph graph = gen.getGraph();
+        int s = graph.indexOf(source);
+        if( s < 0 ) {
+            return retVal;
+        }
+        
+        long start = routeMetrics.start();
+        SearchBudget budget = budget();
+        CsrDijkstra dijkstra = CsrDijkstra.acquire(graph);
+        try {
+            int before = dijkstra.settledCount();
+            int[] settled = dijkstra.withinRadius(s, 
+                    thresholds[thresholds.length - 1], budget);
+            budget.check();
+            int band = 0;
+            for( int v : settled ) {
+                while( dijkstra.distance(v) > thresholds[band] ) {
+                    band++;
+                }
+                retVal.put(graph.vertexId(v), band);
+            }
+            routeMetrics.settled("isochrone", 
+                    dijkstra.settledCount() - before);
+        }
+        finally {
+            dijkstra.release();
+        }
+        routeMetrics.record(RouteMetrics.SEARCH, "isochrone", start);
+        return retVal;
+    }
+    
+    /**
+     * Converts a path of CsrGraph edge indices into pgRouting edge ids.
+     */
+    private List<Integer> convertPath(CsrGraph graph, int[] path) {
+        List<Integer> retVal = new ArrayList<Integer>();
+        if( path == null ) {
+            return retVal;
+        }
+        for( int e : path ) {
+            retVal.add(graph.edgeId(e));
+        }
+        return retVal;
+    }
+
+    private List<Integer> convertEdges(CsrGraph graph, List<Integer> list) {
         List<Integer> retVal = new ArrayList<Integer>();
         
-        for(int x=0;x<list.size()-1;x++ ) {
-            LabeledWeightedEdge lw = 
-                    defaultGraph.getEdge(
-                    list.get(x),list.get(x+1) );
-            retVal.add(lw.getEdgeId());
+        for( Integer e : list ) {
+            retVal.add(graph.edgeId(e));
         }   
         return retVal;
     }
@@ -0,0 +1,324 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：ManyToMany.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.pgrserver.util.IntDoubleHeap;
+import org.pgrserver.util.IntIntHashMap;
+import org.pgrserver.util.IntList;
+import org.pgrserver.util.ParallelLoop;
+
+/**
+ * 説明：
+ * Cost matrices between many sources and many targets.
+ *
+ * With a contraction hierarchy the bucket algorithm is used: a backward
+ * upward search from every target leaves (target, cost) entries in a
+ * bucket at each vertex it reaches, and a forward upward search from every
+ * source combines its costs with the buckets of the vertices it reaches.
+ * Both kinds of search only see the few vertices above their start, so a
+ * matrix costs about as much as sources + targets point to point queries.
+ * Without a hierarchy every row is a one-to-many Dijkstra search.
+ *
+ * Vertex indices below zero (points that could not be snapped) give rows
+ * or columns of +Infinity, as do unreachable pairs. Once the SearchBudget
+ * runs out the remaining rows are left at +Infinity; the caller checks
+ * the budget before using the matrix.
+ */
+public class ManyToMany {
+
+    private ManyToMany() {
+    }
+
+    /**
+     * @return costs in row major order, sources.length rows and
+     *         targets.length columns
+     */
+    public static double[] hierarchy(final ContractionHierarchy ch,
+            final int[] sources, final int[] targets, ParallelLoop loop) {
+        return hierarchy(ch, sources, targets, loop, SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * See hierarchy; the budget is checked before each upward search.
+     */
+    public static double[] hierarchy(final ContractionHierarchy ch,
+            final int[] sources, final int[] targets, ParallelLoop loop,
+            final SearchBudget budget) {
+        final int n = ch.vertexCount();
+        final int m = targets.length;
+        final double[] costs = new double[sources.length * m];
+        Arrays.fill(costs, Double.POSITIVE_INFINITY);
+
+        final int[][] reachedVertices = new int[m][];
+        final double[][] reachedCosts = new double[m][];
+        loop.run(m, j -> {
+            if( targets[j] < 0 || budget.isExceeded(0) ) {
+                reachedVertices[j] = new int[0];
+                reachedCosts[j] = new double[0];
+                return;
+            }
+            Upward search = Upward.acquire(n);
+            try {
+                search.run(ch, targets[j], false);
+                reachedVertices[j] = search.reached.toArray();
+                reachedCosts[j] = new double[reachedVertices[j].length];
+                for(int i=0;i<reachedVertices[j].length;i++) {
+                    reachedCosts[j][i] = search.dist[reachedVertices[j][i]];
+                }
+            }
+            finally {
+                search.release();
+            }
+        });
+
+        /**
+         * Buckets as one array per kind, grouped by vertex
+         */
+        final int[] bucketOffsets = new int[n + 1];
+        for(int[] vertices : reachedVertices) {
+            for(int v : vertices) {
+                bucketOffsets[v + 1]++;
+            }
+        }
+        for(int v=0;v<n;v++) {
+            bucketOffsets[v + 1] += bucketOffsets[v];
+        }
+        final int[] bucketTarget = new int[bucketOffsets[n]];
+        final double[] bucketCost = new double[bucketOffsets[n]];
+        int[] fill = Arrays.copyOf(bucketOffsets, n);
+        for(int j=0;j<m;j++) {
+            for(int i=0;i<reachedVertices[j].length;i++) {
+                int pos = fill[reachedVertices[j][i]]++;
+                bucketTarget[pos] = j;
+                bucketCost[pos] = reachedCosts[j][i];
+            }
+        }
+
+        loop.run(sources.length, i -> {
+            if( sources[i] < 0 || budget.isExceeded(0) ) {
+                return;
+            }
+            Upward search = Upward.acquire(n);
+            try {
+                search.run(ch, sources[i], true);
+                int row = i * m;
+                for(int r=0;r<search.reached.size();r++) {
+                    int u = search.reached.get(r);
+                    double du = search.dist[u];
+                    for(int b=bucketOffsets[u];b<bucketOffsets[u + 1];b++) {
+                        double c = du + bucketCost[b];
+                        if( c < costs[row + bucketTarget[b]] ) {
+                            costs[row + bucketTarget[b]] = c;
+                        }
+                    }
+                }
+            }
+            finally {
+                search.release();
+            }
+        });
+        return costs;
+    }
+
+    /**
+     * One-to-many Dijkstra per source, for graphs without a hierarchy.
+     *
+     * @return costs in row major order, sources.length rows and
+     *         targets.length columns
+     */
+    public static double[] dijkstra(final CsrGraph graph, final int[] sources,
+            final int[] targets, ParallelLoop loop) {
+        return dijkstra(graph, sources, targets, loop, null, 
+                SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * One-to-many Dijkstra per source that also keeps the paths, see 
+     * path.
+     *
+     * @param trees receives the path tree of every snapped source, may be
+     *        null
+     * @return costs in row major order, sources.length rows and
+     *         targets.length columns
+     */
+    public static double[] dijkstra(final CsrGraph graph, final int[] sources,
+            final int[] targets, ParallelLoop loop,
+            final IntIntHashMap[] trees) {
+        return dijkstra(graph, sources, targets, loop, trees,
+                SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * See dijkstra; the budget is checked before each row and by the
+     * searches.
+     */
+    public static double[] dijkstra(final CsrGraph graph, final int[] sources,
+            final int[] targets, ParallelLoop loop,
+            final IntIntHashMap[] trees, final SearchBudget budget) {
+        final int m = targets.length;
+        final double[] costs = new double[sources.length * m];
+        Arrays.fill(costs, Double.POSITIVE_INFINITY);
+        loop.run(sources.length, i -> {
+            if( sources[i] < 0 || budget.isExceeded(0) ) {
+                return;
+            }
+            BidirectionalSearch search =
+                    BidirectionalSearch.acquire(graph.vertexCount());
+            try {
+                search.oneToMany(graph, sources[i], targets, costs, i * m,
+                        budget);
+                if( trees != null ) {
+                    trees[i] = search.pathTree(graph, targets);
+                }
+            }
+            finally {
+                search.release();
+            }
+        });
+        return costs;
+    }
+
+    /**
+     * @param tree path tree of source kept by dijkstra
+     * @return edge indices of the path from source to target, empty when
+     *         they are the same vertex, null when target was not reached
+     */
+    public static int[] path(CsrGraph graph, IntIntHashMap tree, int source,
+            int target) {
+        int length = 0;
+        int v = target;
+        while( v != source ) {
+            int e = tree.get(v);
+            if( e < 0 ) {
+                return null;
+            }
+            length++;
+            v = graph.source(e);
+        }
+        int[] retVal = new int[length];
+        for(v=target; v!=source; v=graph.source(retVal[length])) {
+            retVal[--length] = tree.get(v);
+        }
+        return retVal;
+    }
+
+    /**
+     * Exhaustive search over the upward (forward) or downward (backward)
+     * arcs of a hierarchy. Entries count only for the vertices in reached,
+     * and only those are cleared by the next run, so a workspace is kept
+     * in a small pool instead of being allocated per call.
+     */
+    static class Upward {
+        private static final ArrayBlockingQueue<Upward> POOL =
+                new ArrayBlockingQueue<Upward>(
+                        4 * Runtime.getRuntime().availableProcessors());
+
+        final double[] dist;
+        final int[] pred;
+        final IntList reached = new IntList();
+        final IntDoubleHeap heap = new IntDoubleHeap(64);
+
+        /**
+         * Stamped vertex set, allocated with the first use, see mark
+         */
+        private int[] marks;
+        private int markStamp;
+
+        Upward(int n) {
+            dist = new double[n];
+            pred = new int[n];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        }
+
+        /**
+         * Takes a workspace for a hierarchy of n vertices from the pool,
+         * or creates one. Hand it back with release.
+         */
+        static Upward acquire(int n) {
+            Upward search;
+            while( (search = POOL.poll()) != null ) {
+                if( search.dist.length >= n ) {
+                    return search;
+                }
+            }
+            return new Upward(n);
+        }
+
+        /**
+         * Returns the workspace to the pool; it is dropped when the pool
+         * is full.
+         */
+        void release() {
+            POOL.offer(this);
+        }
+
+        /**
+         * Empties the set of marked vertices.
+         */
+        void clearMarks() {
+            if( marks == null ) {
+                marks = new int[dist.length];
+            }
+            if( markStamp == Integer.MAX_VALUE ) {
+                Arrays.fill(marks, 0);
+                markStamp = 0;
+            }
+            markStamp++;
+        }
+
+        /**
+         * Adds v to the set of marked vertices.
+         *
+         * @return false when v was marked already since clearMarks
+         */
+        boolean mark(int v) {
+            if( marks[v] == markStamp ) {
+                return false;
+            }
+            marks[v] = markStamp;
+            return true;
+        }
+
+        void run(ContractionHierarchy ch, int start, boolean forward) {
+            for(int i=0;i<reached.size();i++) {
+                dist[reached.get(i)] = Double.POSITIVE_INFINITY;
+            }
+            reached.clear();
+            heap.clear();
+            int[] offsets = forward ? ch.upOffsets : ch.downOffsets;
+            int[] arcs = forward ? ch.upArcs : ch.downArcs;
+            int[] ends = forward ? ch.arcHead : ch.arcTail;
+
+            dist[start] = 0d;
+            reached.add(start);
+            heap.push(start, 0d);
+            while( !heap.isEmpty() ) {
+                double du = heap.peekKey();
+                int u = heap.poll();
+                if( du > dist[u] ) {
+                    continue;
+                }
+                for(int i=offsets[u], end=offsets[u + 1]; i<end; i++) {
+                    int a = arcs[i];
+                    int v = ends[a];
+                    double dv = du + ch.arcWeight[a];
+                    if( dv < dist[v] ) {
+                        if( dist[v] == Double.POSITIVE_INFINITY ) {
+                            reached.add(v);
+                        }
+                        dist[v] = dv;
+                        pred[v] = a;
+                        heap.push(v, dv);
+                    }
+                }
+            }
+        }
+    }
+}
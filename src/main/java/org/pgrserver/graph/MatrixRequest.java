@@ -0,0 +1,48 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：MatrixRequest.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.List;
+
+/**
+ * 説明：
+ * Points of a cost matrix request, as [lng, lat] pairs. Without targets
+ * the matrix is computed between all sources.
+ */
+public class MatrixRequest {
+
+    private List<List<Double>> sources;
+    private List<List<Double>> targets;
+
+    /**
+     * @return sources を取得する
+     */
+    public List<List<Double>> getSources() {
+        return sources;
+    }
+
+    /**
+     * @param sources sources を設定する
+     */
+    public void setSources(List<List<Double>> sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * @return targets を取得する
+     */
+    public List<List<Double>> getTargets() {
+        return targets;
+    }
+
+    /**
+     * @param targets targets を設定する
+     */
+    public void setTargets(List<List<Double>> targets) {
+        this.targets = targets;
+    }
+}
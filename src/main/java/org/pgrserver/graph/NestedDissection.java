@@ -0,0 +1,228 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：NestedDissection.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * 説明：
+ * Nested dissection order of an undirected graph, using only the
+ * topology.
+ *
+ * A connected part is split by one layer of a breadth first search started
+ * at a pseudo-peripheral vertex: the layers before and after it are not
+ * adjacent, so the layer is a vertex separator. Among the layers that
+ * leave both sides with at least a fifth of the part, the smallest one is
+ * taken. Separator vertices receive the highest ranks still free and the
+ * two sides are ordered the same way, down to parts of a few vertices.
+ */
+class NestedDissection {
+
+    private static final int LEAF_SIZE = 8;
+    private static final int MIN_SIDE_DIVISOR = 5;
+
+    private final int[][] adj;
+    private final int n;
+
+    /** part a vertex currently belongs to, -1 once it is ranked */
+    private final int[] part;
+    private final int[] dist;
+    private final int[] seen;
+    private final int[] queue;
+    private int stamp;
+    private int nextPart;
+    private int nextRank;
+    private int[] rank;
+
+    /**
+     * @param adj symmetric adjacency lists without loops or duplicates
+     */
+    NestedDissection(int[][] adj) {
+        this.adj = adj;
+        this.n = adj.length;
+        this.part = new int[n];
+        this.dist = new int[n];
+        this.seen = new int[n];
+        this.queue = new int[n];
+    }
+
+    /**
+     * @return rank of every vertex, 0..n-1
+     */
+    int[] order() {
+        rank = new int[n];
+        nextRank = n - 1;
+        nextPart = 1;
+        Deque<int[]> parts = new ArrayDeque<int[]>();
+        int[] all = new int[n];
+        for(int v=0;v<n;v++) {
+            all[v] = v;
+        }
+        parts.push(all);
+        while( !parts.isEmpty() ) {
+            dissect(parts.pop(), parts);
+        }
+        return rank;
+    }
+
+    private void dissect(int[] vertices, Deque<int[]> parts) {
+        if( vertices.length <= LEAF_SIZE ) {
+            for(int v : vertices) {
+                assign(v);
+            }
+            return;
+        }
+        int id = part[vertices[0]];
+
+        /**
+         * Split into connected components first
+         */
+        stamp++;
+        int components = 0;
+        for(int v : vertices) {
+            if( seen[v] != stamp ) {
+                bfs(v, id);
+                components++;
+            }
+        }
+        if( components > 1 ) {
+            stamp++;
+            for(int v : vertices) {
+                if( seen[v] != stamp ) {
+                    int size = bfs(v, id);
+                    int[] piece = Arrays.copyOf(queue, size);
+                    int pid = nextPart++;
+                    for(int w : piece) {
+                        part[w] = pid;
+                    }
+                    parts.push(piece);
+                }
+            }
+            return;
+        }
+
+        /**
+         * Two sweeps to find a pseudo-peripheral start vertex
+         */
+        stamp++;
+        int size = bfs(vertices[0], id);
+        int start = queue[size - 1];
+        stamp++;
+        bfs(start, id);
+        int depth = dist[queue[size - 1]];
+
+        int[] count = new int[depth + 1];
+        for(int i=0;i<size;i++) {
+            count[dist[queue[i]]]++;
+        }
+        int minSide = Math.max(1, size / MIN_SIDE_DIVISOR);
+        int separator = -1;
+        int before = 0;
+        int bestBefore = 0;
+        for(int l=0;l<=depth;l++) {
+            int after = size - before - count[l];
+            if( before >= minSide && after >= minSide ) {
+                if( separator < 0 || count[l] < count[separator]
+                        || (count[l] == count[separator]
+                            && Math.abs(before - after)
+                               < Math.abs(bestBefore - (size - bestBefore
+                                       - count[separator]))) ) {
+                    separator = l;
+                    bestBefore = before;
+                }
+            }
+            before += count[l];
+        }
+        if( separator < 0 ) {
+            before = 0;
+            separator = 0;
+            while( before + count[separator] <= size / 2 ) {
+                before += count[separator++];
+            }
+        }
+
+        /**
+         * Separator vertices without a neighbour beyond the separator
+         * can join the near side.
+         */
+        int[] component = Arrays.copyOf(queue, size);
+        int[] low = new int[size];
+        int[] high = new int[size];
+        int lowSize = 0;
+        int highSize = 0;
+        for(int i=0;i<size;i++) {
+            int v = component[i];
+            int d = dist[v];
+            if( d < separator ) {
+                low[lowSize++] = v;
+            }
+            else if( d > separator ) {
+                high[highSize++] = v;
+            }
+            else if( !reachesBeyond(v, id, separator) ) {
+                low[lowSize++] = v;
+            }
+            else {
+                assign(v);
+            }
+        }
+        push(Arrays.copyOf(low, lowSize), parts);
+        push(Arrays.copyOf(high, highSize), parts);
+    }
+
+    private boolean reachesBeyond(int v, int id, int layer) {
+        for(int w : adj[v]) {
+            if( part[w] == id && dist[w] > layer ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void push(int[] piece, Deque<int[]> parts) {
+        if( piece.length == 0 ) {
+            return;
+        }
+        int pid = nextPart++;
+        for(int v : piece) {
+            part[v] = pid;
+        }
+        parts.push(piece);
+    }
+
+    private void assign(int v) {
+        rank[v] = nextRank--;
+        part[v] = -1;
+    }
+
+    /**
+     * Breadth first search inside part id, marking vertices with the
+     * current stamp. The visit order is left in queue.
+     *
+     * @return number of vertices reached
+     */
+    private int bfs(int source, int id) {
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        seen[source] = stamp;
+        dist[source] = 0;
+        while( head < tail ) {
+            int v = queue[head++];
+            for(int w : adj[v]) {
+                if( part[w] == id && seen[w] != stamp ) {
+                    seen[w] = stamp;
+                    dist[w] = dist[v] + 1;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return tail;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：RouteBatch.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+/**
+ * 説明：
+ * A batch request after validation and snapping, ready to be searched by
+ * MainGraph.runBatch. It keeps the generation it was snapped on, so that
+ * the routes are searched on the same graph whichever thread runs them.
+ *
+ * Items that could not be resolved (malformed entries, unknown nodes,
+ * points that were not snapped) carry an error instead of nodes and are
+ * answered without a search.
+ */
+public class RouteBatch {
+
+    private final GraphGeneration generation;
+    private final String algorithm;
+    private final int[] sources;
+    private final int[] targets;
+    private final String[] errors;
+    private final String endpoint;
+
+    /**
+     * @param sources source node id per item
+     * @param targets target node id per item
+     * @param errors error per item, null where the item can be searched
+     * @param endpoint endpoint tag of the request, see RouteMetrics
+     */
+    RouteBatch(GraphGeneration generation, String algorithm, int[] sources,
+            int[] targets, String[] errors, String endpoint) {
+        this.generation = generation;
+        this.algorithm  = algorithm;
+        this.sources    = sources;
+        this.targets    = targets;
+        this.errors     = errors;
+        this.endpoint   = endpoint;
+    }
+
+    public int size() {
+        return sources.length;
+    }
+
+    /**
+     * @return generation を取得する
+     */
+    public GraphGeneration getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return algorithm を取得する
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return endpoint を取得する
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    int source(int i) {
+        return sources[i];
+    }
+
+    int target(int i) {
+        return targets[i];
+    }
+
+    /**
+     * @return why item i cannot be searched, null if it can
+     */
+    String error(int i) {
+        return errors[i];
+    }
+}
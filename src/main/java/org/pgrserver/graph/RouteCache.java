@@ -0,0 +1,268 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：RouteCache.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 説明：
+ * Routes found recently, keyed by algorithm, source and target node and
+ * graph generation, with their route GeoJSON once it has been built.
+ *
+ * The cache holds at most maxBytes of estimated heap and evicts the least
+ * recently used routes first. Identical requests that miss at the same
+ * time are coalesced: the first one searches and the others wait for its
+ * result. invalidate drops every route when a new generation is published;
+ * routes of older generations found afterwards are not stored, since no
+ * new request can ask for them.
+ */
+public class RouteCache {
+
+    private final long maxBytes;
+
+    /**
+     * Guarded by itself, in access order
+     */
+    private final LinkedHashMap<Key, Route> routes =
+            new LinkedHashMap<Key, Route>(256, 0.75f, true);
+    private final ConcurrentHashMap<Key, CompletableFuture<Route>> inFlight =
+            new ConcurrentHashMap<Key, CompletableFuture<Route>>();
+    private long bytes;
+    private long minGeneration;
+    private long hits;
+    private long misses;
+    private long coalesced;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * @param maxBytes estimated heap the routes may use
+     */
+    public RouteCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param search finds the route (pgRouting edge ids) when it is not
+     *        cached; an exception is passed on to the coalesced requests
+     *        and nothing is cached
+     * @return the cached or found route
+     */
+    public Route get(String algorithm, int source, int target,
+            long generation, Supplier<List<Integer>> search) {
+        Key key = new Key(algorithm, source, target, generation);
+        Route route = lookup(key);
+        if( route != null ) {
+            return route;
+        }
+        CompletableFuture<Route> future = new CompletableFuture<Route>();
+        CompletableFuture<Route> running = inFlight.putIfAbsent(key, future);
+        if( running != null ) {
+            synchronized( routes ) {
+                coalesced++;
+            }
+            try {
+                return running.join();
+            }
+            catch(CompletionException e) {
+                if( e.getCause() instanceof RuntimeException ) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            /**
+             * The search may have finished between the lookup and taking
+             * the in flight slot
+             */
+            route = lookup(key);
+            if( route == null ) {
+                synchronized( routes ) {
+                    misses++;
+                }
+                route = new Route(key, Collections.unmodifiableList(
+                        search.get()));
+                store(route);
+            }
+            future.complete(route);
+            return route;
+        }
+        catch(RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Keeps the GeoJSON built for a cached route, if the route is still in
+     * the cache.
+     */
+    public void setGeoJson(Route route, String geoJson) {
+        synchronized( routes ) {
+            if( route.geoJson != null || routes.get(route.key) != route ) {
+                return;
+            }
+            route.geoJson = geoJson;
+            long weight = route.weight();
+            bytes += weight - route.weight;
+            route.weight = weight;
+            evict();
+        }
+    }
+
+    /**
+     * Drops all routes; routes of generations before generation are not
+     * stored any more.
+     */
+    public void invalidate(long generation) {
+        synchronized( routes ) {
+            minGeneration = Math.max(minGeneration, generation);
+            invalidations += routes.size();
+            routes.clear();
+            bytes = 0;
+        }
+    }
+
+    public CacheStatus getStatus() {
+        CacheStatus status = new CacheStatus();
+        synchronized( routes ) {
+            status.setEnabled(true);
+            status.setEntries(routes.size());
+            status.setBytes(bytes);
+            status.setMaxBytes(maxBytes);
+            status.setHits(hits);
+            status.setMisses(misses);
+            status.setCoalesced(coalesced);
+            status.setEvictions(evictions);
+            status.setInvalidations(invalidations);
+        }
+        return status;
+    }
+
+    private Route lookup(Key key) {
+        synchronized( routes ) {
+            Route route = routes.get(key);
+            if( route != null ) {
+                hits++;
+            }
+            return route;
+        }
+    }
+
+    private void store(Route route) {
+        synchronized( routes ) {
+            if( route.key.generation < minGeneration
+                    || route.weight > maxBytes ) {
+                return;
+            }
+            Route previous = routes.put(route.key, route);
+            if( previous != null ) {
+                bytes -= previous.weight;
+            }
+            bytes += route.weight;
+            evict();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, Route>> it = routes.entrySet().iterator();
+        while( bytes > maxBytes && it.hasNext() ) {
+            bytes -= it.next().getValue().weight;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * A cached route: its edge ids and, once built, its GeoJSON.
+     */
+    public static final class Route {
+        private final Key key;
+        private final List<Integer> edgeIds;
+        private volatile String geoJson;
+        private long weight;
+
+        Route(Key key, List<Integer> edgeIds) {
+            this.key = key;
+            this.edgeIds = edgeIds;
+            this.weight = weight();
+        }
+
+        /**
+         * @return pgRouting edge ids of the route, empty when there is
+         *         none; not modifiable
+         */
+        public List<Integer> getEdgeIds() {
+            return edgeIds;
+        }
+
+        /**
+         * @return GeoJSON Feature of the route with id 1, null until set
+         */
+        public String getGeoJson() {
+            return geoJson;
+        }
+
+        /**
+         * Estimated heap: entry, key and list with boxed ids, and the
+         * characters of the GeoJSON
+         */
+        private long weight() {
+            long retVal = 160 + 20L * edgeIds.size();
+            String json = geoJson;
+            if( json != null ) {
+                retVal += 56 + 2L * json.length();
+            }
+            return retVal;
+        }
+    }
+
+    static final class Key {
+        final String algorithm;
+        final int source;
+        final int target;
+        final long generation;
+
+        Key(String algorithm, int source, int target, long generation) {
+            this.algorithm  = algorithm;
+            this.source     = source;
+            this.target     = target;
+            this.generation = generation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if( !(o instanceof Key) ) {
+                return false;
+            }
+            Key k = (Key) o;
+            return source == k.source && target == k.target
+                    && generation == k.generation
+                    && algorithm.equals(k.algorithm);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = algorithm.hashCode();
+            h = 31 * h + source;
+            h = 31 * h + target;
+            return 31 * h + (int) (generation ^ (generation >>> 32));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：RouteGeoJson.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.List;
+
+import org.pgrserver.util.IntList;
+
+/**
+ * 説明：
+ * Builds route GeoJSON from a GeometryStore, in the layout the database
+ * produced with json_build_object and st_asgeojson: a Feature with id,
+ * feat_length (metres) and fid properties.
+ *
+ * The edge lines are joined in route order, each one turned around when
+ * it was digitized against the direction of travel, so that the result is
+ * a single LineString for a connected route. Where consecutive edges do
+ * not meet, a new part is started and a MultiLineString is returned.
+ */
+public final class RouteGeoJson {
+
+    private static final int FRACTION_DIGITS = 7;
+
+    private RouteGeoJson() {
+    }
+
+    /**
+     * @param edgeIds pgRouting edge ids of the route, in order
+     * @param gid feature id and fid property
+     */
+    public static String feature(CsrGraph graph, GeometryStore store,
+            List<Integer> edgeIds, int gid) {
+        StringBuilder sb = new StringBuilder(256 + 48 * edgeIds.size());
+        appendFeature(sb, graph, store, edgeIds, gid);
+        return sb.toString();
+    }
+
+    /**
+     * @return FeatureCollection with one feature per route, numbered from 1
+     */
+    public static String featureCollection(CsrGraph graph,
+            GeometryStore store, List<List<Integer>> routes) {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("{\"type\":\"FeatureCollection\",");
+        sb.append("\"features\":[");
+        for(int i=0;i<routes.size();i++) {
+            if( i > 0 ) {
+                sb.append(',');
+            }
+            appendFeature(sb, graph, store, routes.get(i), i + 1);
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    /**
+     * @return Feature without geometry whose error property tells why
+     *         there is no route
+     */
+    public static String errorFeature(int gid, String message) {
+        StringBuilder sb = new StringBuilder(96 + message.length());
+        sb.append("{\"type\" : \"Feature\", \"id\" : ").append(gid);
+        sb.append(", \"properties\" : {\"error\" : \"");
+        for(int i=0;i<message.length();i++) {
+            char c = message.charAt(i);
+            if( c == '"' || c == '\\' ) {
+                sb.append('\\').append(c);
+            }
+            else if( c < 0x20 ) {
+                sb.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                sb.append(c);
+            }
+        }
+        sb.append("\"}, \"geometry\" : null}");
+        return sb.toString();
+    }
+
+    private static void appendFeature(StringBuilder sb, CsrGraph graph,
+            GeometryStore store, List<Integer> edgeIds, int gid) {
+        IntList coords = new IntList(8 * edgeIds.size());
+        IntList parts = new IntList();
+        double length = 0;
+        int previousTarget = -1;
+
+        for(Integer id : edgeIds) {
+            int e = pick(graph, id, previousTarget);
+            if( e < 0 ) {
+                continue;
+            }
+            previousTarget = graph.target(e);
+            int g = store.geometryOf(e);
+            if( g < 0 ) {
+                continue;
+            }
+            length += store.length(g);
+
+            int points = store.pointCount(g);
+            boolean reversed = store.isReversed(e);
+            for(int i=0;i<points;i++) {
+                int p = reversed ? points - 1 - i : i;
+                int x = store.fixedX(g, p);
+                int y = store.fixedY(g, p);
+                int size = coords.size();
+                if( i == 0 ) {
+                    if( size > 0 && coords.get(size - 2) == x
+                            && coords.get(size - 1) == y ) {
+                        continue;
+                    }
+                    parts.add(size / 2);
+                }
+                coords.add(x);
+                coords.add(y);
+            }
+        }
+
+        sb.append("{\"type\" : \"Feature\", \"id\" : ").append(gid);
+        sb.append(", \"properties\" : {\"feat_length\" : ");
+        if( parts.size() == 0 ) {
+            sb.append("null, \"fid\" : ").append(gid);
+            sb.append("}, \"geometry\" : null}");
+            return;
+        }
+        sb.append(length).append(", \"fid\" : ").append(gid);
+        sb.append("}, \"geometry\" : ");
+
+        int pointCount = coords.size() / 2;
+        if( parts.size() == 1 ) {
+            sb.append("{\"type\":\"LineString\",\"coordinates\":");
+            appendPoints(sb, coords, 0, pointCount);
+        }
+        else {
+            sb.append("{\"type\":\"MultiLineString\",\"coordinates\":[");
+            for(int k=0;k<parts.size();k++) {
+                if( k > 0 ) {
+                    sb.append(',');
+                }
+                int end = k + 1 < parts.size() ? parts.get(k + 1) : pointCount;
+                appendPoints(sb, coords, parts.get(k), end);
+            }
+            sb.append(']');
+        }
+        sb.append("}}");
+    }
+
+    /**
+     * Resolves an edge id, preferring the edge that continues from the
+     * previous one when the id names several.
+     */
+    private static int pick(CsrGraph graph, int id, int previousTarget) {
+        int[] edges = graph.edgesWithId(id);
+        if( edges.length == 0 ) {
+            return -1;
+        }
+        for(int e : edges) {
+            if( graph.source(e) == previousTarget ) {
+                return e;
+            }
+        }
+        return edges[0];
+    }
+
+    private static void appendPoints(StringBuilder sb, IntList coords,
+            int first, int end) {
+        sb.append('[');
+        for(int p=first;p<end;p++) {
+            if( p > first ) {
+                sb.append(',');
+            }
+            sb.append('[');
+            appendFixed(sb, coords.get(2 * p));
+            sb.append(',');
+            appendFixed(sb, coords.get(2 * p + 1));
+            sb.append(']');
+        }
+        sb.append(']');
+    }
+
+    /**
+     * Writes a fixed point coordinate in decimal without trailing zeros,
+     * avoiding floating point formatting.
+     */
+    static void appendFixed(StringBuilder sb, int value) {
+        long v = value;
+        if( v < 0 ) {
+            sb.append('-');
+            v = -v;
+        }
+        long scale = (long) GeometryStore.SCALE;
+        sb.append(v / scale);
+        long fraction = v % scale;
+        if( fraction == 0 ) {
+            return;
+        }
+        int digits = FRACTION_DIGITS;
+        while( fraction % 10 == 0 ) {
+            fraction /= 10;
+            digits--;
+        }
+        sb.append('.');
+        for(long p=fraction*10;p<pow10(digits);p*=10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+
+    private static long pow10(int digits) {
+        long retVal = 1;
+        for(int i=0;i<digits;i++) {
+            retVal *= 10;
+        }
+        return retVal;
+    }
+}
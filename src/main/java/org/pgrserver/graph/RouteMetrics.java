@@ -0,0 +1,242 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：RouteMetrics.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * 説明：
+ * Micrometer meters of the routing services and of the graph builds,
+ * exposed by the actuator prometheus endpoint.
+ *
+ * A request is timed per phase: snapping its points (snap), the search
+ * itself (search) and building its GeoJSON (geometry), each tagged by
+ * algorithm and by the endpoint the request came in through. The endpoint
+ * is kept per thread, set by the request interceptor or by whatever runs
+ * work of a request on another thread. The searches that count them also
+ * record the vertices they settled. Graph loads and the hierarchies,
+ * landmarks and tables built for a graph are timed by stage, and gauges
+ * report the size of the current graph.
+ *
+ * Without a registry every method returns at once, so the meters cost
+ * nothing when the actuator is not there (or in tests). With one, a
+ * recorded phase is two map lookups and a timer update, without
+ * allocation once the timer exists; see RouteMetricsBenchmark.
+ */
+public class RouteMetrics {
+
+    public static final int SNAP     = 0;
+    public static final int SEARCH   = 1;
+    public static final int GEOMETRY = 2;
+
+    private static final String[] PHASES = { "snap", "search", "geometry" };
+
+    /**
+     * Endpoint tag of work that is not done for a request
+     */
+    static final String NO_ENDPOINT = "none";
+
+    private final MeterRegistry registry;
+
+    private final ThreadLocal<String> endpoint = new ThreadLocal<String>();
+
+    /**
+     * Timers per endpoint, algorithm and phase
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Timer[]>>
+            timers = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, DistributionSummary> settled =
+            new ConcurrentHashMap<String, DistributionSummary>();
+
+    private final ConcurrentHashMap<String, Timer> builds =
+            new ConcurrentHashMap<String, Timer>();
+
+    /**
+     * @param registry where the meters are registered, null for none
+     */
+    public RouteMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @return meters that record nothing
+     */
+    public static RouteMetrics disabled() {
+        return new RouteMetrics(null);
+    }
+
+    public boolean isEnabled() {
+        return registry != null;
+    }
+
+    /**
+     * @return start of a phase for record, 0 when disabled
+     */
+    public long start() {
+        return registry == null ? 0L : System.nanoTime();
+    }
+
+    /**
+     * Records a phase that started at start.
+     *
+     * @param phase SNAP, SEARCH or GEOMETRY
+     * @param algorithm name of the search, e.g. chbDijkstra
+     */
+    public void record(int phase, String algorithm, long start) {
+        if( registry == null ) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        timer(endpoint(), algorithm, phase)
+            .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a phase of the service of the current endpoint, for work
+     * that does not know the algorithm (snapping, GeoJSON of several
+     * routes).
+     */
+    public void record(int phase, long start) {
+        if( registry == null ) {
+            return;
+        }
+        String ep = endpoint();
+        long nanos = System.nanoTime() - start;
+        timer(ep, service(ep), phase).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the number of vertices a search settled.
+     */
+    public void settled(String algorithm, int count) {
+        if( registry == null ) {
+            return;
+        }
+        DistributionSummary summary = settled.get(algorithm);
+        if( summary == null ) {
+            summary = settled.computeIfAbsent(algorithm, a ->
+                DistributionSummary.builder("pgrserver.route.settled")
+                    .description("Vertices settled by a search")
+                    .baseUnit("vertices")
+                    .tag("algorithm", a)
+                    .register(registry));
+        }
+        summary.record(count);
+    }
+
+    /**
+     * Records the duration of a graph build stage, e.g. load, hierarchy or
+     * landmarks.
+     */
+    public void build(String stage, long millis) {
+        if( registry == null ) {
+            return;
+        }
+        Timer timer = builds.get(stage);
+        if( timer == null ) {
+            timer = builds.computeIfAbsent(stage, s ->
+                Timer.builder("pgrserver.graph.build")
+                    .description("Duration of a graph load or build stage")
+                    .tag("stage", s)
+                    .register(registry));
+        }
+        timer.record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers the gauges of the current graph: vertices, edges, the
+     * estimated heap of the graph and its structures, and the generation.
+     */
+    public void bindGraph(final Supplier<GraphGeneration> current) {
+        if( registry == null ) {
+            return;
+        }
+        Gauge.builder("pgrserver.graph.vertices", current,
+                c -> c.get() == null ? 0 : c.get().getGraph().vertexCount())
+            .description("Vertices of the current graph")
+            .register(registry);
+        Gauge.builder("pgrserver.graph.edges", current,
+                c -> c.get() == null ? 0 : c.get().getGraph().edgeCount())
+            .description("Edges of the current graph")
+            .register(registry);
+        Gauge.builder("pgrserver.graph.heap", current,
+                c -> c.get() == null ? 0 : c.get().estimatedHeapBytes())
+            .description("Estimated heap of the current graph, its metrics "
+                    + "and what has been built for them")
+            .baseUnit("bytes")
+            .register(registry);
+        Gauge.builder("pgrserver.graph.generation", current,
+                c -> c.get() == null ? 0 : c.get().getId())
+            .description("Generation counter of the current graph")
+            .register(registry);
+    }
+
+    /**
+     * @return endpoint tag of the current thread
+     */
+    public String endpoint() {
+        String retVal = endpoint.get();
+        return retVal == null ? NO_ENDPOINT : retVal;
+    }
+
+    /**
+     * Sets the endpoint tag of the current thread.
+     *
+     * @param endpoint request mapping, e.g. /api/latlng/dijkstra; null to
+     *        clear it
+     * @return the endpoint set before, null when there was none
+     */
+    public String setEndpoint(String endpoint) {
+        String previous = this.endpoint.get();
+        if( endpoint == null ) {
+            this.endpoint.remove();
+        }
+        else {
+            this.endpoint.set(endpoint);
+        }
+        return previous;
+    }
+
+    /**
+     * @return the service of an endpoint, its last path segment
+     */
+    static String service(String endpoint) {
+        return endpoint.substring(endpoint.lastIndexOf('/') + 1);
+    }
+
+    private Timer timer(String ep, String algorithm, int phase) {
+        ConcurrentHashMap<String, Timer[]> byAlgorithm = timers.get(ep);
+        if( byAlgorithm == null ) {
+            byAlgorithm = timers.computeIfAbsent(ep,
+                    e -> new ConcurrentHashMap<String, Timer[]>());
+        }
+        Timer[] phases = byAlgorithm.get(algorithm);
+        if( phases == null ) {
+            phases = byAlgorithm.computeIfAbsent(algorithm, a -> {
+                Timer[] retVal = new Timer[PHASES.length];
+                for(int i=0;i<retVal.length;i++) {
+                    retVal[i] = Timer.builder("pgrserver.route")
+                        .description("Duration of a phase of a request")
+                        .tag("endpoint", ep)
+                        .tag("algorithm", a)
+                        .tag("phase", PHASES[i])
+                        .register(registry);
+                }
+                return retVal;
+            });
+        }
+        return phases[phase];
+    }
+}
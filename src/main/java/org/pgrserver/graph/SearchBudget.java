@@ -0,0 +1,197 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：SearchBudget.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+/**
+ * 説明：
+ * Limits of the searches done for one request: the vertices a single
+ * search may settle, a deadline, and cancellation by another thread (the
+ * client went away, or the request timed out). A thread that is
+ * interrupted counts as cancelled.
+ *
+ * The searches look at their budget once every CHECK_INTERVAL settled
+ * vertices, which costs a counter test in the hot loop and a clock read
+ * now and then. A search over budget stops and returns as if there were
+ * no path; the budget remembers why, and MainGraph turns that into an
+ * ExceededException so that the partial result is neither cached nor
+ * answered as "no route". Once exhausted, every further search of the
+ * budget stops at its first check.
+ *
+ * A budget is shared by the threads working for the same request;
+ * independent searches of one request, such as the routes of a batch,
+ * each take their own with split.
+ */
+public final class SearchBudget {
+
+    /**
+     * Settled vertices between two checks of the budget
+     */
+    public static final int CHECK_INTERVAL = 1024;
+
+    static final int CHECK_MASK = CHECK_INTERVAL - 1;
+
+    public static final String SETTLED   = "settled";
+    public static final String TIME      = "time";
+    public static final String CANCELLED = "cancelled";
+
+    /**
+     * Budget that is never exhausted and cannot be cancelled
+     */
+    public static final SearchBudget UNLIMITED =
+            new SearchBudget(0, 0, false, null);
+
+    /**
+     * Thrown when a search stopped because its budget was exhausted.
+     */
+    public static class ExceededException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String reason;
+
+        ExceededException(String reason, String message) {
+            super(message);
+            this.reason = reason;
+        }
+
+        /**
+         * @return SETTLED, TIME or CANCELLED
+         */
+        public String getReason() {
+            return reason;
+        }
+    }
+
+    private final long maxSettled;
+    private final long deadline;
+    private final boolean limited;
+    private final SearchBudget parent;
+    private volatile boolean cancelled;
+    private volatile String exhausted;
+
+    /**
+     * @param maxSettled vertices one search may settle, 0 for no limit
+     * @param deadline System.nanoTime after which the searches stop, 0
+     *        for none
+     */
+    public SearchBudget(long maxSettled, long deadline) {
+        this(maxSettled, deadline, true, null);
+    }
+
+    private SearchBudget(long maxSettled, long deadline, boolean limited,
+            SearchBudget parent) {
+        this.maxSettled = maxSettled;
+        this.deadline   = deadline;
+        this.limited    = limited;
+        this.parent     = parent;
+    }
+
+    /**
+     * @param maxMillis time from now until the deadline, 0 for none
+     */
+    public static SearchBudget of(long maxSettled, long maxMillis) {
+        return new SearchBudget(maxSettled, maxMillis > 0 ?
+                System.nanoTime() + maxMillis * 1_000_000L : 0L);
+    }
+
+    /**
+     * Checks the budget, for a search that has settled settled vertices.
+     * Called every CHECK_INTERVAL settled vertices, see due.
+     *
+     * @return whether the search must stop
+     */
+    public boolean isExceeded(long settled) {
+        if( !limited ) {
+            return false;
+        }
+        if( exhausted != null ) {
+            return true;
+        }
+        if( maxSettled > 0 && settled > maxSettled ) {
+            return exhaust(SETTLED);
+        }
+        if( isCancelled() || Thread.currentThread().isInterrupted() ) {
+            return exhaust(CANCELLED);
+        }
+        if( deadline != 0 && System.nanoTime() - deadline >= 0 ) {
+            return exhaust(TIME);
+        }
+        return false;
+    }
+
+    /**
+     * @return whether a search that has settled settled vertices checks
+     *         its budget now
+     */
+    public static boolean due(long settled) {
+        return (settled & CHECK_MASK) == 0;
+    }
+
+    private boolean exhaust(String reason) {
+        if( exhausted == null ) {
+            exhausted = reason;
+        }
+        return true;
+    }
+
+    /**
+     * Budget for a search of its own: the same settled limit, deadline
+     * and cancellation, but exhausted apart from this one, so that a
+     * search settling too many vertices does not stop the others.
+     */
+    public SearchBudget split() {
+        if( !limited ) {
+            return this;
+        }
+        return new SearchBudget(maxSettled, deadline, true, this);
+    }
+
+    /**
+     * Stops the searches of this budget, and of the budgets split from
+     * it, at their next check.
+     */
+    public void cancel() {
+        if( limited ) {
+            cancelled = true;
+        }
+    }
+
+    private boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    public boolean isExhausted() {
+        return exhausted != null;
+    }
+
+    /**
+     * @return SETTLED, TIME or CANCELLED, null while the budget lasts
+     */
+    public String getReason() {
+        return exhausted;
+    }
+
+    /**
+     * @throws ExceededException when a search of this budget stopped
+     */
+    public void check() {
+        String reason = exhausted;
+        if( reason == null ) {
+            return;
+        }
+        switch( reason ) {
+        case SETTLED:
+            throw new ExceededException(reason, "search stopped after "
+                    + "settling more than "+maxSettled+" vertices");
+        case TIME:
+            throw new ExceededException(reason, "search stopped at its "
+                    + "deadline");
+        default:
+            throw new ExceededException(reason, "search cancelled");
+        }
+    }
+}
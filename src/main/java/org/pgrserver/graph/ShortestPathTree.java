@@ -0,0 +1,178 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：ShortestPathTree.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * 説明：
+ * Costs from one source to every node reached within a radius, with the
+ * edge each node is reached by, kept as parallel primitive arrays in order
+ * of cost.
+ *
+ * As JSON the tree is an object with the source node id and three arrays
+ * of the same length: nodes, costs and edges (the pgRouting id of the
+ * predecessor edge, null for the source). Nodes that cannot be reached,
+ * e.g. behind a closed edge, are not part of the tree, so every cost is
+ * a finite number. The binary form is little
+ * endian: the node count as int32, the node ids as int32, the costs as
+ * float32 and the edge ids as int32 (-1 for the source).
+ */
+public class ShortestPathTree {
+
+    private final CsrGraph graph;
+    private final int source;
+    private final int[] vertices;
+    private final double[] costs;
+    private final int[] predEdges;
+
+    /**
+     * @param vertices dense indices in order of cost, the source first
+     * @param costs cost per vertex
+     * @param predEdges edge index per vertex, -1 for the source
+     */
+    ShortestPathTree(CsrGraph graph, int source, int[] vertices,
+            double[] costs, int[] predEdges) {
+        this.graph     = graph;
+        this.source    = source;
+        this.vertices  = vertices;
+        this.costs     = costs;
+        this.predEdges = predEdges;
+    }
+
+    /**
+     * Dijkstra from source up to radius.
+     *
+     * @param source dense index of the source
+     * @param radius largest cost, +Infinity for every reachable node
+     */
+    public static ShortestPathTree search(CsrGraph graph, int source,
+            double radius) {
+        return search(graph, source, radius, SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * See search; the tree holds the nodes settled so far when the budget
+     * runs out.
+     */
+    public static ShortestPathTree search(CsrGraph graph, int source,
+            double radius, SearchBudget budget) {
+        CsrDijkstra dijkstra = CsrDijkstra.acquire(graph);
+        int[] vertices;
+        double[] costs;
+        int[] predEdges;
+        try {
+            int[] settled = dijkstra.withinRadius(source, radius, budget);
+            vertices = new int[settled.length];
+            costs = new double[settled.length];
+            predEdges = new int[settled.length];
+            int n = 0;
+            for(int v : settled) {
+                double cost = dijkstra.distance(v);
+                if( Double.isInfinite(cost) || Double.isNaN(cost) ) {
+                    continue;
+                }
+                vertices[n] = v;
+                costs[n] = cost;
+                predEdges[n++] = dijkstra.predecessor(v);
+            }
+            if( n < settled.length ) {
+                vertices = Arrays.copyOf(vertices, n);
+                costs = Arrays.copyOf(costs, n);
+                predEdges = Arrays.copyOf(predEdges, n);
+            }
+        }
+        finally {
+            dijkstra.release();
+        }
+        return new ShortestPathTree(graph, source, vertices, costs,
+                predEdges);
+    }
+
+    /**
+     * @return number of nodes reached, the source included
+     */
+    public int size() {
+        return vertices.length;
+    }
+
+    /**
+     * @return node id of the i-th node in order of cost
+     */
+    public int node(int i) {
+        return graph.vertexId(vertices[i]);
+    }
+
+    public double cost(int i) {
+        return costs[i];
+    }
+
+    /**
+     * @return pgRouting id of the edge the i-th node is reached by, -1
+     *         for the source
+     */
+    public int edge(int i) {
+        return predEdges[i] < 0 ? -1 : graph.edgeId(predEdges[i]);
+    }
+
+    public String toJson() {
+        int n = vertices.length;
+        StringBuilder sb = new StringBuilder(64 + n * 28);
+        sb.append("{\"source\":").append(graph.vertexId(source));
+        sb.append(",\"nodes\":[");
+        for(int i=0;i<n;i++) {
+            if( i > 0 ) {
+                sb.append(',');
+            }
+            sb.append(node(i));
+        }
+        sb.append("],\"costs\":[");
+        for(int i=0;i<n;i++) {
+            if( i > 0 ) {
+                sb.append(',');
+            }
+            if( Double.isInfinite(costs[i]) || Double.isNaN(costs[i]) ) {
+                sb.append("null");
+            }
+            else {
+                sb.append(costs[i]);
+            }
+        }
+        sb.append("],\"edges\":[");
+        for(int i=0;i<n;i++) {
+            if( i > 0 ) {
+                sb.append(',');
+            }
+            if( predEdges[i] < 0 ) {
+                sb.append("null");
+            }
+            else {
+                sb.append(graph.edgeId(predEdges[i]));
+            }
+        }
+        return sb.append("]}").toString();
+    }
+
+    public byte[] toBinary() {
+        int n = vertices.length;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 12 * n)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(n);
+        for(int i=0;i<n;i++) {
+            buffer.putInt(node(i));
+        }
+        for(int i=0;i<n;i++) {
+            buffer.putFloat((float) costs[i]);
+        }
+        for(int i=0;i<n;i++) {
+            buffer.putInt(edge(i));
+        }
+        return buffer.array();
+    }
+}
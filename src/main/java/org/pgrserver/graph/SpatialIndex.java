@@ -0,0 +1,166 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：SpatialIndex.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+import java.util.Arrays;
+
+import org.pgrserver.util.IntDoubleHeap;
+import org.pgrserver.util.PackedRTree;
+
+/**
+ * 説明：
+ * In-memory snapping of lng/lat points to the graph.
+ *
+ * One packed R-tree holds the edge geometries, another the vertex
+ * coordinates. Distances are planar in degrees, as with the PostGIS
+ * {@code geom <-> point} ordering the SQL snapping used, so both pick the
+ * same edge. Edges whose rows were dropped when building the graph (e.g.
+ * a negative cost) are not indexed.
+ */
+public class SpatialIndex {
+
+    private final GeometryStore geometry;
+    private final int[] geometryEdge;
+    private final PackedRTree edgeTree;
+    private final PackedRTree vertexTree;
+
+    public SpatialIndex(CsrGraph graph, GeometryStore geometry) {
+        this.geometry = geometry;
+
+        int count = geometry.geometryCount();
+        geometryEdge = new int[count];
+        double[] minX = new double[count];
+        double[] minY = new double[count];
+        double[] maxX = new double[count];
+        double[] maxY = new double[count];
+        for(int g=0;g<count;g++) {
+            int[] edges = graph.edgesWithId(geometry.geometryId(g));
+            geometryEdge[g] = edges.length > 0 ? edges[0] : -1;
+            if( edges.length == 0 ) {
+                minX[g] = minY[g] = maxX[g] = maxY[g] = Double.NaN;
+                continue;
+            }
+            minX[g] = minY[g] = Double.POSITIVE_INFINITY;
+            maxX[g] = maxY[g] = Double.NEGATIVE_INFINITY;
+            for(int i=0;i<geometry.pointCount(g);i++) {
+                double x = geometry.x(g, i);
+                double y = geometry.y(g, i);
+                minX[g] = Math.min(minX[g], x);
+                minY[g] = Math.min(minY[g], y);
+                maxX[g] = Math.max(maxX[g], x);
+                maxY[g] = Math.max(maxY[g], y);
+            }
+        }
+        edgeTree = new PackedRTree(minX, minY, maxX, maxY);
+
+        int n = graph.vertexCount();
+        double[] vx = new double[n];
+        double[] vy = new double[n];
+        for(int v=0;v<n;v++) {
+            vx[v] = geometry.vertexX(v);
+            vy[v] = geometry.vertexY(v);
+        }
+        vertexTree = new PackedRTree(vx, vy, vx, vy);
+    }
+
+    /**
+     * @return whether there is anything to snap to
+     */
+    public boolean isEmpty() {
+        return edgeTree.size() == 0;
+    }
+
+    public GeometryStore getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * @return index of the graph edge nearest to the point, -1 if none
+     */
+    public int nearestEdge(double lng, double lat) {
+        return nearestEdge(lng, lat, new IntDoubleHeap(64));
+    }
+
+    private int nearestEdge(double lng, double lat, IntDoubleHeap heap) {
+        int g = edgeTree.nearest(lng, lat, this::lineDistanceSq, heap);
+        return g < 0 ? -1 : geometryEdge[g];
+    }
+
+    /**
+     * Snaps many points at once. The points are visited along a Hilbert
+     * curve so that consecutive searches run through the same tree nodes,
+     * and share one work queue.
+     *
+     * @return edge index per point, -1 where none was found
+     */
+    public int[] nearestEdges(double[] lng, double[] lat) {
+        int count = lng.length;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for(int i=0;i<count;i++) {
+            minX = Math.min(minX, lng[i]);
+            minY = Math.min(minY, lat[i]);
+            maxX = Math.max(maxX, lng[i]);
+            maxY = Math.max(maxY, lat[i]);
+        }
+        long[] order = new long[count];
+        double width = Math.max(maxX - minX, 1e-12);
+        double height = Math.max(maxY - minY, 1e-12);
+        for(int i=0;i<count;i++) {
+            int hx = (int) (32767 * (lng[i] - minX) / width);
+            int hy = (int) (32767 * (lat[i] - minY) / height);
+            order[i] = ((long) PackedRTree.hilbert(hx, hy) << 32) | i;
+        }
+        Arrays.sort(order);
+
+        int[] retVal = new int[count];
+        IntDoubleHeap heap = new IntDoubleHeap(64);
+        for(long o : order) {
+            int i = (int) o;
+            retVal[i] = nearestEdge(lng[i], lat[i], heap);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return index of the vertex nearest to the point, -1 if none
+     */
+    public int nearestVertex(double lng, double lat) {
+        return vertexTree.nearest(lng, lat, (v, x, y) -> {
+            double dx = geometry.vertexX(v) - x;
+            double dy = geometry.vertexY(v) - y;
+            return dx * dx + dy * dy;
+        }, new IntDoubleHeap(64));
+    }
+
+    /**
+     * Squared planar distance from a point to the line of geometry g.
+     */
+    private double lineDistanceSq(int g, double x, double y) {
+        int points = geometry.pointCount(g);
+        double ax = geometry.x(g, 0);
+        double ay = geometry.y(g, 0);
+        double best = (ax - x) * (ax - x) + (ay - y) * (ay - y);
+        for(int i=1;i<points;i++) {
+            double bx = geometry.x(g, i);
+            double by = geometry.y(g, i);
+            double dx = bx - ax;
+            double dy = by - ay;
+            double len = dx * dx + dy * dy;
+            double t = len > 0 ? ((x - ax) * dx + (y - ay) * dy) / len : 0;
+            t = t < 0 ? 0 : t > 1 ? 1 : t;
+            double px = ax + t * dx - x;
+            double py = ay + t * dy - y;
+            best = Math.min(best, px * px + py * py);
+            ax = bx;
+            ay = by;
+        }
+        return best;
+    }
+}
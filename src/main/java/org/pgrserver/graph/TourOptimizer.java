@@ -0,0 +1,207 @@
+/**
+ * パッケージ名：org.pgrserver.graph
+ * ファイル名  ：TourOptimizer.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.graph;
+
+/**
+ * 説明：
+ * Order of stops for the TSP service: an open tour that starts at stop 0
+ * and visits every other stop once, on a (possibly asymmetric) cost
+ * matrix.
+ *
+ * The tour starts from the nearest neighbour heuristic and is improved by
+ * 2-opt (reversing a part of the tour) and Or-opt (moving one to three
+ * consecutive stops elsewhere) until no move helps or the time budget is
+ * used up. Reversing a part of an asymmetric tour changes the cost of the
+ * legs inside it, so the tour keeps prefix sums of its legs in both
+ * directions and every move is evaluated in constant time.
+ *
+ * Pairs without a route cost more than any tour with fewer of them.
+ */
+public class TourOptimizer {
+
+    private final int n;
+    private final double[] costs;
+    private final int[] tour;
+    private final double[] forward;
+    private final double[] backward;
+
+    /**
+     * @param costs n x n costs in row major order, +Infinity for no route
+     */
+    TourOptimizer(double[] costs, int n) {
+        this.n = n;
+        this.costs = new double[n * n];
+        double max = 0;
+        for(double c : costs) {
+            if( c != Double.POSITIVE_INFINITY ) {
+                max = Math.max(max, c);
+            }
+        }
+        double penalty = (max + 1) * n * 2;
+        for(int i=0;i<costs.length;i++) {
+            this.costs[i] = costs[i] == Double.POSITIVE_INFINITY ?
+                    penalty : costs[i];
+        }
+        this.tour = new int[n];
+        this.forward = new double[n];
+        this.backward = new double[n];
+    }
+
+    /**
+     * @param costs n x n costs in row major order, +Infinity for no route
+     * @param budgetMillis time for the local search, 0 for none
+     * @return the stops in visiting order, starting with 0
+     */
+    public static int[] solve(double[] costs, int n, long budgetMillis) {
+        TourOptimizer optimizer = new TourOptimizer(costs, n);
+        optimizer.nearestNeighbour();
+        optimizer.improve(System.nanoTime() + budgetMillis * 1000000L);
+        return optimizer.tour.clone();
+    }
+
+    private double cost(int from, int to) {
+        return costs[from * n + to];
+    }
+
+    /**
+     * @return cost of the tour along its legs
+     */
+    double length() {
+        return forward[n - 1];
+    }
+
+    void nearestNeighbour() {
+        boolean[] visited = new boolean[n];
+        visited[0] = true;
+        for(int k=1;k<n;k++) {
+            int last = tour[k - 1];
+            int next = -1;
+            for(int v=0;v<n;v++) {
+                if( !visited[v] && (next < 0
+                        || cost(last, v) < cost(last, next)) ) {
+                    next = v;
+                }
+            }
+            tour[k] = next;
+            visited[next] = true;
+        }
+        prefixSums();
+    }
+
+    /**
+     * forward[k] is the cost of the legs up to stop k, backward[k] the
+     * same legs driven the other way.
+     */
+    private void prefixSums() {
+        for(int k=1;k<n;k++) {
+            forward[k] = forward[k - 1] + cost(tour[k - 1], tour[k]);
+            backward[k] = backward[k - 1] + cost(tour[k], tour[k - 1]);
+        }
+    }
+
+    /**
+     * Applies improving moves until there are none left or deadline (in
+     * System.nanoTime) has passed.
+     */
+    void improve(long deadline) {
+        boolean improved = true;
+        while( improved && System.nanoTime() < deadline ) {
+            improved = twoOpt(deadline) | orOpt(deadline);
+        }
+    }
+
+    /**
+     * Reverses tour[i..j] where that makes the tour shorter.
+     */
+    private boolean twoOpt(long deadline) {
+        boolean improved = false;
+        for(int i=1;i<n - 1;i++) {
+            if( System.nanoTime() > deadline ) {
+                break;
+            }
+            for(int j=i + 1;j<n;j++) {
+                int before = tour[i - 1];
+                double delta = cost(before, tour[j]) - cost(before, tour[i])
+                        + (backward[j] - backward[i])
+                        - (forward[j] - forward[i]);
+                if( j + 1 < n ) {
+                    int after = tour[j + 1];
+                    delta += cost(tour[i], after) - cost(tour[j], after);
+                }
+                if( delta < -1e-9 ) {
+                    for(int a=i, b=j; a<b; a++, b--) {
+                        int t = tour[a];
+                        tour[a] = tour[b];
+                        tour[b] = t;
+                    }
+                    prefixSums();
+                    improved = true;
+                }
+            }
+        }
+        return improved;
+    }
+
+    /**
+     * Moves one to three consecutive stops, in their order, between two
+     * other stops or to the end where that makes the tour shorter.
+     */
+    private boolean orOpt(long deadline) {
+        boolean improved = false;
+        int[] moved = new int[3];
+        for(int length=1;length<=3;length++) {
+            for(int i=1;i + length<=n;i++) {
+                if( System.nanoTime() > deadline ) {
+                    return improved;
+                }
+                int last = i + length - 1;
+                int first = tour[i];
+                int end = tour[last];
+                int prev = tour[i - 1];
+                double removed = cost(prev, first);
+                if( last + 1 < n ) {
+                    removed += cost(end, tour[last + 1])
+                            - cost(prev, tour[last + 1]);
+                }
+
+                int best = -1;
+                double bestDelta = -1e-9;
+                for(int p=0;p<n;p++) {
+                    if( p >= i - 1 && p <= last ) {
+                        continue;
+                    }
+                    double added = cost(tour[p], first);
+                    if( p + 1 < n ) {
+                        added += cost(end, tour[p + 1])
+                                - cost(tour[p], tour[p + 1]);
+                    }
+                    if( added - removed < bestDelta ) {
+                        bestDelta = added - removed;
+                        best = p;
+                    }
+                }
+                if( best < 0 ) {
+                    continue;
+                }
+                System.arraycopy(tour, i, moved, 0, length);
+                if( best < i ) {
+                    System.arraycopy(tour, best + 1, tour, best + 1 + length,
+                            i - best - 1);
+                    System.arraycopy(moved, 0, tour, best + 1, length);
+                }
+                else {
+                    System.arraycopy(tour, last + 1, tour, i, best - last);
+                    System.arraycopy(moved, 0, tour, best - length + 1,
+                            length);
+                }
+                prefixSums();
+                improved = true;
+            }
+        }
+        return improved;
+    }
+}
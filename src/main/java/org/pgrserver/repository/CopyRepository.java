@@ -0,0 +1,54 @@
+/**
+ * パッケージ名：org.pgrserver.repository
+ * ファイル名  ：CopyRepository.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyInputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 説明：
+ * Runs COPY ... TO STDOUT statements and streams their output, for bulk
+ * reads that should not go through JPA.
+ */
+@Repository
+public class CopyRepository {
+
+    /**
+     * Consumes the output of a COPY statement.
+     */
+    public interface CopyReader<T> {
+        T read(InputStream in) throws IOException;
+    }
+
+    @Autowired
+    private DataSource dataSource;
+
+    /**
+     * Runs sql on a connection of its own and passes the COPY data to
+     * reader as it arrives. The COPY is cancelled if reader does not read
+     * it to the end.
+     */
+    public <T> T copyOut(String sql, CopyReader<T> reader) 
+            throws SQLException, IOException {
+        try( Connection connection = dataSource.getConnection() ) {
+            PGConnection pgConnection = 
+                    connection.unwrap(PGConnection.class);
+            try( InputStream in = new PGCopyInputStream(pgConnection, sql) ) {
+                return reader.read(in);
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@
 package org.pgrserver.repository;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.EntityManager;
@@ -33,6 +34,15 @@ public class CustomRepository {
     @Autowired
     private EntityManager entityManager;
     
+    /**
+     * Rows of the pgrserver view for a query built by GraphMetrics, when
+     * the graph has other weight columns than cost
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> getGraphRows(String sql) {
+        return entityManager.createNativeQuery(sql).getResultList();
+    }
+    
     public PgrServer findNearestNode(double lng,double lat) {
         String sql = "select id,source,target,cost from pgrserver "
                 + "order by geom <-> st_setsrid(st_point("
@@ -65,6 +75,52 @@ public class CustomRepository {
                 .getSingleResult();
     }
     
+    /**
+     * One concave hull per band, each over the nodes of its own and of 
+     * the inner bands, as a FeatureCollection in ascending threshold 
+     * order.
+     * 
+     * @param bands node id to index of the first band that contains it
+     * @param thresholds cost limit per band
+     */
+    public Object createJsonIsochrone(Map<Integer, Integer> bands, 
+            double[] thresholds) {
+        String nodes = bands.keySet().toString();
+        String bandIdx = bands.values().toString();
+        StringBuilder limits = new StringBuilder();
+        StringBuilder bandNums = new StringBuilder();
+        for(int i=0;i<thresholds.length;i++) {
+            if( i > 0 ) {
+                limits.append(',');
+                bandNums.append(',');
+            }
+            limits.append(thresholds[i]);
+            bandNums.append(i);
+        }
+        
+        String sql = "with v as (select unnest(array" + nodes 
+                + "::integer[]) as source, unnest(array" + bandIdx 
+                + "::integer[]) as band), "
+                + "p as (select v.band, st_startpoint(g.geom) as pt "
+                + "from pgrserver g join v on g.source = v.source), "
+                + "b as (select unnest(array[" + bandNums 
+                + "]) as band, unnest(array[" + limits 
+                + "]::float8[]) as threshold) "
+                + "select CAST(json_build_object('type','FeatureCollection',"
+                + "'features',coalesce(json_agg(json_build_object("
+                + "'type','Feature',"
+                + "'properties',json_build_object('threshold',b.threshold,"
+                + "'feat_area',st_area(h.geom,true)),"
+                + "'geometry',CAST(st_asgeojson(h.geom) as json)"
+                + ") order by b.band),'[]'::json)) as TEXT) as st_json "
+                + "from b cross join lateral (select st_concavehull("
+                + "st_collect(p.pt),0.8) as geom from p "
+                + "where p.band <= b.band) h;";
+        
+        return entityManager.createNativeQuery( sql )
+                .getSingleResult();
+    }
+    
     public Object createJsonRouteResponse(List<Integer> list,int gid) {
         
         String listStr = list.toString();
@@ -21,4 +21,19 @@ public interface GraphRepository extends CrudRepository<PgrServer, Long> {
 
     @Query(value="select id,source,target,cost from pgrserver", nativeQuery=true)
     List<PgrServer>getGraph();
+
+    /**
+     * Current costs only, for weight updates on an unchanged topology
+     */
+    @Query(value="select id,cost from pgrserver", nativeQuery=true)
+    List<Object[]>getCosts();
+
+    /**
+     * Edge geometries as WKB with their length in metres, for snapping and
+     * route GeoJSON in memory
+     */
+    @Query(value="select id,st_asbinary(geom),"
+            + "st_length(geom::geography,true) from pgrserver", 
+            nativeQuery=true)
+    List<Object[]>getGeometries();
 }
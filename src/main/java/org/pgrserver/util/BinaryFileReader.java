@@ -0,0 +1,103 @@
+/**
+ * パッケージ名：org.pgrserver.util
+ * ファイル名  ：BinaryFileReader.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 説明：
+ * Reads files written by BinaryFileWriter.
+ */
+public class BinaryFileReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    public BinaryFileReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+    }
+
+    public int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    public long readLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    public double readDouble() throws IOException {
+        require(8);
+        return buffer.getDouble();
+    }
+
+    public int[] readInts() throws IOException {
+        int[] values = new int[checkedLength(4)];
+        int pos = 0;
+        while( pos < values.length ) {
+            require(4);
+            int count = Math.min(values.length - pos, buffer.remaining() / 4);
+            buffer.asIntBuffer().get(values, pos, count);
+            buffer.position(buffer.position() + count * 4);
+            pos += count;
+        }
+        return values;
+    }
+
+    public double[] readDoubles() throws IOException {
+        double[] values = new double[checkedLength(8)];
+        int pos = 0;
+        while( pos < values.length ) {
+            require(8);
+            int count = Math.min(values.length - pos, buffer.remaining() / 8);
+            buffer.asDoubleBuffer().get(values, pos, count);
+            buffer.position(buffer.position() + count * 8);
+            pos += count;
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int checkedLength(int elementSize) throws IOException {
+        int length = readInt();
+        long left = channel.size() - channel.position() + buffer.remaining();
+        if( length < 0 || (long) length * elementSize > left ) {
+            throw new IOException("Corrupt array length: " + length);
+        }
+        return length;
+    }
+
+    private void require(int bytes) throws IOException {
+        if( buffer.remaining() >= bytes ) {
+            return;
+        }
+        buffer.compact();
+        while( buffer.position() < bytes ) {
+            if( channel.read(buffer) < 0 ) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * パッケージ名：org.pgrserver.util
+ * ファイル名  ：BinaryFileWriter.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 説明：
+ * Writes primitive values and arrays to a file through a direct buffer.
+ * Data goes to a temporary file that replaces the target atomically on
+ * commit, so readers never see a half written file.
+ */
+public class BinaryFileWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path target;
+    private final Path temp;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private boolean committed;
+
+    public BinaryFileWriter(Path target) throws IOException {
+        this.target = target;
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        this.temp = Files.createTempFile(dir,
+                target.getFileName().toString(), ".tmp");
+        this.channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public void writeInt(int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    public void writeLong(long value) throws IOException {
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    public void writeDouble(double value) throws IOException {
+        ensure(8);
+        buffer.putDouble(value);
+    }
+
+    /**
+     * Writes the array length followed by the values.
+     */
+    public void writeInts(int[] values) throws IOException {
+        writeInt(values.length);
+        int pos = 0;
+        while( pos < values.length ) {
+            ensure(4);
+            int count = Math.min(values.length - pos, buffer.remaining() / 4);
+            buffer.asIntBuffer().put(values, pos, count);
+            buffer.position(buffer.position() + count * 4);
+            pos += count;
+        }
+    }
+
+    /**
+     * Writes the array length followed by the values.
+     */
+    public void writeDoubles(double[] values) throws IOException {
+        writeInt(values.length);
+        int pos = 0;
+        while( pos < values.length ) {
+            ensure(8);
+            int count = Math.min(values.length - pos, buffer.remaining() / 8);
+            buffer.asDoubleBuffer().put(values, pos, count);
+            buffer.position(buffer.position() + count * 8);
+            pos += count;
+        }
+    }
+
+    /**
+     * Writes the array length followed by the values.
+     */
+    public void writeLongs(long[] values) throws IOException {
+        writeInt(values.length);
+        int pos = 0;
+        while( pos < values.length ) {
+            ensure(8);
+            int count = Math.min(values.length - pos, buffer.remaining() / 8);
+            buffer.asLongBuffer().put(values, pos, count);
+            buffer.position(buffer.position() + count * 8);
+            pos += count;
+        }
+    }
+
+    /**
+     * @return number of bytes written so far
+     */
+    public long position() throws IOException {
+        return channel.position() + buffer.position();
+    }
+
+    /**
+     * Flushes and moves the file to its final name.
+     */
+    public void commit() throws IOException {
+        flush();
+        channel.force(false);
+        channel.close();
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        committed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if( !committed ) {
+            channel.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if( buffer.remaining() < bytes ) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while( buffer.hasRemaining() ) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
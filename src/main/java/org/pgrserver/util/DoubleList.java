@@ -0,0 +1,46 @@
+/**
+ * パッケージ名：org.pgrserver.util
+ * ファイル名  ：DoubleList.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.util;
+
+import java.util.Arrays;
+
+/**
+ * 説明：
+ * Growable list of primitive doubles.
+ */
+public class DoubleList {
+
+    private double[] data;
+    private int size;
+
+    public DoubleList() {
+        this(64);
+    }
+
+    public DoubleList(int initialCapacity) {
+        data = new double[Math.max(16, initialCapacity)];
+    }
+
+    public void add(double value) {
+        if( size == data.length ) {
+            data = Arrays.copyOf(data, size + (size >> 1));
+        }
+        data[size++] = value;
+    }
+
+    public double get(int i) {
+        return data[i];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
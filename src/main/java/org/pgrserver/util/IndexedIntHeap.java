@@ -0,0 +1,130 @@
+/**
+ * パッケージ名：org.pgrserver.util
+ * ファイル名  ：IndexedIntHeap.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.util;
+
+import java.util.Arrays;
+
+/**
+ * 説明：
+ * Binary min-heap of the items 0..capacity-1 with double keys and a
+ * position per item, so that the key of a queued item can be decreased in
+ * place. Every item is in the heap at most once and the arrays are sized
+ * once, so pushing and polling never allocate.
+ */
+public class IndexedIntHeap {
+
+    private final int[] items;
+    private final double[] keys;
+    private final int[] position;
+    private int size;
+
+    /**
+     * @param capacity number of distinct items
+     */
+    public IndexedIntHeap(int capacity) {
+        items = new int[capacity];
+        keys = new double[capacity];
+        position = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    public int capacity() {
+        return items.length;
+    }
+
+    /**
+     * Inserts item, or lowers its key if it is queued with a larger one.
+     */
+    public void pushOrDecrease(int item, double key) {
+        int pos = position[item];
+        if( pos < 0 ) {
+            pos = size++;
+        }
+        else if( keys[pos] <= key ) {
+            return;
+        }
+        siftUp(pos, item, key);
+    }
+
+    public boolean contains(int item) {
+        return position[item] >= 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Empties the heap, in time proportional to the items still queued.
+     */
+    public void clear() {
+        for(int i=0;i<size;i++) {
+            position[items[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * @return key of the minimum element, or +Infinity when empty
+     */
+    public double peekKey() {
+        return size == 0 ? Double.POSITIVE_INFINITY : keys[0];
+    }
+
+    /**
+     * Removes the minimum element and returns its item.
+     */
+    public int poll() {
+        int top = items[0];
+        position[top] = -1;
+        size--;
+        if( size > 0 ) {
+            int item = items[size];
+            double key = keys[size];
+            int pos = 0;
+            int half = size >>> 1;
+            while( pos < half ) {
+                int child = 2 * pos + 1;
+                int right = child + 1;
+                if( right < size && keys[right] < keys[child] ) {
+                    child = right;
+                }
+                if( key <= keys[child] ) {
+                    break;
+                }
+                items[pos] = items[child];
+                keys[pos] = keys[child];
+                position[items[pos]] = pos;
+                pos = child;
+            }
+            items[pos] = item;
+            keys[pos] = key;
+            position[item] = pos;
+        }
+        return top;
+    }
+
+    private void siftUp(int pos, int item, double key) {
+        while( pos > 0 ) {
+            int parent = (pos - 1) >>> 1;
+            if( keys[parent] <= key ) {
+                break;
+            }
+            items[pos] = items[parent];
+            keys[pos] = keys[parent];
+            position[items[pos]] = pos;
+            pos = parent;
+        }
+        items[pos] = item;
+        keys[pos] = key;
+        position[item] = pos;
+    }
+}
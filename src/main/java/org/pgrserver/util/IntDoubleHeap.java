@@ -0,0 +1,101 @@
+/**
+ * パッケージ名：org.pgrserver.util
+ * ファイル名  ：IntDoubleHeap.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.util;
+
+import java.util.Arrays;
+
+/**
+ * 説明：
+ * Binary min-heap of (int item, double key) pairs kept in two parallel
+ * primitive arrays. There is no decrease-key; callers push the item again
+ * and skip stale entries when polling (lazy deletion).
+ */
+public class IntDoubleHeap {
+
+    private int[] items;
+    private double[] keys;
+    private int size;
+
+    public IntDoubleHeap(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        items = new int[capacity];
+        keys = new double[capacity];
+    }
+
+    public void push(int item, double key) {
+        if( size == items.length ) {
+            items = Arrays.copyOf(items, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        int pos = size++;
+        while( pos > 0 ) {
+            int parent = (pos - 1) >>> 1;
+            if( keys[parent] <= key ) {
+                break;
+            }
+            items[pos] = items[parent];
+            keys[pos] = keys[parent];
+            pos = parent;
+        }
+        items[pos] = item;
+        keys[pos] = key;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return key of the minimum element, or +Infinity when empty
+     */
+    public double peekKey() {
+        return size == 0 ? Double.POSITIVE_INFINITY : keys[0];
+    }
+
+    public int peekItem() {
+        return items[0];
+    }
+
+    /**
+     * Removes the minimum element and returns its item. Use peekKey
+     * beforehand when the key is needed.
+     */
+    public int poll() {
+        int top = items[0];
+        size--;
+        if( size > 0 ) {
+            int item = items[size];
+            double key = keys[size];
+            int pos = 0;
+            int half = size >>> 1;
+            while( pos < half ) {
+                int child = 2 * pos + 1;
+                int right = child + 1;
+                if( right < size && keys[right] < keys[child] ) {
+                    child = right;
+                }
+                if( key <= keys[child] ) {
+                    break;
+                }
+                items[pos] = items[child];
+                keys[pos] = keys[child];
+                pos = child;
+            }
+            items[pos] = item;
+            keys[pos] = key;
+        }
+        return top;
+    }
+}
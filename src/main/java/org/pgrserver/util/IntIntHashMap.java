@@ -0,0 +1,119 @@
+/**
+ * パッケージ名：org.pgrserver.util
+ * ファイル名  ：IntIntHashMap.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.util;
+
+import java.util.Arrays;
+
+/**
+ * 説明：
+ * Open addressing int to int map without boxing. Used to remap the
+ * (sparse) pgRouting vertex ids to dense graph indices.
+ */
+public class IntIntHashMap {
+
+    private static final int FREE = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    private final int missingValue;
+
+    /**
+     * @param expectedSize number of entries expected
+     * @param missingValue value returned by get for an absent key
+     */
+    public IntIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int get(int key) {
+        if( key == FREE ) {
+            return missingValue;
+        }
+        int slot = mix(key) & mask;
+        while( keys[slot] != FREE ) {
+            if( keys[slot] == key ) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != missingValue;
+    }
+
+    /**
+     * @return the previous value or missingValue when the key was new
+     */
+    public int put(int key, int value) {
+        if( key == FREE ) {
+            throw new IllegalArgumentException("Unsupported key: " + key);
+        }
+        int slot = mix(key) & mask;
+        while( keys[slot] != FREE ) {
+            if( keys[slot] == key ) {
+                int old = values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if( ++size > (mask + 1) / 2 ) {
+            rehash();
+        }
+        return missingValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return approximate heap footprint of the backing arrays
+     */
+    public long estimatedBytes() {
+        return 2L * 4L * keys.length;
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        size = 0;
+        for(int i=0;i<oldKeys.length;i++) {
+            if( oldKeys[i] != FREE ) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+        mask = capacity - 1;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = 16;
+        while( capacity < expectedSize * 2 ) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * パッケージ名：org.pgrserver.util
+ * ファイル名  ：IntList.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.util;
+
+import java.util.Arrays;
+
+/**
+ * 説明：
+ * Growable list of primitive ints.
+ */
+public class IntList {
+
+    private int[] data;
+    private int size;
+
+    public IntList() {
+        this(64);
+    }
+
+    public IntList(int initialCapacity) {
+        data = new int[Math.max(16, initialCapacity)];
+    }
+
+    public void add(int value) {
+        if( size == data.length ) {
+            data = Arrays.copyOf(data, size + (size >> 1));
+        }
+        data[size++] = value;
+    }
+
+    public int get(int i) {
+        return data[i];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * パッケージ名：org.pgrserver.util
+ * ファイル名  ：MappedFileReader.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 説明：
+ * Reads files written by BinaryFileWriter at any position. Arrays are
+ * memory mapped and copied out of the page cache in one bulk operation,
+ * so large files load at memory speed and without an intermediate buffer
+ * on the heap.
+ */
+public class MappedFileReader implements Closeable {
+
+    /**
+     * Largest region mapped at once
+     */
+    private static final int WINDOW = 1 << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private final ByteBuffer scalar =
+            ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    private long position;
+
+    public MappedFileReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public void seek(long position) throws IOException {
+        if( position < 0 || position > size ) {
+            throw new IOException("Position out of file: " + position);
+        }
+        this.position = position;
+    }
+
+    public int readInt() throws IOException {
+        return read(4).getInt(0);
+    }
+
+    public long readLong() throws IOException {
+        return read(8).getLong(0);
+    }
+
+    public double readDouble() throws IOException {
+        return read(8).getDouble(0);
+    }
+
+    public int[] readInts() throws IOException {
+        int[] values = new int[checkedLength(4)];
+        int pos = 0;
+        while( pos < values.length ) {
+            int count = Math.min(values.length - pos, WINDOW / 4);
+            map(4L * count).asIntBuffer().get(values, pos, count);
+            pos += count;
+        }
+        return values;
+    }
+
+    public long[] readLongs() throws IOException {
+        long[] values = new long[checkedLength(8)];
+        int pos = 0;
+        while( pos < values.length ) {
+            int count = Math.min(values.length - pos, WINDOW / 8);
+            map(8L * count).asLongBuffer().get(values, pos, count);
+            pos += count;
+        }
+        return values;
+    }
+
+    public double[] readDoubles() throws IOException {
+        double[] values = new double[checkedLength(8)];
+        int pos = 0;
+        while( pos < values.length ) {
+            int count = Math.min(values.length - pos, WINDOW / 8);
+            map(8L * count).asDoubleBuffer().get(values, pos, count);
+            pos += count;
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer read(int bytes) throws IOException {
+        if( position + bytes > size ) {
+            throw new EOFException();
+        }
+        scalar.clear().limit(bytes);
+        while( scalar.hasRemaining() ) {
+            if( channel.read(scalar, position + scalar.position()) < 0 ) {
+                throw new EOFException();
+            }
+        }
+        position += bytes;
+        return scalar;
+    }
+
+    private MappedByteBuffer map(long bytes) throws IOException {
+        MappedByteBuffer retVal = channel.map(FileChannel.MapMode.READ_ONLY,
+                position, bytes);
+        retVal.order(ByteOrder.LITTLE_ENDIAN);
+        position += bytes;
+        return retVal;
+    }
+
+    private int checkedLength(int elementSize) throws IOException {
+        int length = readInt();
+        if( length < 0 || (long) length * elementSize > size - position ) {
+            throw new IOException("Corrupt array length: " + length);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * パッケージ名：org.pgrserver.util
+ * ファイル名  ：PackedRTree.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.util;
+
+import java.util.Arrays;
+
+/**
+ * 説明：
+ * Static R-tree packed along a Hilbert curve, stored in primitive arrays.
+ *
+ * The items are sorted by the Hilbert value of their box centre and
+ * grouped NODE_SIZE at a time into parent nodes, level by level up to a
+ * single root. Entries 0..itemCount-1 are the sorted items, the nodes
+ * follow. Nearest neighbour queries are best-first: nodes are queued by
+ * the distance to their box, items by their exact distance as reported by
+ * the caller, and the first item taken from the queue is the answer.
+ */
+public class PackedRTree {
+
+    private static final int NODE_SIZE = 16;
+    private static final int HILBERT_MAX = (1 << 15) - 1;
+
+    /**
+     * Exact squared distance between a query point and an item.
+     */
+    public interface ItemDistance {
+        double distanceSq(int item, double x, double y);
+    }
+
+    private final int itemCount;
+    private final double[] boxes;
+    private final int[] indices;
+    private final int[] levelBounds;
+
+    /**
+     * Builds the tree over the boxes of items 0..minX.length-1. Items with
+     * a NaN coordinate are left out.
+     */
+    public PackedRTree(double[] minX, double[] minY, double[] maxX,
+            double[] maxY) {
+        int count = 0;
+        double extentMinX = Double.POSITIVE_INFINITY;
+        double extentMinY = Double.POSITIVE_INFINITY;
+        double extentMaxX = Double.NEGATIVE_INFINITY;
+        double extentMaxY = Double.NEGATIVE_INFINITY;
+        for(int i=0;i<minX.length;i++) {
+            if( Double.isNaN(minX[i]) || Double.isNaN(minY[i]) ) {
+                continue;
+            }
+            count++;
+            extentMinX = Math.min(extentMinX, minX[i]);
+            extentMinY = Math.min(extentMinY, minY[i]);
+            extentMaxX = Math.max(extentMaxX, maxX[i]);
+            extentMaxY = Math.max(extentMaxY, maxY[i]);
+        }
+        itemCount = count;
+
+        /**
+         * Sort the items by Hilbert value, packed with the item into a long
+         */
+        long[] order = new long[count];
+        double width = extentMaxX - extentMinX;
+        double height = extentMaxY - extentMinY;
+        int k = 0;
+        for(int i=0;i<minX.length;i++) {
+            if( Double.isNaN(minX[i]) || Double.isNaN(minY[i]) ) {
+                continue;
+            }
+            int hx = width > 0 ? (int) (HILBERT_MAX
+                    * ((minX[i] + maxX[i]) / 2 - extentMinX) / width) : 0;
+            int hy = height > 0 ? (int) (HILBERT_MAX
+                    * ((minY[i] + maxY[i]) / 2 - extentMinY) / height) : 0;
+            order[k++] = ((long) hilbert(hx, hy) << 32) | i;
+        }
+        Arrays.sort(order);
+
+        int total = count;
+        int levelSize = count;
+        int levels = 1;
+        while( levelSize > 1 ) {
+            levelSize = (levelSize + NODE_SIZE - 1) / NODE_SIZE;
+            total += levelSize;
+            levels++;
+        }
+        boxes = new double[4 * total];
+        indices = new int[total];
+        levelBounds = new int[levels];
+
+        for(int p=0;p<count;p++) {
+            int item = (int) order[p];
+            indices[p] = item;
+            boxes[4 * p]     = minX[item];
+            boxes[4 * p + 1] = minY[item];
+            boxes[4 * p + 2] = maxX[item];
+            boxes[4 * p + 3] = maxY[item];
+        }
+        levelBounds[0] = count;
+
+        int first = 0;
+        int end = count;
+        int pos = count;
+        for(int l=1;l<levels;l++) {
+            for(int c=first;c<end;c+=NODE_SIZE) {
+                double nMinX = Double.POSITIVE_INFINITY;
+                double nMinY = Double.POSITIVE_INFINITY;
+                double nMaxX = Double.NEGATIVE_INFINITY;
+                double nMaxY = Double.NEGATIVE_INFINITY;
+                for(int j=c;j<Math.min(end, c + NODE_SIZE);j++) {
+                    nMinX = Math.min(nMinX, boxes[4 * j]);
+                    nMinY = Math.min(nMinY, boxes[4 * j + 1]);
+                    nMaxX = Math.max(nMaxX, boxes[4 * j + 2]);
+                    nMaxY = Math.max(nMaxY, boxes[4 * j + 3]);
+                }
+                indices[pos] = c;
+                boxes[4 * pos]     = nMinX;
+                boxes[4 * pos + 1] = nMinY;
+                boxes[4 * pos + 2] = nMaxX;
+                boxes[4 * pos + 3] = nMaxY;
+                pos++;
+            }
+            first = end;
+            end = pos;
+            levelBounds[l] = pos;
+        }
+    }
+
+    public int size() {
+        return itemCount;
+    }
+
+    /**
+     * @param heap work queue, cleared before use; pass the same heap to
+     *        consecutive queries to avoid allocating one per query
+     * @return item nearest to (x, y), -1 when the tree is empty
+     */
+    public int nearest(double x, double y, ItemDistance distance,
+            IntDoubleHeap heap) {
+        if( itemCount == 0 ) {
+            return -1;
+        }
+        heap.clear();
+        int root = indices.length - 1;
+        heap.push(root, boxDistanceSq(root, x, y));
+        while( !heap.isEmpty() ) {
+            int pos = heap.poll();
+            if( pos < itemCount ) {
+                return indices[pos];
+            }
+            int first = indices[pos];
+            int end = Math.min(first + NODE_SIZE, levelEnd(first));
+            for(int c=first;c<end;c++) {
+                if( c < itemCount ) {
+                    heap.push(c, distance.distanceSq(indices[c], x, y));
+                }
+                else {
+                    heap.push(c, boxDistanceSq(c, x, y));
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int levelEnd(int pos) {
+        for(int bound : levelBounds) {
+            if( pos < bound ) {
+                return bound;
+            }
+        }
+        return indices.length;
+    }
+
+    private double boxDistanceSq(int pos, double x, double y) {
+        double dx = axisDistance(x, boxes[4 * pos], boxes[4 * pos + 2]);
+        double dy = axisDistance(y, boxes[4 * pos + 1], boxes[4 * pos + 3]);
+        return dx * dx + dy * dy;
+    }
+
+    private static double axisDistance(double v, double min, double max) {
+        return v < min ? min - v : v <= max ? 0 : v - max;
+    }
+
+    /**
+     * Position of (x, y) on a Hilbert curve filling a 2^15 x 2^15 grid.
+     */
+    public static int hilbert(int x, int y) {
+        int d = 0;
+        for(int s=1 << 14;s>0;s>>=1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            if( ry == 0 ) {
+                if( rx == 1 ) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * パッケージ名：org.pgrserver.util
+ * ファイル名  ：ParallelLoop.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.util;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * 説明：
+ * Runs index loops on a private pool of daemon threads. Indices are
+ * handed out in chunks from a shared counter so that uneven work per
+ * index still keeps every thread busy. With a single thread, or for loops
+ * shorter than two chunks, the body runs on the calling thread.
+ */
+public class ParallelLoop implements Closeable {
+
+    private final int threads;
+    private final int chunk;
+    private final ExecutorService pool;
+
+    /**
+     * @param threads worker threads, 0 or less for all cores
+     * @param chunk indices handed to a thread at a time
+     * @param name name of the worker threads
+     */
+    public ParallelLoop(int threads, int chunk, final String name) {
+        this.threads = threads > 0 ? threads
+                : Runtime.getRuntime().availableProcessors();
+        this.chunk = Math.max(1, chunk);
+        if( this.threads > 1 ) {
+            pool = Executors.newFixedThreadPool(this.threads, r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        else {
+            pool = null;
+        }
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    /**
+     * Runs body for 0..count-1 and returns once all indices are done.
+     *
+     * @throws CancellationException when the calling thread is interrupted
+     */
+    public void run(final int count, final IntConsumer body) {
+        if( pool == null || count < 2 * chunk ) {
+            for(int i=0;i<count;i++) {
+                body.accept(i);
+            }
+            return;
+        }
+        final AtomicInteger next = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for(int t=0;t<threads;t++) {
+            tasks.add(() -> {
+                int i;
+                while( (i = next.getAndAdd(chunk)) < count ) {
+                    int end = Math.min(count, i + chunk);
+                    for(int k=i;k<end;k++) {
+                        body.accept(k);
+                    }
+                }
+                return null;
+            });
+        }
+        try {
+            for(Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted");
+        }
+        catch(ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        if( pool != null ) {
+            pool.shutdownNow();
+        }
+    }
+}
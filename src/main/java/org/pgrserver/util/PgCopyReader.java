@@ -0,0 +1,167 @@
+/**
+ * パッケージ名：org.pgrserver.util
+ * ファイル名  ：PgCopyReader.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 説明：
+ * Reads the PostgreSQL binary COPY format
+ * ({@code COPY ... TO STDOUT (FORMAT binary)}) from a stream, one field at
+ * a time and without creating objects per row.
+ *
+ * The stream starts with the PGCOPY signature, a flags word and a header
+ * extension. Each row is a 16 bit field count followed by the fields, each
+ * one a 32 bit length (-1 for NULL) and the value in network byte order.
+ * A field count of -1 ends the data. The caller knows the column types of
+ * its query and reads integer and floating point fields accordingly.
+ */
+public class PgCopyReader {
+
+    private static final byte[] SIGNATURE = {
+            'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 };
+
+    private static final int OIDS_FLAG = 1 << 16;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    /**
+     * Reads and checks the file header.
+     */
+    public PgCopyReader(InputStream in) throws IOException {
+        this.in = in;
+        ensure(SIGNATURE.length + 8);
+        for(int i=0;i<SIGNATURE.length;i++) {
+            if( buffer[position++] != SIGNATURE[i] ) {
+                throw new IOException("Not a binary COPY stream");
+            }
+        }
+        int flags = readInt();
+        if( (flags & OIDS_FLAG) != 0 ) {
+            throw new IOException("Binary COPY with OIDs is not supported");
+        }
+        skip(readInt());
+    }
+
+    /**
+     * Moves to the next row. All fields of the previous row must have been
+     * read or skipped.
+     *
+     * @return number of fields of the row, -1 at the end of the data
+     */
+    public int nextRow() throws IOException {
+        ensure(2);
+        short count = (short) (((buffer[position] & 0xFF) << 8)
+                | (buffer[position + 1] & 0xFF));
+        position += 2;
+        return count;
+    }
+
+    /**
+     * Reads an int2, int4 or int8 field.
+     *
+     * @return the value, nullValue if the field is NULL
+     */
+    public long readLong(long nullValue) throws IOException {
+        int length = readInt();
+        switch( length ) {
+        case -1:
+            return nullValue;
+        case 2:
+            ensure(2);
+            short s = (short) (((buffer[position] & 0xFF) << 8)
+                    | (buffer[position + 1] & 0xFF));
+            position += 2;
+            return s;
+        case 4:
+            return readInt();
+        case 8:
+            return readRawLong();
+        default:
+            throw new IOException("Unexpected integer field length: "
+                    + length);
+        }
+    }
+
+    /**
+     * Reads a float4 or float8 field.
+     *
+     * @return the value, nullValue if the field is NULL
+     */
+    public double readDouble(double nullValue) throws IOException {
+        int length = readInt();
+        switch( length ) {
+        case -1:
+            return nullValue;
+        case 4:
+            return Float.intBitsToFloat(readInt());
+        case 8:
+            return Double.longBitsToDouble(readRawLong());
+        default:
+            throw new IOException("Unexpected floating point field length: "
+                    + length);
+        }
+    }
+
+    public void skipField() throws IOException {
+        int length = readInt();
+        if( length > 0 ) {
+            skip(length);
+        }
+    }
+
+    private int readInt() throws IOException {
+        ensure(4);
+        int retVal = ((buffer[position] & 0xFF) << 24)
+                | ((buffer[position + 1] & 0xFF) << 16)
+                | ((buffer[position + 2] & 0xFF) << 8)
+                | (buffer[position + 3] & 0xFF);
+        position += 4;
+        return retVal;
+    }
+
+    private long readRawLong() throws IOException {
+        long high = readInt();
+        long low = readInt() & 0xFFFFFFFFL;
+        return (high << 32) | low;
+    }
+
+    private void skip(int count) throws IOException {
+        while( count > 0 ) {
+            ensure(1);
+            int step = Math.min(count, limit - position);
+            position += step;
+            count -= step;
+        }
+    }
+
+    /**
+     * Makes at least count bytes available in the buffer.
+     */
+    private void ensure(int count) throws IOException {
+        if( limit - position >= count ) {
+            return;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        while( limit < count ) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if( read < 0 ) {
+                throw new EOFException("Binary COPY stream ended early");
+            }
+            limit += read;
+        }
+    }
+}
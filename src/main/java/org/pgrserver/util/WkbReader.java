@@ -0,0 +1,94 @@
+/**
+ * パッケージ名：org.pgrserver.util
+ * ファイル名  ：WkbReader.java
+ *
+ * @since Oct 18, 2026
+ */
+package org.pgrserver.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 説明：
+ * Minimal reader for the line geometries of a routing network, as
+ * returned by st_asbinary (ISO WKB) or as raw EWKB. LineStrings and
+ * MultiLineStrings are read into a flat list of x/y pairs; the parts of a
+ * MultiLineString are appended in order, dropping the first point of a
+ * part that repeats the last point of the previous one. Z and M values
+ * are skipped.
+ */
+public final class WkbReader {
+
+    private static final int LINESTRING = 2;
+    private static final int MULTILINESTRING = 5;
+
+    private static final int EWKB_Z    = 0x80000000;
+    private static final int EWKB_M    = 0x40000000;
+    private static final int EWKB_SRID = 0x20000000;
+
+    private WkbReader() {
+    }
+
+    /**
+     * Appends the points of a line geometry to out.
+     *
+     * @return number of points appended
+     * @throws IllegalArgumentException for other geometry types
+     */
+    public static int readLine(byte[] wkb, DoubleList out) {
+        ByteBuffer buffer = ByteBuffer.wrap(wkb);
+        int start = out.size();
+        readGeometry(buffer, out, start);
+        return (out.size() - start) / 2;
+    }
+
+    private static void readGeometry(ByteBuffer buffer, DoubleList out,
+            int start) {
+        buffer.order(buffer.get() == 0 ? ByteOrder.BIG_ENDIAN
+                : ByteOrder.LITTLE_ENDIAN);
+        int type = buffer.getInt();
+        int dims = 2;
+        if( (type & (EWKB_Z | EWKB_M | EWKB_SRID)) != 0 ) {
+            dims += ((type & EWKB_Z) != 0 ? 1 : 0)
+                    + ((type & EWKB_M) != 0 ? 1 : 0);
+            if( (type & EWKB_SRID) != 0 ) {
+                buffer.getInt();
+            }
+            type &= 0xFFFF;
+        }
+        else if( type > 1000 ) {
+            int flavour = type / 1000;
+            dims += flavour == 3 ? 2 : 1;
+            type %= 1000;
+        }
+
+        if( type == LINESTRING ) {
+            int count = buffer.getInt();
+            for(int i=0;i<count;i++) {
+                double x = buffer.getDouble();
+                double y = buffer.getDouble();
+                for(int d=2;d<dims;d++) {
+                    buffer.getDouble();
+                }
+                int size = out.size();
+                if( i == 0 && size > start && out.get(size - 2) == x
+                        && out.get(size - 1) == y ) {
+                    continue;
+                }
+                out.add(x);
+                out.add(y);
+            }
+        }
+        else if( type == MULTILINESTRING ) {
+            int parts = buffer.getInt();
+            for(int p=0;p<parts;p++) {
+                readGeometry(buffer, out, start);
+            }
+        }
+        else {
+            throw new IllegalArgumentException(
+                    "Unsupported WKB geometry type " + type);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.pgrserver.bean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class QueryLogFilterTests {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private QueryLogFilter filter;
+	private Path file;
+
+	@BeforeEach
+	void createFilter(@TempDir Path dir) {
+		file = dir.resolve("query.log");
+		filter = new QueryLogFilter();
+		filter.file = file.toString();
+		filter.sample = 1;
+		filter.maxBodyKb = 1;
+	}
+
+	/**
+	 * Runs the request through the filter to a chain that reads the body
+	 * and answers with status.
+	 */
+	private void send(MockHttpServletRequest request, int status) throws IOException, ServletException {
+		FilterChain chain = (req, res) -> {
+			StreamUtils.copyToByteArray(req.getInputStream());
+			((MockHttpServletResponse) res).setStatus(status);
+		};
+		filter.doFilter(request, new MockHttpServletResponse(), chain);
+	}
+
+	/**
+	 * @return the recorded lines, after closing the log
+	 */
+	private List<JsonNode> lines() throws IOException {
+		filter.destroy();
+		List<JsonNode> retVal = new ArrayList<JsonNode>();
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			retVal.add(mapper.readTree(line));
+		}
+		return retVal;
+	}
+
+	@Test
+	void recordsGetRequests() throws Exception {
+		filter.initFilterBean();
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/pgr/api/node/dijkstra");
+		request.setContextPath("/pgr");
+		request.setQueryString("source=1&target=2");
+		send(request, 404);
+
+		List<JsonNode> lines = lines();
+		assertEquals(1, lines.size());
+		JsonNode line = lines.get(0);
+		assertEquals(Arrays.asList("time", "method", "path", "query", "status", "millis"),
+				fieldNames(line));
+		assertEquals("GET", line.get("method").asText());
+		assertEquals("/api/node/dijkstra", line.get("path").asText());
+		assertEquals("source=1&target=2", line.get("query").asText());
+		assertEquals(404, line.get("status").asInt());
+		assertTrue(line.get("millis").asDouble() >= 0);
+		assertTrue(line.get("time").asLong() > 0);
+	}
+
+	@Test
+	void recordsTheBodyUpToTheLimit() throws Exception {
+		filter.initFilterBean();
+		MockHttpServletRequest small = new MockHttpServletRequest("POST", "/api/batch/route");
+		small.setContent("{\"pairs\":[]}".getBytes(StandardCharsets.UTF_8));
+		send(small, 200);
+		MockHttpServletRequest large = new MockHttpServletRequest("POST", "/api/batch/route");
+		large.setContent(new byte[2048]);
+		send(large, 200);
+
+		List<JsonNode> lines = lines();
+		assertEquals(2, lines.size());
+		assertEquals("{\"pairs\":[]}", lines.get(0).get("body").asText());
+		assertFalse(lines.get(0).has("query"));
+		assertFalse(lines.get(0).has("truncated"));
+		assertTrue(lines.get(1).get("truncated").asBoolean());
+		assertFalse(lines.get(1).has("body"));
+	}
+
+	@Test
+	void leavesOutReloadsAndOtherPaths() throws Exception {
+		filter.initFilterBean();
+		send(new MockHttpServletRequest("GET", "/api/graphreload"), 200);
+		send(new MockHttpServletRequest("POST", "/api/weightupdate"), 200);
+		send(new MockHttpServletRequest("GET", "/actuator/prometheus"), 200);
+		send(new MockHttpServletRequest("GET", "/api"), 200);
+		send(new MockHttpServletRequest("GET", "/api/node/astar"), 200);
+
+		List<JsonNode> lines = lines();
+		assertEquals(1, lines.size());
+		assertEquals("/api/node/astar", lines.get(0).get("path").asText());
+	}
+
+	@Test
+	void recordsNothingWithoutSample() throws Exception {
+		filter.sample = 0;
+		filter.initFilterBean();
+		for (int i = 0; i < 10; i++) {
+			send(new MockHttpServletRequest("GET", "/api/node/dijkstra"), 200);
+		}
+		assertTrue(lines().isEmpty());
+	}
+
+	@Test
+	void appendsToAnExistingLog() throws Exception {
+		filter.initFilterBean();
+		send(new MockHttpServletRequest("GET", "/api/node/dijkstra"), 200);
+		filter.destroy();
+
+		QueryLogFilter second = new QueryLogFilter();
+		second.file = filter.file;
+		second.sample = 1;
+		second.maxBodyKb = 1;
+		second.initFilterBean();
+		filter = second;
+		send(new MockHttpServletRequest("GET", "/api/node/astar"), 200);
+
+		List<JsonNode> lines = lines();
+		assertEquals(2, lines.size());
+		assertEquals("/api/node/dijkstra", lines.get(0).get("path").asText());
+		assertEquals("/api/node/astar", lines.get(1).get("path").asText());
+	}
+
+	private static List<String> fieldNames(JsonNode node) {
+		List<String> retVal = new ArrayList<String>();
+		node.fieldNames().forEachRemaining(retVal::add);
+		return retVal;
+	}
+}
@@ -0,0 +1,103 @@
+package org.pgrserver.bean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.pgrserver.bean.RoutingExecutors.CostClass;
+import org.pgrserver.graph.MainGraph;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+
+class RoutingExecutorsTests {
+
+	private RoutingExecutors executors;
+
+	@BeforeEach
+	void createExecutors() {
+		executors = new RoutingExecutors();
+		executors.mainGraph = new MainGraph();
+		executors.fastThreads = 2;
+		executors.fastQueue = 10;
+		executors.fastDeadlineMs = 5000;
+		executors.standardThreads = 1;
+		executors.standardQueue = 1;
+		executors.standardDeadlineMs = 5000;
+		executors.heavyThreads = 1;
+		executors.heavyQueue = 1;
+		executors.heavyDeadlineMs = 5000;
+		executors.createLanes();
+	}
+
+	@AfterEach
+	void shutdown() throws InterruptedException {
+		executors.shutdown();
+	}
+
+	@Test
+	void shedsWhenTheQueueIsFull() throws InterruptedException {
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		DeferredResult<String> first = executors.submit(CostClass.HEAVY, () -> {
+			running.countDown();
+			await(release);
+			return "first";
+		});
+		assertTrue(running.await(5, TimeUnit.SECONDS));
+		DeferredResult<String> queued = executors.submit(CostClass.HEAVY, () -> "queued");
+		ResponseStatusException e = assertThrows(ResponseStatusException.class,
+				() -> executors.submit(CostClass.HEAVY, () -> "shed"));
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+
+		// the other classes are not held up
+		assertEquals("fast", result(executors.submit(CostClass.FAST, () -> "fast")));
+
+		release.countDown();
+		assertEquals("first", result(first));
+		assertEquals("queued", result(queued));
+	}
+
+	@Test
+	void runsWithTheEndpointOfTheRequest() throws InterruptedException {
+		MainGraph mainGraph = executors.mainGraph;
+		String previous = mainGraph.getRouteMetrics().setEndpoint("/api/node/dijkstra");
+		try {
+			assertEquals("/api/node/dijkstra", result(executors.submit(CostClass.STANDARD,
+					() -> mainGraph.getRouteMetrics().endpoint())));
+		} finally {
+			mainGraph.getRouteMetrics().setEndpoint(previous);
+		}
+	}
+
+	@Test
+	void passesOnExceptions() throws InterruptedException {
+		DeferredResult<String> result = executors.submit(CostClass.FAST, () -> {
+			throw new IllegalArgumentException("bad request");
+		});
+		assertTrue(result(result) instanceof IllegalArgumentException);
+	}
+
+	private static Object result(DeferredResult<?> result) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!result.hasResult() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertTrue(result.hasResult());
+		return result.getResult();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
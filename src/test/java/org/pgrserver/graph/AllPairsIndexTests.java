@@ -0,0 +1,84 @@
+package org.pgrserver.graph;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.pgrserver.graph.TestGraphs.cost;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.pgrserver.util.ParallelLoop;
+
+class AllPairsIndexTests {
+
+	/**
+	 * Grid of one-way streets with random costs, plus a vertex that can
+	 * only be left.
+	 */
+	private static CsrGraph grid(final int size) {
+		final Random random = new Random(5);
+		final CsrGraph.Builder builder = new CsrGraph.Builder();
+		int id = TestGraphs.streets(size, (next, u, v) -> {
+			if (v == u + size) {
+				builder.addEdge(next++, u, v, 1 + 9 * random.nextDouble());
+				return next;
+			}
+			builder.addEdge(next++, v, u, 1 + 9 * random.nextDouble());
+			if (u >= size) {
+				builder.addEdge(next++, u, u - size + 1, 1 + 9 * random.nextDouble());
+			}
+			return next;
+		});
+		builder.addEdge(id, -1, 0, 1);
+		return builder.build();
+	}
+
+	@Test
+	void matchesDijkstra() {
+		CsrGraph graph = grid(20);
+		AllPairsIndex allPairs;
+		try (ParallelLoop loop = new ParallelLoop(2, 16, "test")) {
+			allPairs = AllPairsIndex.build(graph, loop);
+		}
+		int n = graph.vertexCount();
+		assertEquals(8L * n * n, allPairs.estimatedHeapBytes());
+		Random random = new Random(3);
+		for (int i = 0; i < 20; i++) {
+			int s = random.nextInt(n);
+			CsrDijkstra dijkstra = new CsrDijkstra(graph);
+			dijkstra.withinRadius(s, Double.POSITIVE_INFINITY);
+			for (int t = 0; t < n; t++) {
+				double expected = dijkstra.distance(t);
+				int[] path = allPairs.path(s, t);
+				if (expected == Double.POSITIVE_INFINITY) {
+					assertNull(path);
+					assertEquals(Double.POSITIVE_INFINITY, allPairs.cost(s, t));
+					continue;
+				}
+				assertEquals(expected, cost(graph, path), 1e-9);
+				assertEquals(expected, allPairs.cost(s, t), 1e-4 * expected);
+				int v = s;
+				for (int e : path) {
+					assertEquals(v, graph.source(e));
+					v = graph.target(e);
+				}
+				assertEquals(t, v);
+			}
+		}
+		int lonely = graph.indexOf(-1);
+		assertArrayEquals(new int[0], allPairs.path(lonely, lonely));
+		assertNull(allPairs.path(0, lonely));
+		assertEquals(1, allPairs.path(lonely, 0).length);
+	}
+
+	@Test
+	void checksTheBudget() {
+		CsrGraph graph = grid(10);
+		long bytes = AllPairsIndex.estimatedHeapBytes(graph.vertexCount());
+		assertTrue(AllPairsIndex.fits(graph, bytes));
+		assertFalse(AllPairsIndex.fits(graph, bytes - 1));
+	}
+}
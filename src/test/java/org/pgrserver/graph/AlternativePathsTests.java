@@ -0,0 +1,150 @@
+package org.pgrserver.graph;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.pgrserver.graph.TestGraphs.cost;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class AlternativePathsTests {
+
+	private static final long NO_DEADLINE = System.nanoTime() + 60_000_000_000L;
+
+	private static double shared(CsrGraph graph, int[] path, int[] other) {
+		Set<Integer> edges = new HashSet<Integer>();
+		for (int e : other) {
+			edges.add(e);
+		}
+		double retVal = 0;
+		for (int e : path) {
+			if (edges.contains(e)) {
+				retVal += graph.weight(e);
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Checks that path is a simple path from s to t.
+	 */
+	private static void assertSimplePath(CsrGraph graph, int s, int t, int[] path) {
+		Set<Integer> visited = new HashSet<Integer>();
+		visited.add(s);
+		int v = s;
+		for (int e : path) {
+			assertEquals(v, graph.source(e));
+			v = graph.target(e);
+			assertTrue(visited.add(v));
+		}
+		assertEquals(t, v);
+	}
+
+	private static void enumerate(CsrGraph graph, int v, int t, boolean[] visited, double cost,
+			List<Double> costs) {
+		if (v == t) {
+			costs.add(cost);
+			return;
+		}
+		visited[v] = true;
+		for (int e = graph.firstOut(v); e < graph.endOut(v); e++) {
+			int w = graph.target(e);
+			if (!visited[w]) {
+				enumerate(graph, w, t, visited, cost + graph.weight(e), costs);
+			}
+		}
+		visited[v] = false;
+	}
+
+	@Test
+	void kShortestMatchesEnumeration() {
+		CsrGraph graph = TestGraphs.symmetricGrid(4, 7);
+		int s = 0;
+		int t = graph.vertexCount() - 1;
+		List<Double> all = new ArrayList<Double>();
+		enumerate(graph, s, t, new boolean[graph.vertexCount()], 0, all);
+		Collections.sort(all);
+
+		List<int[]> paths = new ArrayList<int[]>();
+		AlternativePaths search = new AlternativePaths(graph, 10, Double.POSITIVE_INFINITY, 1, NO_DEADLINE);
+		assertEquals(10, search.kShortest(s, t, CsrDijkstra.NONE, paths::add));
+		Set<List<Integer>> distinct = new HashSet<List<Integer>>();
+		for (int i = 0; i < paths.size(); i++) {
+			int[] path = paths.get(i);
+			assertSimplePath(graph, s, t, path);
+			assertEquals(all.get(i), cost(graph, path), 1e-9);
+			List<Integer> edges = new ArrayList<Integer>();
+			for (int e : path) {
+				edges.add(e);
+			}
+			assertTrue(distinct.add(edges));
+		}
+	}
+
+	@Test
+	void kShortestKeepsItsBounds() {
+		CsrGraph graph = TestGraphs.symmetricGrid(8, 7);
+		int s = 0;
+		int t = graph.vertexCount() - 1;
+		List<int[]> paths = new ArrayList<int[]>();
+		AlternativePaths search = new AlternativePaths(graph, 5, 1.3, 0.6, NO_DEADLINE);
+		search.kShortest(s, t, CsrDijkstra.NONE, paths::add);
+		assertTrue(paths.size() > 1);
+		double best = cost(graph, paths.get(0));
+		for (int i = 0; i < paths.size(); i++) {
+			double c = cost(graph, paths.get(i));
+			assertTrue(c <= 1.3 * best + 1e-9);
+			for (int j = 0; j < i; j++) {
+				assertTrue(shared(graph, paths.get(i), paths.get(j)) <= 0.6 * c + 1e-9);
+			}
+		}
+
+		paths.clear();
+		search = new AlternativePaths(graph, 10, Double.POSITIVE_INFINITY, 1, NO_DEADLINE);
+		search.setMaxEdges(14);
+		search.kShortest(s, t, CsrDijkstra.NONE, paths::add);
+		assertEquals(10, paths.size());
+		for (int[] path : paths) {
+			assertEquals(14, path.length);
+		}
+
+		paths.clear();
+		search = new AlternativePaths(graph, 10, Double.POSITIVE_INFINITY, 1, System.nanoTime());
+		assertTrue(search.kShortest(s, t, CsrDijkstra.NONE, paths::add) <= 1);
+		assertTrue(search.isTimedOut());
+	}
+
+	@Test
+	void viaNodesOnTheHierarchy() {
+		CsrGraph graph = TestGraphs.symmetricGrid(12, 7);
+		ContractionHierarchy ch = ContractionHierarchy.build(graph);
+		int s = 0;
+		int t = graph.vertexCount() - 1;
+		List<int[]> paths = new ArrayList<int[]>();
+		AlternativePaths search = new AlternativePaths(graph, 3, 1.4, 0.8, NO_DEADLINE);
+		search.viaNodes(ch, s, t, paths::add);
+		assertTrue(paths.size() > 1);
+
+		double best = cost(graph, ch.path(s, t));
+		assertEquals(best, cost(graph, paths.get(0)), 1e-9);
+		for (int i = 0; i < paths.size(); i++) {
+			int[] path = paths.get(i);
+			assertSimplePath(graph, s, t, path);
+			double c = cost(graph, path);
+			assertTrue(c <= 1.4 * best + 1e-9);
+			for (int j = 0; j < i; j++) {
+				assertTrue(shared(graph, path, paths.get(j)) <= 0.8 * c + 1e-9);
+			}
+		}
+
+		paths.clear();
+		assertEquals(1, search.viaNodes(ch, s, s, paths::add));
+		assertTrue(Arrays.equals(new int[0], paths.get(0)));
+	}
+}
@@ -0,0 +1,144 @@
+package org.pgrserver.graph;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class BidirectionalSearchTests {
+
+	private static final int SIZE = 40;
+
+	private static CsrGraph graph;
+
+	/**
+	 * Grid with random costs, some one-way streets and some closed edges.
+	 */
+	@BeforeAll
+	static void createGraph() {
+		final Random random = new Random(21);
+		final CsrGraph.Builder builder = new CsrGraph.Builder();
+		TestGraphs.streets(SIZE, (id, u, v) -> {
+			builder.addEdge(id++, u, v, 1 + 9 * random.nextDouble());
+			if (random.nextInt(5) > 0) {
+				builder.addEdge(id++, v, u, 1 + 9 * random.nextDouble());
+			}
+			return id;
+		});
+		double[] weights = builder.build().copyWeights();
+		for (int e = 0; e < weights.length; e += 13) {
+			weights[e] = Double.POSITIVE_INFINITY;
+		}
+		graph = builder.build().withWeights(weights);
+	}
+
+	private static double cost(CsrGraph g, int[] path, int source, int target) {
+		TestGraphs.assertConnected(g, path, source, target);
+		return TestGraphs.cost(g, path);
+	}
+
+	@Test
+	void matchesDijkstra() {
+		Random random = new Random(22);
+		BidirectionalSearch search = new BidirectionalSearch(graph.vertexCount());
+		long settled = 0;
+		long settledDijkstra = 0;
+		for (int i = 0; i < 200; i++) {
+			int s = random.nextInt(graph.vertexCount());
+			int t = random.nextInt(graph.vertexCount());
+			CsrDijkstra dijkstra = new CsrDijkstra(graph);
+			int[] expected = dijkstra.path(s, t, CsrDijkstra.NONE);
+			int[] path = search.shortestPath(graph, s, t);
+			if (expected == null) {
+				assertNull(path);
+				continue;
+			}
+			assertNotNull(path);
+			assertEquals(cost(graph, expected, s, t), cost(graph, path, s, t), 1e-9);
+			settledDijkstra += dijkstra.settledCount();
+		}
+		settled = search.settledCount();
+		assertTrue(settled < settledDijkstra, settled + " vs " + settledDijkstra);
+		assertEquals(0, search.shortestPath(graph, 5, 5).length);
+	}
+
+	@Test
+	void findsFewestHops() {
+		double[] unit = graph.copyWeights();
+		for (int e = 0; e < unit.length; e++) {
+			unit[e] = unit[e] == Double.POSITIVE_INFINITY ? unit[e] : 1;
+		}
+		CsrGraph hops = graph.withWeights(unit);
+		Random random = new Random(23);
+		BidirectionalSearch search = new BidirectionalSearch(graph.vertexCount());
+		for (int i = 0; i < 200; i++) {
+			int s = random.nextInt(graph.vertexCount());
+			int t = random.nextInt(graph.vertexCount());
+			CsrDijkstra dijkstra = new CsrDijkstra(hops);
+			int[] expected = dijkstra.path(s, t, CsrDijkstra.NONE);
+			int[] path = search.fewestHops(graph, s, t);
+			if (expected == null) {
+				assertNull(path);
+				continue;
+			}
+			assertEquals(expected.length, path.length);
+			cost(graph, path, s, t);
+		}
+	}
+
+	@Test
+	void handlesUnreachableTargets() {
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		builder.addEdge(1, 1, 2, 1).addEdge(2, 2, 3, 1).addEdge(3, 4, 3, 1);
+		CsrGraph small = builder.build();
+		BidirectionalSearch search = new BidirectionalSearch(small.vertexCount());
+		assertNull(search.shortestPath(small, small.indexOf(1), small.indexOf(4)));
+		assertNull(search.fewestHops(small, small.indexOf(3), small.indexOf(1)));
+		assertEquals(2, search.fewestHops(small, small.indexOf(1), small.indexOf(3)).length);
+		assertEquals(2, search.shortestPath(small, small.indexOf(1), small.indexOf(3)).length);
+	}
+
+	@Test
+	void reusesPooledWorkspaces() {
+		BidirectionalSearch search = BidirectionalSearch.acquire(graph.vertexCount());
+		search.release();
+		assertSame(search, BidirectionalSearch.acquire(graph.vertexCount() - 1));
+		search.release();
+		BidirectionalSearch larger = BidirectionalSearch.acquire(graph.vertexCount() + 1);
+		assertTrue(larger != search);
+	}
+
+	/**
+	 * After warm-up a query allocates little more than the path it returns.
+	 */
+	@Test
+	void allocatesAlmostNothing() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+		BidirectionalSearch search = new BidirectionalSearch(graph.vertexCount());
+		Random random = new Random(24);
+		for (int i = 0; i < 2000; i++) {
+			search.shortestPath(graph, random.nextInt(graph.vertexCount()), random.nextInt(graph.vertexCount()));
+			search.fewestHops(graph, random.nextInt(graph.vertexCount()), random.nextInt(graph.vertexCount()));
+		}
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < 1000; i++) {
+			search.shortestPath(graph, random.nextInt(graph.vertexCount()), random.nextInt(graph.vertexCount()));
+			search.fewestHops(graph, random.nextInt(graph.vertexCount()), random.nextInt(graph.vertexCount()));
+		}
+		long perQuery = (threads.getThreadAllocatedBytes(thread) - before) / 2000;
+		assertTrue(perQuery < 1024, perQuery + " bytes per query");
+	}
+}
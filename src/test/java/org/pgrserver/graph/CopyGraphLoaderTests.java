@@ -0,0 +1,153 @@
+package org.pgrserver.graph;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class CopyGraphLoaderTests {
+
+	/**
+	 * Writes rows of (id, source, target, cost) in binary COPY format, null
+	 * values as NULL fields. A header extension is added when asked for.
+	 */
+	private static byte[] copyData(Long[][] rows, Double[] costs, int extension) throws IOException {
+		Double[][] weights = new Double[costs.length][];
+		for (int i = 0; i < costs.length; i++) {
+			weights[i] = new Double[] { costs[i] };
+		}
+		return copyData(rows, weights, extension);
+	}
+
+	/**
+	 * Same with any number of weight fields per row.
+	 */
+	private static byte[] copyData(Long[][] rows, Double[][] weights, int extension) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.write(new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 });
+		out.writeInt(0);
+		out.writeInt(extension);
+		out.write(new byte[extension]);
+		for (int i = 0; i < rows.length; i++) {
+			out.writeShort(3 + weights[i].length);
+			for (Long value : rows[i]) {
+				if (value == null) {
+					out.writeInt(-1);
+				} else {
+					out.writeInt(8);
+					out.writeLong(value);
+				}
+			}
+			for (Double weight : weights[i]) {
+				if (weight == null) {
+					out.writeInt(-1);
+				} else {
+					out.writeInt(8);
+					out.writeDouble(weight);
+				}
+			}
+		}
+		out.writeShort(-1);
+		return bytes.toByteArray();
+	}
+
+	@Test
+	void loadsFixture() throws IOException {
+		CopyGraphLoader loader = new CopyGraphLoader(16);
+		CsrGraph graph;
+		try (InputStream in = getClass().getResourceAsStream("pgrserver.copy")) {
+			graph = loader.load(in);
+		}
+		assertEquals(7, loader.getRowCount());
+		assertEquals(4, graph.vertexCount());
+		assertEquals(4, graph.edgeCount());
+		assertEquals(10, graph.vertexId(0));
+		assertEquals(40, graph.vertexId(3));
+
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		builder.addEdge(1, 10, 20, 1.5).addEdge(2, 20, 30, 2.0).addEdge(6, 30, 40, 0.25).addEdge(7, 40, 20, 3.0);
+		assertEquals(builder.build().checksum(), graph.checksum());
+	}
+
+	@Test
+	void matchesBuilderOverManyChunks() throws IOException {
+		Random random = new Random(7);
+		int count = 2 * CopyGraphLoader.CHUNK_SIZE + 123;
+		Long[][] rows = new Long[count][];
+		Double[] costs = new Double[count];
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		for (int i = 0; i < count; i++) {
+			long source = random.nextInt(20000) - 5000;
+			long target = random.nextInt(20000) - 5000;
+			double cost = random.nextInt(10) == 0 ? -1 : random.nextDouble() * 100;
+			rows[i] = new Long[] { (long) i + 1, source, target };
+			costs[i] = cost;
+			builder.addEdge(i + 1, (int) source, (int) target, cost);
+		}
+		CsrGraph expected = builder.build();
+
+		CopyGraphLoader loader = new CopyGraphLoader(0);
+		CsrGraph graph = loader.load(new ByteArrayInputStream(copyData(rows, costs, 5)));
+		assertEquals(count, loader.getRowCount());
+		assertEquals(expected.vertexCount(), graph.vertexCount());
+		assertEquals(expected.checksum(), graph.checksum());
+		int[] ids = new int[graph.vertexCount()];
+		int[] expectedIds = new int[graph.vertexCount()];
+		for (int v = 0; v < ids.length; v++) {
+			ids[v] = graph.vertexId(v);
+			expectedIds[v] = expected.vertexId(v);
+		}
+		assertArrayEquals(expectedIds, ids);
+	}
+
+	@Test
+	void loadsSeveralMetrics() throws IOException {
+		GraphMetrics metrics = GraphMetrics.parse("cost:cost:reverse_cost,length:length_m");
+		Long[][] rows = { { 1L, 10L, 20L }, { 2L, 20L, 30L }, { 3L, 30L, 10L } };
+		// cost, length_m, reverse_cost
+		Double[][] weights = { { 1.0, 100.0, 2.0 }, { -1.0, 50.0, -1.0 }, { null, null, null } };
+		CopyGraphLoader loader = new CopyGraphLoader(0, metrics);
+		CsrGraph[] graphs = loader.loadAll(new ByteArrayInputStream(copyData(rows, weights, 0)));
+		assertEquals(2, graphs.length);
+
+		CsrGraph.Builder builder = new CsrGraph.Builder(0, 2);
+		builder.addEdge(1, 10, 20, new double[] { 1.0, 100.0 });
+		builder.addEdge(1, 20, 10, new double[] { 2.0, -1 });
+		builder.addEdge(2, 20, 30, new double[] { -1, 50.0 });
+		CsrGraph[] expected = builder.buildAll();
+		assertEquals(3, graphs[0].edgeCount());
+		assertEquals(expected[0].checksum(), graphs[0].checksum());
+		assertEquals(expected[1].checksum(), graphs[1].checksum());
+		assertEquals(graphs[0].topologyChecksum(), graphs[1].topologyChecksum());
+
+		int e = graphs[0].edgesWithId(2)[0];
+		assertEquals(Double.POSITIVE_INFINITY, graphs[0].weight(e));
+		assertEquals(50.0, graphs[1].weight(e));
+
+		byte[] single = copyData(rows, new Double[] { 1.0, 1.0, 1.0 }, 0);
+		assertThrows(IOException.class, () -> loader.loadAll(new ByteArrayInputStream(single)));
+	}
+
+	@Test
+	void rejectsBrokenStreams() throws IOException {
+		byte[] data = copyData(new Long[][] { { 1L, 2L, 3L } }, new Double[] { 1.0 }, 0);
+		assertThrows(IOException.class, () -> new CopyGraphLoader(0)
+				.load(new ByteArrayInputStream(Arrays.copyOf(data, data.length - 2))));
+
+		byte[] text = "1\t2\t3\t1.0\n\\.\n".getBytes("UTF-8");
+		assertThrows(IOException.class, () -> new CopyGraphLoader(0).load(new ByteArrayInputStream(text)));
+
+		byte[] range = copyData(new Long[][] { { 1L, 1L << 40, 3L } }, new Double[] { 1.0 }, 0);
+		assertThrows(IOException.class, () -> new CopyGraphLoader(0).load(new ByteArrayInputStream(range)));
+	}
+}
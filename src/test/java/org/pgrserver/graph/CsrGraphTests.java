@@ -0,0 +1,417 @@
+package org.pgrserver.graph;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.pgrserver.graph.TestGraphs.assertConnected;
+import static org.pgrserver.graph.TestGraphs.cost;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.GraphPath;
+import org.jgrapht.alg.shortestpath.BellmanFordShortestPath;
+import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
+import org.jgrapht.graph.DefaultDirectedWeightedGraph;
+import org.jgrapht.traverse.ClosestFirstIterator;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.pgrserver.util.ParallelLoop;
+
+class CsrGraphTests {
+
+	private static final int SIZE = 30;
+
+	private static CsrGraph graph;
+	private static DefaultDirectedWeightedGraph<Integer, LabeledWeightedEdge> reference;
+
+	/**
+	 * Grid with random one-way streets and a few long shortcuts. Vertex ids
+	 * are sparse to exercise the remapping.
+	 */
+	@BeforeAll
+	static void createGraphs() {
+		Random random = new Random(42);
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		reference = new DefaultDirectedWeightedGraph<Integer, LabeledWeightedEdge>(
+				LabeledWeightedEdge.class);
+		int id = TestGraphs.streets(SIZE,
+				(next, u, v) -> addEdges(builder, random, next, vertexId(u), vertexId(v)));
+		for (int i = 0; i < SIZE; i++) {
+			int u = vertexId(random.nextInt(SIZE * SIZE));
+			int v = vertexId(random.nextInt(SIZE * SIZE));
+			if (u != v && reference.getEdge(u, v) == null) {
+				id = addEdge(builder, id, u, v, 50 + random.nextInt(50));
+			}
+		}
+		graph = builder.build();
+	}
+
+	/**
+	 * @param v vertex of the grid, x * SIZE + y
+	 */
+	private static int vertexId(int v) {
+		return 1000 + 7 * v;
+	}
+
+	private static int addEdges(CsrGraph.Builder builder, Random random, int id, int u, int v) {
+		int cost = 1 + random.nextInt(20);
+		int kind = random.nextInt(5);
+		if (kind != 0) {
+			id = addEdge(builder, id, u, v, cost);
+		}
+		if (kind != 1) {
+			id = addEdge(builder, id, v, u, cost);
+		}
+		return id;
+	}
+
+	private static int addEdge(CsrGraph.Builder builder, int id, int u, int v, int cost) {
+		builder.addEdge(id, u, v, cost);
+		reference.addVertex(u);
+		reference.addVertex(v);
+		LabeledWeightedEdge lwe = new LabeledWeightedEdge();
+		lwe.setEdgeId(id);
+		reference.addEdge(u, v, lwe);
+		reference.setEdgeWeight(lwe, cost);
+		return id + 1;
+	}
+
+	@Test
+	void remapsVertices() {
+		assertEquals(SIZE * SIZE, graph.vertexCount());
+		assertEquals(reference.edgeSet().size(), graph.edgeCount());
+		assertEquals(-1, graph.indexOf(1));
+		for (int v = 0; v < graph.vertexCount(); v++) {
+			assertEquals(v, graph.indexOf(graph.vertexId(v)));
+			for (int e = graph.firstOut(v); e < graph.endOut(v); e++) {
+				assertEquals(v, graph.source(e));
+			}
+			for (int i = graph.firstIn(v); i < graph.endIn(v); i++) {
+				assertEquals(v, graph.target(graph.inEdge(i)));
+			}
+		}
+	}
+
+	@Test
+	void matchesJGraphTDijkstra() {
+		ContractionHierarchy ch = ContractionHierarchy.build(graph);
+		Random random = new Random(7);
+		for (int i = 0; i < 200; i++) {
+			int s = random.nextInt(graph.vertexCount());
+			int t = random.nextInt(graph.vertexCount());
+			GraphPath<Integer, LabeledWeightedEdge> expected = DijkstraShortestPath
+					.findPathBetween(reference, graph.vertexId(s), graph.vertexId(t));
+
+			int[] dijkstra = new CsrDijkstra(graph).path(s, t, CsrDijkstra.NONE);
+			int[] chPath = ch.path(s, t);
+			if (expected == null) {
+				assertNull(dijkstra);
+				assertNull(chPath);
+				continue;
+			}
+			assertNotNull(dijkstra);
+			assertNotNull(chPath);
+			assertConnected(graph, dijkstra, s, t);
+			assertConnected(graph, chPath, s, t);
+			assertEquals(expected.getWeight(), cost(graph, dijkstra), 1e-9);
+			assertEquals(expected.getWeight(), cost(graph, chPath), 1e-9);
+		}
+	}
+
+	@Test
+	void matchesClosestFirstIterator() {
+		int source = graph.vertexId(SIZE * SIZE / 2);
+		Set<Integer> expected = new HashSet<Integer>();
+		ClosestFirstIterator<Integer, LabeledWeightedEdge> it = new ClosestFirstIterator<Integer, LabeledWeightedEdge>(
+				reference, source, 40d);
+		while (it.hasNext()) {
+			expected.add(it.next());
+		}
+
+		Set<Integer> actual = new HashSet<Integer>();
+		for (int v : new CsrDijkstra(graph).withinRadius(graph.indexOf(source), 40d)) {
+			actual.add(graph.vertexId(v));
+		}
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	void dijkstraSkipsClosedEdges() {
+		// 1 -> 2 -> 3 -> 4 with 2 -> 3 closed, and a dearer 1 -> 4
+		CsrGraph g = new CsrGraph.Builder().addEdge(1, 1, 2, 1).addEdge(2, 2, 3, Double.POSITIVE_INFINITY)
+				.addEdge(3, 3, 4, 1).addEdge(4, 1, 4, 10).build();
+		int v1 = g.indexOf(1);
+		int v3 = g.indexOf(3);
+		int v4 = g.indexOf(4);
+		CsrDijkstra dijkstra = CsrDijkstra.acquire(g);
+		try {
+			assertNull(dijkstra.path(v1, v3, CsrDijkstra.NONE));
+			int[] path = dijkstra.path(v1, v4, CsrDijkstra.NONE);
+			assertArrayEquals(new int[] { 4 }, g.toEdgeIds(path));
+			assertEquals(10d, dijkstra.distance(v4));
+
+			int[] settled = dijkstra.withinRadius(v1, Double.POSITIVE_INFINITY);
+			assertEquals(3, settled.length);
+			assertEquals(Double.POSITIVE_INFINITY, dijkstra.distance(v3));
+			assertEquals(-1, dijkstra.predecessor(v3));
+		} finally {
+			dijkstra.release();
+		}
+	}
+
+	@Test
+	void flagsReverseEdges(@TempDir Path dir) throws Exception {
+		// rows 1 -> 2 and 3 -> 2, added out of source order, both two-way
+		double[] costs = { 1 };
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		for (int i = 0; i < 100; i++) {
+			builder.addEdge(1, 1, 2, costs).addReverseEdge(1, 1, 2, costs);
+			builder.addEdge(2, 3, 2, costs).addReverseEdge(2, 3, 2, costs);
+		}
+		CsrGraph g = builder.build();
+		CsrGraph copy = g.withWeights(g.copyWeights());
+		Path file = dir.resolve("graph.snapshot");
+		GraphSnapshot.write(file, g, null, 1);
+		CsrGraph read = GraphSnapshot.read(file, 1, 0).getGraph();
+		int reverse = 0;
+		for (int e = 0; e < g.edgeCount(); e++) {
+			int rowSource = g.edgeId(e) == 1 ? 1 : 3;
+			boolean expected = g.vertexId(g.source(e)) != rowSource;
+			assertEquals(expected, g.isReverse(e));
+			assertEquals(expected, copy.isReverse(e));
+			assertEquals(expected, read.isReverse(e));
+			reverse += expected ? 1 : 0;
+		}
+		assertEquals(200, reverse);
+		assertFalse(graph.isReverse(0));
+	}
+
+	@Test
+	void hierarchySkipsClosedArcs() {
+		CsrGraph open = new CsrGraph.Builder().addEdge(1, 1, 2, 1).addEdge(2, 2, 3, 1).addEdge(3, 3, 4, 1)
+				.addEdge(4, 1, 4, 10).build();
+		double[] weights = open.copyWeights();
+		weights[open.edgesWithId(2)[0]] = Double.POSITIVE_INFINITY;
+		CsrGraph g = open.withWeights(weights);
+		ContractionHierarchy ch = CustomizableHierarchy.build(open).customize(g, 1);
+		assertNull(ch.path(g.indexOf(1), g.indexOf(3)));
+		assertArrayEquals(new int[] { 4 }, g.toEdgeIds(ch.path(g.indexOf(1), g.indexOf(4))));
+	}
+
+	@Test
+	void pooledDijkstraForgetsEarlierSearches() {
+		Random random = new Random(11);
+		CsrDijkstra pooled = CsrDijkstra.acquire(graph);
+		try {
+			for (int i = 0; i < 50; i++) {
+				int s = random.nextInt(graph.vertexCount());
+				int t = random.nextInt(graph.vertexCount());
+				CsrDijkstra fresh = new CsrDijkstra(graph);
+				if (i % 2 == 0) {
+					assertArrayEquals(fresh.path(s, t, CsrDijkstra.NONE), pooled.path(s, t, CsrDijkstra.NONE));
+				} else {
+					assertArrayEquals(fresh.withinRadius(s, 25d), pooled.withinRadius(s, 25d));
+				}
+				for (int v = 0; v < graph.vertexCount(); v++) {
+					assertEquals(fresh.distance(v), pooled.distance(v));
+					assertEquals(fresh.predecessor(v), pooled.predecessor(v));
+				}
+			}
+		} finally {
+			pooled.release();
+		}
+	}
+
+	@Test
+	void viewRunsJGraphTAlgorithms() {
+		CsrGraphView view = new CsrGraphView(graph);
+		int s = 0;
+		int t = graph.vertexCount() - 1;
+		GraphPath<Integer, Integer> path = BellmanFordShortestPath.findPathBetween(view, s, t);
+		GraphPath<Integer, LabeledWeightedEdge> expected = DijkstraShortestPath.findPathBetween(reference,
+				graph.vertexId(s), graph.vertexId(t));
+		assertEquals(expected.getWeight(), path.getWeight(), 1e-9);
+	}
+
+	@Test
+	void parallelContractionIsDeterministic() {
+		ContractionHierarchy sequential = ContractionHierarchy.build(graph, 1);
+		ContractionHierarchy parallel = ContractionHierarchy.build(graph, 4);
+		assertArrayEquals(sequential.rank, parallel.rank);
+		assertArrayEquals(sequential.arcHead, parallel.arcHead);
+		assertArrayEquals(sequential.arcWeight, parallel.arcWeight);
+	}
+
+	@Test
+	void hierarchyFileRoundTrip(@TempDir Path dir) throws Exception {
+		ContractionHierarchy ch = ContractionHierarchy.build(graph, 2);
+		Path file = dir.resolve("ch.bin");
+		ch.write(file, graph.checksum());
+
+		assertNull(ContractionHierarchy.read(file, graph.checksum() + 1));
+		ContractionHierarchy loaded = ContractionHierarchy.read(file, graph.checksum());
+		assertNotNull(loaded);
+		assertArrayEquals(ch.upArcs, loaded.upArcs);
+		assertArrayEquals(ch.arcChild1, loaded.arcChild1);
+		assertArrayEquals(ch.arcWeight, loaded.arcWeight);
+		assertEquals(1, Files.list(dir).count());
+
+		int s = 3;
+		int t = graph.vertexCount() - 5;
+		assertEquals(Arrays.toString(ch.path(s, t)), Arrays.toString(loaded.path(s, t)));
+	}
+
+	@Test
+	void customizedHierarchyMatchesDijkstra() {
+		CustomizableHierarchy cch = CustomizableHierarchy.build(graph);
+		assertTrue(cch.fits(graph));
+		assertCustomization(graph, cch.customize(graph, 1));
+
+		Random random = new Random(11);
+		double[] weights = graph.copyWeights();
+		for (int e = 0; e < weights.length; e++) {
+			int kind = random.nextInt(10);
+			weights[e] = kind == 0 ? Double.POSITIVE_INFINITY : kind == 1 ? 0d : 1 + random.nextInt(100);
+		}
+		CsrGraph updated = graph.withWeights(weights);
+		assertEquals(graph.topologyChecksum(), updated.topologyChecksum());
+		assertNotEquals(graph.checksum(), updated.checksum());
+
+		ContractionHierarchy sequential = cch.customize(updated, 1);
+		ContractionHierarchy parallel = cch.customize(updated, 4);
+		assertArrayEquals(sequential.arcWeight, parallel.arcWeight);
+		assertCustomization(updated, parallel);
+	}
+
+	private static void assertCustomization(CsrGraph g, ContractionHierarchy ch) {
+		Random random = new Random(3);
+		for (int i = 0; i < 200; i++) {
+			int s = random.nextInt(g.vertexCount());
+			int t = random.nextInt(g.vertexCount());
+			CsrDijkstra dijkstra = new CsrDijkstra(g);
+			int[] expected = dijkstra.path(s, t, CsrDijkstra.NONE);
+			int[] actual = ch.path(s, t);
+			if (expected == null) {
+				assertNull(actual);
+				continue;
+			}
+			assertNotNull(actual);
+			assertConnected(g, actual, s, t);
+			assertEquals(dijkstra.distance(t), cost(g, actual), 1e-9);
+		}
+	}
+
+	@Test
+	void manyToManyMatchesDijkstra() {
+		Random random = new Random(13);
+		int[] sources = new int[12];
+		int[] targets = new int[9];
+		for (int i = 0; i < sources.length; i++) {
+			sources[i] = random.nextInt(graph.vertexCount());
+		}
+		for (int j = 0; j < targets.length; j++) {
+			targets[j] = random.nextInt(graph.vertexCount());
+		}
+		sources[4] = -1;
+		targets[2] = targets[5];
+		targets[7] = sources[3];
+
+		ContractionHierarchy ch = ContractionHierarchy.build(graph, 2);
+		try (ParallelLoop loop = new ParallelLoop(2, 1, "test")) {
+			double[] buckets = ManyToMany.hierarchy(ch, sources, targets, loop);
+			double[] dijkstra = ManyToMany.dijkstra(graph, sources, targets, loop);
+			for (int i = 0; i < sources.length; i++) {
+				CsrDijkstra reference = new CsrDijkstra(graph);
+				if (sources[i] >= 0) {
+					reference.withinRadius(sources[i], Double.POSITIVE_INFINITY);
+				}
+				for (int j = 0; j < targets.length; j++) {
+					double expected = sources[i] < 0 ? Double.POSITIVE_INFINITY : reference.distance(targets[j]);
+					assertEquals(expected, buckets[i * targets.length + j], 1e-9);
+					assertEquals(expected, dijkstra[i * targets.length + j], 1e-9);
+				}
+			}
+			assertEquals(0, buckets[3 * targets.length + 7]);
+		}
+
+		DistanceMatrix matrix = new DistanceMatrix(graph, new int[] { 0, -1 }, new int[] { 0, 1 },
+				new double[] { 0, 2.5, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY });
+		assertEquals("{\"sources\":[" + graph.vertexId(0) + ",null],\"targets\":[" + graph.vertexId(0) + ","
+				+ graph.vertexId(1) + "],\"costs\":[[0.0,2.5],[null,null]]}", matrix.toJson());
+		ByteBuffer binary = ByteBuffer.wrap(matrix.toFloat32()).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(2, binary.getInt());
+		assertEquals(2, binary.getInt());
+		assertEquals(0f, binary.getFloat());
+		assertEquals(2.5f, binary.getFloat());
+		assertEquals(Float.POSITIVE_INFINITY, binary.getFloat());
+	}
+
+	@Test
+	void findsEdgesById() {
+		int e = graph.edgeCount() / 2;
+		assertArrayEquals(new int[] { e }, graph.edgesWithId(graph.edgeId(e)));
+		assertEquals(0, graph.edgesWithId(-5).length);
+	}
+
+	@Test
+	void parsesMetrics() {
+		GraphMetrics metrics = GraphMetrics.parse(null);
+		assertTrue(metrics.isDefault());
+		assertEquals(4, metrics.fieldCount());
+		assertEquals("select id,source,target,cost from pgrserver", metrics.selectSql());
+
+		metrics = GraphMetrics.parse("cost:cost:reverse_cost, length:length_m:length_m,time:time_s");
+		assertEquals(3, metrics.count());
+		assertEquals("cost", metrics.defaultName());
+		assertEquals(2, metrics.indexOf("time"));
+		assertEquals(-1, metrics.indexOf("speed"));
+		assertEquals(8, metrics.fieldCount());
+		assertEquals("COPY (select id::int8,source::int8,target::int8,cost::float8,length_m::float8,"
+				+ "time_s::float8,reverse_cost::float8,length_m::float8 from pgrserver) TO STDOUT (FORMAT binary)",
+				metrics.copySql());
+
+		assertThrows(IllegalArgumentException.class, () -> GraphMetrics.parse("cost"));
+		assertThrows(IllegalArgumentException.class, () -> GraphMetrics.parse("cost:cost;drop table x"));
+		assertThrows(IllegalArgumentException.class, () -> GraphMetrics.parse("cost:cost,cost:length"));
+	}
+
+	@Test
+	void metricsShareTopology() {
+		GraphMetrics metrics = GraphMetrics.parse("cost:cost:reverse_cost,length:length_m");
+		CsrGraph.Builder builder = new CsrGraph.Builder(0, metrics.count());
+		double[] scratch = new double[metrics.count()];
+		// cost, length_m, reverse_cost: two-way, one-way, closed for cost
+		metrics.addRow(builder, 1, 10, 20, new double[] { 1, 100, 2 }, scratch);
+		metrics.addRow(builder, 2, 20, 30, new double[] { 3, 50, -1 }, scratch);
+		metrics.addRow(builder, 3, 30, 10, new double[] { -1, 70, Double.NaN }, scratch);
+		CsrGraph[] graphs = builder.buildAll();
+
+		assertEquals(2, graphs.length);
+		assertEquals(4, graphs[0].edgeCount());
+		assertEquals(graphs[0].topologyChecksum(), graphs[1].topologyChecksum());
+		int back = graphs[0].indexOf(20);
+		int e = graphs[0].firstOut(back);
+		while (graphs[0].target(e) != graphs[0].indexOf(10)) {
+			e++;
+		}
+		assertEquals(1, graphs[0].edgeId(e));
+		assertEquals(2.0, graphs[0].weight(e));
+		assertEquals(Double.POSITIVE_INFINITY, graphs[1].weight(e));
+		int closed = graphs[0].edgesWithId(3)[0];
+		assertEquals(Double.POSITIVE_INFINITY, graphs[0].weight(closed));
+		assertEquals(70.0, graphs[1].weight(closed));
+	}
+}
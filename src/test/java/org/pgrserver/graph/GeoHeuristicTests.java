@@ -0,0 +1,98 @@
+package org.pgrserver.graph;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.pgrserver.graph.TestGraphs.lat;
+import static org.pgrserver.graph.TestGraphs.lineString;
+import static org.pgrserver.graph.TestGraphs.lng;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.pgrserver.util.DistanceUtil;
+
+class GeoHeuristicTests {
+
+	private static final int SIZE = 40;
+
+	private static CsrGraph graph;
+	private static GeometryStore store;
+
+	/**
+	 * Grid of two-way streets with travel times as costs: each direction
+	 * has its own speed between 5 and 30 m/s.
+	 */
+	@BeforeAll
+	static void createGraph() {
+		final Random random = new Random(3);
+		final CsrGraph.Builder builder = new CsrGraph.Builder();
+		final GeometryStore.Builder geometries = new GeometryStore.Builder();
+		TestGraphs.streets(SIZE, (id, u, v) -> {
+			double[] line = { lng(u / SIZE), lat(u % SIZE), lng(v / SIZE), lat(v % SIZE) };
+			double metres = 1000 * DistanceUtil.euclidean(line[1], line[0], line[3], line[2]);
+			builder.addEdge(id, u, v, metres / (5 + 25 * random.nextDouble()));
+			geometries.add(id, lineString(line));
+			builder.addEdge(id + 1, v, u, metres / (5 + 25 * random.nextDouble()));
+			geometries.add(id + 1, lineString(line, true));
+			return id + 2;
+		});
+		graph = builder.build();
+		store = geometries.build(graph);
+	}
+
+	@Test
+	void neverOverestimates() {
+		GeoHeuristic heuristic = GeoHeuristic.create(graph, store);
+		assertTrue(heuristic.getCostPerMetre() > 1 / 30.5 && heuristic.getCostPerMetre() < 1 / 29.0);
+		Random random = new Random(11);
+		for (int i = 0; i < 5; i++) {
+			int s = random.nextInt(graph.vertexCount());
+			CsrDijkstra dijkstra = new CsrDijkstra(graph);
+			dijkstra.withinRadius(s, Double.POSITIVE_INFINITY);
+			for (int v = 0; v < graph.vertexCount(); v++) {
+				assertTrue(heuristic.estimate(s, v) <= dijkstra.distance(v));
+			}
+		}
+	}
+
+	@Test
+	void astarSettlesFewerVertices() {
+		GeoHeuristic heuristic = GeoHeuristic.create(graph, store);
+		Random random = new Random(12);
+		long settledDijkstra = 0;
+		long settledAstar = 0;
+		for (int i = 0; i < 50; i++) {
+			int s = random.nextInt(graph.vertexCount());
+			int t = random.nextInt(graph.vertexCount());
+			CsrDijkstra dijkstra = new CsrDijkstra(graph);
+			CsrDijkstra astar = new CsrDijkstra(graph);
+			assertNotNull(dijkstra.path(s, t, CsrDijkstra.NONE));
+			assertNotNull(astar.path(s, t, heuristic));
+			assertEquals(dijkstra.distance(t), astar.distance(t), 1e-9);
+			settledDijkstra += dijkstra.settledCount();
+			settledAstar += astar.settledCount();
+		}
+		assertTrue(settledAstar < settledDijkstra / 2, settledAstar + " vs " + settledDijkstra);
+	}
+
+	@Test
+	void followsWeightUpdates() {
+		GeoHeuristic heuristic = GeoHeuristic.create(graph, store);
+		double[] weights = graph.copyWeights();
+		weights[0] /= 4;
+		GeoHeuristic updated = heuristic.withGraph(graph.withWeights(weights));
+		assertTrue(updated.getCostPerMetre() < heuristic.getCostPerMetre());
+	}
+
+	@Test
+	void requiresCoordinatesForEveryVertex() {
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		builder.addEdge(1, 1, 2, 1).addEdge(2, 2, 3, 1);
+		CsrGraph partial = builder.build();
+		GeometryStore geometry = new GeometryStore.Builder().add(1, lineString(139.7, 35.6, 139.701, 35.6)).build(partial);
+		assertNull(GeoHeuristic.create(partial, geometry));
+	}
+}
@@ -0,0 +1,113 @@
+package org.pgrserver.graph;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HierarchyBuildTaskTests {
+
+	private static final int SIZE = 20;
+
+	/**
+	 * Runs a task for graph and checks that it provided its hierarchy.
+	 */
+	private static ContractionHierarchy run(CsrGraph graph, Path dir, String origin) {
+		AtomicReference<ContractionHierarchy> ready = new AtomicReference<ContractionHierarchy>();
+		HierarchyBuildTask task = new HierarchyBuildTask(graph, dir, 2, ready::set);
+		task.run();
+		HierarchyStatus status = task.getStatus();
+		assertEquals(HierarchyBuildTask.READY, status.getState(), status.getError());
+		assertEquals(origin, status.getOrigin());
+		assertEquals(Long.toHexString(graph.checksum()), status.getChecksum());
+		assertNotNull(ready.get());
+		assertEquals(graph.vertexCount(), ready.get().vertexCount());
+		return ready.get();
+	}
+
+	private static List<String> files(Path dir) throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.map(f -> f.getFileName().toString()).sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static void assertSameCosts(CsrGraph graph, ContractionHierarchy expected, ContractionHierarchy actual) {
+		for (int s = 0; s < graph.vertexCount(); s += 37) {
+			for (int t = 0; t < graph.vertexCount(); t += 23) {
+				int[] path = actual.path(s, t);
+				TestGraphs.assertConnected(graph, path, s, t);
+				assertEquals(TestGraphs.cost(graph, expected.path(s, t)), TestGraphs.cost(graph, path), 1e-9);
+			}
+		}
+	}
+
+	@Test
+	void readsTheSavedHierarchyOfAnUnchangedGraph(@TempDir Path dir) throws IOException {
+		CsrGraph graph = TestGraphs.grid(SIZE, 1);
+		ContractionHierarchy built = run(graph, dir, "built");
+		assertEquals(1, files(dir).size());
+
+		// a reload of the same rows gives the same checksum
+		CsrGraph reloaded = TestGraphs.grid(SIZE, 1);
+		assertEquals(graph.checksum(), reloaded.checksum());
+		ContractionHierarchy loaded = run(reloaded, dir, "file");
+		assertArrayEquals(built.upArcs, loaded.upArcs);
+		assertArrayEquals(built.downArcs, loaded.downArcs);
+		assertArrayEquals(built.arcWeight, loaded.arcWeight);
+		assertSameCosts(reloaded, built, loaded);
+	}
+
+	@Test
+	void rebuildsWhenTheCostsChange(@TempDir Path dir) throws IOException {
+		CsrGraph graph = TestGraphs.grid(SIZE, 1);
+		run(graph, dir, "built");
+		List<String> before = files(dir);
+
+		double[] weights = graph.copyWeights();
+		weights[0] *= 3;
+		CsrGraph updated = graph.withWeights(weights);
+		assertEquals(graph.topologyChecksum(), updated.topologyChecksum());
+		assertNotEquals(graph.checksum(), updated.checksum());
+		ContractionHierarchy rebuilt = run(updated, dir, "built");
+		assertSameCosts(updated, ContractionHierarchy.build(updated, 1), rebuilt);
+
+		// the file of the old costs is replaced
+		List<String> after = files(dir);
+		assertEquals(1, after.size());
+		assertNotEquals(before, after);
+		assertTrue(after.get(0).contains(Long.toHexString(updated.checksum())));
+	}
+
+	@Test
+	void rebuildsWhenTheFileIsForAnotherGraph(@TempDir Path dir) throws IOException {
+		CsrGraph graph = TestGraphs.grid(SIZE, 1);
+		run(graph, dir, "built");
+		Path file = dir.resolve(files(dir).get(0));
+
+		// a file under the right name, written for other costs
+		CsrGraph other = TestGraphs.grid(SIZE, 2);
+		Files.delete(file);
+		run(other, dir, "built");
+		Files.move(dir.resolve(files(dir).get(0)), file);
+
+		run(graph, dir, "built");
+		run(graph, dir, "file");
+	}
+
+	@Test
+	void buildsWithoutDirectory() {
+		run(TestGraphs.grid(SIZE, 1), null, "built");
+	}
+}
@@ -0,0 +1,92 @@
+package org.pgrserver.graph;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class LandmarkIndexTests {
+
+	private static final int SIZE = 40;
+
+	private static CsrGraph graph;
+	private static LandmarkIndex landmarks;
+
+	@BeforeAll
+	static void createGraph() {
+		graph = TestGraphs.grid(SIZE, 7);
+		landmarks = LandmarkIndex.build(graph, 8, 2);
+	}
+
+	@Test
+	void selectsDistinctLandmarks() {
+		Set<Integer> selected = new HashSet<Integer>();
+		for (int i = 0; i < landmarks.landmarkCount(); i++) {
+			selected.add(landmarks.landmark(i));
+		}
+		assertEquals(8, selected.size());
+		assertEquals(2L * 8 * 4 * graph.vertexCount(), landmarks.estimatedHeapBytes());
+	}
+
+	@Test
+	void neverOverestimates() {
+		Random random = new Random(11);
+		for (int i = 0; i < 5; i++) {
+			int s = random.nextInt(graph.vertexCount());
+			CsrDijkstra dijkstra = new CsrDijkstra(graph);
+			dijkstra.withinRadius(s, Double.POSITIVE_INFINITY);
+			CsrDijkstra.Heuristic heuristic = landmarks.heuristic(random.nextInt(graph.vertexCount()), s);
+			for (int v = 0; v < graph.vertexCount(); v++) {
+				assertTrue(landmarks.lowerBound(s, v) <= dijkstra.distance(v));
+				assertTrue(landmarks.lowerBound(s, v) >= 0);
+			}
+			CsrDijkstra reverse = new CsrDijkstra(graph);
+			for (int v = 0; v < graph.vertexCount(); v += 17) {
+				reverse.path(v, s, CsrDijkstra.NONE);
+				assertTrue(heuristic.estimate(v, s) <= reverse.distance(s));
+				reverse = new CsrDijkstra(graph);
+			}
+		}
+	}
+
+	@Test
+	void findsShortestPathsSettlingFewerVertices() {
+		Random random = new Random(12);
+		long settledDijkstra = 0;
+		long settledAlt = 0;
+		for (int i = 0; i < 50; i++) {
+			int s = random.nextInt(graph.vertexCount());
+			int t = random.nextInt(graph.vertexCount());
+			CsrDijkstra dijkstra = new CsrDijkstra(graph);
+			CsrDijkstra alt = new CsrDijkstra(graph);
+			assertNotNull(dijkstra.path(s, t, CsrDijkstra.NONE));
+			int[] path = alt.path(s, t, landmarks.heuristic(s, t));
+			assertNotNull(path);
+			assertEquals(dijkstra.distance(t), TestGraphs.cost(graph, path), 1e-9);
+			settledDijkstra += dijkstra.settledCount();
+			settledAlt += alt.settledCount();
+		}
+		assertTrue(settledAlt < settledDijkstra / 3, settledAlt + " vs " + settledDijkstra);
+	}
+
+	@Test
+	void handlesUnreachableVertices() {
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		builder.addEdge(1, 1, 2, 2).addEdge(2, 2, 3, 2).addEdge(3, 3, 1, 2).addEdge(4, 4, 5, 1);
+		CsrGraph small = builder.build();
+		LandmarkIndex index = LandmarkIndex.build(small, 3, 1);
+		int v1 = small.indexOf(1);
+		int v3 = small.indexOf(3);
+		assertEquals(2, index.path(small, v1, v3).length);
+		assertEquals(0, index.path(small, v1, v1).length);
+		assertNull(index.path(small, v1, small.indexOf(5)));
+		assertTrue(index.lowerBound(v1, v3) <= 4);
+	}
+}
@@ -0,0 +1,490 @@
+package org.pgrserver.graph;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.pgrserver.entity.PgrServer;
+import org.pgrserver.repository.CustomRepository;
+import org.pgrserver.repository.GraphRepository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MainGraphTests {
+
+	private MainGraph mainGraph;
+	private GraphRepository graphRepository;
+
+	private static PgrServer row(int id, int source, int target, int cost) {
+		PgrServer p = new PgrServer();
+		p.setId(id);
+		p.setSource(source);
+		p.setTarget(target);
+		p.setCost(cost);
+		return p;
+	}
+
+	/**
+	 * 1 -> 2 -> 3 with a direct but expensive 1 -> 3.
+	 */
+	private static List<PgrServer> network(int directCost) {
+		List<PgrServer> rows = new ArrayList<PgrServer>();
+		rows.add(row(10, 1, 2, 1));
+		rows.add(row(11, 2, 3, 1));
+		rows.add(row(12, 1, 3, directCost));
+		return rows;
+	}
+
+	@BeforeEach
+	void setUp() {
+		graphRepository = mock(GraphRepository.class);
+		mainGraph = new MainGraph();
+		mainGraph.graphRepository = graphRepository;
+	}
+
+	@Test
+	void reloadPublishesNewGeneration() {
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+		GraphGeneration first = mainGraph.generation();
+		assertEquals(Arrays.asList(10, 11), mainGraph.dijkstraSearch(1, 3));
+		assertEquals(Arrays.asList(12), mainGraph.bfsSearch(1, 3));
+
+		when(graphRepository.getGraph()).thenReturn(network(1));
+		mainGraph.createDirectedGraph();
+		GraphGeneration second = mainGraph.generation();
+
+		assertNotSame(first, second);
+		assertEquals(first.getId() + 1, second.getId());
+		assertEquals(Arrays.asList(12), mainGraph.dijkstraSearch(1, 3));
+	}
+
+	@Test
+	void pinnedRequestKeepsItsGeneration() {
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+		GraphGeneration pinned = mainGraph.pinGeneration();
+		try {
+			when(graphRepository.getGraph()).thenReturn(network(1));
+			mainGraph.createDirectedGraph();
+
+			assertSame(pinned, mainGraph.generation());
+			assertEquals(Arrays.asList(10, 11), mainGraph.dijkstraSearch(1, 3));
+		} finally {
+			mainGraph.unpinGeneration();
+		}
+		assertEquals(Arrays.asList(12), mainGraph.dijkstraSearch(1, 3));
+	}
+
+	@Test
+	void weightUpdateKeepsTopology() {
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+		GraphGeneration loaded = mainGraph.generation();
+
+		assertEquals(1, mainGraph.updateWeights(new int[] { 11 }, new double[] { 10 }));
+		GraphGeneration updated = mainGraph.generation();
+		assertNotSame(loaded, updated);
+		assertEquals(loaded.getGraph().topologyChecksum(), updated.getGraph().topologyChecksum());
+		assertNotNull(updated.getHierarchy());
+		assertEquals(Arrays.asList(12), mainGraph.chbDijkstraSearch(1, 3));
+		assertEquals(Arrays.asList(12), mainGraph.dijkstraSearch(1, 3));
+
+		List<Object[]> costs = new ArrayList<Object[]>();
+		costs.add(new Object[] { 10, 1d });
+		costs.add(new Object[] { 11, 1d });
+		costs.add(new Object[] { 12, -1d });
+		when(graphRepository.getCosts()).thenReturn(costs);
+		assertEquals(3, mainGraph.updateWeights(null, null));
+		assertSame(updated.getCustomizable(), mainGraph.generation().getCustomizable());
+		assertEquals(Arrays.asList(10, 11), mainGraph.chbDijkstraSearch(1, 3));
+	}
+
+	@Test
+	void closedEdgesAreNotFollowed() {
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+		assertEquals(1, mainGraph.updateWeights(new int[] { 11 }, new double[] { -1 }));
+
+		assertEquals(Arrays.asList(12), mainGraph.astarSearch(1, 3));
+		assertEquals(Arrays.asList(12), mainGraph.dijkstraSearch(1, 3));
+		assertTrue(mainGraph.astarSearch(2, 3).isEmpty());
+		assertEquals(new HashSet<Integer>(Arrays.asList(2)), mainGraph.drivingDistance(2, Double.POSITIVE_INFINITY));
+		assertEquals(Arrays.asList(2), new ArrayList<Integer>(mainGraph.isochrone(2, new double[] { 10 }).keySet()));
+		assertEquals(1, mainGraph.shortestPathTree(2, Double.POSITIVE_INFINITY).size());
+	}
+
+	@Test
+	void cachesRoutesOfTheGeneration() {
+		mainGraph.cacheEnabled = true;
+		mainGraph.cacheMaxMb = 1;
+		mainGraph.createRouteCache();
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+		CustomRepository custRepository = mock(CustomRepository.class);
+		mainGraph.custRepository = custRepository;
+		when(custRepository.createJsonRouteResponse(anyList(), anyInt()))
+				.thenAnswer(call -> "route " + call.getArgument(0));
+
+		assertEquals("route [10, 11]", mainGraph.routeJson("dijkstra", 1, 3));
+		assertEquals("route [10, 11]", mainGraph.routeJson("dijkstra", 1, 3));
+		assertEquals(Arrays.asList(10, 11), mainGraph.route("dijkstra", 1, 3));
+		verify(custRepository).createJsonRouteResponse(anyList(), anyInt());
+		assertEquals(null, mainGraph.routeJson("dijkstra", 3, 1));
+		assertEquals(2, mainGraph.getCacheStatus().getHits());
+
+		when(graphRepository.getGraph()).thenReturn(network(1));
+		mainGraph.createDirectedGraph();
+		assertEquals(0, mainGraph.getCacheStatus().getEntries());
+		assertEquals("route [12]", mainGraph.routeJson("dijkstra", 1, 3));
+	}
+
+	@Test
+	void routesEveryMetric() {
+		mainGraph.cacheEnabled = true;
+		mainGraph.cacheMaxMb = 1;
+		mainGraph.createRouteCache();
+		mainGraph.metricsSpec = "cost:cost,length:length_m";
+		CustomRepository custRepository = mock(CustomRepository.class);
+		mainGraph.custRepository = custRepository;
+		List<Object[]> rows = new ArrayList<Object[]>();
+		rows.add(new Object[] { 10, 1, 2, 1d, 10d });
+		rows.add(new Object[] { 11, 2, 3, 1d, 10d });
+		rows.add(new Object[] { 12, 1, 3, 5d, 3d });
+		when(custRepository.getGraphRows(anyString())).thenReturn(rows);
+		mainGraph.createDirectedGraph();
+
+		GraphGeneration cost = mainGraph.generation();
+		assertEquals("cost", cost.getMetric());
+		assertEquals(Arrays.asList(10, 11), mainGraph.route("dijkstra", 1, 3));
+		GraphGeneration length = mainGraph.pinGeneration("length");
+		try {
+			assertEquals(cost.getId(), length.getId());
+			assertEquals(cost.getGraph().topologyChecksum(), length.getGraph().topologyChecksum());
+			assertEquals(Arrays.asList(12), mainGraph.route("dijkstra", 1, 3));
+		} finally {
+			mainGraph.unpinGeneration();
+		}
+		assertEquals(Arrays.asList(10, 11), mainGraph.route("dijkstra", 1, 3));
+		assertThrows(IllegalArgumentException.class, () -> mainGraph.pinGeneration("time"));
+
+		assertEquals(1, mainGraph.updateWeights("length", new int[] { 12 }, new double[] { 30 }));
+		assertSame(cost.getGraph(), mainGraph.generation().getGraph());
+		mainGraph.pinGeneration("length");
+		try {
+			assertEquals(Arrays.asList(10, 11), mainGraph.route("dijkstra", 1, 3));
+		} finally {
+			mainGraph.unpinGeneration();
+		}
+		assertThrows(IllegalArgumentException.class,
+				() -> mainGraph.updateWeights("time", new int[] { 12 }, new double[] { 1 }));
+	}
+
+	@Test
+	void weightUpdateKeepsOneWayEdges() {
+		mainGraph.metricsSpec = "cost:cost:reverse_cost,length:length_m:reverse_length";
+		CustomRepository custRepository = mock(CustomRepository.class);
+		mainGraph.custRepository = custRepository;
+		List<Object[]> rows = new ArrayList<Object[]>();
+		rows.add(new Object[] { 10, 1, 2, 1d, 1d, 1d, 1d });
+		// one-way by cost, but its reverse edge exists for length
+		rows.add(new Object[] { 11, 2, 3, 1d, 1d, -1d, 1d });
+		rows.add(new Object[] { 12, 1, 3, 5d, 5d, 5d, 5d });
+		when(custRepository.getGraphRows(anyString())).thenReturn(rows);
+		mainGraph.createDirectedGraph();
+		assertEquals(Arrays.asList(12, 10), mainGraph.route("dijkstra", 3, 2));
+
+		assertEquals(1, mainGraph.updateWeights(new int[] { 11 }, new double[] { 2 }));
+		assertEquals(Arrays.asList(11), mainGraph.route("dijkstra", 2, 3));
+		assertEquals(Arrays.asList(12, 10), mainGraph.route("dijkstra", 3, 2));
+		assertEquals(3, mainGraph.updateWeights(new int[] { 10, 11, 12 }, new double[] { 1, 1, 1 }));
+		assertEquals(Arrays.asList(12, 10), mainGraph.route("dijkstra", 3, 2));
+	}
+
+	@Test
+	void recordsRouteMetrics() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		mainGraph.meterRegistry = registry;
+		mainGraph.createRouteMetrics();
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+		CustomRepository custRepository = mock(CustomRepository.class);
+		mainGraph.custRepository = custRepository;
+		when(custRepository.createJsonRouteResponse(anyList(), anyInt()))
+				.thenAnswer(call -> "route " + call.getArgument(0));
+
+		RouteMetrics metrics = mainGraph.getRouteMetrics();
+		metrics.setEndpoint("/api/latlng/dijkstra");
+		try {
+			mainGraph.findNearestNode(139.7, 35.6);
+			assertEquals("route [10, 11]", mainGraph.routeJson("dijkstra", 1, 3));
+		} finally {
+			metrics.setEndpoint(null);
+		}
+		for (String phase : new String[] { "snap", "search", "geometry" }) {
+			assertEquals(1, registry.get("pgrserver.route").tag("endpoint", "/api/latlng/dijkstra")
+					.tag("algorithm", "dijkstra").tag("phase", phase).timer().count(), phase);
+		}
+		assertEquals(1, registry.get("pgrserver.route.settled").tag("algorithm", "dijkstra").summary().count());
+		assertEquals(1, registry.get("pgrserver.graph.build").tag("stage", "load").timer().count());
+		assertEquals(3, registry.get("pgrserver.graph.vertices").gauge().value());
+		assertEquals(3, registry.get("pgrserver.graph.edges").gauge().value());
+		assertTrue(registry.get("pgrserver.graph.heap").gauge().value() > 0);
+
+		mainGraph.shortestPathTree(1, Double.POSITIVE_INFINITY);
+		assertEquals(1, registry.get("pgrserver.route").tag("endpoint", "none").tag("algorithm", "spt")
+				.tag("phase", "search").timer().count());
+	}
+
+	@Test
+	void isochroneBandsFromOneSearch() {
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+
+		Map<Integer, Integer> bands = mainGraph.isochrone(1, new double[] { 0.5, 1, 10 });
+		assertEquals(Arrays.asList(1, 2, 3), new ArrayList<Integer>(bands.keySet()));
+		assertEquals(Arrays.asList(0, 1, 2), new ArrayList<Integer>(bands.values()));
+		assertEquals(2, mainGraph.isochrone(1, new double[] { 1.5 }).size());
+		assertTrue(mainGraph.isochrone(99, new double[] { 1 }).isEmpty());
+	}
+
+	@Test
+	void shortestPathTreeAsColumns() {
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+
+		ShortestPathTree tree = mainGraph.shortestPathTree(1, Double.POSITIVE_INFINITY);
+		assertEquals("{\"source\":1,\"nodes\":[1,2,3],\"costs\":[0.0,1.0,2.0],\"edges\":[null,10,11]}",
+				tree.toJson());
+		ByteBuffer binary = ByteBuffer.wrap(tree.toBinary()).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(4 + 3 * 12, binary.remaining());
+		assertEquals(3, binary.getInt());
+		assertEquals(2, binary.getInt(4 + 4));
+		assertEquals(2f, binary.getFloat(4 + 12 + 8));
+		assertEquals(-1, binary.getInt(4 + 24));
+		assertEquals(11, binary.getInt(4 + 24 + 8));
+
+		assertEquals(2, mainGraph.shortestPathTree(1, 1).size());
+		assertEquals(null, mainGraph.shortestPathTree(99, 1));
+	}
+
+	@Test
+	void shortestPathTreeLeavesOutUnreachableNodes() throws Exception {
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+		mainGraph.updateWeights(new int[] { 11, 12 }, new double[] { -1, -1 });
+
+		// Jackson rejects Infinity and NaN by default
+		JsonNode tree = new ObjectMapper().readTree(mainGraph.shortestPathTree(1, Double.POSITIVE_INFINITY).toJson());
+		assertEquals(1, tree.get("source").asInt());
+		assertEquals(Arrays.asList(1, 2), Arrays.asList(tree.get("nodes").get(0).asInt(), tree.get("nodes").get(1).asInt()));
+		assertEquals(2, tree.get("costs").size());
+		assertEquals(2, tree.get("edges").size());
+		for (JsonNode cost : tree.get("costs")) {
+			assertTrue(cost.isNumber());
+			assertTrue(Double.isFinite(cost.asDouble()));
+		}
+	}
+
+	@Test
+	void allPairsSearchesUseTheTables() throws InterruptedException {
+		mainGraph.apspEnabled = true;
+		mainGraph.apspMaxMb = 1;
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+		GraphGeneration loaded = mainGraph.generation();
+		assertEquals(Arrays.asList(10, 11), mainGraph.johnsonSearch(1, 3));
+		for (int i = 0; i < 500 && loaded.getAllPairs() == null; i++) {
+			Thread.sleep(10);
+		}
+		assertNotNull(loaded.getAllPairs());
+		assertEquals(Arrays.asList(10, 11), mainGraph.floydWarshallSearch(1, 3));
+		assertEquals(Arrays.asList(), mainGraph.johnsonSearch(3, 1));
+
+		mainGraph.apspMaxMb = 0;
+		IllegalStateException e = assertThrows(IllegalStateException.class,
+				() -> mainGraph.floydWarshallSearch(1, 3));
+		assertTrue(e.getMessage().contains("3 vertices"));
+		mainGraph.shutdown();
+	}
+
+	@Test
+	void reloadBuildsHierarchyInBackground(@TempDir Path dir) throws InterruptedException {
+		mainGraph.chEnabled = true;
+		mainGraph.dataDir = dir.toString();
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+		when(graphRepository.getGraph()).thenReturn(network(1));
+		mainGraph.createDirectedGraph();
+
+		// answered by the bidirectional fallback until the hierarchy is ready
+		GraphGeneration reloaded = mainGraph.generation();
+		assertNotNull(reloaded.getHierarchyTask());
+		assertEquals(Arrays.asList(12), mainGraph.chbDijkstraSearch(1, 3));
+		for (int i = 0; i < 500 && reloaded.getHierarchy() == null; i++) {
+			Thread.sleep(10);
+		}
+		assertNotNull(reloaded.getHierarchy());
+		assertEquals(Arrays.asList(12), mainGraph.chbDijkstraSearch(1, 3));
+		mainGraph.shutdown();
+	}
+
+	@Test
+	void altSearchUsesLandmarks() throws InterruptedException {
+		mainGraph.altEnabled = true;
+		mainGraph.altLandmarks = 2;
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+		GraphGeneration loaded = mainGraph.generation();
+		assertEquals(Arrays.asList(10, 11), mainGraph.altSearch(1, 3));
+		for (int i = 0; i < 500 && loaded.getLandmarks() == null; i++) {
+			Thread.sleep(10);
+		}
+		assertNotNull(loaded.getLandmarks());
+		assertEquals(Arrays.asList(10, 11), mainGraph.altSearch(1, 3));
+
+		mainGraph.updateWeights(new int[] { 11 }, new double[] { 10 });
+		assertSame(loaded.getLandmarks(), mainGraph.generation().getLandmarks());
+		assertEquals(Arrays.asList(12), mainGraph.altSearch(1, 3));
+
+		mainGraph.updateWeights(new int[] { 12 }, new double[] { 20 });
+		mainGraph.updateWeights(new int[] { 11 }, new double[] { 1 });
+		assertEquals(Arrays.asList(10, 11), mainGraph.altSearch(1, 3));
+		mainGraph.shutdown();
+	}
+
+	@Test
+	void computesDistanceMatrix() {
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+		CustomRepository custRepository = mock(CustomRepository.class);
+		mainGraph.custRepository = custRepository;
+		when(custRepository.findNearestNode(0d, 0d)).thenReturn(row(10, 1, 2, 1));
+		when(custRepository.findNearestNode(1d, 0d)).thenReturn(row(11, 2, 3, 1));
+		mainGraph.matrixMaxCells = 4;
+
+		List<List<Double>> points = Arrays.asList(Arrays.asList(0d, 0d), Arrays.asList(1d, 0d));
+		DistanceMatrix matrix = mainGraph.distanceMatrix(points, null);
+		assertEquals("{\"sources\":[1,2],\"targets\":[2,3],\"costs\":[[1.0,2.0],[0.0,1.0]]}", matrix.toJson());
+		assertThrows(IllegalArgumentException.class,
+				() -> mainGraph.distanceMatrix(points, Arrays.asList(points.get(0), points.get(0), points.get(1))));
+		assertEquals(Arrays.asList(Arrays.asList(10, 11)), mainGraph.tsp(points));
+	}
+
+	@Test
+	void routesBatch() throws InterruptedException {
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+		CustomRepository custRepository = mock(CustomRepository.class);
+		mainGraph.custRepository = custRepository;
+		when(custRepository.createJsonRouteResponse(anyList(), anyInt()))
+				.thenAnswer(call -> call.getArgument(1) + ": " + call.getArgument(0));
+		when(custRepository.findNearestNode(0d, 0d)).thenReturn(row(10, 1, 2, 1));
+		when(custRepository.findNearestNode(1d, 0d)).thenReturn(row(11, 2, 3, 1));
+		mainGraph.batchMaxRoutes = 4;
+		mainGraph.batchThreads = 2;
+
+		BatchRequest request = new BatchRequest();
+		request.setPairs(Arrays.asList(Arrays.asList(1, 3), Arrays.asList(3, 1), Arrays.asList(1, 99),
+				Arrays.asList(1, 3)));
+		RouteBatch batch = mainGraph.prepareBatch(request);
+		mainGraph.updateWeights(new int[] { 11 }, new double[] { 10 });
+
+		Map<Integer, String> features = new ConcurrentHashMap<Integer, String>();
+		mainGraph.runBatch(batch, (feature, i) -> features.put(i, feature));
+		assertEquals(4, features.size());
+		assertEquals("0: [10, 11]", features.get(0));
+		assertTrue(features.get(1).contains("\"error\" : \"no route\""));
+		assertTrue(features.get(2).contains("\"error\" : \"unknown target node 99\""));
+		assertEquals("3: [10, 11]", features.get(3));
+
+		request.setPairs(null);
+		request.setAlgorithm("bfs");
+		request.setPoints(Arrays.asList(Arrays.asList(0d, 0d, 1d, 0d), Arrays.asList(0d, 0d)));
+		features.clear();
+		mainGraph.runBatch(mainGraph.prepareBatch(request), (feature, i) -> features.put(i + 3, feature));
+		assertEquals("0: [12]", features.get(3));
+		assertTrue(features.get(4).contains("\"error\" : \"expected [source_x"));
+
+		request.setAlgorithm("allDirectedPaths");
+		assertThrows(IllegalArgumentException.class, () -> mainGraph.prepareBatch(request));
+		mainGraph.shutdown();
+	}
+
+	@Test
+	void streamsBoundedPaths() {
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.createDirectedGraph();
+		CustomRepository custRepository = mock(CustomRepository.class);
+		mainGraph.custRepository = custRepository;
+		when(custRepository.createJsonRouteResponse(anyList(), anyInt()))
+				.thenAnswer(call -> call.getArgument(1) + ": " + call.getArgument(0));
+		mainGraph.pathsMaxK = 3;
+		mainGraph.pathsBudgetMillis = 10000;
+
+		List<String> features = new ArrayList<String>();
+		assertEquals(2, mainGraph.paths(mainGraph.generation(), true, 1, 3, 3, 3, 1, features::add));
+		assertEquals(Arrays.asList("1: [10, 11]", "2: [12]"), features);
+		features.clear();
+		assertEquals(1, mainGraph.paths(mainGraph.generation(), false, 1, 3, 3, 2, 1, features::add));
+		assertEquals(Arrays.asList(Arrays.asList(12)), mainGraph.allDirectedPaths(1, 3, 1));
+		assertThrows(IllegalArgumentException.class, () -> mainGraph.checkPathBounds(4, 1.5, 1));
+		assertThrows(IllegalArgumentException.class, () -> mainGraph.checkPathBounds(3, 0.5, 1));
+		assertThrows(IllegalArgumentException.class, () -> mainGraph.checkPathBounds(3, 1.5, 0));
+	}
+
+	@Test
+	void startsFromSnapshot(@TempDir Path dir) throws InterruptedException {
+		mainGraph.snapshotEnabled = true;
+		mainGraph.dataDir = dir.toString();
+		when(graphRepository.getGraph()).thenReturn(network(5));
+		mainGraph.initGraph();
+		assertTrue(mainGraph.writeSnapshot(mainGraph.generation()));
+		long checksum = mainGraph.generation().getGraph().checksum();
+
+		GraphRepository restarted = mock(GraphRepository.class);
+		MainGraph next = new MainGraph();
+		next.graphRepository = restarted;
+		next.snapshotEnabled = true;
+		next.dataDir = dir.toString();
+		next.initGraph();
+		verify(restarted, never()).getGraph();
+		assertEquals(checksum, next.generation().getGraph().checksum());
+		assertEquals(Arrays.asList(10, 11), next.dijkstraSearch(1, 3));
+
+		next.datasourceUrl = "jdbc:postgresql://elsewhere/pgr";
+		when(restarted.getGraph()).thenReturn(network(1));
+		next.initGraph();
+		verify(restarted).getGraph();
+		assertEquals(Arrays.asList(12), next.dijkstraSearch(1, 3));
+
+		mainGraph.shutdown();
+		next.shutdown();
+	}
+}
@@ -0,0 +1,124 @@
+package org.pgrserver.graph;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class RouteCacheTests {
+
+	private static final List<Integer> ROUTE = Arrays.asList(10, 11);
+
+	@Test
+	void hitsUntilInvalidated() {
+		RouteCache cache = new RouteCache(1 << 20);
+		AtomicInteger searches = new AtomicInteger();
+		RouteCache.Route first = cache.get("dijkstra", 1, 3, 1, () -> {
+			searches.incrementAndGet();
+			return ROUTE;
+		});
+		assertSame(first, cache.get("dijkstra", 1, 3, 1, () -> ROUTE));
+		assertEquals(ROUTE, first.getEdgeIds());
+		cache.get("astar", 1, 3, 1, () -> ROUTE);
+		assertEquals(1, searches.get());
+
+		cache.setGeoJson(first, "{}");
+		assertEquals("{}", cache.get("dijkstra", 1, 3, 1, () -> null).getGeoJson());
+
+		cache.invalidate(2);
+		CacheStatus status = cache.getStatus();
+		assertEquals(0, status.getEntries());
+		assertEquals(0, status.getBytes());
+		assertEquals(2, status.getHits());
+		assertEquals(2, status.getMisses());
+		assertEquals(2, status.getInvalidations());
+
+		// a request still on generation 1 is answered but not stored
+		cache.get("dijkstra", 1, 3, 1, () -> ROUTE);
+		assertEquals(0, cache.getStatus().getEntries());
+		RouteCache.Route next = cache.get("dijkstra", 1, 3, 2, () -> ROUTE);
+		assertNull(next.getGeoJson());
+		assertEquals(1, cache.getStatus().getEntries());
+	}
+
+	@Test
+	void evictsLeastRecentlyUsed() {
+		RouteCache cache = new RouteCache(3 * (160 + 20 * ROUTE.size()));
+		for (int t = 0; t < 3; t++) {
+			cache.get("dijkstra", 0, t, 1, () -> ROUTE);
+		}
+		cache.get("dijkstra", 0, 0, 1, () -> ROUTE);
+		cache.get("dijkstra", 0, 3, 1, () -> ROUTE);
+
+		CacheStatus status = cache.getStatus();
+		assertEquals(3, status.getEntries());
+		assertEquals(1, status.getEvictions());
+		assertEquals(status.getMaxBytes(), status.getBytes());
+		AtomicInteger searches = new AtomicInteger();
+		cache.get("dijkstra", 0, 0, 1, () -> ROUTE);
+		cache.get("dijkstra", 0, 1, 1, () -> {
+			searches.incrementAndGet();
+			return ROUTE;
+		});
+		assertEquals(1, searches.get());
+	}
+
+	@Test
+	void coalescesIdenticalSearches() throws Exception {
+		RouteCache cache = new RouteCache(1 << 20);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger searches = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			Future<RouteCache.Route> first = pool.submit(() -> cache.get("bfs", 1, 3, 1, () -> {
+				searches.incrementAndGet();
+				started.countDown();
+				await(release);
+				return ROUTE;
+			}));
+			started.await(5, TimeUnit.SECONDS);
+			Future<RouteCache.Route> second = pool.submit(() -> cache.get("bfs", 1, 3, 1, () -> {
+				searches.incrementAndGet();
+				return ROUTE;
+			}));
+			for (int i = 0; i < 500 && cache.getStatus().getCoalesced() == 0; i++) {
+				Thread.sleep(10);
+			}
+			release.countDown();
+			assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+			assertEquals(1, searches.get());
+			assertEquals(1, cache.getStatus().getCoalesced());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void failedSearchIsNotCached() {
+		RouteCache cache = new RouteCache(1 << 20);
+		assertThrows(IllegalStateException.class, () -> cache.get("bfs", 1, 3, 1, () -> {
+			throw new IllegalStateException("failed");
+		}));
+		assertEquals(ROUTE, cache.get("bfs", 1, 3, 1, () -> ROUTE).getEdgeIds());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
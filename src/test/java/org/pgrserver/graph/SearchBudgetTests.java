@@ -0,0 +1,122 @@
+package org.pgrserver.graph;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.jgrapht.alg.shortestpath.BellmanFordShortestPath;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class SearchBudgetTests {
+
+	private static final int SIZE = 60;
+
+	private static CsrGraph graph;
+
+	/**
+	 * Two-way grid, large enough for a search from corner to corner to
+	 * check its budget a few times.
+	 */
+	@BeforeAll
+	static void createGraph() {
+		graph = TestGraphs.unitGrid(SIZE);
+	}
+
+	private static int corner(int x, int y) {
+		return graph.indexOf(x * SIZE + y);
+	}
+
+	@Test
+	void unlimitedBudgetFindsTheSamePath() {
+		int s = corner(0, 0);
+		int t = corner(SIZE - 1, SIZE - 1);
+		int[] expected = new CsrDijkstra(graph).path(s, t, CsrDijkstra.NONE);
+		assertNotNull(expected);
+		assertArrayEquals(expected, new CsrDijkstra(graph).path(s, t, CsrDijkstra.NONE, SearchBudget.UNLIMITED));
+		assertArrayEquals(expected,
+				new CsrDijkstra(graph).path(s, t, CsrDijkstra.NONE, new SearchBudget(0, 0)));
+		SearchBudget.UNLIMITED.cancel();
+		assertFalse(SearchBudget.UNLIMITED.isExhausted());
+	}
+
+	@Test
+	void stopsAfterTheSettledLimit() {
+		SearchBudget budget = new SearchBudget(2000, 0);
+		CsrDijkstra dijkstra = new CsrDijkstra(graph);
+		assertNull(dijkstra.path(corner(0, 0), corner(SIZE - 1, SIZE - 1), CsrDijkstra.NONE, budget));
+		assertTrue(dijkstra.settledCount() <= 2000 + SearchBudget.CHECK_INTERVAL);
+		assertEquals(SearchBudget.SETTLED, budget.getReason());
+		SearchBudget.ExceededException e = assertThrows(SearchBudget.ExceededException.class, budget::check);
+		assertEquals(SearchBudget.SETTLED, e.getReason());
+
+		// a search within the limit is not affected
+		SearchBudget small = new SearchBudget(2000, 0);
+		assertNotNull(new CsrDijkstra(graph).path(corner(0, 0), corner(3, 3), CsrDijkstra.NONE, small));
+		small.check();
+	}
+
+	@Test
+	void stopsWhenCancelled() {
+		SearchBudget budget = SearchBudget.of(0, 60000);
+		budget.cancel();
+		BidirectionalSearch search = BidirectionalSearch.acquire(graph.vertexCount());
+		try {
+			assertNull(search.shortestPath(graph, corner(0, 0), corner(SIZE - 1, SIZE - 1), budget));
+		} finally {
+			search.release();
+		}
+		assertEquals(SearchBudget.CANCELLED, budget.getReason());
+	}
+
+	@Test
+	void hierarchyQueriesReuseTheirWorkspace() {
+		ContractionHierarchy ch = ContractionHierarchy.build(graph, 1);
+		int s = corner(0, 0);
+		int t = corner(SIZE - 1, SIZE - 1);
+		int[] expected = ch.path(s, t);
+		assertNotNull(expected);
+		assertArrayEquals(expected, ch.path(s, t, new SearchBudget(0, 0)));
+
+		// a query stopped half way leaves nothing behind for the next one
+		SearchBudget budget = new SearchBudget(0, 0);
+		budget.cancel();
+		ch.path(s, t, budget);
+		assertArrayEquals(expected, ch.path(s, t));
+		assertArrayEquals(ch.path(t, s), ch.path(t, s, SearchBudget.UNLIMITED));
+	}
+
+	@Test
+	void stopsAtTheDeadline() {
+		SearchBudget budget = new SearchBudget(0, System.nanoTime() - 1);
+		int[] settled = new CsrDijkstra(graph).withinRadius(corner(0, 0), Double.POSITIVE_INFINITY, budget);
+		assertTrue(settled.length < graph.vertexCount());
+		assertEquals(SearchBudget.TIME, budget.getReason());
+	}
+
+	@Test
+	void splitBudgetsStopApart() {
+		SearchBudget request = new SearchBudget(2000, 0);
+		SearchBudget first = request.split();
+		assertNull(new CsrDijkstra(graph).path(corner(0, 0), corner(SIZE - 1, SIZE - 1), CsrDijkstra.NONE, first));
+		assertTrue(first.isExhausted());
+		assertFalse(request.isExhausted());
+
+		SearchBudget second = request.split();
+		request.cancel();
+		assertNull(new CsrDijkstra(graph).path(corner(0, 0), corner(SIZE - 1, SIZE - 1), CsrDijkstra.NONE, second));
+		assertEquals(SearchBudget.CANCELLED, second.getReason());
+	}
+
+	@Test
+	void graphViewThrowsWhenExceeded() {
+		SearchBudget budget = new SearchBudget(1, 0);
+		assertThrows(SearchBudget.ExceededException.class, () -> BellmanFordShortestPath
+				.findPathBetween(new CsrGraphView(graph, budget), corner(0, 0), corner(SIZE - 1, SIZE - 1)));
+		assertEquals(SearchBudget.SETTLED, budget.getReason());
+	}
+}
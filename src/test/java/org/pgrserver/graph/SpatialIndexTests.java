@@ -0,0 +1,224 @@
+package org.pgrserver.graph;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.pgrserver.graph.TestGraphs.STEP;
+import static org.pgrserver.graph.TestGraphs.lat;
+import static org.pgrserver.graph.TestGraphs.lineString;
+import static org.pgrserver.graph.TestGraphs.lng;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpatialIndexTests {
+
+	private static final int SIZE = 40;
+
+	private static CsrGraph graph;
+	private static GeometryStore store;
+	private static SpatialIndex index;
+
+	/**
+	 * Grid of two-way streets near Tokyo. Every street is one row per
+	 * direction with the same geometry, bent in the middle, and every
+	 * fifth street is digitized against its source-target direction.
+	 */
+	@BeforeAll
+	static void createIndex() {
+		final CsrGraph.Builder builder = new CsrGraph.Builder();
+		final GeometryStore.Builder geometries = new GeometryStore.Builder();
+		TestGraphs.streets(SIZE, (id, u, v) -> {
+			int x1 = u / SIZE, y1 = u % SIZE;
+			int x2 = v / SIZE, y2 = v % SIZE;
+			double[] line = { lng(x1), lat(y1), (lng(x1) + lng(x2)) / 2 + STEP / 5,
+					(lat(y1) + lat(y2)) / 2 + STEP / 5, lng(x2), lat(y2) };
+			boolean digitizedBackwards = id % 5 == 0;
+			builder.addEdge(id, vertexId(x1, y1), vertexId(x2, y2), 1);
+			geometries.add(id, lineString(line, digitizedBackwards));
+			builder.addEdge(id + 1, vertexId(x2, y2), vertexId(x1, y1), 1);
+			geometries.add(id + 1, lineString(line, !digitizedBackwards));
+			return id + 2;
+		});
+		graph = builder.build();
+		store = geometries.build(graph);
+		index = new SpatialIndex(graph, store);
+	}
+
+	private static int vertexId(int x, int y) {
+		return 100 + x * SIZE + y;
+	}
+
+	private static double lineDistanceSq(int e, double x, double y) {
+		int g = store.geometryOf(e);
+		double best = Double.POSITIVE_INFINITY;
+		for (int i = 1; i < store.pointCount(g); i++) {
+			double ax = store.x(g, i - 1), ay = store.y(g, i - 1);
+			double dx = store.x(g, i) - ax, dy = store.y(g, i) - ay;
+			double t = Math.max(0, Math.min(1, ((x - ax) * dx + (y - ay) * dy) / (dx * dx + dy * dy)));
+			double px = ax + t * dx - x, py = ay + t * dy - y;
+			best = Math.min(best, px * px + py * py);
+		}
+		return best;
+	}
+
+	@Test
+	void derivesVertexCoordinates() {
+		for (int x = 0; x < SIZE; x += 7) {
+			for (int y = 0; y < SIZE; y += 3) {
+				int v = graph.indexOf(vertexId(x, y));
+				assertEquals(lng(x), store.vertexX(v), 1e-7);
+				assertEquals(lat(y), store.vertexY(v), 1e-7);
+			}
+		}
+		for (int e = 0; e < graph.edgeCount(); e++) {
+			int g = store.geometryOf(e);
+			boolean reversed = store.isReversed(e);
+			int first = reversed ? graph.target(e) : graph.source(e);
+			assertEquals(store.vertexX(first), store.x(g, 0), 1e-9);
+			assertEquals(store.vertexY(first), store.y(g, 0), 1e-9);
+		}
+	}
+
+	@Test
+	void nearestEdgeMatchesBruteForce() {
+		Random random = new Random(5);
+		double[] lng = new double[500];
+		double[] lat = new double[500];
+		for (int i = 0; i < lng.length; i++) {
+			lng[i] = lng(0) - 0.005 + random.nextDouble() * (SIZE * STEP + 0.01);
+			lat[i] = lat(0) - 0.005 + random.nextDouble() * (SIZE * STEP + 0.01);
+
+			double best = Double.POSITIVE_INFINITY;
+			for (int e = 0; e < graph.edgeCount(); e++) {
+				best = Math.min(best, lineDistanceSq(e, lng[i], lat[i]));
+			}
+			int found = index.nearestEdge(lng[i], lat[i]);
+			assertEquals(best, lineDistanceSq(found, lng[i], lat[i]), 1e-15);
+		}
+
+		int[] batch = index.nearestEdges(lng, lat);
+		for (int i = 0; i < lng.length; i++) {
+			assertEquals(index.nearestEdge(lng[i], lat[i]), batch[i]);
+		}
+	}
+
+	@Test
+	void nearestVertex() {
+		int v = index.nearestVertex(lng(12) + STEP * 0.3, lat(30) - STEP * 0.4);
+		assertEquals(vertexId(12, 30), graph.vertexId(v));
+	}
+
+	@Test
+	void readsMultiLineStrings() {
+		ByteBuffer buffer = ByteBuffer.allocate(9 + 2 * (9 + 32)).order(ByteOrder.BIG_ENDIAN);
+		buffer.put((byte) 0).putInt(5).putInt(2);
+		buffer.put((byte) 0).putInt(2).putInt(2).putDouble(1).putDouble(2).putDouble(3).putDouble(4);
+		buffer.put((byte) 0).putInt(2).putInt(2).putDouble(3).putDouble(4).putDouble(5).putDouble(6);
+
+		CsrGraph g = new CsrGraph.Builder().addEdge(7, 1, 2, 1).build();
+		GeometryStore s = new GeometryStore.Builder().add(7, buffer.array()).build(g);
+		assertEquals(3, s.pointCount(0));
+		assertArrayEquals(new double[] { 1, 3, 5 }, new double[] { s.x(0, 0), s.x(0, 1), s.x(0, 2) });
+		assertFalse(s.isReversed(0));
+		assertTrue(s.hasCoordinates(g.indexOf(2)));
+		assertEquals(6, s.vertexY(g.indexOf(2)));
+	}
+
+	@Test
+	void assemblesRouteGeoJson() {
+		int s = graph.indexOf(vertexId(0, 0));
+		int t = graph.indexOf(vertexId(3, 0));
+		int[] path = new CsrDijkstra(graph).path(s, t, CsrDijkstra.NONE);
+		List<Integer> ids = new ArrayList<Integer>();
+		double length = 0;
+		for (int id : graph.toEdgeIds(path)) {
+			ids.add(id);
+		}
+		for (int e : path) {
+			length += store.length(store.geometryOf(e));
+		}
+
+		String json = RouteGeoJson.feature(graph, store, ids, 4);
+		assertTrue(json.startsWith("{\"type\" : \"Feature\", \"id\" : 4, \"properties\" : {\"feat_length\" : " + length
+				+ ", \"fid\" : 4}, \"geometry\" : {\"type\":\"LineString\",\"coordinates\":[[139.7,35.6],"), json);
+		assertTrue(json.endsWith(",[139.703,35.6]]}}"), json);
+		assertEquals(7, json.split("\\],\\[").length);
+		assertTrue(length > 3 * 90 && length < 3 * 115, "length " + length);
+
+		String gap = RouteGeoJson.featureCollection(graph, store,
+				Arrays.asList(Arrays.asList(ids.get(0), ids.get(2)), new ArrayList<Integer>()));
+		assertTrue(gap.contains("\"id\" : 1,"));
+		assertTrue(gap.contains("MultiLineString"));
+		assertTrue(gap.endsWith("\"feat_length\" : null, \"fid\" : 2}, \"geometry\" : null}]}"), gap);
+	}
+
+	@Test
+	void snapshotKeepsGraphAndGeometry(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("graph.snapshot");
+		long key = GraphSnapshot.sourceKey("jdbc:postgresql://localhost/pgr|postgres");
+		GraphSnapshot.write(file, graph, store, key);
+
+		GraphSnapshot snapshot = GraphSnapshot.read(file, key, System.currentTimeMillis() - 60000);
+		CsrGraph copy = snapshot.getGraph();
+		GeometryStore geometry = snapshot.getGeometry();
+		assertEquals(graph.checksum(), copy.checksum());
+		assertEquals(graph.indexOf(vertexId(7, 9)), copy.indexOf(vertexId(7, 9)));
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int e = 0; e < graph.edgeCount(); e += 37) {
+			assertEquals(store.geometryOf(e), geometry.geometryOf(e));
+			assertEquals(store.isReversed(e), geometry.isReversed(e));
+			ids.add(graph.edgeId(e));
+		}
+		assertEquals(RouteGeoJson.feature(graph, store, ids, 1), RouteGeoJson.feature(copy, geometry, ids, 1));
+		SpatialIndex copyIndex = new SpatialIndex(copy, geometry);
+		assertEquals(index.nearestEdge(lng(3) + 0.0001, lat(8)), copyIndex.nearestEdge(lng(3) + 0.0001, lat(8)));
+
+		assertNull(GraphSnapshot.read(file, key + 1, 0));
+		assertNull(GraphSnapshot.read(file, key, Long.MAX_VALUE));
+		assertNull(GraphSnapshot.read(dir.resolve("missing"), key, 0));
+
+		GraphSnapshot.write(file, graph, null, key);
+		assertNull(GraphSnapshot.read(file, key, 0).getGeometry());
+		assertTrue(GraphSnapshot.read(file, key, 0).getMetrics().isEmpty());
+
+		double[] weights = graph.copyWeights();
+		weights[5] = 123.5;
+		GraphSnapshot.write(file, graph, Collections.singletonMap("time", graph.withWeights(weights)), store, key);
+		snapshot = GraphSnapshot.read(file, key, 0);
+		assertEquals(graph.checksum(), snapshot.getGraph().checksum());
+		CsrGraph time = snapshot.getMetrics().get("time");
+		assertEquals(graph.topologyChecksum(), time.topologyChecksum());
+		assertEquals(123.5, time.weight(5));
+		assertEquals(graph.weight(6), time.weight(6));
+
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+		assertThrows(IOException.class, () -> GraphSnapshot.read(file, key, 0));
+	}
+
+	@Test
+	void formatsFixedPointCoordinates() {
+		StringBuilder sb = new StringBuilder();
+		for (int v : new int[] { 0, 1397000000, -5000000, 5, 1234567, -1801234560 }) {
+			RouteGeoJson.appendFixed(sb, v);
+			sb.append(' ');
+		}
+		assertEquals("0 139.7 -0.5 0.0000005 0.1234567 -180.123456 ", sb.toString());
+	}
+}
@@ -0,0 +1,154 @@
+package org.pgrserver.graph;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * Grid networks and path helpers shared by the graph tests and the
+ * benchmarks. The vertex at x, y of a grid of size x size is numbered
+ * x * size + y and lies at lng(x), lat(y), near Tokyo.
+ */
+final class TestGraphs {
+
+	/** Degrees between neighbouring vertices */
+	static final double STEP = 0.001;
+
+	private TestGraphs() {
+	}
+
+	/**
+	 * Adds the edges of one street of a grid.
+	 */
+	interface Street {
+		/**
+		 * @param id first free edge id
+		 * @param u  vertex x * size + y
+		 * @param v  its neighbour at x + 1, y (u + size) or at x, y + 1
+		 *           (u + 1)
+		 * @return the next free edge id
+		 */
+		int add(int id, int u, int v);
+	}
+
+	/**
+	 * Calls street for every pair of neighbours, by x and then y, the
+	 * street to x + 1 before the one to y + 1. Edge ids start at 1.
+	 *
+	 * @return the next free edge id
+	 */
+	static int streets(int size, Street street) {
+		int id = 1;
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				int u = x * size + y;
+				if (x + 1 < size) {
+					id = street.add(id, u, u + size);
+				}
+				if (y + 1 < size) {
+					id = street.add(id, u, u + 1);
+				}
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Grid of two-way streets, each direction with its own random cost
+	 * between 1 and 10.
+	 */
+	static CsrGraph grid(int size, long seed) {
+		final Random random = new Random(seed);
+		final CsrGraph.Builder builder = new CsrGraph.Builder();
+		streets(size, (id, u, v) -> {
+			builder.addEdge(id, u, v, 1 + 9 * random.nextDouble());
+			builder.addEdge(id + 1, v, u, 1 + 9 * random.nextDouble());
+			return id + 2;
+		});
+		return builder.build();
+	}
+
+	/**
+	 * Grid of two-way streets with one random cost between 1 and 10 for
+	 * both directions, which share their edge id.
+	 */
+	static CsrGraph symmetricGrid(int size, long seed) {
+		final Random random = new Random(seed);
+		final CsrGraph.Builder builder = new CsrGraph.Builder();
+		streets(size, (id, u, v) -> {
+			double cost = 1 + 9 * random.nextDouble();
+			builder.addEdge(id, u, v, cost);
+			builder.addEdge(id, v, u, cost);
+			return id + 1;
+		});
+		return builder.build();
+	}
+
+	/**
+	 * Grid of two-way streets of cost 1.
+	 */
+	static CsrGraph unitGrid(int size) {
+		final CsrGraph.Builder builder = new CsrGraph.Builder();
+		streets(size, (id, u, v) -> {
+			builder.addEdge(id, u, v, 1);
+			builder.addEdge(id + 1, v, u, 1);
+			return id + 2;
+		});
+		return builder.build();
+	}
+
+	static double lng(int x) {
+		return 139.7 + x * STEP;
+	}
+
+	static double lat(int y) {
+		return 35.6 + y * STEP;
+	}
+
+	/**
+	 * @param xy lng,lat of every point
+	 * @return little endian WKB linestring
+	 */
+	static byte[] lineString(double... xy) {
+		return lineString(xy, false);
+	}
+
+	/**
+	 * @param reverse true for the points from last to first
+	 */
+	static byte[] lineString(double[] xy, boolean reverse) {
+		int points = xy.length / 2;
+		ByteBuffer buffer = ByteBuffer.allocate(9 + 16 * points).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put((byte) 1).putInt(2).putInt(points);
+		for (int i = 0; i < points; i++) {
+			int p = reverse ? points - 1 - i : i;
+			buffer.putDouble(xy[2 * p]).putDouble(xy[2 * p + 1]);
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * @return sum of the weights of the edges of path
+	 */
+	static double cost(CsrGraph graph, int[] path) {
+		double retVal = 0;
+		for (int e : path) {
+			retVal += graph.weight(e);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Checks that path leads from source to target.
+	 */
+	static void assertConnected(CsrGraph graph, int[] path, int source, int target) {
+		int v = source;
+		for (int e : path) {
+			assertEquals(v, graph.source(e));
+			v = graph.target(e);
+		}
+		assertEquals(target, v);
+	}
+}
@@ -0,0 +1,114 @@
+package org.pgrserver.graph;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.pgrserver.util.IntIntHashMap;
+import org.pgrserver.util.ParallelLoop;
+
+class TourOptimizerTests {
+
+	/**
+	 * Points in the plane with an asymmetric cost: going east costs 50%
+	 * more.
+	 */
+	private static double[] costs(Random random, int n) {
+		double[] x = new double[n];
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = random.nextDouble() * 100;
+			y[i] = random.nextDouble() * 100;
+		}
+		double[] costs = new double[n * n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				costs[i * n + j] = Math.hypot(x[j] - x[i], y[j] - y[i]) * (x[j] > x[i] ? 1.5 : 1);
+			}
+		}
+		return costs;
+	}
+
+	private static double length(double[] costs, int n, int[] tour) {
+		double retVal = 0;
+		for (int k = 1; k < n; k++) {
+			retVal += costs[tour[k - 1] * n + tour[k]];
+		}
+		return retVal;
+	}
+
+	private static double bruteForce(double[] costs, int n, int[] tour, int k, double best) {
+		if (k == n) {
+			return Math.min(best, length(costs, n, tour));
+		}
+		for (int i = k; i < n; i++) {
+			int t = tour[k];
+			tour[k] = tour[i];
+			tour[i] = t;
+			best = bruteForce(costs, n, tour, k + 1, best);
+			tour[i] = tour[k];
+			tour[k] = t;
+		}
+		return best;
+	}
+
+	@Test
+	void improvesNearestNeighbourTour() {
+		Random random = new Random(31);
+		double gap = 0;
+		for (int round = 0; round < 20; round++) {
+			int n = 8;
+			double[] costs = costs(random, n);
+			TourOptimizer nn = new TourOptimizer(costs, n);
+			nn.nearestNeighbour();
+			int[] tour = TourOptimizer.solve(costs, n, 1000);
+
+			assertEquals(0, tour[0]);
+			int[] sorted = tour.clone();
+			Arrays.sort(sorted);
+			assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5, 6, 7 }, sorted);
+
+			int[] identity = { 0, 1, 2, 3, 4, 5, 6, 7 };
+			double optimum = bruteForce(costs, n, identity, 1, Double.POSITIVE_INFINITY);
+			double length = length(costs, n, tour);
+			assertTrue(length <= nn.length() + 1e-9);
+			assertTrue(length >= optimum - 1e-9);
+			gap += length / optimum - 1;
+		}
+		assertTrue(gap / 20 < 0.02, "mean gap " + gap / 20);
+	}
+
+	@Test
+	void avoidsUnreachablePairs() {
+		double inf = Double.POSITIVE_INFINITY;
+		double[] costs = { 0, 1, 5, //
+				inf, 0, 1, //
+				1, inf, 0 };
+		assertArrayEquals(new int[] { 0, 1, 2 }, TourOptimizer.solve(costs, 3, 100));
+		assertArrayEquals(new int[] { 0 }, TourOptimizer.solve(new double[] { 0 }, 1, 100));
+	}
+
+	@Test
+	void keepsPathsOfTheCostMatrix() {
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		builder.addEdge(1, 1, 2, 1).addEdge(2, 2, 3, 1).addEdge(3, 3, 4, 1).addEdge(4, 1, 4, 5).addEdge(5, 4, 1, 1);
+		CsrGraph graph = builder.build();
+		int[] vertices = { graph.indexOf(1), graph.indexOf(3), graph.indexOf(4) };
+		IntIntHashMap[] trees = new IntIntHashMap[3];
+		double[] costs;
+		try (ParallelLoop loop = new ParallelLoop(2, 1, "test")) {
+			costs = ManyToMany.dijkstra(graph, vertices, vertices, loop, trees);
+		}
+		assertEquals(3, costs[2]);
+		assertEquals(2, costs[1 * 3 + 0]);
+		int[] path = ManyToMany.path(graph, trees[1], vertices[1], vertices[0]);
+		assertArrayEquals(new int[] { 3, 5 }, graph.toEdgeIds(path));
+		assertArrayEquals(new int[] { 1, 2, 3 },
+				graph.toEdgeIds(ManyToMany.path(graph, trees[0], vertices[0], vertices[2])));
+		assertEquals(0, ManyToMany.path(graph, trees[2], vertices[2], vertices[2]).length);
+	}
+}